@@ -0,0 +1,173 @@
+package src;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for every data-access path behind the dashboards, calling the same store code the UI runs:
+ * loadReports (snapshot, first page, keyset page, one citizen's reports), loadTasks, loadWorkers (cold and cached),
+ * submitReport, assignTask and completeTask.
+ * Each benchmark reports throughput and sampled latency percentiles; add -prof gc for the allocation rate.
+ *
+ * The store is the one the application would use: MySQL at -Ddb.url, which should be a scratch *_bench database,
+ * or the {@link MemoryEngine} with -Dstorage=memory. On MySQL each trial first tops the reports table up to
+ * the scale under test (10k, 1M and 10M reports by default, or -p reports=...); the memory engine is measured as it is.
+ * Run from bench/ after mvn -B package:
+ * java -Ddb.url="jdbc:mysql://localhost:3306/waste_bench?serverTimezone=UTC&rewriteBatchedStatements=true"
+ *      -jar target/benchmarks.jar -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DashboardBenchmark {
+
+    private static final int MAX_FIXTURES = 200000;
+
+    /**
+     * The number of reports to measure against.
+     */
+    @Param({"10000", "1000000", "10000000"})
+    public long reports;
+
+    private ReportStore reportStore;
+    private TaskStore taskStore;
+    private UserStore userStore;
+    private final Random random = new Random(7);
+
+    private int[] citizenIds;
+    private int[] workerIds;
+    private long[] pageKeys; // {submission millis, id} of a report in the middle of the table
+    private final Deque<Integer> pendingReports = new ArrayDeque<>();
+    private final Deque<int[]> openTasks = new ArrayDeque<>(); // {task id, report id}
+
+    @Setup(Level.Trial)
+    public void openStore() throws SQLException, IOException {
+        if (Storage.isMemory()) {
+            Storage.open();
+        } else {
+            SchemaMigrations.migrate();
+        }
+        reportStore = Storage.reports();
+        taskStore = Storage.tasks();
+        userStore = Storage.users();
+
+        int present = reportStore.snapshot().count();
+        if (!Storage.isMemory() && present < reports) {
+            long missing = reports - present;
+            new DataSeeder((int) Math.max(100, missing / 20), (int) Math.max(10, missing / 2000), 42).seed(missing);
+        }
+
+        citizenIds = first(userStore.findIdsByRole("Citizen"), 1000);
+        workerIds = first(userStore.findIdsByRole("Worker"), 1000);
+        if (citizenIds.length == 0 || workerIds.length == 0) {
+            throw new IllegalStateException("The store has no citizens or no workers; seed it first");
+        }
+        ReportPage middle = reportStore.findPageAt(reportStore.snapshot().count() / 2, 1);
+        pageKeys = middle.size > 0 ? new long[]{middle.submissionMillis[0], middle.ids[0]} : new long[]{System.currentTimeMillis(), Integer.MAX_VALUE};
+    }
+
+    /**
+     * Picks the rows assignTask and completeTask act on; each one can be acted on once.
+     */
+    @Setup(Level.Iteration)
+    public void pickRows() throws SQLException {
+        pendingReports.clear();
+        pendingReports.addAll(reportStore.findPendingIds(MAX_FIXTURES));
+        openTasks.clear();
+        for (int workerId : workerIds) {
+            for (Task task : taskStore.findByWorker(workerId)) {
+                if ("Assigned".equals(task.status()) && openTasks.size() < MAX_FIXTURES) {
+                    openTasks.add(new int[]{task.id(), task.reportId()});
+                }
+            }
+        }
+    }
+
+    private static int[] first(List<Integer> ids, int limit) {
+        return ids.stream().limit(limit).mapToInt(Integer::intValue).toArray();
+    }
+
+    private int pick(int[] ids) {
+        return ids[random.nextInt(ids.length)];
+    }
+
+    @Benchmark
+    public ReportSnapshot loadReportsSnapshot() throws SQLException {
+        return reportStore.snapshot();
+    }
+
+    @Benchmark
+    public ReportPage loadReportsFirstPage() throws SQLException {
+        return reportStore.findFirstPage(ReportTableModel.PAGE_SIZE);
+    }
+
+    @Benchmark
+    public ReportPage loadReportsKeysetPage() throws SQLException {
+        return reportStore.findPageAfter(pageKeys[0], (int) pageKeys[1], ReportTableModel.PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Report> citizenLoadReports() throws SQLException {
+        return reportStore.findByCitizen(pick(citizenIds));
+    }
+
+    @Benchmark
+    public List<Task> loadTasks() throws SQLException {
+        return taskStore.findByWorker(pick(workerIds));
+    }
+
+    @Benchmark
+    public List<User> loadWorkersCold() throws SQLException {
+        userStore.invalidateCache();
+        return userStore.findWorkers();
+    }
+
+    @Benchmark
+    public List<User> loadWorkersCached() throws SQLException {
+        return userStore.findWorkers();
+    }
+
+    @Benchmark
+    public int submitReport() throws SQLException {
+        return reportStore.insert(pick(citizenIds), "Benchmark report", DataSeeder.location(random.nextInt(1200)));
+    }
+
+    @Benchmark
+    public BatchResult assignTask() throws SQLException {
+        Integer reportId = pendingReports.poll();
+        if (reportId == null) {
+            throw new IllegalStateException("No more Pending reports to assign; seed more data");
+        }
+        return taskStore.assignAll(List.of(reportId), pick(workerIds));
+    }
+
+    @Benchmark
+    public BatchResult.Outcome completeTask() throws SQLException {
+        int[] task = openTasks.poll();
+        if (task == null) {
+            throw new IllegalStateException("No more Assigned tasks to complete; seed more data");
+        }
+        return taskStore.complete(task[0], task[1]);
+    }
+}
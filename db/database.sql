@@ -9,7 +9,11 @@ CREATE TABLE IF NOT EXISTS users (
     id INT AUTO_INCREMENT PRIMARY KEY,
     username VARCHAR(50) NOT NULL UNIQUE,
     password VARCHAR(255) NOT NULL,
-    role ENUM('Citizen', 'Admin', 'Worker') NOT NULL
+    role ENUM('Citizen', 'Admin', 'Worker') NOT NULL,
+    -- Base location of a worker (e.g. their depot); used for nearest-worker suggestions
+    latitude DOUBLE NULL,
+    longitude DOUBLE NULL,
+    INDEX idx_users_role (role)
 );
 
 -- Table to store waste reports submitted by citizens
@@ -20,7 +24,27 @@ CREATE TABLE IF NOT EXISTS reports (
     location VARCHAR(255) NOT NULL,
     status ENUM('Pending', 'In Progress', 'Completed') DEFAULT 'Pending',
     submission_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    FOREIGN KEY (citizen_id) REFERENCES users(id)
+    -- Geocoded from the location against db/gazetteer.csv; NULL if no known place matched
+    latitude DOUBLE NULL,
+    longitude DOUBLE NULL,
+    -- Set when a citizen's report repeats an open one; it gets no task and follows that report's status
+    duplicate_of INT NULL,
+    -- The gazetteer place the location matched; statistics count NULL as "Other"
+    area VARCHAR(64) NULL,
+    -- Set for submissions replayed from the local submission journal, so a replay never inserts twice
+    client_token CHAR(36) NULL,
+    -- Bumped by every status change; status updates only apply to the version the user saw
+    version INT NOT NULL DEFAULT 0,
+    -- Bumped on every change so dashboards can fetch only the rows changed since their last refresh
+    updated_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),
+    FOREIGN KEY (citizen_id) REFERENCES users(id),
+    CONSTRAINT fk_reports_duplicate_of FOREIGN KEY (duplicate_of) REFERENCES reports(id),
+    INDEX idx_reports_duplicate_of (duplicate_of),
+    INDEX idx_reports_updated_at (updated_at),
+    INDEX idx_reports_citizen_submitted (citizen_id, submission_date),
+    INDEX idx_reports_submitted (submission_date, id),
+    INDEX idx_reports_status_submitted (status, submission_date),
+    UNIQUE INDEX uq_reports_client_token (client_token)
 );
 
 -- Table to store tasks assigned to workers by the admin
@@ -31,20 +55,91 @@ CREATE TABLE IF NOT EXISTS tasks (
     status ENUM('Assigned', 'Completed') DEFAULT 'Assigned',
     assigned_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     completed_date TIMESTAMP NULL,
+    version INT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),
     FOREIGN KEY (report_id) REFERENCES reports(id),
-    FOREIGN KEY (worker_id) REFERENCES users(id)
+    FOREIGN KEY (worker_id) REFERENCES users(id),
+    UNIQUE INDEX uq_tasks_report (report_id),
+    INDEX idx_tasks_updated_at (updated_at),
+    INDEX idx_tasks_worker_updated_at (worker_id, updated_at),
+    INDEX idx_tasks_worker_assigned (worker_id, assigned_date),
+    INDEX idx_tasks_status_worker (status, worker_id)
 );
 
+-- Pre-aggregated statistics, maintained by the repositories in the same transaction as each change
+-- and recomputed from reports and tasks by StatisticsRepository.rebuild (see src/StatisticsRepository.java)
+CREATE TABLE IF NOT EXISTS report_rollups (
+    day DATE NOT NULL,
+    area VARCHAR(64) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    report_count INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (day, area, status)
+);
+
+CREATE TABLE IF NOT EXISTS area_rollups (
+    area VARCHAR(64) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    report_count INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (area, status)
+);
+
+CREATE TABLE IF NOT EXISTS worker_rollups (
+    day DATE NOT NULL,
+    worker_id INT NOT NULL,
+    assigned_count INT NOT NULL DEFAULT 0,
+    completed_count INT NOT NULL DEFAULT 0,
+    completion_seconds BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (day, worker_id)
+);
+
+-- Segment files under data/archive holding Completed reports moved out of reports and tasks
+-- by src/ArchiveStore.java; a report is in exactly one of the two places
+CREATE TABLE IF NOT EXISTS archive_segments (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    file_name VARCHAR(255) NOT NULL UNIQUE,
+    row_count INT NOT NULL,
+    min_report_id INT NOT NULL,
+    max_report_id INT NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Bins with a fill-level sensor; src/TelemetryServer.java files a report when one is about to overflow
+CREATE TABLE IF NOT EXISTS bins (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    location VARCHAR(255) NOT NULL,
+    latitude DOUBLE NULL,
+    longitude DOUBLE NULL,
+    -- The bin's overflow report while it is open; not a foreign key since Completed reports get archived
+    open_report_id INT NULL
+);
+
+-- Photos attached to reports; the files are under data/attachments, named by the SHA-256 of their bytes
+-- (see src/BlobStore.java), so only the hash is stored here
+CREATE TABLE IF NOT EXISTS report_attachments (
+    report_id INT NOT NULL,
+    sha256 CHAR(64) NOT NULL,
+    PRIMARY KEY (report_id, sha256),
+    CONSTRAINT fk_attachments_report FOREIGN KEY (report_id) REFERENCES reports(id)
+);
+
+-- Databases created from an older version of this script are upgraded by src/SchemaMigrations.java,
+-- which runs at application startup.
+
 -- Insert some sample data for testing purposes
 
 -- Admin User
 INSERT INTO users (username, password, role) VALUES ('admin', 'admin123', 'Admin');
 
 -- Worker User
-INSERT INTO users (username, password, role) VALUES ('worker', 'worker123', 'Worker');
+INSERT INTO users (username, password, role, latitude, longitude) VALUES ('worker', 'worker123', 'Worker', 28.6150, 77.2100);
 
 -- Citizen User
 INSERT INTO users (username, password, role) VALUES ('citizen', 'citizen123', 'Citizen');
 
+-- The user sensor bin reports are filed as; nobody knows the password
+INSERT INTO users (username, password, role) VALUES ('sensors', UUID(), 'Citizen');
+
 -- Sample report from the citizen
-INSERT INTO reports (citizen_id, description, location) VALUES (3, 'Overflowing garbage bin near the park entrance.', 'City Park, Main Street');
+INSERT INTO reports (citizen_id, description, location, latitude, longitude, area) VALUES (3, 'Overflowing garbage bin near the park entrance.', 'City Park, Main Street', 28.6139, 77.2090, 'Main Street');
+INSERT INTO report_rollups (day, area, status, report_count) VALUES (CURRENT_DATE, 'Main Street', 'Pending', 1);
+INSERT INTO area_rollups (area, status, report_count) VALUES ('Main Street', 'Pending', 1);
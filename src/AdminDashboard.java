@@ -1,28 +1,34 @@
 package src;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Vector;
 
 /**
  * The dashboard for Admin users.
- * Allows admins to view all submitted reports, assign them to workers, and update report statuses.
+ * Allows admins to view and search all submitted reports, assign them to workers, update report statuses,
+ * and follow the operational statistics.
  */
 public class AdminDashboard extends JFrame {
 
     private JTable reportTable;
-    private DefaultTableModel tableModel;
+    private ReportTableModel tableModel;
     private JComboBox<String> workerComboBox;
     private JComboBox<String> statusComboBox;
+    private JTextField searchField;
     private Map<String, Integer> workerMap; // Maps worker username to their ID
+    private final ReportStore reportRepository = Storage.reports();
+    private final TaskStore taskRepository = Storage.tasks();
+    private final UserStore userRepository = Storage.users();
+    private final AsyncLoader reportLoader;
+    private final AsyncLoader workerLoader;
+    private final ChangeFeed.Subscription<Report> reportChanges;
+    private final DiagnosticsPanel diagnosticsPanel;
+    private AutoDispatcher dispatcher;
 
     public AdminDashboard() {
         setTitle("Admin Dashboard");
@@ -34,9 +40,33 @@ public class AdminDashboard extends JFrame {
         // Panel for displaying reports
         JPanel tablePanel = new JPanel(new BorderLayout());
         tablePanel.setBorder(BorderFactory.createTitledBorder("All Waste Reports"));
-        tableModel = new DefaultTableModel(new String[]{"Report ID", "Citizen ID", "Description", "Location", "Status", "Date"}, 0);
+        tableModel = new ReportTableModel(reportRepository);
         reportTable = new JTable(tableModel);
+        reportTable.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION); // Bulk assign / update
+        reportTable.setRowHeight(Thumbnails.SIZE + 4);
+        reportTable.getColumnModel().getColumn(ReportTableModel.PHOTO_COLUMN).setCellRenderer(new Thumbnails.Renderer());
+        PhotoDialog.openOnDoubleClick(reportTable, ReportTableModel.PHOTO_COLUMN);
         tablePanel.add(new JScrollPane(reportTable), BorderLayout.CENTER);
+        JLabel loadingLabel = new JLabel(" ");
+        tablePanel.add(loadingLabel, BorderLayout.SOUTH);
+
+        // Search bar above the table
+        JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        searchPanel.add(new JLabel("Search:"));
+        searchField = new JTextField(30);
+        searchField.setToolTipText("Words in the description or location; the last word may be partial");
+        searchField.addActionListener(e -> searchReports());
+        searchPanel.add(searchField);
+        JButton searchButton = new JButton("Search");
+        searchButton.addActionListener(e -> searchReports());
+        searchPanel.add(searchButton);
+        JButton clearSearchButton = new JButton("Show All");
+        clearSearchButton.addActionListener(e -> {
+            searchField.setText("");
+            loadReports();
+        });
+        searchPanel.add(clearSearchButton);
+        tablePanel.add(searchPanel, BorderLayout.NORTH);
 
         // Panel for actions (assigning tasks, updating status)
         JPanel actionPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 10));
@@ -45,6 +75,17 @@ public class AdminDashboard extends JFrame {
         actionPanel.add(new JLabel("Assign to Worker:"));
         workerComboBox = new JComboBox<>();
         actionPanel.add(workerComboBox);
+        JButton reloadWorkersButton = new JButton("Reload Workers");
+        reloadWorkersButton.setToolTipText("Re-read the worker list after users were changed");
+        reloadWorkersButton.addActionListener(e -> {
+            userRepository.invalidateCache();
+            loadWorkers();
+        });
+        actionPanel.add(reloadWorkersButton);
+        JButton suggestButton = new JButton("Suggest Worker");
+        suggestButton.setToolTipText("Pick the closest worker with capacity for the selected report");
+        suggestButton.addActionListener(this::suggestWorker);
+        actionPanel.add(suggestButton);
         JButton assignButton = new JButton("Assign Task");
         assignButton.addActionListener(this::assignTask);
         actionPanel.add(assignButton);
@@ -52,15 +93,53 @@ public class AdminDashboard extends JFrame {
         actionPanel.add(Box.createHorizontalStrut(20)); // Spacer
 
         actionPanel.add(new JLabel("Update Status:"));
-        statusComboBox = new JComboBox<>(new String[]{"Pending", "In Progress", "Completed"});
+        // Reports only move forward (see ReportStatus), so nothing can be set back to Pending
+        statusComboBox = new JComboBox<>(new String[]{"In Progress", "Completed"});
         actionPanel.add(statusComboBox);
         JButton updateStatusButton = new JButton("Update Report Status");
         updateStatusButton.addActionListener(this::updateReportStatus);
         actionPanel.add(updateStatusButton);
 
-        add(tablePanel, BorderLayout.CENTER);
+        actionPanel.add(Box.createHorizontalStrut(20)); // Spacer
+
+        JCheckBox autoDispatchBox = new JCheckBox("Auto-dispatch");
+        autoDispatchBox.setToolTipText("Continuously assign Pending reports to the least loaded workers, most urgent first");
+        JLabel dispatchLabel = new JLabel(" ");
+        actionPanel.add(autoDispatchBox);
+        actionPanel.add(dispatchLabel);
+
+        // Statistics live on their own tab and are refreshed whenever it is opened
+        StatisticsPanel statisticsPanel = new StatisticsPanel();
+        diagnosticsPanel = new DiagnosticsPanel();
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("Reports", tablePanel);
+        if (!Storage.isMemory()) { // The rollup tables only exist in MySQL
+            tabs.addTab("Statistics", statisticsPanel);
+        }
+        tabs.addTab("Diagnostics", diagnosticsPanel);
+        tabs.addChangeListener(e -> {
+            if (tabs.getSelectedComponent() == statisticsPanel) {
+                statisticsPanel.refresh();
+            }
+            diagnosticsPanel.setActive(tabs.getSelectedComponent() == diagnosticsPanel);
+        });
+
+        add(tabs, BorderLayout.CENTER);
         add(actionPanel, BorderLayout.SOUTH);
 
+        reportLoader = new AsyncLoader(reportTable, loadingLabel);
+        workerLoader = new AsyncLoader(workerComboBox, new JLabel());
+        // Changes by this and every other client are patched in as the shared feed sees them
+        reportChanges = ChangeFeed.getInstance().subscribeReports(report -> true, tableModel::applyChanges);
+        dispatcher = new AutoDispatcher(() -> SwingUtilities.invokeLater(() -> dispatchLabel.setText(dispatcher.summary())));
+        autoDispatchBox.addActionListener(e -> {
+            if (autoDispatchBox.isSelected()) {
+                dispatcher.start();
+            } else {
+                dispatcher.stop();
+            }
+        });
+
         // Load initial data
         loadWorkers();
         loadReports();
@@ -70,59 +149,143 @@ public class AdminDashboard extends JFrame {
      * Loads all worker users from the database to populate the worker selection dropdown.
      */
     private void loadWorkers() {
-        workerMap = new HashMap<>();
-        workerComboBox.removeAllItems();
-        String sql = "SELECT id, username FROM users WHERE role = 'Worker'";
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-
-            while (rs.next()) {
-                int workerId = rs.getInt("id");
-                String username = rs.getString("username");
-                workerMap.put(username, workerId);
-                workerComboBox.addItem(username);
+        workerLoader.load(userRepository::findWorkers, workers -> {
+            workerMap = new HashMap<>();
+            workerComboBox.removeAllItems();
+            for (User worker : workers) {
+                workerMap.put(worker.username(), worker.id());
+                workerComboBox.addItem(worker.username());
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Failed to load workers.", "Database Error", JOptionPane.ERROR_MESSAGE);
-        }
+        }, "Failed to load workers.");
     }
 
     /**
-     * Loads all reports from the database and populates the main table.
+     * Reloads the report table. Only the row count and change watermark are queried here;
+     * the table model fetches pages of rows as they are scrolled into view.
      */
     private void loadReports() {
-        tableModel.setRowCount(0); // Clear existing data
-        String sql = "SELECT id, citizen_id, description, location, status, submission_date FROM reports ORDER BY submission_date DESC";
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-            
-            while (rs.next()) {
-                Vector<Object> row = new Vector<>();
-                row.add(rs.getInt("id"));
-                row.add(rs.getInt("citizen_id"));
-                row.add(rs.getString("description"));
-                row.add(rs.getString("location"));
-                row.add(rs.getString("status"));
-                row.add(rs.getTimestamp("submission_date").toString());
-                tableModel.addRow(row);
+        reportLoader.load(reportRepository::snapshot, snapshot -> {
+            tableModel.reset(snapshot);
+            reportChanges.loaded(snapshot.lastModified());
+        }, "Failed to load reports.");
+    }
+
+    /**
+     * Shows the reports that best match the search text, best match first.
+     * An empty search shows all reports again.
+     */
+    private void searchReports() {
+        String query = searchField.getText().trim();
+        if (query.isEmpty()) {
+            loadReports();
+            return;
+        }
+        reportLoader.load(() -> {
+            List<Integer> ids = new ArrayList<>();
+            for (SearchIndex.Hit hit : SearchIndex.getInstance().search(query, -1, ReportTableModel.PAGE_SIZE)) {
+                ids.add(hit.reportId());
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Failed to load reports.", "Database Error", JOptionPane.ERROR_MESSAGE);
+            return reportRepository.findByIds(ids);
+        }, tableModel::showResults, "Failed to search reports.");
+    }
+
+    /**
+     * Collects the report IDs of every selected row.
+     * @return The IDs, or null if nothing is selected or a selected row has not loaded yet (a message has been shown).
+     */
+    private List<Integer> selectedReportIds(String action) {
+        int[] selectedRows = reportTable.getSelectedRows();
+        if (selectedRows.length == 0) {
+            JOptionPane.showMessageDialog(this, "Please select a report to " + action + ".", "Selection Error", JOptionPane.WARNING_MESSAGE);
+            return null;
+        }
+        List<Integer> reportIds = new ArrayList<>(selectedRows.length);
+        for (int row : selectedRows) {
+            int reportId = tableModel.getReportId(row);
+            if (reportId == -1) {
+                JOptionPane.showMessageDialog(this, "The selected reports are still loading.", "Selection Error", JOptionPane.WARNING_MESSAGE);
+                return null;
+            }
+            reportIds.add(reportId);
+        }
+        return reportIds;
+    }
+
+    /**
+     * @return The version of each selected report as the table shows it, in the order of {@link #selectedReportIds}.
+     *         Only valid right after that returned the IDs.
+     */
+    private List<Integer> selectedReportVersions() {
+        List<Integer> versions = new ArrayList<>();
+        for (int row : reportTable.getSelectedRows()) {
+            versions.add(tableModel.getReportVersion(row));
         }
+        return versions;
     }
 
     /**
-     * Assigns a selected report as a task to a selected worker.
+     * Fetches the current state of the rows at once if some reports were skipped because the table was out of date.
+     * @return A sentence explaining the skipped reports, or an empty string if there were none.
+     */
+    private static String staleRowsNote(BatchResult result) {
+        if (result.count(BatchResult.Outcome.CONFLICT) == 0 && result.count(BatchResult.Outcome.NOT_ALLOWED) == 0) {
+            return "";
+        }
+        ChangeFeed.getInstance().changed();
+        return "\n\nSome reports were changed by someone else or are past that step, and were left as they are. "
+                + "The table now shows their current status; check them and try again if needed.";
+    }
+
+    /**
+     * Suggests the closest available workers for the selected report, selects the best one in the worker list
+     * and mentions other open reports nearby that the same worker could take on the trip.
+     * @param e The ActionEvent triggered by the suggest button.
+     */
+    private void suggestWorker(ActionEvent e) {
+        List<Integer> reportIds = selectedReportIds("get a suggestion for");
+        if (reportIds == null) {
+            return;
+        }
+        int reportId = reportIds.get(0);
+        record Suggestion(List<GeoDispatch.WorkerSuggestion> workers, List<Integer> nearby) {
+        }
+
+        JButton source = (JButton) e.getSource();
+        source.setEnabled(false);
+        AsyncLoader.perform(() -> new Suggestion(GeoDispatch.getInstance().suggestWorkers(reportId, 3),
+                GeoDispatch.getInstance().openReportsNear(reportId, 500)), suggestion -> {
+            source.setEnabled(true);
+            if (suggestion.workers().isEmpty()) {
+                JOptionPane.showMessageDialog(this, "No suggestion: the report is closed, its location is unknown, "
+                        + "or no located worker has capacity.", "Suggest Worker", JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            StringBuilder message = new StringBuilder("Closest available workers for report " + reportId + ":\n");
+            for (GeoDispatch.WorkerSuggestion worker : suggestion.workers()) {
+                message.append(String.format("  %s - %.1f km, %d open task(s)%n",
+                        worker.worker().username(), worker.meters() / 1000, worker.openTasks()));
+            }
+            if (!suggestion.nearby().isEmpty()) {
+                List<Integer> shown = suggestion.nearby().subList(0, Math.min(10, suggestion.nearby().size()));
+                message.append("\nOther open reports within 500 m: ").append(shown)
+                        .append(suggestion.nearby().size() > shown.size() ? " and more" : "");
+            }
+            workerComboBox.setSelectedItem(suggestion.workers().get(0).worker().username());
+            JOptionPane.showMessageDialog(this, message.toString(), "Suggest Worker", JOptionPane.INFORMATION_MESSAGE);
+        }, error -> {
+            source.setEnabled(true);
+            error.printStackTrace();
+            JOptionPane.showMessageDialog(this, "Failed to compute worker suggestions.", "Database Error", JOptionPane.ERROR_MESSAGE);
+        });
+    }
+
+    /**
+     * Assigns the selected reports as tasks to the selected worker, all in one transaction.
      * @param e The ActionEvent triggered by the assign button.
      */
     private void assignTask(ActionEvent e) {
-        int selectedRow = reportTable.getSelectedRow();
-        if (selectedRow == -1) {
-            JOptionPane.showMessageDialog(this, "Please select a report to assign.", "Selection Error", JOptionPane.WARNING_MESSAGE);
+        List<Integer> reportIds = selectedReportIds("assign");
+        if (reportIds == null) {
             return;
         }
 
@@ -131,72 +294,66 @@ public class AdminDashboard extends JFrame {
             return;
         }
 
-        int reportId = (int) tableModel.getValueAt(selectedRow, 0);
         String selectedWorkerName = (String) workerComboBox.getSelectedItem();
         int workerId = workerMap.get(selectedWorkerName);
+        List<Integer> versions = selectedReportVersions();
 
-        String sql = "INSERT INTO tasks (report_id, worker_id, status) VALUES (?, ?, 'Assigned')";
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setInt(1, reportId);
-            stmt.setInt(2, workerId);
-            stmt.executeUpdate();
-
-            // Also update the report status to "In Progress"
-            updateReportStatusInDB(reportId, "In Progress");
-
-            JOptionPane.showMessageDialog(this, "Task assigned successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
-            loadReports(); // Refresh table to show updated status
-        } catch (SQLException ex) {
-            // Handle unique constraint violation (task already assigned for this report)
-            if (ex.getSQLState().startsWith("23")) {
-                 JOptionPane.showMessageDialog(this, "A task for this report has already been assigned.", "Error", JOptionPane.ERROR_MESSAGE);
+        JButton source = (JButton) e.getSource();
+        source.setEnabled(false);
+        AsyncLoader.perform(() -> taskRepository.assignAll(reportIds, versions, workerId), result -> {
+            source.setEnabled(true);
+            if (reportIds.size() == 1 && result.count(BatchResult.Outcome.ALREADY_ASSIGNED) == 1) {
+                JOptionPane.showMessageDialog(this, "A task for this report has already been assigned.", "Error", JOptionPane.ERROR_MESSAGE);
+            } else if (reportIds.size() == 1 && result.count(BatchResult.Outcome.UPDATED) == 1) {
+                JOptionPane.showMessageDialog(this, "Task assigned successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
             } else {
-                ex.printStackTrace();
-                JOptionPane.showMessageDialog(this, "Failed to assign task.", "Database Error", JOptionPane.ERROR_MESSAGE);
+                JOptionPane.showMessageDialog(this, "Assignment finished: " + result.summary() + "." + staleRowsNote(result),
+                        "Assign Tasks", JOptionPane.INFORMATION_MESSAGE);
             }
-        }
+        }, error -> {
+            source.setEnabled(true);
+            error.printStackTrace();
+            JOptionPane.showMessageDialog(this, "Failed to assign tasks. No changes were made.", "Database Error", JOptionPane.ERROR_MESSAGE);
+        });
     }
 
     /**
-     * Updates the status of a selected report.
+     * Updates the status of the selected reports.
      * @param e The ActionEvent triggered by the update status button.
      */
     private void updateReportStatus(ActionEvent e) {
-        int selectedRow = reportTable.getSelectedRow();
-        if (selectedRow == -1) {
-            JOptionPane.showMessageDialog(this, "Please select a report to update.", "Selection Error", JOptionPane.WARNING_MESSAGE);
+        List<Integer> reportIds = selectedReportIds("update");
+        if (reportIds == null) {
             return;
         }
-        
-        int reportId = (int) tableModel.getValueAt(selectedRow, 0);
         String newStatus = (String) statusComboBox.getSelectedItem();
         
-        updateReportStatusInDB(reportId, newStatus);
-        loadReports(); // Refresh the table
+        updateReportStatusInDB(reportIds, selectedReportVersions(), newStatus);
     }
 
     /**
-     * Helper method to update a report's status in the database.
-     * @param reportId The ID of the report to update.
-     * @param status The new status for the report.
+     * Helper method to update reports' status in the database in one batch, refreshing the table afterwards.
+     * Reports that changed since the table showed them are left alone and reported.
+     * @param reportIds The IDs of the reports to update.
+     * @param versions The version of each report as the table shows it.
+     * @param status The new status for the reports.
      */
-    private void updateReportStatusInDB(int reportId, String status) {
-        String sql = "UPDATE reports SET status = ? WHERE id = ?";
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setString(1, status);
-            stmt.setInt(2, reportId);
-
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected > 0) {
-                 System.out.println("Report " + reportId + " status updated to " + status);
+    private void updateReportStatusInDB(List<Integer> reportIds, List<Integer> versions, String status) {
+        AsyncLoader.perform(() -> reportRepository.updateStatusAll(reportIds, versions, status), result -> {
+            if (result.count(BatchResult.Outcome.UPDATED) < reportIds.size()) {
+                JOptionPane.showMessageDialog(this, "Status update finished: " + result.summary() + "." + staleRowsNote(result),
+                        "Update Status", JOptionPane.WARNING_MESSAGE);
             }
-        } catch (SQLException ex) {
-            ex.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Failed to update report status.", "Database Error", JOptionPane.ERROR_MESSAGE);
-        }
+        }, error -> {
+            error.printStackTrace();
+            JOptionPane.showMessageDialog(this, "Failed to update report status. No changes were made.", "Database Error", JOptionPane.ERROR_MESSAGE);
+        });
+    }
+
+    @Override
+    public void dispose() {
+        reportChanges.close(); // Stop receiving changes for a closed window
+        diagnosticsPanel.setActive(false);
+        super.dispose();
     }
 }
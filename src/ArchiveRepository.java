@@ -0,0 +1,215 @@
+package src;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Data access for moving Completed reports and their tasks out of the hot tables into archive segments,
+ * and for the registry of segments in archive_segments.
+ */
+public class ArchiveRepository {
+
+    // Shared with QueryPlanCheck
+    static final String CLAIM_SQL = "SELECT id FROM reports " +
+            "WHERE status = 'Completed' AND submission_date < ? AND updated_at < ? AND duplicate_of IS NULL " +
+            "AND NOT EXISTS (SELECT 1 FROM reports d WHERE d.duplicate_of = reports.id AND d.status <> 'Completed') " +
+            "ORDER BY status, submission_date, id LIMIT ? FOR UPDATE";
+    static final String LINKED_SQL = "SELECT id, duplicate_of, status FROM reports WHERE duplicate_of IN (%s) FOR UPDATE";
+    static final String ROWS_SQL = "SELECT r.id, r.citizen_id, r.description, r.location, r.area, r.latitude, r.longitude, " +
+            "r.duplicate_of, r.submission_date, r.updated_at, DATEDIFF(r.submission_date, '1970-01-01'), " +
+            "t.id, t.worker_id, t.assigned_date, t.completed_date, DATEDIFF(t.assigned_date, '1970-01-01'), " +
+            "DATEDIFF(t.completed_date, '1970-01-01'), TIMESTAMPDIFF(SECOND, t.assigned_date, t.completed_date), " +
+            "(SELECT GROUP_CONCAT(a.sha256 ORDER BY a.sha256 SEPARATOR ' ') FROM report_attachments a WHERE a.report_id = r.id) " +
+            "FROM reports r LEFT JOIN tasks t ON t.report_id = r.id WHERE r.id IN (%s) FOR UPDATE";
+    static final String SEGMENTS_SQL = "SELECT file_name FROM archive_segments ORDER BY id";
+
+    /**
+     * Writes the rows of one archive run to a segment file.
+     */
+    @FunctionalInterface
+    public interface SegmentWriter {
+        /**
+         * @return The name under which the segment is registered.
+         */
+        String write(List<ArchivedReport> rows) throws IOException;
+    }
+
+    /**
+     * Moves one batch of old Completed reports, with their tasks, photo links and the duplicates linked to them,
+     * into a segment. The photo files themselves stay in the {@link BlobStore}; the segment records their hashes.
+     * Everything happens in one transaction with the rows locked: the segment is written while the rows are still
+     * in the database, and only then registered and the rows deleted. If anything fails the rows stay where they
+     * were and the segment file, if written, is never registered.
+     * @param completedBefore Reports completed (last changed) before this are archived.
+     * @param limit The maximum number of reports, not counting linked duplicates.
+     * @param writer Writes the segment; called inside the transaction.
+     * @return The archived rows, in segment order; empty if nothing was old enough.
+     * @throws SQLException if a database access error occurs, or wrapping the writer's IOException.
+     */
+    public List<ArchivedReport> archive(Timestamp completedBefore, int limit, SegmentWriter writer) throws SQLException {
+        List<ArchivedReport> rows = new ArrayList<>();
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                List<Integer> originals = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(CLAIM_SQL)) {
+                    stmt.setTimestamp(1, completedBefore);
+                    stmt.setTimestamp(2, completedBefore);
+                    stmt.setInt(3, limit);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            originals.add(rs.getInt(1));
+                        }
+                    }
+                }
+
+                // A duplicate normally follows its report's status; one that was reopened on its own keeps both hot,
+                // since the foreign key needs the report it points to. The claim already skips those, so a batch
+                // only loses reports here to a duplicate reopened since, and the next run claims past them.
+                List<Integer> linked = new ArrayList<>();
+                Set<Integer> keep = new HashSet<>();
+                for (int from = 0; from < originals.size(); from += TaskRepository.MAX_IN_LIST) {
+                    List<Integer> chunk = originals.subList(from, Math.min(originals.size(), from + TaskRepository.MAX_IN_LIST));
+                    try (PreparedStatement stmt = conn.prepareStatement(String.format(LINKED_SQL, placeholders(chunk.size())))) {
+                        bind(stmt, chunk);
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            while (rs.next()) {
+                                if ("Completed".equals(rs.getString(3))) {
+                                    linked.add(rs.getInt(1));
+                                } else {
+                                    keep.add(rs.getInt(2));
+                                }
+                            }
+                        }
+                    }
+                }
+                originals.removeAll(keep);
+                List<Integer> ids = new ArrayList<>(originals);
+                ids.addAll(linked);
+
+                for (int from = 0; from < ids.size(); from += TaskRepository.MAX_IN_LIST) {
+                    List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + TaskRepository.MAX_IN_LIST));
+                    try (PreparedStatement stmt = conn.prepareStatement(String.format(ROWS_SQL, placeholders(chunk.size())))) {
+                        bind(stmt, chunk);
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            while (rs.next()) {
+                                ArchivedReport row = mapRow(rs);
+                                if (!keep.contains(row.duplicateOf())) { // Completed siblings of a reopened duplicate stay too
+                                    rows.add(row);
+                                }
+                            }
+                        }
+                    }
+                }
+                if (rows.isEmpty()) {
+                    conn.commit();
+                    return rows;
+                }
+                rows.sort(Comparator.comparingLong(ArchivedReport::submittedMillis).thenComparingInt(ArchivedReport::id));
+
+                String fileName;
+                try {
+                    fileName = writer.write(rows);
+                } catch (IOException e) {
+                    throw new SQLException("Failed to write archive segment", e);
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "INSERT INTO archive_segments (file_name, row_count, min_report_id, max_report_id) VALUES (?, ?, ?, ?)")) {
+                    stmt.setString(1, fileName);
+                    stmt.setInt(2, rows.size());
+                    stmt.setInt(3, rows.stream().mapToInt(ArchivedReport::id).min().getAsInt());
+                    stmt.setInt(4, rows.stream().mapToInt(ArchivedReport::id).max().getAsInt());
+                    stmt.executeUpdate();
+                }
+                List<Integer> all = new ArrayList<>();
+                List<Integer> duplicates = new ArrayList<>();
+                List<Integer> reports = new ArrayList<>();
+                for (ArchivedReport row : rows) {
+                    all.add(row.id());
+                    (row.duplicateOf() != 0 ? duplicates : reports).add(row.id());
+                }
+                deleteIn(conn, "DELETE FROM tasks WHERE report_id IN (%s)", all);
+                deleteIn(conn, "DELETE FROM report_attachments WHERE report_id IN (%s)", all); // The segment keeps their hashes
+                deleteIn(conn, "DELETE FROM reports WHERE id IN (%s)", duplicates); // Before the reports they point to
+                deleteIn(conn, "DELETE FROM reports WHERE id IN (%s)", reports);
+                conn.commit();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @return The registered segment file names, oldest first.
+     * @throws SQLException if a database access error occurs.
+     */
+    public List<String> findSegments() throws SQLException {
+        try (Connection conn = DBConnection.getConnection()) {
+            return findSegments(conn);
+        }
+    }
+
+    static List<String> findSegments(Connection conn) throws SQLException {
+        List<String> names = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(SEGMENTS_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                names.add(rs.getString(1));
+            }
+        }
+        return names;
+    }
+
+    private static ArchivedReport mapRow(ResultSet rs) throws SQLException {
+        double latitude = rs.getDouble(6);
+        if (rs.wasNull()) {
+            latitude = Double.NaN;
+        }
+        double longitude = rs.getDouble(7);
+        if (rs.wasNull()) {
+            longitude = Double.NaN;
+        }
+        return new ArchivedReport(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getString(4), rs.getString(5),
+                latitude, longitude, rs.getInt(8), millis(rs.getTimestamp(9)), millis(rs.getTimestamp(10)), rs.getLong(11),
+                rs.getInt(12), rs.getInt(13), millis(rs.getTimestamp(14)), millis(rs.getTimestamp(15)),
+                rs.getLong(16), rs.getLong(17), rs.getLong(18), rs.getString(19));
+    }
+
+    private static long millis(Timestamp timestamp) {
+        return timestamp == null ? 0 : timestamp.getTime();
+    }
+
+    private static void deleteIn(Connection conn, String sqlTemplate, List<Integer> ids) throws SQLException {
+        for (int from = 0; from < ids.size(); from += TaskRepository.MAX_IN_LIST) {
+            List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + TaskRepository.MAX_IN_LIST));
+            try (PreparedStatement stmt = conn.prepareStatement(String.format(sqlTemplate, placeholders(chunk.size())))) {
+                bind(stmt, chunk);
+                stmt.executeUpdate();
+            }
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static void bind(PreparedStatement stmt, List<Integer> ids) throws SQLException {
+        for (int i = 0; i < ids.size(); i++) {
+            stmt.setInt(i + 1, ids.get(i));
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package src;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * An immutable file of archived reports, stored column by column.
+ * Each column is encoded on its own (numbers as zig-zag varint deltas from the previous row, strings as
+ * length-prefixed UTF-8, coordinates as raw doubles) and deflated as one block, so a reader inflates only the
+ * columns it asks for. The header carries the row count, min/max of report ID, submission and completion time,
+ * and a Bloom filter of citizen IDs, so readers can skip whole segments without touching their columns.
+ *
+ * Segments are read through a read-only memory mapping and decoded as a stream: a cursor holds one small
+ * buffer per requested column, never the segment itself, so scanning a segment needs constant heap.
+ */
+public class ArchiveSegment {
+
+    private static final int MAGIC = 0x57534547; // "WSEG"
+    private static final int VERSION = 1;
+    private static final int BLOOM_HASHES = 3;
+
+    /**
+     * The stored columns, in file order.
+     */
+    public enum Column {
+        ID, CITIZEN_ID, DESCRIPTION, LOCATION, AREA, LATITUDE, LONGITUDE, DUPLICATE_OF,
+        SUBMITTED, UPDATED, SUBMISSION_DAY,
+        TASK_ID, WORKER_ID, ASSIGNED, COMPLETED, ASSIGNED_DAY, COMPLETED_DAY, COMPLETION_SECONDS,
+        PHOTOS; // Last, so segments written before it existed still open; it reads as null there
+
+        boolean isString() {
+            return this == DESCRIPTION || this == LOCATION || this == AREA || this == PHOTOS;
+        }
+
+        boolean isDouble() {
+            return this == LATITUDE || this == LONGITUDE;
+        }
+    }
+
+    /**
+     * The per-segment index read from the header.
+     * Times are epoch milliseconds; a segment whose rows have no task has completion bounds of 0.
+     */
+    public record Header(int rows, int minId, int maxId, long minSubmitted, long maxSubmitted,
+                         long minCompleted, long maxCompleted, long[] citizenBloom) {
+
+        /**
+         * @return false if the segment certainly holds no report by the citizen.
+         */
+        public boolean mayContainCitizen(int citizenId) {
+            return bloomContains(citizenBloom, citizenId);
+        }
+
+        public boolean overlapsSubmitted(long fromMillis, long toMillis) {
+            return maxSubmitted >= fromMillis && minSubmitted <= toMillis;
+        }
+    }
+
+    private final Path file;
+    private final Header header;
+    private final MappedByteBuffer mapped;
+    private final Map<Column, long[]> blocks; // {offset, length} of each column block
+
+    private ArchiveSegment(Path file, Header header, MappedByteBuffer mapped, Map<Column, long[]> blocks) {
+        this.file = file;
+        this.header = header;
+        this.mapped = mapped;
+        this.blocks = blocks;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public Header getHeader() {
+        return header;
+    }
+
+    /**
+     * Writes rows to a new segment file. The file is written under a temporary name, forced to disk and then
+     * renamed, so a segment file either exists complete or not at all.
+     * @param rows The rows, in the order they should be read back.
+     */
+    public static Header write(Path file, List<ArchivedReport> rows) throws IOException {
+        long[] bloom = new long[Math.max(1, rows.size() * 10 / 64 + 1)]; // About 10 bits per row, ~1% false positives
+        int minId = Integer.MAX_VALUE, maxId = Integer.MIN_VALUE;
+        long minSubmitted = Long.MAX_VALUE, maxSubmitted = Long.MIN_VALUE;
+        long minCompleted = Long.MAX_VALUE, maxCompleted = Long.MIN_VALUE;
+        for (ArchivedReport row : rows) {
+            bloomAdd(bloom, row.citizenId());
+            minId = Math.min(minId, row.id());
+            maxId = Math.max(maxId, row.id());
+            minSubmitted = Math.min(minSubmitted, row.submittedMillis());
+            maxSubmitted = Math.max(maxSubmitted, row.submittedMillis());
+            if (row.completedMillis() != 0) {
+                minCompleted = Math.min(minCompleted, row.completedMillis());
+                maxCompleted = Math.max(maxCompleted, row.completedMillis());
+            }
+        }
+        if (minCompleted > maxCompleted) {
+            minCompleted = maxCompleted = 0;
+        }
+        Header header = new Header(rows.size(), minId, maxId, minSubmitted, maxSubmitted, minCompleted, maxCompleted, bloom);
+
+        Column[] columns = Column.values();
+        byte[][] encoded = new byte[columns.length][];
+        for (Column column : columns) {
+            encoded[column.ordinal()] = encode(column, rows);
+        }
+
+        int headerSize = 4 + 4 + 4 + 4 + 4 + 8 * 4 + 4 + 8 * bloom.length + 4 + columns.length * 12;
+        ByteBuffer head = ByteBuffer.allocate(headerSize);
+        head.putInt(MAGIC).putInt(VERSION).putInt(rows.size()).putInt(minId).putInt(maxId)
+                .putLong(minSubmitted).putLong(maxSubmitted).putLong(minCompleted).putLong(maxCompleted);
+        head.putInt(bloom.length);
+        for (long word : bloom) {
+            head.putLong(word);
+        }
+        head.putInt(columns.length);
+        long offset = headerSize;
+        for (byte[] block : encoded) {
+            head.putLong(offset).putInt(block.length);
+            offset += block.length;
+        }
+        head.flip();
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            writeFully(channel, head);
+            for (byte[] block : encoded) {
+                writeFully(channel, ByteBuffer.wrap(block));
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        return header;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static byte[] encode(Column column, List<ArchivedReport> rows) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (OutputStream out = new BufferedOutputStream(new DeflaterOutputStream(bytes, deflater, 1 << 16), 1 << 16)) {
+            long previous = 0;
+            for (ArchivedReport row : rows) {
+                if (column.isString()) {
+                    byte[] utf8 = row.string(column) == null ? new byte[0] : row.string(column).getBytes(StandardCharsets.UTF_8);
+                    writeVarint(out, utf8.length);
+                    out.write(utf8);
+                } else if (column.isDouble()) {
+                    long bits = Double.doubleToRawLongBits(row.decimal(column));
+                    for (int shift = 56; shift >= 0; shift -= 8) {
+                        out.write((int) (bits >>> shift));
+                    }
+                } else {
+                    long value = row.number(column);
+                    long delta = value - previous;
+                    writeVarint(out, (delta << 1) ^ (delta >> 63)); // Zig-zag, so small negative deltas stay short
+                    previous = value;
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Maps a segment file and reads its header.
+     * @throws IOException if the file cannot be read or is not a segment.
+     */
+    public static ArchiveSegment open(Path file) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // Stays valid after close
+        }
+        ByteBuffer head = mapped.duplicate();
+        if (head.getInt() != MAGIC || head.getInt() != VERSION) {
+            throw new IOException("Not an archive segment: " + file);
+        }
+        int rows = head.getInt();
+        int minId = head.getInt();
+        int maxId = head.getInt();
+        long minSubmitted = head.getLong();
+        long maxSubmitted = head.getLong();
+        long minCompleted = head.getLong();
+        long maxCompleted = head.getLong();
+        long[] bloom = new long[head.getInt()];
+        for (int i = 0; i < bloom.length; i++) {
+            bloom[i] = head.getLong();
+        }
+        int columnCount = head.getInt();
+        Map<Column, long[]> blocks = new EnumMap<>(Column.class);
+        for (int i = 0; i < columnCount && i < Column.values().length; i++) {
+            blocks.put(Column.values()[i], new long[]{head.getLong(), head.getInt()});
+        }
+        Header header = new Header(rows, minId, maxId, minSubmitted, maxSubmitted, minCompleted, maxCompleted, bloom);
+        return new ArchiveSegment(file, header, mapped, blocks);
+    }
+
+    /**
+     * Starts a scan over the given columns; other columns are never inflated.
+     */
+    public Cursor cursor(Set<Column> columns) {
+        return new Cursor(columns.isEmpty() ? EnumSet.noneOf(Column.class) : EnumSet.copyOf(columns));
+    }
+
+    /**
+     * Reads a segment row by row. Values of columns that were not requested read as 0, NaN or null.
+     */
+    public final class Cursor implements AutoCloseable {
+        private final Map<Column, DataInputStream> inputs = new EnumMap<>(Column.class);
+        private final long[] numbers = new long[Column.values().length];
+        private final double[] decimals = new double[Column.values().length];
+        private final String[] strings = new String[Column.values().length];
+        private int row = -1;
+
+        private Cursor(Set<Column> columns) {
+            for (Column column : columns) {
+                long[] block = blocks.get(column);
+                if (block == null) {
+                    continue; // Not in this segment
+                }
+                ByteBuffer slice = mapped.duplicate();
+                slice.position((int) block[0]).limit((int) (block[0] + block[1]));
+                inputs.put(column, new DataInputStream(new BufferedInputStream(
+                        new InflaterInputStream(new BufferInputStream(slice.slice())), 8192)));
+            }
+            Arrays.fill(decimals, Double.NaN);
+        }
+
+        /**
+         * @return false once every row has been read.
+         */
+        public boolean next() throws IOException {
+            if (++row >= header.rows()) {
+                close();
+                return false;
+            }
+            for (Map.Entry<Column, DataInputStream> entry : inputs.entrySet()) {
+                Column column = entry.getKey();
+                DataInputStream in = entry.getValue();
+                int i = column.ordinal();
+                if (column.isString()) {
+                    byte[] utf8 = new byte[(int) readVarint(in)];
+                    in.readFully(utf8);
+                    strings[i] = utf8.length == 0 ? null : new String(utf8, StandardCharsets.UTF_8);
+                } else if (column.isDouble()) {
+                    decimals[i] = in.readDouble();
+                } else {
+                    long zigzag = readVarint(in);
+                    numbers[i] += (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+            }
+            return true;
+        }
+
+        public long getLong(Column column) {
+            return numbers[column.ordinal()];
+        }
+
+        public double getDouble(Column column) {
+            return decimals[column.ordinal()];
+        }
+
+        public String getString(Column column) {
+            return strings[column.ordinal()];
+        }
+
+        /**
+         * @return The current row with every requested column filled in.
+         */
+        public ArchivedReport toReport() {
+            return ArchivedReport.read(this);
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (DataInputStream in : inputs.values()) {
+                in.close(); // Releases the native inflater
+            }
+            inputs.clear();
+        }
+    }
+
+    private static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated archive column");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private static void bloomAdd(long[] bloom, int value) {
+        long bits = (long) bloom.length * 64;
+        for (int k = 0; k < BLOOM_HASHES; k++) {
+            long bit = Math.floorMod(hash(value, k), bits);
+            bloom[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private static boolean bloomContains(long[] bloom, int value) {
+        long bits = (long) bloom.length * 64;
+        for (int k = 0; k < BLOOM_HASHES; k++) {
+            long bit = Math.floorMod(hash(value, k), bits);
+            if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long hash(int value, int k) {
+        long h = (value + 0x9E3779B97F4A7C15L * (k + 1)) * 0xBF58476D1CE4E5B9L;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * Feeds a slice of the mapping to the inflater a few hundred bytes at a time, instead of copying the block onto the heap.
+     */
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package src;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The cold tier of reports: Completed reports older than -Darchive.ageDays (default 180) are moved, with their
+ * tasks and linked duplicates, out of the reports and tasks tables into segment files under -Darchive.dir
+ * (default data/archive), keeping the hot tables and their indexes small.
+ * Segments are immutable and registered in archive_segments in the same transaction that deletes their rows,
+ * so every report is in exactly one tier. Lookups map the segments and stream only the columns they need,
+ * skipping whole segments by their citizen filter or submission range.
+ * The registry is shared through the database, so -Darchive.dir must be a directory every client can read, such
+ * as a shared drive. A client that cannot see a segment leaves it out of citizens' report lists and says so
+ * (see {@link #missingSegments()}); exports and rollup rebuilds refuse to run on an incomplete archive.
+ *
+ * Usage (headless):
+ *   java -cp ".;lib\mysql-connector-j-9.4.0.jar" src.ArchiveStore archive
+ *   java -cp ".;lib\mysql-connector-j-9.4.0.jar" src.ArchiveStore export 2024-01-01 2024-12-31 reports-2024.csv
+ */
+public class ArchiveStore {
+
+    private static final ArchiveStore INSTANCE = new ArchiveStore(Paths.get(System.getProperty("archive.dir", "data/archive")));
+
+    private static final int AGE_DAYS = Integer.getInteger("archive.ageDays", 180);
+    private static final int BATCH_SIZE = Integer.getInteger("archive.batchSize", 10000);
+    private static final long REGISTRY_TTL_MILLIS = 60_000; // How soon segments archived by other processes are seen
+
+    private static final Set<ArchiveSegment.Column> REPORT_COLUMNS = EnumSet.of(ArchiveSegment.Column.ID,
+            ArchiveSegment.Column.CITIZEN_ID, ArchiveSegment.Column.DESCRIPTION, ArchiveSegment.Column.LOCATION,
+            ArchiveSegment.Column.SUBMITTED, ArchiveSegment.Column.UPDATED);
+    private static final Set<ArchiveSegment.Column> ROLLUP_COLUMNS = EnumSet.of(ArchiveSegment.Column.AREA,
+            ArchiveSegment.Column.SUBMISSION_DAY, ArchiveSegment.Column.TASK_ID, ArchiveSegment.Column.WORKER_ID,
+            ArchiveSegment.Column.COMPLETED, ArchiveSegment.Column.ASSIGNED_DAY, ArchiveSegment.Column.COMPLETED_DAY,
+            ArchiveSegment.Column.COMPLETION_SECONDS);
+
+    private final Path dir;
+    private final ArchiveRepository archiveRepository = new ArchiveRepository();
+    private final TtlCache<String, List<String>> registry = new TtlCache<>("archive segments", REGISTRY_TTL_MILLIS, 1);
+    private final Map<String, ArchiveSegment> mapped = new HashMap<>(); // guarded by this
+    private volatile int missing; // Registered segments the last lookup could not find under dir
+
+    private ArchiveStore(Path dir) {
+        this.dir = dir;
+    }
+
+    public static ArchiveStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Archives every Completed report last changed more than the configured age ago, in batches.
+     * @return The number of rows archived, counting linked duplicates.
+     * @throws SQLException if a batch fails; batches already archived stay archived.
+     */
+    public int archive() throws SQLException {
+        Timestamp cutoff = Timestamp.valueOf(LocalDate.now().minusDays(AGE_DAYS).atStartOfDay());
+        int total = 0;
+        while (true) {
+            List<ArchivedReport> rows = archiveBatch(cutoff);
+            total += rows.size();
+            if (rows.isEmpty()) {
+                return total;
+            }
+        }
+    }
+
+    private List<ArchivedReport> archiveBatch(Timestamp cutoff) throws SQLException {
+        Path[] written = new Path[1];
+        List<ArchivedReport> rows;
+        try {
+            rows = archiveRepository.archive(cutoff, BATCH_SIZE, batch -> {
+                int minId = batch.stream().mapToInt(ArchivedReport::id).min().getAsInt();
+                int maxId = batch.stream().mapToInt(ArchivedReport::id).max().getAsInt();
+                String name = String.format("segment-%010d-%010d.seg", minId, maxId);
+                Files.createDirectories(dir);
+                written[0] = dir.resolve(name);
+                ArchiveSegment.write(written[0], batch);
+                return name;
+            });
+        } catch (SQLException ex) {
+            discardUnregistered(written[0]);
+            throw ex;
+        }
+        registry.invalidateAll();
+        if (!rows.isEmpty()) {
+            List<Integer> ids = new ArrayList<>(rows.size());
+            for (ArchivedReport row : rows) {
+                ids.add(row.id());
+            }
+            SearchIndex.getInstance().removed(ids);
+        }
+        return rows;
+    }
+
+    /**
+     * Deletes a segment written by a failed batch. If the failure hid a successful commit the segment is
+     * registered and must stay, so the registry decides.
+     */
+    private void discardUnregistered(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            if (!archiveRepository.findSegments().contains(file.getFileName().toString())) {
+                Files.deleteIfExists(file);
+            }
+        } catch (SQLException | IOException e) {
+            e.printStackTrace(); // An orphaned file is never read; the next batch with the same rows replaces it
+        }
+    }
+
+    /**
+     * @param citizenId The citizen whose archived reports to load.
+     * @return The citizen's archived reports, oldest first, leaving out segments not present on this computer.
+     * @throws SQLException if the registry or a segment cannot be read.
+     */
+    public List<Report> findByCitizen(int citizenId) throws SQLException {
+        List<Report> reports = new ArrayList<>();
+        for (ArchiveSegment segment : segments(true)) {
+            if (!segment.getHeader().mayContainCitizen(citizenId)) {
+                continue;
+            }
+            ArchiveSegment.Cursor cursor = segment.cursor(REPORT_COLUMNS);
+            try (cursor) {
+                while (cursor.next()) {
+                    if (cursor.getLong(ArchiveSegment.Column.CITIZEN_ID) == citizenId) {
+                        reports.add(cursor.toReport().toReport());
+                    }
+                }
+            } catch (IOException e) {
+                throw new SQLException("Failed to read archive segment " + segment.getFile(), e);
+            }
+        }
+        reports.sort(Comparator.comparing(Report::submissionDate).thenComparingInt(Report::id));
+        return reports;
+    }
+
+    /**
+     * Writes the archived reports submitted in a range as CSV, one segment at a time, without loading them.
+     * @param from Inclusive start, epoch milliseconds.
+     * @param to Inclusive end, epoch milliseconds.
+     * @return The number of reports written.
+     * @throws SQLException if the registry or a segment cannot be read.
+     * @throws IOException if writing fails.
+     */
+    public int export(long from, long to, Writer out) throws SQLException, IOException {
+        out.write("id,citizen_id,description,location,area,latitude,longitude,duplicate_of,submission_date,updated_at," +
+                "task_id,worker_id,assigned_date,completed_date,completion_seconds,photos\n");
+        int count = 0;
+        for (ArchiveSegment segment : segments(false)) {
+            if (!segment.getHeader().overlapsSubmitted(from, to)) {
+                continue;
+            }
+            ArchiveSegment.Cursor cursor = segment.cursor(EnumSet.allOf(ArchiveSegment.Column.class));
+            try (cursor) {
+                while (cursor.next()) {
+                    long submitted = cursor.getLong(ArchiveSegment.Column.SUBMITTED);
+                    if (submitted > to) {
+                        break; // Rows are in submission order
+                    }
+                    if (submitted >= from) {
+                        writeCsv(out, cursor.toReport());
+                        count++;
+                    }
+                }
+            }
+        }
+        out.flush();
+        return count;
+    }
+
+    private static void writeCsv(Writer out, ArchivedReport r) throws IOException {
+        out.write(r.id() + "," + r.citizenId() + "," + quote(r.description()) + "," + quote(r.location()) + "," +
+                quote(r.area()) + "," + decimal(r.latitude()) + "," + decimal(r.longitude()) + "," +
+                blank(r.duplicateOf()) + "," + time(r.submittedMillis()) + "," + time(r.updatedMillis()) + "," +
+                blank(r.taskId()) + "," + blank(r.workerId()) + "," + time(r.assignedMillis()) + "," +
+                time(r.completedMillis()) + "," + (r.taskId() == 0 ? "" : r.completionSeconds()) + "," +
+                (r.photos() == null ? "" : r.photos()) + "\n");
+    }
+
+    private static String quote(String value) {
+        return value == null ? "" : '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String decimal(double value) {
+        return Double.isNaN(value) ? "" : Double.toString(value);
+    }
+
+    private static String blank(int id) {
+        return id == 0 ? "" : Integer.toString(id);
+    }
+
+    private static String time(long millis) {
+        return millis == 0 ? "" : new Timestamp(millis).toString();
+    }
+
+    /**
+     * Adds the archived reports and tasks to freshly rebuilt rollups, which only counted the hot tables.
+     * Does nothing before archive_segments exists, i.e. when the statistics migration runs.
+     */
+    void addToRollups(Connection conn) throws SQLException {
+        if (!SchemaMigrations.exists(conn, "SELECT 1 FROM information_schema.tables " +
+                "WHERE table_schema = DATABASE() AND table_name = ?", "archive_segments")) {
+            return;
+        }
+        StatisticsRepository.Delta delta = new StatisticsRepository.Delta();
+        for (String name : ArchiveRepository.findSegments(conn)) {
+            try (ArchiveSegment.Cursor cursor = open(checkPresent(name)).cursor(ROLLUP_COLUMNS)) {
+                while (cursor.next()) {
+                    delta.reportArchived(day(cursor.getLong(ArchiveSegment.Column.SUBMISSION_DAY)),
+                            cursor.getString(ArchiveSegment.Column.AREA));
+                    if (cursor.getLong(ArchiveSegment.Column.TASK_ID) == 0) {
+                        continue;
+                    }
+                    int workerId = (int) cursor.getLong(ArchiveSegment.Column.WORKER_ID);
+                    delta.tasksAssigned(workerId, day(cursor.getLong(ArchiveSegment.Column.ASSIGNED_DAY)), 1);
+                    if (cursor.getLong(ArchiveSegment.Column.COMPLETED) != 0) {
+                        delta.taskCompleted(workerId, day(cursor.getLong(ArchiveSegment.Column.COMPLETED_DAY)),
+                                cursor.getLong(ArchiveSegment.Column.COMPLETION_SECONDS));
+                    }
+                }
+            } catch (IOException e) {
+                throw new SQLException("Failed to read archive segment " + name, e);
+            }
+        }
+        delta.apply(conn);
+    }
+
+    private static Date day(long epochDay) {
+        return Date.valueOf(LocalDate.ofEpochDay(epochDay));
+    }
+
+    /**
+     * @return The number of registered segments the last citizen lookup could not find in -Darchive.dir.
+     */
+    public int missingSegments() {
+        return missing;
+    }
+
+    /**
+     * @param skipMissing Whether to leave out segments whose file is not in the archive directory, rather than fail.
+     * @return The registered segments, mapped on first use.
+     */
+    private List<ArchiveSegment> segments(boolean skipMissing) throws SQLException {
+        List<String> names = registry.get("segments", key -> archiveRepository.findSegments());
+        List<ArchiveSegment> segments = new ArrayList<>(names.size());
+        int notFound = 0;
+        for (String name : names) {
+            if (skipMissing && Files.notExists(dir.resolve(name))) {
+                notFound++;
+                continue;
+            }
+            try {
+                segments.add(open(checkPresent(name)));
+            } catch (IOException e) {
+                throw new SQLException("Failed to open archive segment " + name, e);
+            }
+        }
+        if (skipMissing) {
+            missing = notFound;
+        }
+        return segments;
+    }
+
+    private String checkPresent(String name) throws SQLException {
+        if (Files.notExists(dir.resolve(name))) {
+            throw new SQLException("Archive segment " + name + " is not in " + dir.toAbsolutePath() +
+                    "; point -Darchive.dir at the shared archive directory");
+        }
+        return name;
+    }
+
+    private synchronized ArchiveSegment open(String name) throws IOException {
+        ArchiveSegment segment = mapped.get(name);
+        if (segment == null) {
+            segment = ArchiveSegment.open(dir.resolve(name));
+            mapped.put(name, segment);
+        }
+        return segment;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1 && args[0].equals("archive")) {
+            System.out.println("Archived " + getInstance().archive() + " reports older than " + AGE_DAYS + " days");
+        } else if (args.length == 4 && args[0].equals("export")) {
+            long from = Timestamp.valueOf(LocalDate.parse(args[1]).atStartOfDay()).getTime();
+            long to = Timestamp.valueOf(LocalDate.parse(args[2]).plusDays(1).atStartOfDay()).getTime() - 1;
+            try (BufferedWriter out = Files.newBufferedWriter(Paths.get(args[3]), StandardCharsets.UTF_8)) {
+                System.out.println("Exported " + getInstance().export(from, to, out) + " reports");
+            }
+        } else {
+            System.err.println("Usage: ArchiveStore archive | ArchiveStore export <from yyyy-mm-dd> <to yyyy-mm-dd> <file.csv>");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package src;
+
+import java.sql.Timestamp;
+
+/**
+ * A Completed report moved out of the database, together with its task if it had one.
+ * Times are epoch milliseconds and days are epoch days as the database computed them.
+ * @param duplicateOf The report this one was linked to, or 0.
+ * @param taskId The report's task, or 0 for a linked duplicate, which never gets one; the task fields are 0 then too.
+ * @param completionSeconds Time from assignment to completion as the database computed it.
+ * @param photos The SHA-256 hashes of the report's photos in the {@link BlobStore}, separated by spaces, or null.
+ */
+public record ArchivedReport(int id, int citizenId, String description, String location, String area,
+                             double latitude, double longitude, int duplicateOf,
+                             long submittedMillis, long updatedMillis, long submissionDay,
+                             int taskId, int workerId, long assignedMillis, long completedMillis,
+                             long assignedDay, long completedDay, long completionSeconds, String photos) {
+
+    /**
+     * @return The report as the dashboards show it. Archived reports never change, so their version is 0.
+     */
+    public Report toReport() {
+        return new Report(id, citizenId, description, location, "Completed",
+                new Timestamp(submittedMillis), new Timestamp(updatedMillis), 0);
+    }
+
+    long number(ArchiveSegment.Column column) {
+        return switch (column) {
+            case ID -> id;
+            case CITIZEN_ID -> citizenId;
+            case DUPLICATE_OF -> duplicateOf;
+            case SUBMITTED -> submittedMillis;
+            case UPDATED -> updatedMillis;
+            case SUBMISSION_DAY -> submissionDay;
+            case TASK_ID -> taskId;
+            case WORKER_ID -> workerId;
+            case ASSIGNED -> assignedMillis;
+            case COMPLETED -> completedMillis;
+            case ASSIGNED_DAY -> assignedDay;
+            case COMPLETED_DAY -> completedDay;
+            case COMPLETION_SECONDS -> completionSeconds;
+            default -> throw new IllegalArgumentException(column + " is not a number column");
+        };
+    }
+
+    double decimal(ArchiveSegment.Column column) {
+        return column == ArchiveSegment.Column.LATITUDE ? latitude : longitude;
+    }
+
+    String string(ArchiveSegment.Column column) {
+        return switch (column) {
+            case DESCRIPTION -> description;
+            case LOCATION -> location;
+            case AREA -> area;
+            case PHOTOS -> photos;
+            default -> throw new IllegalArgumentException(column + " is not a string column");
+        };
+    }
+
+    static ArchivedReport read(ArchiveSegment.Cursor c) {
+        return new ArchivedReport((int) c.getLong(ArchiveSegment.Column.ID), (int) c.getLong(ArchiveSegment.Column.CITIZEN_ID),
+                c.getString(ArchiveSegment.Column.DESCRIPTION), c.getString(ArchiveSegment.Column.LOCATION),
+                c.getString(ArchiveSegment.Column.AREA), c.getDouble(ArchiveSegment.Column.LATITUDE),
+                c.getDouble(ArchiveSegment.Column.LONGITUDE), (int) c.getLong(ArchiveSegment.Column.DUPLICATE_OF),
+                c.getLong(ArchiveSegment.Column.SUBMITTED), c.getLong(ArchiveSegment.Column.UPDATED),
+                c.getLong(ArchiveSegment.Column.SUBMISSION_DAY), (int) c.getLong(ArchiveSegment.Column.TASK_ID),
+                (int) c.getLong(ArchiveSegment.Column.WORKER_ID), c.getLong(ArchiveSegment.Column.ASSIGNED),
+                c.getLong(ArchiveSegment.Column.COMPLETED), c.getLong(ArchiveSegment.Column.ASSIGNED_DAY),
+                c.getLong(ArchiveSegment.Column.COMPLETED_DAY),
+                c.getLong(ArchiveSegment.Column.COMPLETION_SECONDS), c.getString(ArchiveSegment.Column.PHOTOS));
+    }
+}
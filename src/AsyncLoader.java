@@ -0,0 +1,86 @@
+package src;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Loads data for one view in the background and applies the result on the EDT.
+ * Only the most recent load is applied: starting a new load cancels the previous one,
+ * and a result that arrives after being superseded is dropped.
+ * While a load is running the given label shows a loading message and the view shows a wait cursor.
+ */
+public class AsyncLoader {
+
+    private final Component view;
+    private final JLabel statusLabel;
+    private CompletableFuture<?> current; // Only touched on the EDT
+    private int generation;
+
+    public AsyncLoader(Component view, JLabel statusLabel) {
+        this.view = view;
+        this.statusLabel = statusLabel;
+    }
+
+    /**
+     * Starts a background load. Must be called on the EDT.
+     * @param work The database work producing the data.
+     * @param onSuccess Receives the data on the EDT.
+     * @param errorMessage The message shown to the user if the load fails.
+     */
+    public <T> void load(DataExecutor.SqlWork<T> work, Consumer<T> onSuccess, String errorMessage) {
+        if (current != null) {
+            current.cancel(false);
+        }
+        int myGeneration = ++generation;
+        showBusy(true);
+
+        CompletableFuture<T> future = DataExecutor.submit(work);
+        current = future;
+        future.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            if (myGeneration != generation) {
+                return; // A newer load has replaced this one
+            }
+            current = null;
+            showBusy(false);
+            if (error != null) {
+                if (!DataExecutor.isCancellation(error)) {
+                    DataExecutor.unwrap(error).printStackTrace();
+                    JOptionPane.showMessageDialog(view, errorMessage, "Database Error", JOptionPane.ERROR_MESSAGE);
+                }
+                return;
+            }
+            onSuccess.accept(result);
+        }));
+    }
+
+    /**
+     * @return true while a load is in flight.
+     */
+    public boolean isLoading() {
+        return current != null;
+    }
+
+    private void showBusy(boolean busy) {
+        statusLabel.setText(busy ? "Loading..." : " ");
+        view.setCursor(busy ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : null);
+    }
+
+    /**
+     * Runs a one-off database action in the background and reports the outcome on the EDT.
+     * Unlike {@link #load}, actions are never cancelled or superseded.
+     * @param work The database work to run.
+     * @param onSuccess Receives the result on the EDT.
+     * @param onError Receives the unwrapped failure on the EDT.
+     */
+    public static <T> void perform(DataExecutor.SqlWork<T> work, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        DataExecutor.submit(work).whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                onError.accept(DataExecutor.unwrap(error));
+            } else {
+                onSuccess.accept(result);
+            }
+        }));
+    }
+}
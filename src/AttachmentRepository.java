@@ -0,0 +1,50 @@
+package src;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Data access for the report_attachments table, which links reports to photos in the {@link BlobStore}.
+ * Only the photo's SHA-256 is stored, so the photos never weigh on the report queries.
+ * Attachments are written with their report, in its transaction; the report list queries read one photo per
+ * report through {@link #photoColumn}.
+ */
+public class AttachmentRepository {
+
+    private static final String INSERT_SQL = "INSERT IGNORE INTO report_attachments (report_id, sha256) VALUES (?, ?)";
+
+    // Private constructor to prevent instantiation
+    private AttachmentRepository() {}
+
+    /**
+     * @param reportId The SQL expression for the report's ID in the enclosing query.
+     * @return A select-list column named photo: the hash of one of the report's photos, or NULL if it has none.
+     *         It is an index lookup on the attachments' primary key per row.
+     */
+    static String photoColumn(String reportId) {
+        return "(SELECT MIN(a.sha256) FROM report_attachments a WHERE a.report_id = " + reportId + ") AS photo";
+    }
+
+    /**
+     * Attaches photos to reports in the caller's transaction. Attaching a photo twice does nothing.
+     * @param reportIds The reports.
+     * @param hashes The photo for each report, or null for a report without one.
+     */
+    static void attach(Connection conn, int[] reportIds, String[] hashes) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+            int batched = 0;
+            for (int i = 0; i < reportIds.length; i++) {
+                if (hashes[i] != null) {
+                    stmt.setInt(1, reportIds[i]);
+                    stmt.setString(2, hashes[i]);
+                    stmt.addBatch();
+                    batched++;
+                }
+            }
+            if (batched > 0) {
+                stmt.executeBatch();
+            }
+        }
+    }
+}
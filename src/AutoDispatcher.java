@@ -0,0 +1,215 @@
+package src;
+
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Assigns Pending reports to workers in the background, so throughput does not depend on an admin clicking.
+ * Every cycle claims a window of the oldest unassigned reports (see {@link TaskStore#dispatchPending}),
+ * ranks them by age and by severity read from the description, and hands them out one at a time to the worker
+ * with the fewest open tasks, skipping workers at capacity. Cycles repeat immediately while full batches are
+ * being assigned, and otherwise every -Ddispatch.intervalMillis.
+ *
+ * Any number of dispatchers, in any number of processes, can run at once: claims skip rows another dispatcher
+ * has locked, so no report is assigned twice.
+ *
+ * Usage (headless): java -cp ".;lib\mysql-connector-j-9.4.0.jar" src.AutoDispatcher
+ */
+public class AutoDispatcher {
+
+    private static final long INTERVAL_MILLIS = Long.getLong("dispatch.intervalMillis", 2000L);
+    private static final int BATCH_SIZE = Integer.getInteger("dispatch.batchSize", 100);
+    // Severity can only promote reports that are among this many oldest, which keeps the claim cheap
+    private static final int WINDOW = Integer.getInteger("dispatch.window", 500);
+    private static final int MAX_OPEN_TASKS = Integer.getInteger("dispatch.maxOpenTasks", 10);
+    private static final double HOURS_PER_SEVERITY = 12; // One severity point ranks like twelve hours of waiting
+
+    // Keywords that make a report more urgent, with their weight
+    private static final Map<String, Integer> SEVERITY = Map.of(
+            "fire", 4, "hazard", 3, "glass", 3, "leak", 3, "needle", 3,
+            "dumping", 2, "overflow", 2, "blocked", 2, "smell", 1, "broken", 1);
+
+    private final TaskStore taskRepository = Storage.tasks();
+    private final ReportStore reportRepository = Storage.reports();
+    private final UserStore userRepository = Storage.users();
+    private final Runnable afterCycle;
+
+    private final LatencyHistogram assignmentLatency = new LatencyHistogram(); // Submission to assignment
+    private final LatencyHistogram cycleTime = new LatencyHistogram();
+    private final AtomicLong cycles = new AtomicLong();
+    private final AtomicLong assigned = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile int queueDepth = -1; // Unknown until the first cycle
+    private volatile boolean atCapacity;
+
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> schedule;
+
+    /**
+     * @param afterCycle Called on the dispatcher thread after every cycle, e.g. to refresh a view; may be null.
+     */
+    public AutoDispatcher(Runnable afterCycle) {
+        this.afterCycle = afterCycle;
+    }
+
+    /**
+     * Starts dispatching in the background; does nothing if already running.
+     */
+    public synchronized void start() {
+        if (schedule != null) {
+            return;
+        }
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "auto-dispatcher");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        schedule = scheduler.scheduleWithFixedDelay(this::runCycles, 0, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops dispatching after the current cycle.
+     */
+    public synchronized void stop() {
+        if (schedule != null) {
+            schedule.cancel(false);
+            schedule = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return schedule != null;
+    }
+
+    private void runCycles() {
+        try {
+            int batch;
+            do {
+                long start = System.nanoTime();
+                batch = dispatchOnce();
+                cycleTime.record(System.nanoTime() - start);
+                cycles.incrementAndGet();
+            } while (batch == BATCH_SIZE && isRunning());
+            queueDepth = reportRepository.countUnassigned();
+        } catch (SQLException e) {
+            failures.incrementAndGet();
+            e.printStackTrace(); // Retried on the next cycle
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            e.printStackTrace(); // Must not escape, or the scheduler silently stops running cycles
+        }
+        if (afterCycle != null) {
+            afterCycle.run();
+        }
+    }
+
+    /**
+     * Runs one claim-and-assign transaction.
+     * @return The number of reports assigned.
+     */
+    int dispatchOnce() throws SQLException {
+        Map<Integer, User> roster = new HashMap<>();
+        for (User worker : userRepository.findWorkers()) {
+            roster.put(worker.id(), worker);
+        }
+        if (roster.isEmpty()) {
+            return 0;
+        }
+        Map<Integer, Integer> openTasks = taskRepository.countOpenTasksByWorker();
+
+        Map<Integer, Integer> plan = taskRepository.dispatchPending(WINDOW, claimed -> {
+            // Most urgent report first
+            PriorityQueue<TaskStore.PendingReport> reports = new PriorityQueue<>(
+                    Comparator.comparingDouble(AutoDispatcher::priority).reversed());
+            reports.addAll(claimed);
+            // Least loaded worker first; entries are {open tasks, worker ID}
+            PriorityQueue<int[]> workers = new PriorityQueue<>(
+                    Comparator.<int[]>comparingInt(w -> w[0]).thenComparingInt(w -> w[1]));
+            for (int workerId : roster.keySet()) {
+                int load = openTasks.getOrDefault(workerId, 0);
+                if (load < MAX_OPEN_TASKS) {
+                    workers.add(new int[]{load, workerId});
+                }
+            }
+            atCapacity = workers.isEmpty();
+
+            Map<Integer, Integer> assignments = new HashMap<>();
+            while (assignments.size() < BATCH_SIZE && !reports.isEmpty() && !workers.isEmpty()) {
+                TaskStore.PendingReport report = reports.poll();
+                int[] worker = workers.poll();
+                assignments.put(report.id(), worker[1]);
+                assignmentLatency.record(TimeUnit.SECONDS.toNanos(report.ageSeconds()));
+                if (++worker[0] < MAX_OPEN_TASKS) {
+                    workers.add(worker);
+                }
+            }
+            return assignments;
+        });
+        assigned.addAndGet(plan.size());
+        return plan.size();
+    }
+
+    /**
+     * @return The report's rank: hours waited plus a bonus per severity point.
+     */
+    static double priority(TaskStore.PendingReport report) {
+        return report.ageSeconds() / 3600.0 + severity(report.description()) * HOURS_PER_SEVERITY;
+    }
+
+    static int severity(String description) {
+        String text = description == null ? "" : description.toLowerCase(Locale.ROOT);
+        int score = 0;
+        for (Map.Entry<String, Integer> keyword : SEVERITY.entrySet()) {
+            if (text.contains(keyword.getKey())) {
+                score += keyword.getValue();
+            }
+        }
+        return score;
+    }
+
+    /**
+     * @return The number of Pending reports without a task after the last cycle, or -1 before the first.
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getAssigned() {
+        return assigned.get();
+    }
+
+    /**
+     * @return e.g. "assigned=120 queue=35 cycles=4 failures=0 latency p50=2.1h p99=30.5h cycle p99=45.0ms".
+     */
+    public String summary() {
+        return String.format("assigned=%d queue=%s cycles=%d failures=%d%s latency p50=%.1fh p99=%.1fh cycle p99=%.1fms",
+                assigned.get(), queueDepth < 0 ? "?" : Integer.toString(queueDepth), cycles.get(), failures.get(),
+                atCapacity ? " (all workers at capacity)" : "",
+                assignmentLatency.percentile(0.50) / 3.6e12, assignmentLatency.percentile(0.99) / 3.6e12,
+                cycleTime.percentile(0.99) / 1e6);
+    }
+
+    /**
+     * Runs a dispatcher until the process is stopped, printing its metrics every ten seconds.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        AutoDispatcher dispatcher = new AutoDispatcher(null);
+        dispatcher.start();
+        while (true) {
+            Thread.sleep(10_000);
+            System.out.println(dispatcher.summary());
+        }
+    }
+}
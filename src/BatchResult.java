@@ -0,0 +1,68 @@
+package src;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The per-row outcome of a bulk operation on reports, in the order the reports were given.
+ */
+public class BatchResult {
+
+    /**
+     * What happened to one report in a bulk operation.
+     */
+    public enum Outcome {
+        UPDATED("updated"),
+        ALREADY_ASSIGNED("already assigned"),
+        DUPLICATE("linked to another report"),
+        CONFLICT("changed by someone else since they were loaded"),
+        NOT_ALLOWED("not allowed from their current status"),
+        NOT_FOUND("not found");
+
+        private final String label;
+
+        Outcome(String label) {
+            this.label = label;
+        }
+    }
+
+    private final Map<Integer, Outcome> outcomes = new LinkedHashMap<>();
+
+    void put(int reportId, Outcome outcome) {
+        outcomes.put(reportId, outcome);
+    }
+
+    /**
+     * @return The outcome for each report ID.
+     */
+    public Map<Integer, Outcome> getOutcomes() {
+        return outcomes;
+    }
+
+    public int count(Outcome outcome) {
+        int n = 0;
+        for (Outcome o : outcomes.values()) {
+            if (o == outcome) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return A one-line summary such as "3 updated, 1 already assigned".
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Outcome outcome : Outcome.values()) {
+            int n = count(outcome);
+            if (n > 0) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(n).append(' ').append(outcome.label);
+            }
+        }
+        return sb.length() == 0 ? "Nothing to do" : sb.toString();
+    }
+}
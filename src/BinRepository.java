@@ -0,0 +1,82 @@
+package src;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Data access for the bins table, the sensor-equipped bins that report their fill level.
+ * Methods are blocking; {@link TelemetryServer} runs them off its feed threads.
+ */
+public class BinRepository {
+
+    // Shared with QueryPlanCheck so the checked SQL is exactly what runs
+    static final String LOCK_BIN_SQL = "SELECT b.location, b.latitude, b.longitude, b.open_report_id, r.status " +
+            "FROM bins b LEFT JOIN reports r ON r.id = b.open_report_id WHERE b.id = ? FOR UPDATE";
+
+    private static final String SET_OPEN_REPORT_SQL = "UPDATE bins SET open_report_id = ? WHERE id = ?";
+
+    /**
+     * The report that stands for a bin's overflow.
+     * @param created false if the bin already had an open report, which was kept.
+     */
+    public record Overflow(int reportId, boolean created) {
+    }
+
+    private final ReportRepository reportRepository = new ReportRepository();
+
+    /**
+     * Files a report that a bin is about to overflow, unless the bin already has an open one.
+     * The bin row is locked while deciding, so two telemetry processes cannot both file a report for it.
+     * @param binId The bin.
+     * @param citizenId The user the report is filed as.
+     * @param description What the telemetry saw.
+     * @return The bin's open overflow report, or null if there is no such bin.
+     * @throws SQLException if a database access error occurs; nothing is committed in that case.
+     */
+    public Overflow reportOverflow(int binId, int citizenId, String description) throws SQLException {
+        NewReport report;
+        double[] coordinates;
+        int id;
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement stmt = conn.prepareStatement(LOCK_BIN_SQL)) {
+                    stmt.setInt(1, binId);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (!rs.next()) {
+                            conn.commit();
+                            return null;
+                        }
+                        int openReportId = rs.getInt(4);
+                        String status = rs.getString(5);
+                        // A Completed report means the bin was emptied since; an archived one reads as NULL
+                        if (status != null && !"Completed".equals(status)) {
+                            conn.commit();
+                            return new Overflow(openReportId, false);
+                        }
+                        report = new NewReport(citizenId, description, rs.getString(1));
+                        double latitude = rs.getDouble(2);
+                        coordinates = rs.wasNull() ? Gazetteer.getDefault().geocode(report.location())
+                                : new double[]{latitude, rs.getDouble(3)};
+                    }
+                }
+                id = reportRepository.insert(conn, report, null, coordinates);
+                try (PreparedStatement stmt = conn.prepareStatement(SET_OPEN_REPORT_SQL)) {
+                    stmt.setInt(1, id);
+                    stmt.setInt(2, binId);
+                    stmt.executeUpdate();
+                }
+                conn.commit();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        ReportRepository.opened(id, report, null, coordinates);
+        return new Overflow(id, true);
+    }
+}
@@ -0,0 +1,291 @@
+package src;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recent fill-level readings of sensor bins, kept off the Java heap, and the rules that decide when a bin is
+ * about to overflow.
+ *
+ * Every bin gets a fixed-size slot in one direct buffer: a small header with the rule state, followed by a ring
+ * of its last -Dtelemetry.window readings (default 30), each packed into six bytes: seconds since 2024 and the
+ * fill in tenths of a percent. 100,000 bins take about 21 MB outside the heap plus a 2 MB ID table on it, and
+ * recording a reading allocates nothing, so the readings never reach the garbage collector.
+ *
+ * Rules are evaluated as each reading arrives, from state kept in the slot header rather than a scan of the ring:
+ * <ul>
+ * <li>threshold: the fill is at or above -Dtelemetry.overflowPercent (default 90);</li>
+ * <li>trend: the fill is at least -Dtelemetry.trendMinPercent (default 50) and, at the rate smoothed over the
+ *     recent readings (Holt's linear smoothing), reaches 100% within -Dtelemetry.horizonMinutes (default 60).</li>
+ * </ul>
+ * A bin raises one alert per filling: it stays alerted until a reading below -Dtelemetry.clearPercent
+ * (default 30) shows it was emptied. Readings of one bin must arrive in time order; older ones are dropped.
+ * Thread-safe: slots are guarded by striped locks, so feeds for different bins rarely contend.
+ */
+public class BinTelemetry {
+
+    private static final long EPOCH_SECONDS = 1_704_067_200L; // 2024-01-01T00:00:00Z; stored times count from here
+    private static final int READING_BYTES = 6;                // int seconds, short tenths of a percent
+
+    // Slot header layout
+    private static final int BIN_ID = 0;         // int
+    private static final int COUNT = 4;          // int, readings recorded since the slot was taken
+    private static final int LAST_TIME = 8;      // int, seconds since EPOCH_SECONDS
+    private static final int LEVEL = 12;         // float, smoothed fill in percent
+    private static final int TREND = 16;         // float, smoothed change in percent per minute
+    private static final int SINCE_RESTART = 20; // int, readings since the smoothing last started over
+    private static final int ALERTED = 24;       // int, 1 while an alert for the current filling is out
+    private static final int HEADER_BYTES = 28;
+
+    private static final float LEVEL_WEIGHT = 0.5f;   // Weight of a new reading in the smoothed level
+    private static final float TREND_WEIGHT = 0.3f;   // Weight of the latest change in the smoothed trend
+    private static final int MIN_TREND_READINGS = 5;  // Readings needed before the trend is trusted
+    private static final int MAX_GAP_SECONDS = 3600;  // After a longer silence the smoothing starts over
+    private static final float EMPTIED_DROP = 20;     // A fall of this many points means the bin was emptied
+    private static final int STRIPES = 64;
+
+    /**
+     * Which rule raised an alert.
+     */
+    public enum Rule {
+        THRESHOLD, TREND
+    }
+
+    /**
+     * A bin that is about to overflow.
+     * @param percentPerHour The smoothed fill rate.
+     * @param minutesToFull When the bin reaches 100% at that rate, or NaN if it is not filling.
+     * @param earliestFill The oldest fill still in the ring, and how many minutes before this reading it was taken.
+     */
+    public record Alert(int binId, Rule rule, double fillPercent, double percentPerHour, double minutesToFull,
+                        double earliestFill, long earliestMinutesAgo) {
+
+        /**
+         * @return A report description for the citizens and workers reading it.
+         */
+        public String describe() {
+            StringBuilder text = new StringBuilder(String.format("Smart bin %d is %.0f%% full", binId, fillPercent));
+            if (earliestMinutesAgo > 0) {
+                text.append(String.format(" (%.0f%% %d min ago)", earliestFill, earliestMinutesAgo));
+            }
+            if (!Double.isNaN(minutesToFull)) {
+                text.append(String.format(" and filling at %.0f%% per hour", percentPerHour));
+                text.append(minutesToFull < 1 ? "; it is overflowing now" : String.format("; it will overflow in about %.0f min", minutesToFull));
+            }
+            return text.append(". Reported automatically by the bin's fill sensor.").toString();
+        }
+    }
+
+    private final int maxBins;
+    private final int window;
+    private final int slotBytes;
+    private final ByteBuffer slots; // Direct; absolute gets and puts only, so threads share it safely
+    private final Object[] stripes = new Object[STRIPES];
+    private final float overflowPercent = Float.parseFloat(System.getProperty("telemetry.overflowPercent", "90"));
+    private final float trendMinPercent = Float.parseFloat(System.getProperty("telemetry.trendMinPercent", "50"));
+    private final float horizonMinutes = Float.parseFloat(System.getProperty("telemetry.horizonMinutes", "60"));
+    private final float clearPercent = Float.parseFloat(System.getProperty("telemetry.clearPercent", "30"));
+
+    // Bin ID -> slot, open addressing with linear probing; 0 marks a free entry since bin IDs start at 1
+    private final int[] keys;
+    private final int[] values;
+    private int used; // guarded by keys
+
+    private final LongAdder readings = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder alerts = new LongAdder();
+
+    /**
+     * @param maxBins How many distinct bins can be tracked; readings of further bins are rejected.
+     * @param window How many recent readings are kept per bin.
+     */
+    public BinTelemetry(int maxBins, int window) {
+        this.maxBins = maxBins;
+        this.window = window;
+        this.slotBytes = HEADER_BYTES + window * READING_BYTES;
+        this.slots = ByteBuffer.allocateDirect(Math.multiplyExact(maxBins, slotBytes));
+        int tableSize = Integer.highestOneBit(Math.max(2, maxBins) * 2 - 1) << 1; // At most half full
+        this.keys = new int[tableSize];
+        this.values = new int[tableSize];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * Records a reading and evaluates the rules.
+     * @param binId The bin, from bins.id.
+     * @param epochSeconds When the reading was taken.
+     * @param fillPercent The fill level; values above 100 are stored as 100.
+     * @return An alert if this reading shows the bin is about to overflow for the first time since it was emptied,
+     *         otherwise null.
+     */
+    public Alert record(int binId, long epochSeconds, double fillPercent) {
+        long seconds = epochSeconds - EPOCH_SECONDS;
+        if (binId <= 0 || seconds <= 0 || seconds > Integer.MAX_VALUE || !(fillPercent >= 0)) {
+            dropped.increment(); // Also catches NaN
+            return null;
+        }
+        int slot = slotOf(binId);
+        if (slot < 0) {
+            rejected.increment();
+            return null;
+        }
+        int time = (int) seconds;
+        float fill = (float) Math.min(100, fillPercent);
+        int base = slot * slotBytes;
+        synchronized (stripes[slot % STRIPES]) {
+            int count = slots.getInt(base + COUNT);
+            int last = slots.getInt(base + LAST_TIME);
+            if (count > 0 && time <= last) {
+                dropped.increment();
+                return null;
+            }
+            readings.increment();
+
+            // Append to the ring
+            int at = base + HEADER_BYTES + (count % window) * READING_BYTES;
+            slots.putInt(at, time).putShort(at + 4, (short) Math.round(fill * 10));
+            slots.putInt(base + COUNT, count + 1).putInt(base + LAST_TIME, time);
+
+            // Update the smoothed level and trend
+            float level = slots.getFloat(base + LEVEL);
+            float trend = slots.getFloat(base + TREND);
+            int sinceRestart = slots.getInt(base + SINCE_RESTART);
+            if (count == 0 || time - last > MAX_GAP_SECONDS || level - fill >= EMPTIED_DROP) {
+                level = fill;
+                trend = 0;
+                sinceRestart = 1;
+            } else {
+                float minutes = (time - last) / 60f;
+                float previous = level;
+                level = LEVEL_WEIGHT * fill + (1 - LEVEL_WEIGHT) * (level + trend * minutes);
+                trend = TREND_WEIGHT * (level - previous) / minutes + (1 - TREND_WEIGHT) * trend;
+                sinceRestart++;
+            }
+            slots.putFloat(base + LEVEL, level).putFloat(base + TREND, trend).putInt(base + SINCE_RESTART, sinceRestart);
+
+            // Evaluate the rules
+            if (fill < clearPercent) {
+                slots.putInt(base + ALERTED, 0); // Emptied; the next filling may alert again
+                return null;
+            }
+            if (slots.getInt(base + ALERTED) != 0) {
+                return null;
+            }
+            float minutesToFull = trend > 0 ? (100 - level) / trend : Float.NaN;
+            Rule rule = null;
+            if (fill >= overflowPercent) {
+                rule = Rule.THRESHOLD;
+            } else if (fill >= trendMinPercent && sinceRestart >= MIN_TREND_READINGS && minutesToFull <= horizonMinutes) {
+                rule = Rule.TREND; // NaN never compares true, so a bin that is not filling never gets here
+            }
+            if (rule == null) {
+                return null;
+            }
+            slots.putInt(base + ALERTED, 1);
+            alerts.increment();
+            int earliest = base + HEADER_BYTES + (count + 1 <= window ? 0 : (count + 1) % window) * READING_BYTES;
+            return new Alert(binId, rule, fill, trend * 60, minutesToFull, slots.getShort(earliest + 4) / 10.0,
+                    (time - slots.getInt(earliest)) / 60);
+        }
+    }
+
+    /**
+     * Lets the bin alert again on its next reading, e.g. because its report could not be filed.
+     */
+    public void retryAlert(int binId) {
+        int slot = find(binId);
+        if (slot >= 0) {
+            synchronized (stripes[slot % STRIPES]) {
+                slots.putInt(slot * slotBytes + ALERTED, 0);
+            }
+        }
+    }
+
+    /**
+     * @return The bin's readings, oldest first, as "time fill%" lines, or an empty string if it has none.
+     */
+    public String history(int binId) {
+        int slot = find(binId);
+        if (slot < 0) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder();
+        int base = slot * slotBytes;
+        synchronized (stripes[slot % STRIPES]) {
+            int count = slots.getInt(base + COUNT);
+            for (int n = Math.max(0, count - window); n < count; n++) {
+                int at = base + HEADER_BYTES + (n % window) * READING_BYTES;
+                text.append(String.format("%tF %<tT %.1f%%%n", (EPOCH_SECONDS + slots.getInt(at)) * 1000, slots.getShort(at + 4) / 10.0));
+            }
+            text.append(String.format("smoothed %.1f%%, %.1f%% per hour%s", slots.getFloat(base + LEVEL),
+                    slots.getFloat(base + TREND) * 60, slots.getInt(base + ALERTED) != 0 ? ", alerted" : ""));
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return A one-line summary of the counters.
+     */
+    public String summary() {
+        return String.format("%d bins, %d readings, %d dropped (out of order or invalid), %d rejected (table full), %d alerts, %d KB off-heap",
+                bins(), readings.sum(), dropped.sum(), rejected.sum(), alerts.sum(), (long) maxBins * slotBytes / 1024);
+    }
+
+    public int bins() {
+        synchronized (keys) {
+            return used;
+        }
+    }
+
+    public long getReadings() {
+        return readings.sum();
+    }
+
+    public long getAlerts() {
+        return alerts.sum();
+    }
+
+    /**
+     * @return The bin's slot, taking a free one if the bin is new, or -1 if every slot is taken.
+     */
+    private int slotOf(int binId) {
+        synchronized (keys) {
+            int i = index(binId);
+            if (keys[i] == binId) {
+                return values[i];
+            }
+            if (used == maxBins) {
+                return -1;
+            }
+            keys[i] = binId;
+            values[i] = used;
+            slots.putInt(used * slotBytes + BIN_ID, binId);
+            return used++;
+        }
+    }
+
+    /**
+     * @return The bin's slot, or -1 if it has never sent a reading.
+     */
+    private int find(int binId) {
+        synchronized (keys) {
+            int i = index(binId);
+            return keys[i] == binId ? values[i] : -1;
+        }
+    }
+
+    /**
+     * @return The table index holding the bin, or the free index where it belongs.
+     */
+    private int index(int binId) {
+        int mask = keys.length - 1;
+        int i = (binId * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(mask); // Fibonacci hashing spreads sequential IDs
+        while (keys[i] != 0 && keys[i] != binId) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,217 @@
+package src;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Content-addressed store for report photos under -Dattachments.dir (default data/attachments).
+ * A photo is named by the SHA-256 of its bytes and filed two directory levels deep by the start of that name
+ * (ab/cd/abcd...), so no directory grows large. Only the name goes into the database, see
+ * {@link AttachmentRepository}; the same photo uploaded twice is stored once.
+ *
+ * Uploads are hashed while they are copied through one direct buffer, written under a temporary name and
+ * moved into place, so a stored name always has exactly its content, even with several clients sharing the
+ * directory over a network drive. Reads go through {@link FileChannel#transferTo}, which lets the operating
+ * system move the bytes to the target file or socket without copying them into the Java heap.
+ */
+public class BlobStore {
+
+    private static final long MAX_BYTES = Long.getLong("attachments.maxMB", 10L) * 1024 * 1024;
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int HASH_CHARS = 64;
+
+    private static final BlobStore INSTANCE = new BlobStore(Paths.get(System.getProperty("attachments.dir", "data/attachments")));
+
+    private final Path root;
+    private final LongAdder stored = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+
+    private BlobStore(Path root) {
+        this.root = root;
+    }
+
+    public static BlobStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Stores a photo, unless the same bytes are stored already.
+     * @param source A JPEG, PNG, GIF or BMP file of at most -Dattachments.maxMB (default 10).
+     * @return The photo's SHA-256, as 64 lowercase hex digits.
+     * @throws IOException if the file cannot be read, is no such image or is too large, or the store cannot be written.
+     */
+    public String put(Path source) throws IOException {
+        Files.createDirectories(root);
+        Path temp = Files.createTempFile(root, "upload", ".tmp");
+        try {
+            String hash;
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                if (in.size() > MAX_BYTES) {
+                    throw new IOException("The photo is larger than " + MAX_BYTES / (1024 * 1024) + " MB");
+                }
+                MessageDigest digest = sha256();
+                ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+                boolean first = true;
+                while (in.read(buffer) != -1) {
+                    buffer.flip();
+                    if (first && format(buffer) == null) {
+                        throw new IOException("Not a JPEG, PNG, GIF or BMP image: " + source.getFileName());
+                    }
+                    first = false;
+                    digest.update(buffer.duplicate());
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.clear();
+                }
+                if (first) {
+                    throw new IOException("The photo is empty: " + source.getFileName());
+                }
+                out.force(false);
+                hash = HexFormat.of().formatHex(digest.digest());
+            }
+            Path target = path(hash);
+            if (Files.exists(target)) {
+                deduplicated.increment();
+                return hash;
+            }
+            Files.createDirectories(target.getParent());
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                stored.increment();
+            } catch (FileAlreadyExistsException e) {
+                deduplicated.increment(); // Another client stored the same photo at the same moment
+            }
+            return hash;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * @return Whether the photo is in this store. Photos stored by other clients show up once their directory is shared.
+     */
+    public boolean contains(String hash) {
+        return isHash(hash) && Files.exists(path(hash));
+    }
+
+    /**
+     * Streams a photo to a channel, e.g. a file or a socket, without copying it through the heap.
+     * @return The number of bytes transferred.
+     * @throws IOException if the photo is not in this store or the channel fails.
+     */
+    public long transferTo(String hash, WritableByteChannel target) throws IOException {
+        try (FileChannel in = FileChannel.open(path(hash), StandardOpenOption.READ)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, target);
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Copies a photo to a file, replacing it if it exists.
+     */
+    public void copyTo(String hash, Path file) throws IOException {
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            transferTo(hash, out);
+        }
+    }
+
+    /**
+     * @return Where the photo is stored, whether or not it exists.
+     * @throws IllegalArgumentException if the name is not a SHA-256, so no caller can reach outside the store.
+     */
+    public Path path(String hash) {
+        return shard(root, hash, "");
+    }
+
+    /**
+     * @return Where a file derived from the photo, such as a thumbnail, is kept: under root/kind with the same sharding.
+     */
+    Path derivedPath(String kind, String hash, String suffix) {
+        return shard(root.resolve(kind), hash, suffix);
+    }
+
+    /**
+     * @return A one-line summary of this process's uploads.
+     */
+    public String summary() {
+        return String.format("%d photos stored, %d uploads deduplicated", stored.sum(), deduplicated.sum());
+    }
+
+    private static Path shard(Path base, String hash, String suffix) {
+        if (!isHash(hash)) {
+            throw new IllegalArgumentException("Not a photo hash: " + hash);
+        }
+        return base.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash + suffix);
+    }
+
+    static boolean isHash(String hash) {
+        if (hash == null || hash.length() != HASH_CHARS) {
+            return false;
+        }
+        for (int i = 0; i < HASH_CHARS; i++) {
+            char c = hash.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The photo's format, one of jpeg, png, gif or bmp, judged by its first bytes.
+     * @throws IOException if the photo is not in this store.
+     */
+    public String format(String hash) throws IOException {
+        try (FileChannel in = FileChannel.open(path(hash), StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(8);
+            in.read(head);
+            return format(head.flip());
+        }
+    }
+
+    /**
+     * Checks the magic numbers of the formats ImageIO can make thumbnails of.
+     * @return The format, or null if it is none of them.
+     */
+    private static String format(ByteBuffer head) {
+        int p = head.position();
+        int n = head.remaining();
+        if (n >= 3 && (head.get(p) & 0xff) == 0xff && (head.get(p + 1) & 0xff) == 0xd8 && (head.get(p + 2) & 0xff) == 0xff) {
+            return "jpeg";
+        } else if (n >= 8 && head.getLong(p) == 0x89504e470d0a1a0aL) {
+            return "png";
+        } else if (n >= 4 && head.getInt(p) == 0x47494638) { // GIF8
+            return "gif";
+        } else if (n >= 2 && head.get(p) == 'B' && head.get(p + 1) == 'M') {
+            return "bmp";
+        }
+        return null;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required of every JVM", e);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package src;
+
+import javax.swing.*;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Process-wide feed of report and task changes for the open dashboards.
+ * One poller per table fetches the rows changed since a shared watermark, using {@link DeltaRefresher} so
+ * overlapping polls coalesce into one and late-committing rows are still caught, and fans each batch out to the subscribers whose filter matches;
+ * subscribers patch only the rows they are handed. The repositories call {@link #changed()} after every commit,
+ * so changes made in this process show up at once; changes made by other clients arrive with the next poll,
+ * every -Dfeed.pollMillis (default 2 s). Polling only runs while something is subscribed.
+ * Everything except {@link #changed()} must be called on the EDT.
+ */
+public class ChangeFeed {
+
+    private static final int POLL_MILLIS = Integer.getInteger("feed.pollMillis", 2000); // Read by the constructor
+
+    private static final ChangeFeed INSTANCE = new ChangeFeed();
+
+    /**
+     * A dashboard's interest in one table. Close it when the dashboard goes away.
+     * @param <T> The row type.
+     */
+    public static final class Subscription<T> implements AutoCloseable {
+        private final Channel<T> channel;
+        private final Predicate<T> filter;
+        private final Consumer<List<T>> listener;
+
+        private Subscription(Channel<T> channel, Predicate<T> filter, Consumer<List<T>> listener) {
+            this.channel = channel;
+            this.filter = filter;
+            this.listener = listener;
+        }
+
+        /**
+         * Call after a full load, so rows changed while it ran are delivered again.
+         * @param rows The rows the load returned.
+         */
+        public void loaded(List<T> rows) {
+            channel.refresher.rewind(rows);
+            channel.refresher.refresh();
+        }
+
+        /**
+         * Call after a full load, so rows changed while it ran are delivered again.
+         * @param watermark The newest updated_at the load saw.
+         */
+        public void loaded(Timestamp watermark) {
+            channel.refresher.rewind(watermark);
+            channel.refresher.refresh();
+        }
+
+        @Override
+        public void close() {
+            channel.subscribers.remove(this);
+            INSTANCE.updateTimer();
+        }
+    }
+
+    /**
+     * The watermark and subscribers of one table.
+     */
+    private static final class Channel<T> {
+        final DeltaRefresher<T> refresher;
+        final DataExecutor.SqlWork<Timestamp> lastModified;
+        final List<Subscription<T>> subscribers = new ArrayList<>();
+
+        Channel(DeltaRefresher.ChangeQuery<T> query, DataExecutor.SqlWork<Timestamp> horizon, ToIntFunction<T> id,
+                ToIntFunction<T> version, Function<T, Timestamp> updatedAt, DataExecutor.SqlWork<Timestamp> lastModified) {
+            this.refresher = new DeltaRefresher<>(query, horizon, id, version, updatedAt, this::fanOut);
+            this.lastModified = lastModified;
+        }
+
+        Subscription<T> subscribe(Predicate<T> filter, Consumer<List<T>> listener) {
+            if (subscribers.isEmpty()) {
+                // Start from the newest change now, unless a dashboard's load already set an older watermark
+                AsyncLoader.perform(lastModified, refresher::rewind, Throwable::printStackTrace);
+            }
+            Subscription<T> subscription = new Subscription<>(this, filter, listener);
+            subscribers.add(subscription);
+            return subscription;
+        }
+
+        void poll() {
+            if (!subscribers.isEmpty()) {
+                refresher.refresh();
+            }
+        }
+
+        private void fanOut(List<T> rows) {
+            for (Subscription<T> subscriber : new ArrayList<>(subscribers)) {
+                List<T> matching = new ArrayList<>();
+                for (T row : rows) {
+                    if (subscriber.filter.test(row)) {
+                        matching.add(row);
+                    }
+                }
+                if (!matching.isEmpty()) {
+                    subscriber.listener.accept(matching);
+                }
+            }
+        }
+    }
+
+    private final Channel<Report> reports;
+    private final Channel<Task> tasks;
+    private final Timer timer;
+    private volatile boolean active; // Read by changed() off the EDT
+
+    private ChangeFeed() {
+        ReportStore reportRepository = Storage.reports();
+        TaskStore taskRepository = Storage.tasks();
+        reports = new Channel<>(reportRepository::findChangedSince, reportRepository::changeHorizon, Report::id, Report::version, Report::updatedAt,
+                () -> reportRepository.snapshot().lastModified());
+        tasks = new Channel<>(taskRepository::findChangedSince, taskRepository::changeHorizon, Task::id, Task::version, Task::updatedAt,
+                taskRepository::lastModified);
+        timer = new Timer(POLL_MILLIS, e -> poll());
+    }
+
+    public static ChangeFeed getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Delivers changed reports that pass the filter to the listener, on the EDT.
+     */
+    public Subscription<Report> subscribeReports(Predicate<Report> filter, Consumer<List<Report>> listener) {
+        Subscription<Report> subscription = reports.subscribe(filter, listener);
+        updateTimer();
+        return subscription;
+    }
+
+    /**
+     * Delivers changed tasks that pass the filter to the listener, on the EDT.
+     */
+    public Subscription<Task> subscribeTasks(Predicate<Task> filter, Consumer<List<Task>> listener) {
+        Subscription<Task> subscription = tasks.subscribe(filter, listener);
+        updateTimer();
+        return subscription;
+    }
+
+    /**
+     * Tells the feed that reports or tasks were just committed, so it polls now instead of at the next tick.
+     * Safe to call from any thread; does nothing when no dashboard is subscribed.
+     */
+    void changed() {
+        if (active) {
+            SwingUtilities.invokeLater(this::poll);
+        }
+    }
+
+    private void poll() {
+        reports.poll();
+        tasks.poll();
+    }
+
+    private void updateTimer() {
+        active = !reports.subscribers.isEmpty() || !tasks.subscribers.isEmpty();
+        if (active && !timer.isRunning()) {
+            timer.start();
+        } else if (!active) {
+            timer.stop();
+        }
+    }
+}
@@ -1,18 +1,24 @@
 package src;
 
 import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableRowSorter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
 
 /**
  * The dashboard for Citizen users.
- * Allows citizens to submit new waste reports and view the status of their previous reports.
+ * Allows citizens to submit new waste reports and view or search the status of their previous reports.
  */
 public class CitizenDashboard extends JFrame {
 
@@ -21,6 +27,15 @@ public class CitizenDashboard extends JFrame {
     private DefaultTableModel tableModel;
     private JTextField descriptionField;
     private JTextField locationField;
+    private JButton submitButton;
+    private JLabel photoLabel;
+    private Path photoFile; // The photo chosen for the next report, or null
+    private JTextField searchField;
+    private JLabel archiveLabel;
+    private final TableRowSorter<DefaultTableModel> rowSorter;
+    private final ReportStore reportRepository = Storage.reports();
+    private final AsyncLoader reportLoader;
+    private final ChangeFeed.Subscription<Report> reportChanges;
 
     public CitizenDashboard(int citizenId) {
         this.citizenId = citizenId;
@@ -32,7 +47,7 @@ public class CitizenDashboard extends JFrame {
         setLayout(new BorderLayout(10, 10));
 
         // Panel for creating a new report
-        JPanel formPanel = new JPanel(new GridLayout(3, 2, 10, 10));
+        JPanel formPanel = new JPanel(new GridLayout(4, 2, 10, 10));
         formPanel.setBorder(BorderFactory.createTitledBorder("Submit a New Report"));
         formPanel.add(new JLabel("Description:"));
         descriptionField = new JTextField();
@@ -40,7 +55,15 @@ public class CitizenDashboard extends JFrame {
         formPanel.add(new JLabel("Location:"));
         locationField = new JTextField();
         formPanel.add(locationField);
-        JButton submitButton = new JButton("Submit Report");
+        formPanel.add(new JLabel("Photo (optional):"));
+        JPanel photoPanel = new JPanel(new BorderLayout(10, 0));
+        JButton choosePhotoButton = new JButton("Choose...");
+        choosePhotoButton.addActionListener(e -> choosePhoto());
+        photoPanel.add(choosePhotoButton, BorderLayout.WEST);
+        photoLabel = new JLabel("No photo");
+        photoPanel.add(photoLabel, BorderLayout.CENTER);
+        formPanel.add(photoPanel);
+        submitButton = new JButton("Submit Report");
         submitButton.addActionListener(this::submitReport);
         formPanel.add(new JLabel()); // Placeholder
         formPanel.add(submitButton);
@@ -50,41 +73,133 @@ public class CitizenDashboard extends JFrame {
         tablePanel.setBorder(BorderFactory.createTitledBorder("Your Reports"));
         tableModel = new DefaultTableModel(new String[]{"ID", "Description", "Location", "Status", "Date"}, 0);
         reportTable = new JTable(tableModel);
+        rowSorter = new TableRowSorter<>(tableModel);
+        reportTable.setRowSorter(rowSorter);
         tablePanel.add(new JScrollPane(reportTable), BorderLayout.CENTER);
+        JLabel loadingLabel = new JLabel(" ");
+        tablePanel.add(loadingLabel, BorderLayout.SOUTH);
+
+        // Search bar above the table; matching rows are filtered in place
+        JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        searchPanel.add(new JLabel("Search:"));
+        searchField = new JTextField(25);
+        searchField.addActionListener(e -> searchReports());
+        searchPanel.add(searchField);
+        JButton searchButton = new JButton("Search");
+        searchButton.addActionListener(e -> searchReports());
+        searchPanel.add(searchButton);
+        JButton clearSearchButton = new JButton("Show All");
+        clearSearchButton.addActionListener(e -> {
+            searchField.setText("");
+            rowSorter.setRowFilter(null);
+        });
+        searchPanel.add(clearSearchButton);
+        archiveLabel = new JLabel("Some archived reports are not available on this computer.");
+        archiveLabel.setVisible(false);
+        searchPanel.add(archiveLabel);
+        tablePanel.add(searchPanel, BorderLayout.NORTH);
 
         // Add panels to the frame
         add(formPanel, BorderLayout.NORTH);
         add(tablePanel, BorderLayout.CENTER);
 
+        reportLoader = new AsyncLoader(reportTable, loadingLabel);
+        // Status changes made by admins and workers are pushed in by the shared feed
+        reportChanges = ChangeFeed.getInstance().subscribeReports(report -> report.citizenId() == citizenId, this::applyChanges);
+
         // Load initial data
         loadReports();
     }
 
     /**
-     * Loads the reports submitted by the current citizen from the database and populates the table.
+     * Loads the reports submitted by the current citizen from the database and the archive and populates the table.
      */
     private void loadReports() {
+        reportLoader.load(() -> {
+            List<Report> reports = reportRepository.findByCitizen(citizenId);
+            // Read after the database, so a report archived in between shows up once rather than not at all
+            Set<Integer> hot = new HashSet<>();
+            for (Report report : reports) {
+                hot.add(report.id());
+            }
+            for (Report report : Storage.isMemory() ? List.<Report>of() : ArchiveStore.getInstance().findByCitizen(citizenId)) {
+                if (!hot.contains(report.id())) {
+                    reports.add(report);
+                }
+            }
+            return reports;
+        }, this::showReports, "Failed to load reports.");
+    }
+
+    private void showReports(List<Report> reports) {
         tableModel.setRowCount(0); // Clear existing data
-        String sql = "SELECT id, description, location, status, submission_date FROM reports WHERE citizen_id = ?";
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setInt(1, citizenId);
-            ResultSet rs = stmt.executeQuery();
-
-            while (rs.next()) {
-                Vector<Object> row = new Vector<>();
-                row.add(rs.getInt("id"));
-                row.add(rs.getString("description"));
-                row.add(rs.getString("location"));
-                row.add(rs.getString("status"));
-                row.add(rs.getTimestamp("submission_date").toString());
-                tableModel.addRow(row);
+        for (Report report : reports) {
+            tableModel.addRow(toRow(report));
+        }
+        reportChanges.loaded(reports);
+        archiveLabel.setVisible(!Storage.isMemory() && ArchiveStore.getInstance().missingSegments() > 0);
+    }
+
+    /**
+     * Shows only the citizen's reports that match the search text. An empty search shows all of them.
+     */
+    private void searchReports() {
+        String query = searchField.getText().trim();
+        if (query.isEmpty()) {
+            rowSorter.setRowFilter(null);
+            return;
+        }
+        reportLoader.load(() -> {
+            Set<Integer> ids = new HashSet<>();
+            for (SearchIndex.Hit hit : SearchIndex.getInstance().search(query, citizenId, Integer.MAX_VALUE)) {
+                ids.add(hit.reportId());
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Failed to load reports.", "Database Error", JOptionPane.ERROR_MESSAGE);
+            return ids;
+        }, ids -> rowSorter.setRowFilter(new RowFilter<>() {
+            @Override
+            public boolean include(Entry<? extends DefaultTableModel, ? extends Integer> entry) {
+                return ids.contains((Integer) entry.getValue(0));
+            }
+        }), "Failed to search reports.");
+    }
+
+    /**
+     * Patches reports changed since the last refresh into the table, appending new ones.
+     */
+    private void applyChanges(List<Report> changed) {
+        Map<Integer, Integer> rowById = new HashMap<>();
+        for (int i = 0; i < tableModel.getRowCount(); i++) {
+            rowById.put((Integer) tableModel.getValueAt(i, 0), i);
         }
+        for (Report report : changed) {
+            Integer row = rowById.get(report.id());
+            if (row == null) {
+                tableModel.addRow(toRow(report));
+            } else {
+                tableModel.setValueAt(report.status(), row, 3);
+            }
+        }
+    }
+
+    private Vector<Object> toRow(Report report) {
+        Vector<Object> row = new Vector<>();
+        row.add(report.id());
+        row.add(report.description());
+        row.add(report.location());
+        row.add(report.status());
+        row.add(report.submissionDate().toString());
+        return row;
+    }
+
+    /**
+     * Lets the citizen pick a photo of the waste for the next report; cancelling removes the one picked before.
+     */
+    private void choosePhoto() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new FileNameExtensionFilter("Photos", "jpg", "jpeg", "png", "gif", "bmp"));
+        boolean chosen = chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION;
+        photoFile = chosen ? chooser.getSelectedFile().toPath() : null;
+        photoLabel.setText(chosen ? photoFile.getFileName().toString() : "No photo");
     }
 
     /**
@@ -100,24 +215,81 @@ public class CitizenDashboard extends JFrame {
             return;
         }
 
-        String sql = "INSERT INTO reports (citizen_id, description, location) VALUES (?, ?, ?)";
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setInt(1, citizenId);
-            stmt.setString(2, description);
-            stmt.setString(3, location);
+        submitButton.setEnabled(false); // Prevent double submission while the insert runs
+        // Look for an open report about the same problem first; the lookup is in memory once the index is loaded
+        AsyncLoader.perform(() -> DuplicateDetector.getInstance().findDuplicate(description, location), match -> {
+            Integer duplicateOf = null;
+            if (match != null) {
+                int choice = JOptionPane.showConfirmDialog(this,
+                        "A similar open report already exists (report #" + match.reportId() + ").\n"
+                                + "Link your report to it instead of requesting a separate pickup?",
+                        "Possible Duplicate", JOptionPane.YES_NO_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE);
+                if (choice == JOptionPane.CANCEL_OPTION || choice == JOptionPane.CLOSED_OPTION) {
+                    submitButton.setEnabled(true);
+                    return;
+                }
+                duplicateOf = choice == JOptionPane.YES_OPTION ? match.reportId() : null;
+            }
+            insertReport(description, location, duplicateOf);
+        }, error -> {
+            // Duplicate detection is a convenience; submit normally if it is unavailable
+            error.printStackTrace();
+            insertReport(description, location, null);
+        });
+    }
 
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected > 0) {
-                JOptionPane.showMessageDialog(this, "Report submitted successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
-                descriptionField.setText("");
-                locationField.setText("");
-                loadReports(); // Refresh the table
+    /**
+     * Journals the report locally, from where it reaches the database in the background and then shows up in
+     * the table through the change feed. Falls back to inserting directly if the journal cannot take it.
+     */
+    private void insertReport(String description, String location, Integer duplicateOf) {
+        Path photoFile = this.photoFile;
+        AsyncLoader.perform(() -> {
+            // Stored first and only referenced by its hash, so the journal and the database stay small
+            String photo = null;
+            if (photoFile != null) {
+                try {
+                    photo = BlobStore.getInstance().put(photoFile);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException("The photo could not be attached: " + ex.getMessage(), ex);
+                }
+            }
+            if (Storage.isMemory()) {
+                reportRepository.insert(citizenId, description, location, duplicateOf, photo); // Journaled by the engine itself
+                return true;
+            }
+            try {
+                SubmissionJournal.getInstance().append(citizenId, description, location, duplicateOf, photo);
+                return SubmissionJournal.getInstance().isDatabaseReachable();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                reportRepository.insert(citizenId, description, location, duplicateOf, photo);
+                return true;
+            }
+        }, reachable -> {
+            submitButton.setEnabled(true);
+            String message = !reachable ? "Report saved. It will be sent as soon as the server is reachable again."
+                    : duplicateOf == null ? "Report submitted successfully!"
+                    : "Report submitted and linked to report #" + duplicateOf + ".";
+            JOptionPane.showMessageDialog(this, message, "Success", JOptionPane.INFORMATION_MESSAGE);
+            descriptionField.setText("");
+            locationField.setText("");
+            this.photoFile = null;
+            photoLabel.setText("No photo");
+        }, error -> {
+            submitButton.setEnabled(true);
+            error.printStackTrace();
+            if (error instanceof UncheckedIOException) {
+                JOptionPane.showMessageDialog(this, error.getMessage(), "Photo Error", JOptionPane.WARNING_MESSAGE);
+                return;
             }
-        } catch (SQLException ex) {
-            ex.printStackTrace();
             JOptionPane.showMessageDialog(this, "Failed to submit report.", "Database Error", JOptionPane.ERROR_MESSAGE);
-        }
+        });
+    }
+
+    @Override
+    public void dispose() {
+        reportChanges.close(); // Stop receiving changes for a closed window
+        super.dispose();
     }
 }
@@ -0,0 +1,530 @@
+package src;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A small, bounded JDBC connection pool used behind {@link DBConnection}.
+ * Physical connections are opened lazily up to a maximum size and handed out as proxies:
+ * calling close() on a borrowed connection returns it to the pool instead of closing the socket.
+ * Each physical connection keeps its own cache of prepared statements, so the same SQL issued
+ * by the dashboards is only prepared once per connection.
+ */
+public class ConnectionPool {
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long maxLifetimeMillis;
+    private final int statementCacheSize;
+
+    // Connections idle for less than this are handed out without a validation round trip
+    private static final long VALIDATION_SKIP_MILLIS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Deque<PooledConnection> idle = new ArrayDeque<>(); // guarded by lock
+    private int totalConnections; // guarded by lock, includes connections being opened
+    private boolean shutdown; // guarded by lock
+
+    private final ScheduledExecutorService housekeeper;
+
+    // Statistics
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong handshakes = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+
+    public ConnectionPool(String url, String user, String password, int maxSize,
+                          long borrowTimeoutMillis, long idleTimeoutMillis, long maxLifetimeMillis,
+                          int statementCacheSize) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxLifetimeMillis = maxLifetimeMillis;
+        this.statementCacheSize = statementCacheSize;
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, Math.min(idleTimeoutMillis, maxLifetimeMillis) / 4);
+        housekeeper.scheduleWithFixedDelay(this::evictExpired, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if the pool is not yet full.
+     * Waits up to the configured borrow timeout when every connection is in use.
+     *
+     * @return A connection whose close() returns it to the pool.
+     * @throws SQLException if no connection becomes available in time or one cannot be opened.
+     */
+    public Connection borrow() throws SQLException {
+        long start = System.nanoTime();
+        long remaining = TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+        while (true) {
+            PooledConnection candidate = null;
+            boolean openNew = false;
+            lock.lock();
+            try {
+                while (true) {
+                    if (shutdown) {
+                        throw new SQLException("Connection pool has been shut down.");
+                    }
+                    candidate = idle.pollFirst();
+                    if (candidate != null) {
+                        break;
+                    }
+                    if (totalConnections < maxSize) {
+                        totalConnections++;
+                        openNew = true;
+                        break;
+                    }
+                    if (remaining <= 0) {
+                        timeouts.incrementAndGet();
+                        throw new SQLException("Timed out after " + borrowTimeoutMillis
+                                + " ms waiting for a database connection.", "08001");
+                    }
+                    try {
+                        remaining = available.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a database connection.", e);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (openNew) {
+                try {
+                    candidate = new PooledConnection(DriverManager.getConnection(url, user, password));
+                    handshakes.incrementAndGet();
+                } catch (SQLException | RuntimeException e) {
+                    discardSlot();
+                    throw e;
+                }
+            } else if (!isUsable(candidate)) {
+                closeQuietly(candidate);
+                discardSlot();
+                continue; // Try the next idle connection or open a fresh one
+            }
+
+            recordWait(System.nanoTime() - start);
+            borrows.incrementAndGet();
+            return candidate.lease();
+        }
+    }
+
+    /**
+     * Checks an idle connection before handing it out: expired connections are dropped and
+     * connections that sat idle for a while are pinged.
+     */
+    private boolean isUsable(PooledConnection pc) {
+        long now = System.currentTimeMillis();
+        if (now - pc.createdAt >= maxLifetimeMillis) {
+            evictions.incrementAndGet();
+            return false;
+        }
+        if (now - pc.lastReturned < VALIDATION_SKIP_MILLIS) {
+            return true;
+        }
+        try {
+            if (pc.physical.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                return true;
+            }
+        } catch (SQLException ignored) {
+            // Treated the same as an invalid connection
+        }
+        validationFailures.incrementAndGet();
+        return false;
+    }
+
+    private void recordWait(long nanos) {
+        totalWaitNanos.addAndGet(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Returns a connection to the idle list, or closes it if it is broken or past its lifetime.
+     */
+    private void release(PooledConnection pc) {
+        boolean reusable;
+        try {
+            pc.reset();
+            reusable = !pc.physical.isClosed()
+                    && System.currentTimeMillis() - pc.createdAt < maxLifetimeMillis;
+        } catch (SQLException e) {
+            reusable = false;
+        }
+
+        if (reusable) {
+            pc.lastReturned = System.currentTimeMillis();
+            lock.lock();
+            try {
+                if (!shutdown) {
+                    idle.offerFirst(pc); // LIFO keeps the hottest connections in use
+                    available.signal();
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        closeQuietly(pc);
+        discardSlot();
+    }
+
+    private void discardSlot() {
+        lock.lock();
+        try {
+            totalConnections--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes idle connections that exceeded the idle timeout or their maximum lifetime.
+     */
+    private void evictExpired() {
+        List<PooledConnection> expired = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            Iterator<PooledConnection> it = idle.iterator();
+            while (it.hasNext()) {
+                PooledConnection pc = it.next();
+                if (now - pc.lastReturned >= idleTimeoutMillis || now - pc.createdAt >= maxLifetimeMillis) {
+                    it.remove();
+                    totalConnections--;
+                    expired.add(pc);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (PooledConnection pc : expired) {
+            evictions.incrementAndGet();
+            closeQuietly(pc);
+        }
+    }
+
+    /**
+     * Closes all idle connections and refuses further borrows.
+     * Connections still in use are closed when they are returned.
+     */
+    public void shutdown() {
+        List<PooledConnection> toClose;
+        lock.lock();
+        try {
+            shutdown = true;
+            toClose = new ArrayList<>(idle);
+            totalConnections -= idle.size();
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        housekeeper.shutdownNow();
+        toClose.forEach(this::closeQuietly);
+    }
+
+    private void closeQuietly(PooledConnection pc) {
+        pc.closeStatements();
+        try {
+            pc.physical.close();
+        } catch (SQLException ignored) {
+            // Nothing useful to do with a failure while discarding a connection
+        }
+    }
+
+    /**
+     * @return A point-in-time snapshot of the pool's counters.
+     */
+    public Stats getStats() {
+        int idleCount;
+        int total;
+        lock.lock();
+        try {
+            idleCount = idle.size();
+            total = totalConnections;
+        } finally {
+            lock.unlock();
+        }
+        return new Stats(total - idleCount, idleCount, maxSize, borrows.get(), handshakes.get(),
+                evictions.get(), validationFailures.get(), timeouts.get(),
+                totalWaitNanos.get(), maxWaitNanos.get(),
+                statementCacheHits.get(), statementCacheMisses.get());
+    }
+
+    /**
+     * An immutable snapshot of pool statistics.
+     */
+    public static class Stats {
+        public final int active;
+        public final int idle;
+        public final int maxSize;
+        public final long borrows;
+        public final long handshakes;
+        public final long evictions;
+        public final long validationFailures;
+        public final long timeouts;
+        public final long totalWaitNanos;
+        public final long maxWaitNanos;
+        public final long statementCacheHits;
+        public final long statementCacheMisses;
+
+        Stats(int active, int idle, int maxSize, long borrows, long handshakes, long evictions,
+              long validationFailures, long timeouts, long totalWaitNanos, long maxWaitNanos,
+              long statementCacheHits, long statementCacheMisses) {
+            this.active = active;
+            this.idle = idle;
+            this.maxSize = maxSize;
+            this.borrows = borrows;
+            this.handshakes = handshakes;
+            this.evictions = evictions;
+            this.validationFailures = validationFailures;
+            this.timeouts = timeouts;
+            this.totalWaitNanos = totalWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.statementCacheHits = statementCacheHits;
+            this.statementCacheMisses = statementCacheMisses;
+        }
+
+        /**
+         * @return How many borrows were served by an existing connection instead of a new handshake.
+         */
+        public long getHandshakesAvoided() {
+            return Math.max(0, borrows - handshakes);
+        }
+
+        public double getAverageWaitMillis() {
+            return borrows == 0 ? 0 : totalWaitNanos / 1_000_000.0 / borrows;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("active=%d idle=%d max=%d borrows=%d handshakes=%d avoided=%d "
+                            + "avgWait=%.3fms maxWait=%.3fms evictions=%d invalid=%d timeouts=%d "
+                            + "stmtCache=%d/%d",
+                    active, idle, maxSize, borrows, handshakes, getHandshakesAvoided(),
+                    getAverageWaitMillis(), maxWaitNanos / 1_000_000.0, evictions,
+                    validationFailures, timeouts, statementCacheHits,
+                    statementCacheHits + statementCacheMisses);
+        }
+    }
+
+    /**
+     * A physical connection owned by the pool, together with its prepared statement cache.
+     */
+    private class PooledConnection {
+        final Connection physical;
+        final long createdAt = System.currentTimeMillis();
+        volatile long lastReturned = createdAt;
+
+        // Cached statements keyed by SQL plus prepareStatement arguments, in LRU order
+        private final LinkedHashMap<String, CachedStatement> statementCache =
+                new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                        if (size() > statementCacheSize && !eldest.getValue().inUse) {
+                            closeStatement(eldest.getValue().statement);
+                            return true;
+                        }
+                        return false;
+                    }
+                };
+        // Statements that bypass the cache; closed when the connection is returned
+        private final List<Statement> uncached = new ArrayList<>();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new LeaseHandler(this));
+        }
+
+        PreparedStatement prepare(Method method, Object[] args) throws Throwable {
+            String key = args.length == 1 ? (String) args[0] : args[0] + "\u0000" + Arrays.toString(Arrays.copyOfRange(args, 1, args.length));
+            CachedStatement cached = statementCache.get(key);
+            if (cached != null && !cached.inUse && !cached.statement.isClosed()) {
+                statementCacheHits.incrementAndGet();
+            } else if (cached != null && cached.inUse) {
+                // Same SQL prepared twice on one connection at once; hand out a throwaway statement
+                PreparedStatement stmt = (PreparedStatement) invoke(physical, method, args);
+                uncached.add(stmt);
+                return stmt;
+            } else {
+                statementCacheMisses.incrementAndGet();
+                cached = new CachedStatement((PreparedStatement) invoke(physical, method, args));
+                statementCache.put(key, cached);
+            }
+            cached.inUse = true;
+            return cached.proxy;
+        }
+
+        /**
+         * Puts the physical connection back into a clean state before it is reused.
+         */
+        void reset() throws SQLException {
+            for (Statement stmt : uncached) {
+                closeStatement(stmt);
+            }
+            uncached.clear();
+            for (CachedStatement cached : statementCache.values()) {
+                cached.recycle();
+            }
+            if (!physical.isClosed() && !physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+        }
+
+        void closeStatements() {
+            for (CachedStatement cached : statementCache.values()) {
+                closeStatement(cached.statement);
+            }
+            statementCache.clear();
+            uncached.forEach(this::closeStatement);
+            uncached.clear();
+        }
+
+        private void closeStatement(Statement stmt) {
+            try {
+                stmt.close();
+            } catch (SQLException ignored) {
+                // The statement is being discarded anyway
+            }
+        }
+    }
+
+    /**
+     * A prepared statement kept open by the pool. Its proxy turns close() into "return to cache".
+     */
+    private static class CachedStatement {
+        final PreparedStatement statement;
+        final PreparedStatement proxy;
+        boolean inUse;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, (p, method, args) -> {
+                        switch (method.getName()) {
+                            case "close":
+                                recycle();
+                                return null;
+                            case "isClosed":
+                                return !inUse || statement.isClosed();
+                            default:
+                                return invoke(statement, method, args);
+                        }
+                    });
+        }
+
+        void recycle() {
+            if (!inUse) {
+                return;
+            }
+            inUse = false;
+            try {
+                statement.clearParameters();
+                statement.clearBatch();
+            } catch (SQLException ignored) {
+                // A broken statement will fail again on its next use and be replaced
+            }
+        }
+    }
+
+    /**
+     * Invocation handler for one lease of a pooled connection.
+     * A fresh handler per lease makes a closed handle unusable even after the connection is reused.
+     */
+    private class LeaseHandler implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean closed;
+
+        LeaseHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + pooled.physical;
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Connection has already been returned to the pool.", "08003");
+            }
+            if (method.getName().equals("prepareStatement") && statementCacheSize > 0) {
+                return pooled.prepare(method, args);
+            }
+            Object result = ConnectionPool.invoke(pooled.physical, method, args);
+            if (result instanceof Statement) {
+                pooled.uncached.add((Statement) result);
+            }
+            return result;
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
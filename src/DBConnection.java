@@ -1,32 +1,48 @@
 package src;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A utility class to manage the connection to the MySQL database.
- * This version creates a new connection on each request, which is a more robust
- * pattern for this type of application and avoids "connection closed" errors.
+ * Connections are handed out by a bounded {@link ConnectionPool}, so the TCP and authentication
+ * handshake is paid once per physical connection instead of on every query. Callers keep using
+ * try-with-resources; closing a connection simply returns it to the pool.
+ * With -Ddb.replicas set, dashboard list reads taken through {@link #getReadConnection()} are served by
+ * replicas instead, as decided by {@link ReplicaRouter}.
  */
 public class DBConnection {
 
     // Database connection details
     // I've kept the '?serverTimezone=UTC' addition for compatibility with modern MySQL.
-    private static final String URL = "jdbc:mysql://localhost:3306/waste_management?serverTimezone=UTC";
-    private static final String USER = "root"; // <-- YOUR MYSQL USERNAME
-    private static final String PASSWORD = "rootpass"; // <-- YOUR MYSQL PASSWORD
+    // Server-side prepared statements let the pool's statement cache skip re-parsing on the server too.
+    // rewriteBatchedStatements turns JDBC batches into multi-row statements, one round trip per batch.
+    // -Ddb.url, -Ddb.user and -Ddb.password override these, e.g. to point benchmarks at a scratch database.
+    private static final String URL = System.getProperty("db.url",
+            "jdbc:mysql://localhost:3306/waste_management?serverTimezone=UTC"
+            + "&useServerPrepStmts=true&rewriteBatchedStatements=true");
+    private static final String USER = System.getProperty("db.user", "root"); // <-- YOUR MYSQL USERNAME
+    private static final String PASSWORD = System.getProperty("db.password", "rootpass"); // <-- YOUR MYSQL PASSWORD
 
-    // Private constructor to prevent instantiation
-    private DBConnection() {}
+    // Pool settings, overridable with -D flags on the command line
+    private static final int POOL_SIZE = Integer.getInteger("db.pool.size", 10);
+    private static final long BORROW_TIMEOUT_MILLIS = Long.getLong("db.pool.borrowTimeoutMillis", 5_000L);
+    private static final long IDLE_TIMEOUT_MILLIS = Long.getLong("db.pool.idleTimeoutMillis", 5 * 60_000L);
+    private static final long MAX_LIFETIME_MILLIS = Long.getLong("db.pool.maxLifetimeMillis", 30 * 60_000L);
+    private static final int STATEMENT_CACHE_SIZE = Integer.getInteger("db.pool.statementCacheSize", 32);
 
-    /**
-     * Establishes and returns a new database connection.
-     *
-     * @return A new, active database connection.
-     * @throws SQLException if a database access error occurs.
-     */
-    public static Connection getConnection() throws SQLException {
+    // Read replicas: JDBC URLs separated by ';', sharing the user and password above
+    private static final String REPLICAS = System.getProperty("db.replicas", "");
+    private static final int REPLICA_POOL_SIZE = Integer.getInteger("db.replicaPoolSize", POOL_SIZE);
+    private static final double REPLICA_MAX_LAG_SECONDS = Double.parseDouble(System.getProperty("db.replicaMaxLagSeconds", "5"));
+    private static final long REPLICA_CHECK_MILLIS = Long.getLong("db.replicaCheckMillis", 1000L);
+
+    private static final ConnectionPool POOL;
+    private static final ReplicaRouter ROUTER; // null without replicas
+
+    static {
         try {
             // Ensure the MySQL JDBC driver is loaded.
             Class.forName("com.mysql.cj.jdbc.Driver");
@@ -34,7 +50,68 @@ public class DBConnection {
             // This is a critical error, so we wrap it in a runtime exception.
             throw new RuntimeException("MySQL JDBC Driver not found!", e);
         }
-        // This line now returns a fresh connection every time the method is called.
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+        POOL = new ConnectionPool(URL, USER, PASSWORD, POOL_SIZE, BORROW_TIMEOUT_MILLIS,
+                IDLE_TIMEOUT_MILLIS, MAX_LIFETIME_MILLIS, STATEMENT_CACHE_SIZE);
+        Runtime.getRuntime().addShutdownHook(new Thread(POOL::shutdown, "db-pool-shutdown"));
+
+        List<String> urls = new ArrayList<>();
+        List<ConnectionPool> pools = new ArrayList<>();
+        for (String url : REPLICAS.split(";")) {
+            if (!url.isBlank()) {
+                urls.add(url.strip());
+                pools.add(new ConnectionPool(url.strip(), USER, PASSWORD, REPLICA_POOL_SIZE, BORROW_TIMEOUT_MILLIS,
+                        IDLE_TIMEOUT_MILLIS, MAX_LIFETIME_MILLIS, STATEMENT_CACHE_SIZE));
+            }
+        }
+        ROUTER = urls.isEmpty() ? null : new ReplicaRouter(urls, pools, REPLICA_MAX_LAG_SECONDS, REPLICA_CHECK_MILLIS);
+        if (ROUTER != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(ROUTER::shutdown, "db-replica-shutdown"));
+        }
+    }
+
+    // Private constructor to prevent instantiation
+    private DBConnection() {}
+
+    /**
+     * Borrows a database connection from the pool.
+     * Closing the returned connection hands it back to the pool. Its statements are timed by {@link QueryMetrics}.
+     *
+     * @return An active, validated database connection.
+     * @throws SQLException if a database access error occurs or the pool is exhausted.
+     */
+    public static Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        Connection conn = POOL.borrow();
+        if (ROUTER != null) {
+            conn = ROUTER.trackWrites(conn); // So the session's next reads wait for replicas to apply its writes
+        }
+        return QueryMetrics.getInstance().wrap(conn, System.nanoTime() - start);
+    }
+
+    /**
+     * Borrows a connection for a read-only query that may be served slightly behind the primary.
+     * Without replicas, or when none is healthy and has applied this session's writes, it is a primary connection.
+     * Only use it for reads whose results are shown as they are, never for reads that decide a write.
+     *
+     * @return An active database connection; closing it hands it back.
+     * @throws SQLException if a database access error occurs or the pool is exhausted.
+     */
+    public static Connection getReadConnection() throws SQLException {
+        if (ROUTER == null) {
+            return getConnection();
+        }
+        long start = System.nanoTime();
+        Connection conn = ROUTER.borrowForRead();
+        if (conn == null) {
+            return getConnection();
+        }
+        return QueryMetrics.getInstance().wrap(conn, System.nanoTime() - start);
+    }
+
+    /**
+     * @return Live statistics for the connection pool (active, idle, wait time, handshakes avoided).
+     */
+    public static ConnectionPool.Stats getPoolStats() {
+        return POOL.getStats();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,94 @@
+package src;
+
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs database work off the Swing event dispatch thread.
+ * Uses a virtual-thread-per-task executor when the running JDK provides one, otherwise a small
+ * pool of daemon platform threads. Concurrency against MySQL is bounded by the connection pool either way.
+ */
+public class DataExecutor {
+
+    private static final int FALLBACK_THREADS = Integer.getInteger("db.executor.threads", 8);
+    private static final ExecutorService EXECUTOR = newExecutor("db-worker", FALLBACK_THREADS);
+
+    // Private constructor to prevent instantiation
+    private DataExecutor() {}
+
+    /**
+     * A unit of database work that may throw SQLException.
+     * @param <T> The type of the result.
+     */
+    @FunctionalInterface
+    public interface SqlWork<T> {
+        T call() throws SQLException;
+    }
+
+    /**
+     * Schedules database work on the data executor.
+     * Work that is cancelled before it starts is skipped entirely.
+     *
+     * @param work The work to run.
+     * @return A future completed with the work's result, or exceptionally with its SQLException.
+     */
+    public static <T> CompletableFuture<T> submit(SqlWork<T> work) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        EXECUTOR.execute(() -> {
+            if (future.isDone()) {
+                return; // Cancelled while queued
+            }
+            try {
+                future.complete(work.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Strips the CompletionException/ExecutionException wrappers added by futures.
+     */
+    public static Throwable unwrap(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        return t;
+    }
+
+    /**
+     * @return true if the failure is just a cancelled (stale) request rather than a real error.
+     */
+    public static boolean isCancellation(Throwable t) {
+        return unwrap(t) instanceof CancellationException;
+    }
+
+    /**
+     * Creates a virtual-thread-per-task executor when the running JDK provides one,
+     * otherwise a fixed pool of daemon threads.
+     * @param threadName Name prefix for the fallback pool's threads.
+     * @param fallbackThreads Size of the fallback pool.
+     */
+    public static ExecutorService newExecutor(String threadName, int fallbackThreads) {
+        try {
+            // Executors.newVirtualThreadPerTaskExecutor() exists from JDK 21 onwards
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newFixedThreadPool(fallbackThreads, r -> {
+                Thread t = new Thread(r, threadName + "-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+}
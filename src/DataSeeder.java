@@ -0,0 +1,254 @@
+package src;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Random;
+
+/**
+ * Fills a scratch database with synthetic users, reports and tasks for benchmarks and load tests.
+ * The data is skewed the way a real city is: a few citizens file most reports (Zipf-distributed),
+ * a handful of locations account for most complaints, and older reports are more likely to be done.
+ * Everything is inserted with batched multi-row statements in chunks, so 10M rows take minutes rather than hours.
+ *
+ * Seeding writes a lot of rows, so it refuses to touch a database whose name does not end in "_bench"
+ * unless -Dseed.force=true is given.
+ */
+public class DataSeeder {
+
+    static final String[] STREETS = {"Main Street", "Market Road", "Station Road", "Park Avenue", "Lake View",
+            "Church Lane", "Mill Road", "High Street", "River Side", "Hill Top", "Old Town Square", "Harbour Way"};
+    static final String[] PROBLEMS = {"Overflowing garbage bin", "Broken bin lid", "Illegal dumping",
+            "Missed collection", "Bad smell from container", "Recycling bin full", "Bulky waste left on pavement",
+            "Glass shards near bin", "Leaking waste truck", "Litter around bus stop"};
+
+    private static final int CHUNK = 1000;
+
+    private final Random random;
+    private final int citizens;
+    private final int workers;
+    private final ZipfSampler citizenSampler;
+    private final ZipfSampler locationSampler;
+
+    /**
+     * @param citizens Number of citizen accounts to create.
+     * @param workers Number of worker accounts to create.
+     * @param seed Random seed, so runs are reproducible.
+     */
+    public DataSeeder(int citizens, int workers, long seed) {
+        this.random = new Random(seed);
+        this.citizens = citizens;
+        this.workers = workers;
+        this.citizenSampler = new ZipfSampler(citizens, 1.1);
+        this.locationSampler = new ZipfSampler(STREETS.length * 100, 0.9);
+    }
+
+    /**
+     * Result of a seeding run: the ID ranges that were created.
+     */
+    public record Seeded(int firstCitizenId, int citizens, int firstWorkerId, int workers, long reports, long tasks) {
+    }
+
+    /**
+     * Inserts users, then reports with tasks for the reports that are in progress or completed.
+     * @param reports Number of reports to create.
+     */
+    public Seeded seed(long reports) throws SQLException {
+        try (Connection conn = DBConnection.getConnection()) {
+            checkTarget(conn);
+            int firstCitizen = insertUsers(conn, "bench_citizen_", "Citizen", citizens);
+            int firstWorker = insertUsers(conn, "bench_worker_", "Worker", workers);
+            long tasks = insertReportsAndTasks(conn, reports, firstCitizen, firstWorker);
+            new StatisticsRepository().rebuild(); // The batches above bypass the incremental rollups
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ANALYZE TABLE users, reports, tasks, report_rollups, area_rollups, worker_rollups");
+            }
+            UserRepository.invalidateAll();
+            return new Seeded(firstCitizen, citizens, firstWorker, workers, reports, tasks);
+        }
+    }
+
+    private static void checkTarget(Connection conn) throws SQLException {
+        String catalog = conn.getCatalog();
+        if ((catalog == null || !catalog.endsWith("_bench")) && !Boolean.getBoolean("seed.force")) {
+            throw new SQLException("Refusing to seed database '" + catalog
+                    + "'. Point -Ddb.url at a *_bench database or pass -Dseed.force=true.");
+        }
+    }
+
+    private int insertUsers(Connection conn, String prefix, String role, int count) throws SQLException {
+        // Usernames carry a run-specific suffix so seeding twice does not collide on the UNIQUE username.
+        // IDs are assumed consecutive, which holds for batched inserts into a scratch database nobody else writes to.
+        String run = Long.toString(System.currentTimeMillis(), 36);
+        int firstId = -1;
+        conn.setAutoCommit(false);
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO users (username, password, role, latitude, longitude) VALUES (?, ?, ?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            for (int i = 0; i < count; i++) {
+                stmt.setString(1, prefix + run + "_" + i);
+                stmt.setString(2, "bench");
+                stmt.setString(3, role);
+                // Workers are based somewhere along the streets reports come from; citizens have no location
+                double[] base = role.equals("Worker") ? coordinates(STREETS[random.nextInt(STREETS.length)]) : null;
+                setCoordinate(stmt, 4, base, 0);
+                setCoordinate(stmt, 5, base, 1);
+                stmt.addBatch();
+                if ((i + 1) % CHUNK == 0 || i == count - 1) {
+                    stmt.executeBatch();
+                    if (firstId < 0) {
+                        try (ResultSet keys = stmt.getGeneratedKeys()) {
+                            keys.next();
+                            firstId = keys.getInt(1);
+                        }
+                    }
+                    conn.commit();
+                }
+            }
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        return firstId;
+    }
+
+    private long insertReportsAndTasks(Connection conn, long count, int firstCitizen, int firstWorker) throws SQLException {
+        long now = System.currentTimeMillis();
+        long yearMillis = 365L * 24 * 3_600_000L;
+        long tasks = 0;
+        conn.setAutoCommit(false);
+        try (PreparedStatement reportStmt = conn.prepareStatement(
+                "INSERT INTO reports (citizen_id, description, location, status, submission_date, latitude, longitude, area) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement taskStmt = conn.prepareStatement(
+                "INSERT INTO tasks (report_id, worker_id, status, assigned_date, completed_date) VALUES (?, ?, ?, ?, ?)")) {
+
+            String[] statuses = new String[CHUNK];
+            long[] submitted = new long[CHUNK];
+            for (long done = 0; done < count; ) {
+                int n = (int) Math.min(CHUNK, count - done);
+                for (int i = 0; i < n; i++) {
+                    // Age is skewed towards recent reports; old reports are mostly completed
+                    double age = Math.pow(random.nextDouble(), 2);
+                    submitted[i] = now - (long) (age * yearMillis);
+                    double r = random.nextDouble();
+                    statuses[i] = r < age * 0.95 ? "Completed" : r < age * 0.95 + 0.15 ? "In Progress" : "Pending";
+
+                    reportStmt.setInt(1, firstCitizen + citizenSampler.sample(random));
+                    reportStmt.setString(2, PROBLEMS[random.nextInt(PROBLEMS.length)] + " #" + (done + i));
+                    String location = location(locationSampler.sample(random));
+                    double[] at = coordinates(location);
+                    reportStmt.setString(3, location);
+                    reportStmt.setString(4, statuses[i]);
+                    reportStmt.setTimestamp(5, new Timestamp(submitted[i]));
+                    setCoordinate(reportStmt, 6, at, 0);
+                    setCoordinate(reportStmt, 7, at, 1);
+                    reportStmt.setString(8, Gazetteer.getDefault().area(location));
+                    reportStmt.addBatch();
+                }
+                reportStmt.executeBatch();
+                try (ResultSet keys = reportStmt.getGeneratedKeys()) {
+                    for (int i = 0; i < n && keys.next(); i++) {
+                        if (statuses[i].equals("Pending")) {
+                            continue;
+                        }
+                        long assigned = submitted[i] + random.nextInt(48 * 3_600_000);
+                        boolean completed = statuses[i].equals("Completed");
+                        taskStmt.setInt(1, keys.getInt(1));
+                        taskStmt.setInt(2, firstWorker + random.nextInt(workers));
+                        taskStmt.setString(3, completed ? "Completed" : "Assigned");
+                        taskStmt.setTimestamp(4, new Timestamp(Math.min(assigned, now)));
+                        taskStmt.setTimestamp(5, completed ? new Timestamp(Math.min(assigned + random.nextInt(72 * 3_600_000), now)) : null);
+                        taskStmt.addBatch();
+                        tasks++;
+                    }
+                }
+                taskStmt.executeBatch();
+                conn.commit();
+                done += n;
+                if (done % (CHUNK * 100L) == 0) {
+                    System.out.println("  seeded " + done + " reports");
+                }
+            }
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        return tasks;
+    }
+
+    /**
+     * Geocodes a seeded location and scatters it by up to about 300 m, so points along a street do not coincide.
+     * @return {latitude, longitude}, or null if the street is not in the gazetteer.
+     */
+    private double[] coordinates(String location) {
+        double[] at = Gazetteer.getDefault().geocode(location);
+        if (at != null) {
+            at[0] += (random.nextDouble() - 0.5) * 0.005;
+            at[1] += (random.nextDouble() - 0.5) * 0.005;
+        }
+        return at;
+    }
+
+    private static void setCoordinate(PreparedStatement stmt, int index, double[] at, int axis) throws SQLException {
+        if (at == null) {
+            stmt.setNull(index, Types.DOUBLE);
+        } else {
+            stmt.setDouble(index, at[axis]);
+        }
+    }
+
+    static String location(int index) {
+        return (index % 200 + 1) + " " + STREETS[index % STREETS.length];
+    }
+
+    /**
+     * Draws integers in [0, n) with a Zipf distribution, by binary search over the precomputed CDF.
+     */
+    static class ZipfSampler {
+        private final double[] cdf;
+
+        ZipfSampler(int n, double exponent) {
+            cdf = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1.0 / Math.pow(i + 1, exponent);
+                cdf[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cdf[i] /= sum;
+            }
+        }
+
+        int sample(Random random) {
+            double u = random.nextDouble();
+            int lo = 0;
+            int hi = cdf.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cdf[mid] < u) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    /**
+     * Usage: java src.DataSeeder [reports] [citizens] [workers]
+     */
+    public static void main(String[] args) throws SQLException {
+        long reports = args.length > 0 ? Long.parseLong(args[0]) : 10_000;
+        int citizens = args.length > 1 ? Integer.parseInt(args[1]) : (int) Math.max(100, reports / 20);
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : Math.max(10, citizens / 100);
+        SchemaMigrations.migrate();
+        long start = System.nanoTime();
+        Seeded seeded = new DataSeeder(citizens, workers, 42).seed(reports);
+        System.out.printf("Seeded %s in %.1fs%n", seeded, (System.nanoTime() - start) / 1e9);
+    }
+}
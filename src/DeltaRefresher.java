@@ -0,0 +1,183 @@
+package src;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Keeps a dashboard's change watermark and fetches only rows changed since it.
+ * updated_at is stamped when a statement runs, not when its transaction commits, so a row stamped early by a long
+ * transaction can become visible after later-stamped rows. Each poll therefore first asks the store for its change
+ * horizon, the earliest time a change that is not visible yet can be stamped with (the start of the oldest open
+ * transaction), and the next poll starts from there; rows already applied at the same version are dropped.
+ * Polls thus re-read only what open transactions may still add to, however long those run.
+ * Where the store cannot tell, and once after a full load, whose own horizon is unknown, a poll reaches back
+ * -Dfeed.overlapMillis (default 60 s) before the newest row instead; a row committed more than that after it was
+ * stamped is then missed until the next full load.
+ * A refresh requested while another is running is coalesced into a single follow-up refresh.
+ * {@link ChangeFeed} runs one per table for all dashboards of the process. All methods must be called on the EDT.
+ * @param <T> The row type.
+ */
+public class DeltaRefresher<T> {
+
+    /**
+     * Fetches the rows changed at or after a point in time.
+     */
+    @FunctionalInterface
+    public interface ChangeQuery<T> {
+        List<T> changedSince(Timestamp since) throws SQLException;
+    }
+
+    /**
+     * The rows of one poll and the horizon read just before them.
+     */
+    private record Poll<T>(Timestamp horizon, List<T> rows) {
+    }
+
+    private static final long OVERLAP_MILLIS = Long.getLong("feed.overlapMillis", 60_000L);
+
+    private final ChangeQuery<T> query;
+    private final DataExecutor.SqlWork<Timestamp> horizon;
+    private final ToIntFunction<T> id;
+    private final ToIntFunction<T> version;
+    private final Function<T, Timestamp> updatedAt;
+    private final Consumer<List<T>> apply;
+    private final Map<Integer, T> applied = new HashMap<>(); // Rows delivered within the overlap, by ID
+    private Timestamp watermark;
+    private boolean reachBack; // Whether the next poll reaches back the overlap before the watermark
+    private boolean running;
+    private boolean refreshAgain;
+
+    /**
+     * @param query Fetches changed rows.
+     * @param horizon Reads the store's change horizon, or null if it cannot tell.
+     * @param id Extracts a row's ID.
+     * @param version Extracts a row's version, which every change increments.
+     * @param updatedAt Extracts a row's updated_at.
+     * @param apply Patches the changed rows into the table model.
+     */
+    public DeltaRefresher(ChangeQuery<T> query, DataExecutor.SqlWork<Timestamp> horizon, ToIntFunction<T> id,
+                          ToIntFunction<T> version, Function<T, Timestamp> updatedAt, Consumer<List<T>> apply) {
+        this.query = query;
+        this.horizon = horizon;
+        this.id = id;
+        this.version = version;
+        this.updatedAt = updatedAt;
+        this.apply = apply;
+    }
+
+    /**
+     * Sets the watermark after a full load.
+     * @param watermark The newest updated_at the full load saw, or null if it saw no rows.
+     */
+    public void reset(Timestamp watermark) {
+        this.watermark = watermark != null ? watermark : new Timestamp(0);
+        reachBack = true;
+        applied.clear(); // The load may have read older versions than were delivered, so deliver them again
+    }
+
+    /**
+     * Sets the watermark from the newest row of a full load.
+     */
+    public void reset(List<T> rows) {
+        reset(newest(rows));
+    }
+
+    /**
+     * Moves the watermark back to that of a full load if it is older, so rows changed while the load ran are
+     * fetched again. Unlike reset, never skips rows that another consumer of the same watermark has not seen yet.
+     * @param watermark The newest updated_at the full load saw, or null if it saw no rows.
+     */
+    public void rewind(Timestamp watermark) {
+        if (this.watermark == null || (watermark != null && watermark.before(this.watermark))) {
+            reset(watermark);
+        } else {
+            applied.clear();
+        }
+    }
+
+    /**
+     * Moves the watermark back to the newest row of a full load if that is older.
+     * A load that saw no rows leaves the watermark alone, since rewinding to the beginning would fetch everything.
+     */
+    public void rewind(List<T> rows) {
+        Timestamp newest = newest(rows);
+        if (newest != null) {
+            rewind(newest);
+        }
+    }
+
+    private Timestamp newest(List<T> rows) {
+        Timestamp newest = null;
+        for (T row : rows) {
+            newest = later(newest, updatedAt.apply(row));
+        }
+        return newest;
+    }
+
+    /**
+     * Fetches and applies the rows changed since the watermark.
+     * Does nothing until the first full load has set a watermark.
+     */
+    public void refresh() {
+        if (watermark == null) {
+            return;
+        }
+        if (running) {
+            refreshAgain = true;
+            return;
+        }
+        running = true;
+        Timestamp since = since();
+        AsyncLoader.perform(() -> new Poll<>(horizon.call(), query.changedSince(since)), poll -> {
+            List<T> fresh = new ArrayList<>();
+            Timestamp newest = watermark;
+            for (T row : poll.rows()) {
+                newest = later(newest, updatedAt.apply(row));
+                T seen = applied.get(id.applyAsInt(row));
+                if (seen == null || version.applyAsInt(seen) < version.applyAsInt(row)) {
+                    applied.put(id.applyAsInt(row), row);
+                    fresh.add(row);
+                }
+            }
+            // Changes this poll could not see yet are stamped at or after the horizon
+            watermark = poll.horizon() != null ? poll.horizon() : newest;
+            reachBack = poll.horizon() == null;
+            // Rows stamped before the next poll's window cannot be fetched again
+            Timestamp next = since();
+            applied.values().removeIf(row -> updatedAt.apply(row).before(next));
+            if (!fresh.isEmpty()) {
+                apply.accept(fresh);
+            }
+            finish();
+        }, error -> {
+            error.printStackTrace();
+            finish();
+        });
+    }
+
+    private Timestamp since() {
+        return reachBack ? new Timestamp(Math.max(0, watermark.getTime() - OVERLAP_MILLIS)) : watermark;
+    }
+
+    private void finish() {
+        running = false;
+        if (refreshAgain) {
+            refreshAgain = false;
+            refresh();
+        }
+    }
+
+    private static Timestamp later(Timestamp a, Timestamp b) {
+        if (a == null) {
+            return b;
+        }
+        return b != null && b.after(a) ? b : a;
+    }
+}
@@ -0,0 +1,143 @@
+package src;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.Map;
+
+/**
+ * Admin panel showing where time goes: per-statement database timings from {@link QueryMetrics}, connection
+ * pool waits, user cache hit rates, and EDT event times and stalls from {@link EdtWatchdog}. Everything is read from memory, so it
+ * refreshes on the EDT every {@link #REFRESH_MILLIS} while the panel is shown.
+ */
+public class DiagnosticsPanel extends JPanel {
+
+    private static final int REFRESH_MILLIS = 2000;
+
+    private final DefaultTableModel statementModel = readOnlyModel("Statement", "Count", "Rows", "Errors",
+            "Total ms", "Mean ms", "p50 ms", "p99 ms", "Max ms", "Fetch p99 ms");
+    private final DefaultListModel<EdtWatchdog.Stall> stallModel = new DefaultListModel<>();
+    private final JTextArea stallDetail = new JTextArea();
+    private final JLabel databaseLabel = new JLabel(" ");
+    private final JLabel cacheLabel = new JLabel(" ");
+    private final JLabel uiLabel = new JLabel(" ");
+    private final Timer timer = new Timer(REFRESH_MILLIS, e -> refresh());
+    private long shownStalls = -1;
+
+    public DiagnosticsPanel() {
+        super(new BorderLayout(10, 10));
+
+        JPanel summary = new JPanel(new GridLayout(3, 1));
+        summary.add(databaseLabel);
+        summary.add(cacheLabel);
+        summary.add(uiLabel);
+        add(summary, BorderLayout.NORTH);
+
+        JTable statementTable = new JTable(statementModel);
+        statementTable.setAutoCreateRowSorter(true);
+        statementTable.getColumnModel().getColumn(0).setPreferredWidth(500);
+        JPanel statements = new JPanel(new BorderLayout());
+        statements.setBorder(BorderFactory.createTitledBorder("Database Statements (most total time first)"));
+        statements.add(new JScrollPane(statementTable), BorderLayout.CENTER);
+
+        JList<EdtWatchdog.Stall> stallList = new JList<>(stallModel);
+        stallList.addListSelectionListener(e -> showStall(stallList.getSelectedValue()));
+        stallDetail.setEditable(false);
+        stallDetail.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+        JSplitPane stallSplit = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT,
+                new JScrollPane(stallList), new JScrollPane(stallDetail));
+        stallSplit.setResizeWeight(0.3);
+        JPanel stalls = new JPanel(new BorderLayout());
+        stalls.setBorder(BorderFactory.createTitledBorder("UI Stalls (select one for its stack samples)"));
+        stalls.add(stallSplit, BorderLayout.CENTER);
+
+        JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, statements, stalls);
+        split.setResizeWeight(0.6);
+        add(split, BorderLayout.CENTER);
+
+        JPanel footer = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JButton refreshButton = new JButton("Refresh");
+        refreshButton.addActionListener(e -> refresh());
+        footer.add(refreshButton);
+        JButton resetButton = new JButton("Reset");
+        resetButton.addActionListener(e -> {
+            QueryMetrics.getInstance().reset();
+            EdtWatchdog.getInstance().reset();
+            refresh();
+        });
+        footer.add(resetButton);
+        add(footer, BorderLayout.SOUTH);
+    }
+
+    /**
+     * Starts or stops the periodic refresh, e.g. as the panel's tab is selected and left.
+     */
+    public void setActive(boolean active) {
+        if (active) {
+            refresh();
+            timer.start();
+        } else {
+            timer.stop();
+        }
+    }
+
+    private void refresh() {
+        QueryMetrics metrics = QueryMetrics.getInstance();
+        statementModel.setRowCount(0);
+        for (QueryMetrics.Summary s : metrics.summaries()) {
+            statementModel.addRow(new Object[]{s.sql(), s.executions(), s.rows(), s.errors(), millis(s.totalMillis()),
+                    millis(s.meanMillis()), millis(s.p50Millis()), millis(s.p99Millis()), millis(s.maxMillis()),
+                    millis(s.fetchP99Millis())});
+        }
+        LatencyHistogram borrow = metrics.getBorrowHistogram();
+        ConnectionPool.Stats pool = DBConnection.getPoolStats();
+        databaseLabel.setText(String.format("Database: %d statements, %d errors, p99 %.1f ms   Connection borrow: p99 %.1f ms, max %.1f ms   Pool: %d active, %d idle of %d",
+                metrics.getExecuteHistogram().getCount(), metrics.getErrors(), metrics.getExecuteHistogram().percentile(0.99) / 1e6,
+                borrow.percentile(0.99) / 1e6, borrow.getMax() / 1e6, pool.active, pool.idle, pool.maxSize));
+        cacheLabel.setText("Caches: " + UserRepository.cacheStats());
+
+        EdtWatchdog watchdog = EdtWatchdog.getInstance();
+        LatencyHistogram events = watchdog.getEventHistogram();
+        uiLabel.setText(String.format("UI: %d events, p99 %.1f ms, max %.1f ms   Stalls over %d ms: %d",
+                events.getCount(), events.percentile(0.99) / 1e6, events.getMax() / 1e6,
+                watchdog.getStallThresholdMillis(), watchdog.getStallCount()));
+        if (watchdog.getStallCount() != shownStalls) { // Rebuilding the list would drop the selection
+            shownStalls = watchdog.getStallCount();
+            stallModel.clear();
+            stallModel.addAll(watchdog.recentStalls());
+        }
+    }
+
+    private void showStall(EdtWatchdog.Stall stall) {
+        if (stall == null) {
+            return; // Selection cleared by a new stall; keep showing the last one
+        }
+        StringBuilder text = new StringBuilder(stall.event()).append("\n\n");
+        if (stall.samples().isEmpty()) {
+            text.append("No stack samples (the stall ended before the watchdog looked).");
+        }
+        for (Map.Entry<String, Integer> sample : stall.samples().entrySet()) {
+            text.append(sample.getValue()).append(" sample(s):\n").append(sample.getKey()).append('\n');
+        }
+        stallDetail.setText(text.toString());
+        stallDetail.setCaretPosition(0);
+    }
+
+    private static double millis(double millis) {
+        return Math.round(millis * 100) / 100.0;
+    }
+
+    private static DefaultTableModel readOnlyModel(String... columns) {
+        return new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+
+            @Override
+            public Class<?> getColumnClass(int column) {
+                return column == 0 ? String.class : Number.class; // Sorts the timings numerically
+            }
+        };
+    }
+}
@@ -0,0 +1,244 @@
+package src;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Finds open reports that describe the same problem as a new submission.
+ * Description and location are each cut into character 3-grams and summarized by a MinHash signature,
+ * whose slots agree between two texts with probability equal to their Jaccard similarity. The description
+ * signature is split into bands that are hashed into buckets (locality-sensitive hashing), so a lookup
+ * only compares against reports sharing at least one band instead of every open report. Candidates are
+ * accepted when both the description and the location signatures agree closely enough.
+ *
+ * Only open reports that are not themselves duplicates are indexed. The index is process-wide, loaded on
+ * first use, patched by the repositories as reports open and close, and reloaded every -Ddup.reloadMillis
+ * (default five minutes) to pick up other clients' changes.
+ */
+public class DuplicateDetector {
+
+    private static final DuplicateDetector INSTANCE = new DuplicateDetector();
+
+    private static final int SHINGLE = 3;
+    private static final int HASHES = 64;
+    private static final int BANDS = 16; // 4 rows per band: pairs above ~0.5 similarity collide in some band
+    private static final int ROWS = HASHES / BANDS;
+    private static final int LOCATION_HASHES = 32;
+    private static final double DESCRIPTION_THRESHOLD = Double.parseDouble(System.getProperty("dup.descriptionThreshold", "0.6"));
+    private static final double LOCATION_THRESHOLD = Double.parseDouble(System.getProperty("dup.locationThreshold", "0.6"));
+    private static final long RELOAD_MILLIS = Long.getLong("dup.reloadMillis", 5 * 60_000L);
+
+    private static final int[] SEEDS = new int[HASHES];
+
+    static {
+        Random random = new Random(0x5eed);
+        for (int i = 0; i < HASHES; i++) {
+            SEEDS[i] = random.nextInt();
+        }
+    }
+
+    /**
+     * An open report that a submission duplicates.
+     */
+    public record Match(int reportId, double similarity) {
+    }
+
+    /**
+     * The signatures of one indexed report.
+     */
+    private record Signature(int[] description, int[] location) {
+    }
+
+    /**
+     * The index contents; replaced wholesale on reload.
+     */
+    private static final class State {
+        final Map<Integer, Signature> signatures = new HashMap<>();
+        final Map<Long, int[]> buckets = new HashMap<>(); // Band key -> report IDs
+    }
+
+    private volatile State state = new State();
+    private volatile long loadedAt;
+    private final ReportStore reportRepository = Storage.reports();
+
+    // Private constructor; use getInstance()
+    private DuplicateDetector() {}
+
+    public static DuplicateDetector getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return The most similar open report, or null if none is similar enough.
+     * @throws SQLException if the index had to be reloaded and that failed.
+     */
+    public Match findDuplicate(String description, String location) throws SQLException {
+        ensureLoaded();
+        int[] descriptionSignature = signature(description, HASHES);
+        int[] locationSignature = signature(location, LOCATION_HASHES);
+        State current = state;
+        synchronized (current) {
+            Match best = null;
+            for (int band = 0; band < BANDS; band++) {
+                int[] ids = current.buckets.get(bandKey(descriptionSignature, band));
+                if (ids == null) {
+                    continue;
+                }
+                for (int id : ids) {
+                    Signature candidate = current.signatures.get(id);
+                    double similarity = agreement(descriptionSignature, candidate.description());
+                    if (similarity >= DESCRIPTION_THRESHOLD
+                            && agreement(locationSignature, candidate.location()) >= LOCATION_THRESHOLD
+                            && (best == null || similarity > best.similarity())) {
+                        best = new Match(id, similarity);
+                    }
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Forces a reload on the next lookup.
+     */
+    public void invalidate() {
+        loadedAt = 0;
+    }
+
+    private synchronized void ensureLoaded() throws SQLException {
+        if (System.currentTimeMillis() - loadedAt < RELOAD_MILLIS) {
+            return;
+        }
+        State loaded = new State();
+        for (Report report : reportRepository.findOpenOriginals()) {
+            add(loaded, report.id(), report.description(), report.location());
+        }
+        state = loaded;
+        loadedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Called after a report was inserted.
+     * @param duplicateOf The report it was linked to, or null; linked reports are not indexed themselves.
+     */
+    void reportOpened(int reportId, String description, String location, Integer duplicateOf) {
+        if (duplicateOf == null) {
+            State current = state;
+            synchronized (current) {
+                add(current, reportId, description, location);
+            }
+        }
+    }
+
+    /**
+     * Called after a report was completed.
+     */
+    void reportClosed(int reportId) {
+        State current = state;
+        synchronized (current) {
+            Signature removed = current.signatures.remove(reportId);
+            if (removed == null) {
+                return;
+            }
+            for (int band = 0; band < BANDS; band++) {
+                long key = bandKey(removed.description(), band);
+                int[] ids = current.buckets.get(key);
+                if (ids == null) {
+                    continue;
+                }
+                int[] kept = Arrays.stream(ids).filter(id -> id != reportId).toArray();
+                if (kept.length == 0) {
+                    current.buckets.remove(key);
+                } else {
+                    current.buckets.put(key, kept);
+                }
+            }
+        }
+    }
+
+    /**
+     * Called after report statuses were moved forward directly.
+     */
+    void statusChanged(List<Integer> reportIds, String status) {
+        // Only Completed closes a report: In Progress leaves it open and reports never move back (see ReportStatus)
+        if ("Completed".equals(status)) {
+            for (int reportId : reportIds) {
+                reportClosed(reportId);
+            }
+        }
+    }
+
+    private static void add(State state, int reportId, String description, String location) {
+        Signature signature = new Signature(signature(description, HASHES), signature(location, LOCATION_HASHES));
+        if (state.signatures.put(reportId, signature) != null) {
+            return; // Already indexed, e.g. patched in before a reload picked it up
+        }
+        for (int band = 0; band < BANDS; band++) {
+            state.buckets.merge(bandKey(signature.description(), band), new int[]{reportId}, (ids, one) -> {
+                int[] grown = Arrays.copyOf(ids, ids.length + 1);
+                grown[ids.length] = one[0];
+                return grown;
+            });
+        }
+    }
+
+    /**
+     * Computes the MinHash signature of a text's character shingles.
+     * Shingles are hashed in place from the normalized text, without creating substrings.
+     */
+    static int[] signature(String text, int hashes) {
+        int[] signature = new int[hashes];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        String normalized = " " + Gazetteer.normalize(text == null ? "" : text) + " ";
+        for (int start = 0; start + SHINGLE <= normalized.length(); start++) {
+            int shingle = 0;
+            for (int i = start; i < start + SHINGLE; i++) {
+                shingle = shingle * 31 + normalized.charAt(i);
+            }
+            for (int h = 0; h < hashes; h++) {
+                int value = mix(shingle ^ SEEDS[h]);
+                if (value < signature[h]) {
+                    signature[h] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * @return The fraction of signature slots that agree, an estimate of the Jaccard similarity.
+     */
+    private static double agreement(int[] a, int[] b) {
+        int same = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == b[i]) {
+                same++;
+            }
+        }
+        return (double) same / a.length;
+    }
+
+    private static long bandKey(int[] signature, int band) {
+        int hash = 1;
+        for (int i = band * ROWS; i < (band + 1) * ROWS; i++) {
+            hash = hash * 31 + signature[i];
+        }
+        return ((long) band << 32) | (hash & 0xFFFFFFFFL);
+    }
+
+    /**
+     * The MurmurHash3 finalizer; turns similar inputs into unrelated outputs.
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
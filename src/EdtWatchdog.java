@@ -0,0 +1,268 @@
+package src;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Times every event the EDT dispatches, repaints included, and records stalls: events that keep the EDT busy
+ * longer than -Dedt.stallMillis (default 200). While an event runs past the threshold a watcher thread samples
+ * the EDT's stack every {@link #SAMPLE_MILLIS}, so a stall shows where the time went, not just that it was lost.
+ * Time spent in a nested event loop (a modal dialog waiting for the user) does not count against the event
+ * that opened it. Exposed over JMX as src:type=EdtWatchdog and in the admin Diagnostics tab.
+ */
+public class EdtWatchdog {
+
+    private static final long SAMPLE_MILLIS = 50;
+    private static final int MAX_STALLS = 50;          // Most recent stalls kept
+    private static final int MAX_SAMPLES = 40;         // Stack samples kept per stall
+    private static final int SAMPLE_DEPTH = 12;        // Frames kept per sample
+
+    private static final EdtWatchdog INSTANCE = new EdtWatchdog();
+
+    /**
+     * The JMX view. Times are in milliseconds.
+     */
+    public interface EdtWatchdogMXBean {
+        long getEvents();
+
+        double getEventP99Millis();
+
+        double getEventMaxMillis();
+
+        long getStalls();
+
+        long getStallThresholdMillis();
+
+        void setStallThresholdMillis(long millis);
+
+        /**
+         * @return The most recent stalls, newest first, each with its most frequent stack sample.
+         */
+        String[] getRecentStalls();
+
+        void reset();
+    }
+
+    /**
+     * An event that kept the EDT busy past the threshold.
+     * @param samples Distinct stack samples, innermost frame first, with how often each was seen; most frequent first.
+     */
+    public record Stall(long startedAt, long durationMillis, String event, Map<String, Integer> samples) {
+
+        /**
+         * @return The stack seen most often during the stall, or an empty string if none was sampled.
+         */
+        public String topSample() {
+            return samples.isEmpty() ? "" : samples.keySet().iterator().next();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%tT %dms %s", startedAt, durationMillis, event);
+        }
+    }
+
+    private final LatencyHistogram events = new LatencyHistogram();
+    private volatile long stallThresholdMillis = Long.getLong("edt.stallMillis", 200L);
+    private volatile Thread edt;
+    private volatile long dispatchStart;   // System.nanoTime() when the innermost running event started, 0 when idle
+    private volatile long dispatchSequence; // Bumped for every event, so the watcher can tell one event from the next
+    private final Deque<Stall> stalls = new ArrayDeque<>(); // guarded by this
+    private long stallCount;                                // guarded by this
+
+    // The watcher's stack samples of the event currently stalling; guarded by samples
+    private final Map<String, Integer> samples = new LinkedHashMap<>();
+    private long sampledSequence = -1;
+
+    private boolean installed; // Only touched on the EDT
+
+    private EdtWatchdog() {
+        QueryMetrics.register("src:type=EdtWatchdog", new EdtWatchdogMXBean() {
+            @Override
+            public long getEvents() {
+                return events.getCount();
+            }
+
+            @Override
+            public double getEventP99Millis() {
+                return events.percentile(0.99) / 1e6;
+            }
+
+            @Override
+            public double getEventMaxMillis() {
+                return events.getMax() / 1e6;
+            }
+
+            @Override
+            public long getStalls() {
+                return getStallCount();
+            }
+
+            @Override
+            public long getStallThresholdMillis() {
+                return stallThresholdMillis;
+            }
+
+            @Override
+            public void setStallThresholdMillis(long millis) {
+                stallThresholdMillis = Math.max(SAMPLE_MILLIS, millis);
+            }
+
+            @Override
+            public String[] getRecentStalls() {
+                return recentStalls().stream().map(s -> s + "\n" + s.topSample()).toArray(String[]::new);
+            }
+
+            @Override
+            public void reset() {
+                EdtWatchdog.this.reset();
+            }
+        });
+    }
+
+    public static EdtWatchdog getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts timing EDT events. Safe to call more than once.
+     */
+    public void install() {
+        EventQueue.invokeLater(() -> {
+            if (installed) {
+                return;
+            }
+            installed = true;
+            edt = Thread.currentThread();
+            Toolkit.getDefaultToolkit().getSystemEventQueue().push(new TimingEventQueue());
+            Thread watcher = new Thread(this::watch, "edt-watchdog");
+            watcher.setDaemon(true);
+            watcher.start();
+        });
+    }
+
+    public LatencyHistogram getEventHistogram() {
+        return events;
+    }
+
+    public long getStallThresholdMillis() {
+        return stallThresholdMillis;
+    }
+
+    public synchronized long getStallCount() {
+        return stallCount;
+    }
+
+    /**
+     * @return The most recent stalls, newest first.
+     */
+    public synchronized List<Stall> recentStalls() {
+        return new ArrayList<>(stalls);
+    }
+
+    public synchronized void reset() {
+        events.reset();
+        stalls.clear();
+        stallCount = 0;
+    }
+
+    /**
+     * Times each event, restarting the clock of an outer event when a nested event loop returns to it.
+     */
+    private final class TimingEventQueue extends EventQueue {
+        @Override
+        protected void dispatchEvent(AWTEvent event) {
+            long outerStart = dispatchStart;
+            long start = System.nanoTime();
+            edt = Thread.currentThread(); // AWT may replace the EDT after it has been idle
+            dispatchSequence++;
+            dispatchStart = start;
+            try {
+                super.dispatchEvent(event);
+            } finally {
+                long end = System.nanoTime();
+                long resumed = dispatchStart; // Later than start if a nested loop returned to this event
+                if (resumed == start) {
+                    events.record(end - start); // Events that ran a nested loop are not timed
+                }
+                if (end - resumed >= stallThresholdMillis * 1_000_000L) {
+                    stalled(dispatchSequence, resumed, end, event);
+                }
+                if (outerStart != 0) {
+                    dispatchStart = end;
+                    dispatchSequence++; // The outer event starts over as far as the watcher is concerned
+                } else {
+                    dispatchStart = 0;
+                }
+            }
+        }
+    }
+
+    private void stalled(long sequence, long start, long end, AWTEvent event) {
+        Map<String, Integer> sampled;
+        synchronized (samples) {
+            sampled = sampledSequence == sequence ? sortByCount(samples) : Map.of();
+        }
+        Stall stall = new Stall(System.currentTimeMillis() - (end - start) / 1_000_000L, (end - start) / 1_000_000L,
+                describe(event), sampled);
+        synchronized (this) {
+            stalls.addFirst(stall);
+            if (stalls.size() > MAX_STALLS) {
+                stalls.removeLast();
+            }
+            stallCount++;
+        }
+    }
+
+    private void watch() {
+        while (true) {
+            try {
+                Thread.sleep(SAMPLE_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long start = dispatchStart;
+            long sequence = dispatchSequence;
+            if (start == 0 || System.nanoTime() - start < stallThresholdMillis * 1_000_000L) {
+                continue;
+            }
+            StackTraceElement[] stack = edt.getStackTrace();
+            StringBuilder sample = new StringBuilder();
+            for (int i = 0; i < Math.min(SAMPLE_DEPTH, stack.length); i++) {
+                sample.append("  at ").append(stack[i]).append('\n');
+            }
+            synchronized (samples) {
+                if (sampledSequence != sequence) {
+                    sampledSequence = sequence;
+                    samples.clear();
+                }
+                if (samples.size() < MAX_SAMPLES || samples.containsKey(sample.toString())) {
+                    samples.merge(sample.toString(), 1, Integer::sum);
+                }
+            }
+        }
+    }
+
+    private static Map<String, Integer> sortByCount(Map<String, Integer> samples) {
+        Map<String, Integer> sorted = new LinkedHashMap<>();
+        samples.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .forEach(e -> sorted.put(e.getKey(), e.getValue()));
+        return sorted;
+    }
+
+    /**
+     * @return The event type and its parameters, which for invokeLater calls name the Runnable's class.
+     */
+    private static String describe(AWTEvent event) {
+        String params = event.paramString();
+        return event.getClass().getSimpleName() + " " + (params.length() > 160 ? params.substring(0, 160) + "..." : params);
+    }
+}
@@ -0,0 +1,105 @@
+package src;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Offline geocoder for the free-text report locations.
+ * Reads place names with coordinates from a local CSV file (db/gazetteer.csv by default, or -Dgazetteer.file)
+ * and resolves a location by the longest place name it contains, so "12 Main Street, near the bakery"
+ * resolves to Main Street. The matched place also names the area a report is counted under in the statistics.
+ * No network service is involved.
+ */
+public class Gazetteer {
+
+    private static final Gazetteer DEFAULT = load(Paths.get(System.getProperty("gazetteer.file", "db/gazetteer.csv")));
+
+    /**
+     * A named place.
+     */
+    private record Place(String name, String normalizedName, double latitude, double longitude) {
+    }
+
+    private final List<Place> places; // Longest names first, so the most specific match wins
+
+    private Gazetteer(List<Place> places) {
+        places.sort((a, b) -> Integer.compare(b.normalizedName().length(), a.normalizedName().length()));
+        this.places = places;
+    }
+
+    /**
+     * @return The gazetteer loaded from the configured file; empty if the file is missing.
+     */
+    public static Gazetteer getDefault() {
+        return DEFAULT;
+    }
+
+    static Gazetteer load(Path file) {
+        List<Place> places = new ArrayList<>();
+        if (!Files.exists(file)) {
+            System.err.println("Gazetteer file " + file + " not found; report locations will not be geocoded.");
+            return new Gazetteer(places);
+        }
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split(",");
+                if (parts.length != 3) {
+                    continue;
+                }
+                try {
+                    places.add(new Place(parts[0].trim(), normalize(parts[0]), Double.parseDouble(parts[1].trim()), Double.parseDouble(parts[2].trim())));
+                } catch (NumberFormatException e) {
+                    System.err.println("Skipping malformed gazetteer line: " + line);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return new Gazetteer(places);
+    }
+
+    /**
+     * Resolves a free-text location.
+     * @return {latitude, longitude}, or null if no known place name occurs in the text.
+     */
+    public double[] geocode(String location) {
+        Place place = find(location);
+        return place == null ? null : new double[]{place.latitude(), place.longitude()};
+    }
+
+    /**
+     * @return The name of the place a free-text location resolves to, as written in the gazetteer,
+     *         or null if no known place name occurs in the text.
+     */
+    public String area(String location) {
+        Place place = find(location);
+        return place == null ? null : place.name();
+    }
+
+    private Place find(String location) {
+        if (location == null) {
+            return null;
+        }
+        String text = " " + normalize(location) + " ";
+        for (Place place : places) {
+            if (text.contains(" " + place.normalizedName() + " ")) {
+                return place;
+            }
+        }
+        return null;
+    }
+
+    static String normalize(String s) {
+        return s.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", " ").trim();
+    }
+}
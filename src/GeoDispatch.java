@@ -0,0 +1,159 @@
+package src;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dispatcher suggestions from the report and worker locations.
+ * Keeps two process-wide {@link SpatialIndex}es, open reports and worker base locations, plus the number of
+ * open tasks per worker. They are loaded from the database on first use and reloaded when older than
+ * -Dgeo.reloadMillis (default one minute); the repositories patch them in between as reports are submitted,
+ * assigned and completed, so suggestions never have to scan the tables.
+ */
+public class GeoDispatch {
+
+    private static final GeoDispatch INSTANCE = new GeoDispatch();
+
+    private static final double CELL_DEGREES = 0.01; // About 1.1 km
+    private static final long RELOAD_MILLIS = Long.getLong("geo.reloadMillis", 60_000L);
+    // Workers with this many open tasks are not suggested
+    private static final int MAX_OPEN_TASKS = Integer.getInteger("geo.maxOpenTasks", 10);
+
+    /**
+     * A worker suggested for a report.
+     */
+    public record WorkerSuggestion(User worker, double meters, int openTasks) {
+    }
+
+    // Replaced wholesale on reload, so readers never see a half-loaded index
+    private volatile SpatialIndex openReports = new SpatialIndex(CELL_DEGREES);
+    private volatile SpatialIndex workers = new SpatialIndex(CELL_DEGREES);
+    private volatile Map<Integer, Integer> openTasks = new ConcurrentHashMap<>();
+    private volatile long loadedAt; // 0 until the first load, and after invalidate()
+
+    private final ReportStore reportRepository = Storage.reports();
+    private final TaskStore taskRepository = Storage.tasks();
+    private final UserStore userRepository = Storage.users();
+
+    // Private constructor; use getInstance()
+    private GeoDispatch() {}
+
+    public static GeoDispatch getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Suggests the closest workers that still have capacity for a report.
+     * @param reportId An open report.
+     * @param k The maximum number of suggestions.
+     * @return Suggestions, closest first; empty if the report is closed or its location could not be geocoded.
+     * @throws SQLException if the indexes had to be reloaded and that failed.
+     */
+    public List<WorkerSuggestion> suggestWorkers(int reportId, int k) throws SQLException {
+        ensureLoaded();
+        List<WorkerSuggestion> suggestions = new ArrayList<>();
+        double[] at = openReports.position(reportId);
+        if (at == null) {
+            return suggestions;
+        }
+        Map<Integer, User> roster = new HashMap<>();
+        for (User worker : userRepository.findWorkers()) {
+            roster.put(worker.id(), worker);
+        }
+        List<SpatialIndex.Hit> hits = workers.nearest(at[0], at[1], k,
+                id -> roster.containsKey(id) && openTasks.getOrDefault(id, 0) < MAX_OPEN_TASKS);
+        for (SpatialIndex.Hit hit : hits) {
+            suggestions.add(new WorkerSuggestion(roster.get(hit.id()), hit.meters(), openTasks.getOrDefault(hit.id(), 0)));
+        }
+        return suggestions;
+    }
+
+    /**
+     * Finds the other open reports near a report, so a worker can be sent to all of them in one trip.
+     * @return Report IDs within the radius, closest first, excluding the report itself.
+     * @throws SQLException if the indexes had to be reloaded and that failed.
+     */
+    public List<Integer> openReportsNear(int reportId, double meters) throws SQLException {
+        ensureLoaded();
+        List<Integer> ids = new ArrayList<>();
+        double[] at = openReports.position(reportId);
+        if (at == null) {
+            return ids;
+        }
+        for (SpatialIndex.Hit hit : openReports.withinRadius(at[0], at[1], meters)) {
+            if (hit.id() != reportId) {
+                ids.add(hit.id());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Reloads the indexes if they were never loaded or have gone stale.
+     * Edits made by other clients only show up through these reloads.
+     */
+    private synchronized void ensureLoaded() throws SQLException {
+        if (System.currentTimeMillis() - loadedAt < RELOAD_MILLIS) {
+            return;
+        }
+        SpatialIndex reports = new SpatialIndex(CELL_DEGREES);
+        SpatialIndex bases = new SpatialIndex(CELL_DEGREES);
+        reportRepository.loadOpenLocations(reports);
+        userRepository.loadWorkerLocations(bases);
+        Map<Integer, Integer> counts = new ConcurrentHashMap<>(taskRepository.countOpenTasksByWorker());
+        openReports = reports;
+        workers = bases;
+        openTasks = counts;
+        loadedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Forces a reload on the next suggestion, e.g. after worker locations were edited.
+     */
+    public void invalidate() {
+        loadedAt = 0;
+    }
+
+    /**
+     * Called after a report was inserted.
+     * @param coordinates {latitude, longitude}, or null if the location could not be geocoded.
+     */
+    void reportOpened(int reportId, double[] coordinates) {
+        if (coordinates != null) {
+            openReports.put(reportId, coordinates[0], coordinates[1]);
+        }
+    }
+
+    /**
+     * Called after report statuses were moved forward directly.
+     */
+    void statusChanged(List<Integer> reportIds, String status) {
+        // Only Completed closes a report: In Progress leaves it open and reports never move back (see ReportStatus)
+        if ("Completed".equals(status)) {
+            for (int reportId : reportIds) {
+                openReports.remove(reportId);
+            }
+        }
+    }
+
+    /**
+     * Called after reports were assigned to a worker.
+     */
+    void tasksAssigned(int workerId, int count) {
+        if (count > 0) {
+            openTasks.merge(workerId, count, Integer::sum);
+        }
+    }
+
+    /**
+     * Called after a worker completed a task.
+     */
+    void taskCompleted(int workerId, int reportId) {
+        openReports.remove(reportId);
+        openTasks.computeIfPresent(workerId, (id, n) -> n > 1 ? n - 1 : null);
+    }
+}
@@ -0,0 +1,207 @@
+package src;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent report submissions into batched commits.
+ * Submissions wait in a bounded queue; writer threads take everything that queued up while the previous
+ * commit was running (up to a maximum batch size) and commit it as one transaction. Under load this turns
+ * many single-row commits into a few multi-row ones; when idle, a submission is committed right away.
+ * A full queue rejects new submissions instead of growing, which callers turn into backpressure.
+ */
+public class GroupCommitWriter implements AutoCloseable {
+
+    private final ReportSink sink;
+    private final BlockingQueue<Submission> queue;
+    private final int maxBatchRows;
+    private final long lingerNanos;
+    private final long offerTimeoutMillis;
+    private final List<Thread> writers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    // Statistics
+    private final AtomicLong acceptedRows = new AtomicLong();
+    private final AtomicLong rejectedRows = new AtomicLong();
+    private final AtomicLong committedRows = new AtomicLong();
+    private final AtomicLong failedRows = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+
+    /**
+     * One request's reports, committed together.
+     */
+    private static class Submission {
+        final List<NewReport> reports;
+        final CompletableFuture<int[]> result = new CompletableFuture<>();
+
+        Submission(List<NewReport> reports) {
+            this.reports = reports;
+        }
+    }
+
+    /**
+     * @param sink Where batches are committed.
+     * @param queueCapacity Maximum number of queued submissions.
+     * @param maxBatchRows Maximum rows per commit.
+     * @param lingerMicros How long a writer waits for more submissions before committing a partial batch.
+     * @param offerTimeoutMillis How long a submitter waits for queue space before being rejected.
+     * @param writerThreads Number of commits that may run at once.
+     */
+    public GroupCommitWriter(ReportSink sink, int queueCapacity, int maxBatchRows, long lingerMicros,
+                             long offerTimeoutMillis, int writerThreads) {
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatchRows = maxBatchRows;
+        this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(lingerMicros);
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        for (int i = 0; i < writerThreads; i++) {
+            Thread t = new Thread(this::writeLoop, "group-commit-" + (i + 1));
+            t.setDaemon(true);
+            t.start();
+            writers.add(t);
+        }
+    }
+
+    /**
+     * Queues reports to be committed together in the next batch.
+     * @return A future completed with the generated IDs once committed. It fails with
+     *         RejectedExecutionException if the queue stayed full or the writer was interrupted before committing
+     *         them, or with the SQLException of a failed commit.
+     */
+    public CompletableFuture<int[]> submit(List<NewReport> reports) {
+        Submission submission = new Submission(reports);
+        boolean queued;
+        try {
+            queued = running && queue.offer(submission, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (!queued) {
+            rejectedRows.addAndGet(reports.size());
+            submission.result.completeExceptionally(new RejectedExecutionException("Ingestion queue is full"));
+        } else {
+            acceptedRows.addAndGet(reports.size());
+        }
+        return submission.result;
+    }
+
+    private void writeLoop() {
+        List<Submission> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Submission first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                int rows = first.reports.size();
+                long deadline = System.nanoTime() + lingerNanos;
+                while (rows < maxBatchRows) {
+                    Submission next = queue.peek() != null || lingerNanos == 0
+                            ? queue.poll()
+                            : queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    rows += next.reports.size();
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                // Interrupted while gathering the batch, so none of it was committed; callers may retry
+                for (Submission s : batch) {
+                    s.result.completeExceptionally(new RejectedExecutionException("Ingestion writer was interrupted"));
+                }
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                // Never let one bad batch kill the writer thread
+                for (Submission s : batch) {
+                    s.result.completeExceptionally(e);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Commits a batch in one transaction. If it fails, each submission is retried on its own so one bad
+     * request (for example an unknown citizen) cannot fail the requests it happened to be batched with.
+     */
+    private void commit(List<Submission> batch) {
+        List<NewReport> rows = new ArrayList<>();
+        for (Submission s : batch) {
+            rows.addAll(s.reports);
+        }
+        try {
+            int[] ids = sink.insertAll(rows);
+            commits.incrementAndGet();
+            committedRows.addAndGet(rows.size());
+            int offset = 0;
+            for (Submission s : batch) {
+                int[] mine = new int[s.reports.size()];
+                System.arraycopy(ids, offset, mine, 0, mine.length);
+                offset += mine.length;
+                s.result.complete(mine);
+            }
+        } catch (SQLException e) {
+            if (batch.size() == 1) {
+                failedRows.addAndGet(rows.size());
+                batch.get(0).result.completeExceptionally(e);
+                return;
+            }
+            for (Submission s : batch) {
+                commit(List.of(s));
+            }
+        }
+    }
+
+    /**
+     * Stops accepting submissions, commits what is already queued and waits for the writers to finish.
+     */
+    @Override
+    public void close() {
+        running = false;
+        for (Thread t : writers) {
+            try {
+                t.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return The writer's counters as a JSON object.
+     */
+    public String statsJson() {
+        long c = commits.get();
+        long rows = committedRows.get();
+        return String.format("{\"acceptedRows\":%d,\"rejectedRows\":%d,\"committedRows\":%d,\"failedRows\":%d,"
+                        + "\"commits\":%d,\"averageBatchRows\":%.2f,\"queued\":%d}",
+                acceptedRows.get(), rejectedRows.get(), rows, failedRows.get(), c,
+                c == 0 ? 0.0 : (double) rows / c, queue.size());
+    }
+
+    public long getCommits() {
+        return commits.get();
+    }
+
+    public long getCommittedRows() {
+        return committedRows.get();
+    }
+
+    public long getRejectedRows() {
+        return rejectedRows.get();
+    }
+}
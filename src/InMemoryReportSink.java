@@ -0,0 +1,58 @@
+package src;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A stand-in for the reports table, used to benchmark the ingestion service without MySQL.
+ * Each commit costs a fixed delay, modelling the log flush of a real database, plus a small per-row cost,
+ * which is what makes group commit pay off. Citizen IDs above the configured number of citizens
+ * fail the batch the way a foreign key violation would.
+ */
+public class InMemoryReportSink implements ReportSink {
+
+    private final long commitNanos;
+    private final long perRowNanos;
+    private final int citizens;
+    private final List<NewReport> rows = new ArrayList<>(); // guarded by this
+
+    /**
+     * @param commitMicros Simulated cost of one commit.
+     * @param perRowMicros Simulated cost of each inserted row.
+     * @param citizens Citizen IDs 1..citizens are accepted.
+     */
+    public InMemoryReportSink(long commitMicros, long perRowMicros, int citizens) {
+        this.commitNanos = TimeUnit.MICROSECONDS.toNanos(commitMicros);
+        this.perRowNanos = TimeUnit.MICROSECONDS.toNanos(perRowMicros);
+        this.citizens = citizens;
+    }
+
+    @Override
+    public int[] insertAll(List<NewReport> reports) throws SQLException {
+        for (NewReport report : reports) {
+            if (report.citizenId() > citizens) {
+                throw new SQLException("Cannot add or update a child row: a foreign key constraint fails " +
+                        "(`reports`, FOREIGN KEY (`citizen_id`) REFERENCES `users` (`id`))", "23000");
+            }
+        }
+        LockSupport.parkNanos(commitNanos + perRowNanos * reports.size());
+        int[] ids = new int[reports.size()];
+        synchronized (this) {
+            for (int i = 0; i < ids.length; i++) {
+                rows.add(reports.get(i));
+                ids[i] = rows.size();
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @return The number of reports stored so far.
+     */
+    public synchronized int size() {
+        return rows.size();
+    }
+}
@@ -0,0 +1,85 @@
+package src;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives the ingestion server with concurrent HTTP clients and prints throughput and latency.
+ * Runs against the in-memory stand-in by default so it needs no database; pass -Dingest.sink=mysql
+ * to measure the real reports table. Compare -Dingest.maxBatchRows=1 (no group commit) against the default.
+ *
+ * Usage: java src.IngestBenchmark [clients] [requestsPerClient] [commitMicros]
+ */
+public class IngestBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int requestsPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        long commitMicros = args.length > 2 ? Long.parseLong(args[2]) : 1000;
+
+        InMemoryReportSink memorySink = new InMemoryReportSink(commitMicros, 5, 1000);
+        ReportSink sink = "mysql".equals(System.getProperty("ingest.sink")) ? new ReportRepository()::insertAll : memorySink;
+        GroupCommitWriter writer = IngestionServer.createWriter(sink);
+        String token = UUID.randomUUID().toString();
+        IngestionServer server = new IngestionServer(InetAddress.getLoopbackAddress(), 0, token, writer);
+        server.start();
+
+        HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        URI uri = URI.create("http://localhost:" + server.getPort() + "/reports");
+        long[] latencies = new long[clients * requestsPerClient];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+
+        ExecutorService pool = DataExecutor.newExecutor("ingest-client", clients);
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            int citizenId = c % 1000 + 1;
+            futures.add(pool.submit(() -> {
+                for (int r = 0; r < requestsPerClient; r++) {
+                    String body = "{\"citizenId\":" + citizenId + ",\"description\":\"Overflowing bin #" + r
+                            + "\",\"location\":\"Sector " + (r % 50) + "\"}";
+                    HttpRequest request = HttpRequest.newBuilder(uri)
+                            .header("Authorization", "Bearer " + token)
+                            .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+                    long t0 = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() != 201) {
+                            failures.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    }
+                    latencies[next.getAndIncrement()] = System.nanoTime() - t0;
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+        server.stop();
+
+        Arrays.sort(latencies);
+        int n = latencies.length;
+        System.out.printf("requests=%d failures=%d elapsed=%.2fs throughput=%.0f req/s%n",
+                n, failures.get(), elapsed / 1e9, n / (elapsed / 1e9));
+        System.out.printf("latency p50=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms%n",
+                latencies[n / 2] / 1e6, latencies[(int) (n * 0.99)] / 1e6,
+                latencies[Math.min(n - 1, (int) (n * 0.999))] / 1e6, latencies[n - 1] / 1e6);
+        System.out.println("writer " + writer.statsJson());
+    }
+}
@@ -0,0 +1,321 @@
+package src;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.security.MessageDigest;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A headless HTTP endpoint for submitting reports from the mobile app and kiosks.
+ * <pre>
+ * POST /reports   {"citizenId": 3, "description": "...", "location": "..."}  -> 201 {"id": 42}
+ * POST /reports   [{...}, {...}]                                            -> 201 {"ids": [42, 43]}
+ * GET  /stats                                                               -> 200 writer counters
+ * GET  /photos/&lt;sha256&gt;                                                     -> 200 the photo from {@link BlobStore}
+ * </pre>
+ * Each request is handled on its own (virtual, where available) thread and its reports are committed by a
+ * {@link GroupCommitWriter}. A full queue answers 503 with Retry-After so clients back off.
+ * Photos are streamed from the file to the socket without passing through the heap; since a photo's name is its
+ * hash, responses may be cached forever.
+ * Reports are filed under the citizen the body names, so every request must carry the kiosk/app token given with
+ * -Dingest.token as "Authorization: Bearer &lt;token&gt;"; others get 401 before anything is queued.
+ * The server only listens on the loopback interface unless -Dingest.bind names another address (0.0.0.0 for all).
+ *
+ * Run with: java -Dingest.token=... -cp ".;lib\mysql-connector-j-9.4.0.jar" src.IngestionServer [port]
+ * Add -Dingest.sink=memory to use the in-memory stand-in instead of MySQL.
+ */
+public class IngestionServer {
+
+    private static final int MAX_BODY_BYTES = 1 << 20;
+    // How MySQL names the violated constraint: a foreign key's name, a unique key's name, or an unnamed key's column
+    private static final Pattern CONSTRAINT = Pattern.compile("CONSTRAINT `([^`]+)`|for key '([^']+)'|FOREIGN KEY \\(`([^`]+)`\\)");
+
+    static {
+        // Without TCP_NODELAY small responses stall ~40 ms on Nagle's algorithm and delayed ACKs
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final GroupCommitWriter writer;
+    private final ExecutorService handlers;
+
+    /**
+     * Checks the shared client token in the Authorization header, in constant time.
+     */
+    private static final class TokenAuthenticator extends Authenticator {
+        private final byte[] expected;
+
+        TokenAuthenticator(String token) {
+            this.expected = ("Bearer " + token).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Result authenticate(HttpExchange exchange) {
+            String header = exchange.getRequestHeaders().getFirst("Authorization");
+            if (header != null && MessageDigest.isEqual(expected, header.getBytes(StandardCharsets.UTF_8))) {
+                return new Success(new HttpPrincipal("client", "ingest"));
+            }
+            exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer realm=\"ingest\"");
+            return new Failure(401);
+        }
+    }
+
+    /**
+     * @param address The address to listen on; the loopback address keeps the server off the network.
+     * @param token The token clients must send as "Authorization: Bearer &lt;token&gt;".
+     */
+    public IngestionServer(InetAddress address, int port, String token, GroupCommitWriter writer) throws IOException {
+        if (token == null || token.isBlank()) {
+            throw new IllegalArgumentException("A client token is required");
+        }
+        this.writer = writer;
+        this.server = HttpServer.create(new InetSocketAddress(address, port), 1024);
+        this.handlers = DataExecutor.newExecutor("ingest-http", 64);
+        Authenticator authenticator = new TokenAuthenticator(token);
+        server.createContext("/reports", this::handleReports).setAuthenticator(authenticator);
+        server.createContext("/stats", this::handleStats).setAuthenticator(authenticator);
+        server.createContext("/photos/", this::handlePhotos).setAuthenticator(authenticator);
+        server.setExecutor(handlers);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * @return The port the server is listening on (useful when started on port 0).
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting requests, then commits whatever is still queued.
+     */
+    public void stop() {
+        server.stop(1);
+        writer.close();
+        handlers.shutdown();
+    }
+
+    private void handleReports(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                respond(exchange, 405, error("Use POST"));
+                return;
+            }
+            byte[] body = readBody(exchange.getRequestBody());
+            if (body == null) {
+                respond(exchange, 413, error("Request body is larger than " + MAX_BODY_BYTES + " bytes"));
+                return;
+            }
+
+            Object json;
+            try {
+                json = Json.parse(new String(body, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                respond(exchange, 400, error("Malformed JSON: " + e.getMessage()));
+                return;
+            }
+            boolean single = json instanceof Map;
+            List<?> items = single ? List.of(json) : json instanceof List ? (List<?>) json : null;
+            if (items == null || items.isEmpty()) {
+                respond(exchange, 400, error("Expected a report object or a non-empty array of reports"));
+                return;
+            }
+
+            List<NewReport> reports = new ArrayList<>(items.size());
+            for (int i = 0; i < items.size(); i++) {
+                NewReport report = toReport(items.get(i));
+                String problem = report == null ? "report must be an object" : report.validate();
+                if (problem != null) {
+                    respond(exchange, 400, error(single ? problem : "reports[" + i + "]: " + problem));
+                    return;
+                }
+                reports.add(report);
+            }
+
+            int[] ids;
+            try {
+                ids = writer.submit(reports).join();
+            } catch (RuntimeException e) {
+                Throwable cause = DataExecutor.unwrap(e);
+                if (cause instanceof RejectedExecutionException) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    respond(exchange, 503, error("Server is busy, retry later"));
+                } else if (cause instanceof SQLException && String.valueOf(((SQLException) cause).getSQLState()).startsWith("23")) {
+                    String message = String.valueOf(cause.getMessage());
+                    respond(exchange, 422, error(message.contains("FOREIGN KEY (`citizen_id`)") ? "Unknown citizen"
+                            : "Report violates database constraint " + constraint(message)));
+                } else {
+                    cause.printStackTrace();
+                    respond(exchange, 500, error("Failed to store report"));
+                }
+                return;
+            }
+
+            if (single) {
+                respond(exchange, 201, "{\"id\":" + ids[0] + "}");
+            } else {
+                StringBuilder sb = new StringBuilder("{\"ids\":[");
+                for (int i = 0; i < ids.length; i++) {
+                    sb.append(i == 0 ? "" : ",").append(ids[i]);
+                }
+                respond(exchange, 201, sb.append("]}").toString());
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            respond(exchange, 200, writer.statsJson());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handlePhotos(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                respond(exchange, 405, error("Use GET"));
+                return;
+            }
+            String hash = exchange.getRequestURI().getPath().substring("/photos/".length());
+            if (!BlobStore.isHash(hash)) {
+                respond(exchange, 400, error("Expected /photos/ followed by a lowercase SHA-256"));
+                return;
+            }
+            BlobStore store = BlobStore.getInstance();
+            long size;
+            String format;
+            try {
+                size = Files.size(store.path(hash));
+                format = store.format(hash);
+            } catch (NoSuchFileException e) {
+                respond(exchange, 404, error("No such photo"));
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", format != null ? "image/" + format : "application/octet-stream");
+            exchange.getResponseHeaders().set("ETag", '"' + hash + '"');
+            exchange.getResponseHeaders().set("Cache-Control", "public, max-age=31536000, immutable");
+            if ("HEAD".equals(method)) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, size);
+            try (WritableByteChannel out = Channels.newChannel(exchange.getResponseBody())) {
+                store.transferTo(hash, out);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static NewReport toReport(Object item) {
+        if (!(item instanceof Map)) {
+            return null;
+        }
+        Map<?, ?> map = (Map<?, ?>) item;
+        Object citizenId = map.get("citizenId");
+        Object description = map.get("description");
+        Object location = map.get("location");
+        return new NewReport(citizenId instanceof Long && (Long) citizenId <= Integer.MAX_VALUE ? ((Long) citizenId).intValue() : -1,
+                description instanceof String ? (String) description : null,
+                location instanceof String ? (String) location : null);
+    }
+
+    /**
+     * @return The name of the constraint an integrity error names, or the whole message if it names none.
+     */
+    private static String constraint(String message) {
+        Matcher m = CONSTRAINT.matcher(message);
+        if (!m.find()) {
+            return message;
+        }
+        return m.group(1) != null ? m.group(1) : m.group(2) != null ? m.group(2) : m.group(3);
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            if (out.size() + n > MAX_BODY_BYTES) {
+                return null;
+            }
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + Json.quote(message) + "}";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Creates the writer from -Dingest.* settings.
+     */
+    static GroupCommitWriter createWriter(ReportSink sink) {
+        return new GroupCommitWriter(sink,
+                Integer.getInteger("ingest.queueCapacity", 10_000),
+                Integer.getInteger("ingest.maxBatchRows", 500),
+                Long.getLong("ingest.lingerMicros", 500L),
+                Long.getLong("ingest.offerTimeoutMillis", 50L),
+                Integer.getInteger("ingest.writers", 2));
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        ReportSink sink = "memory".equals(System.getProperty("ingest.sink"))
+                ? new InMemoryReportSink(1000, 5, Integer.MAX_VALUE)
+                : Storage.reports(); // MySQL, or the memory engine with -Dstorage=memory
+        String token = System.getProperty("ingest.token");
+        if (token == null || token.isBlank()) {
+            System.err.println("Set -Dingest.token to the token kiosks and the app send as \"Authorization: Bearer <token>\"");
+            System.exit(1);
+        }
+        InetAddress address = System.getProperty("ingest.bind") == null
+                ? InetAddress.getLoopbackAddress() : InetAddress.getByName(System.getProperty("ingest.bind"));
+        IngestionServer server = new IngestionServer(address, port, token, createWriter(sink));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "ingest-shutdown"));
+        server.start();
+        System.out.println("Report ingestion listening on " + address.getHostAddress() + ":" + server.getPort());
+    }
+}
@@ -0,0 +1,128 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hash map from int keys to objects, with open addressing and linear probing.
+ * Keys are stored unboxed in one array and values in another, so a lookup allocates nothing and a million
+ * entries cost two arrays instead of a million Integer and entry objects. Entries cannot be removed, which
+ * keeps probing simple; null values are not allowed. Not thread-safe: callers guard it with their own lock.
+ * @param <V> The value type.
+ */
+public class IntMap<V> {
+
+    /**
+     * Receives the entries of {@link #forEach}.
+     */
+    @FunctionalInterface
+    public interface Visitor<V> {
+        void visit(int key, V value);
+    }
+
+    private int[] keys;
+    private Object[] values; // null marks a free slot
+    private int size;
+
+    public IntMap() {
+        this(16);
+    }
+
+    /**
+     * @param expected The number of entries to make room for before the first resize.
+     */
+    public IntMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+        keys = new int[capacity];
+        values = new Object[capacity];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The value the key had before, or null if it was not in the map.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException("IntMap values cannot be null");
+        }
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length) { // At most half full keeps probe sequences short
+            resize();
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Visits every entry, in no particular order. The map must not change meanwhile.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Visitor<? super V> visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                visitor.visit(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    /**
+     * @return The values, in no particular order, copied into a new list.
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> list = new ArrayList<>(size);
+        for (Object value : values) {
+            if (value != null) {
+                list.add((V) value);
+            }
+        }
+        return list;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new Object[oldValues.length * 2];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] != null) {
+                int i = slot(oldKeys[j], mask);
+                while (values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private static int slot(int key, int mask) {
+        int h = key * 0x9e3779b9; // Spreads sequential IDs across the table
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
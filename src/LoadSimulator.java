@@ -0,0 +1,247 @@
+package src;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulates a city's worth of concurrent citizens, workers and admins against the database, through the
+ * same repository code the dashboards use, and prints latency percentiles and throughput per operation.
+ * <ul>
+ *   <li>Citizens mostly check their reports and sometimes submit one.</li>
+ *   <li>Workers check their task list and complete open tasks.</li>
+ *   <li>Admins page through the report table, assign batches of pending reports and update statuses.</li>
+ * </ul>
+ * Every simulated user runs on its own (virtual, where available) thread with exponentially distributed think time.
+ *
+ * Settings (all optional): -Dsim.users=500 -Dsim.durationSeconds=60 -Dsim.thinkMillis=1000
+ * -Dsim.seedReports=0 -Dsim.label=release-name -Dsim.out=load-results.csv
+ * Results are appended to the CSV file with the label, so runs can be compared across releases.
+ * With -Dstorage=memory it runs against the {@link MemoryEngine} under -Dstorage.dir instead; seeding needs MySQL.
+ */
+public class LoadSimulator {
+
+    private static final double CITIZEN_SHARE = 0.80;
+    private static final double WORKER_SHARE = 0.15;
+
+    private final ReportStore reports = Storage.reports();
+    private final TaskStore tasks = Storage.tasks();
+    private final UserStore users = Storage.users();
+
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> errors = new ConcurrentHashMap<>();
+    private final long thinkMillis;
+
+    private int[] citizenIds;
+    private int[] workerIds;
+
+    LoadSimulator(long thinkMillis) {
+        this.thinkMillis = thinkMillis;
+    }
+
+    /**
+     * One timed call against the data layer.
+     */
+    @FunctionalInterface
+    interface Call {
+        void run() throws SQLException;
+    }
+
+    private void timed(String operation, Call call) {
+        long t0 = System.nanoTime();
+        try {
+            call.run();
+            latencies.computeIfAbsent(operation, k -> new LatencyHistogram()).record(System.nanoTime() - t0);
+        } catch (SQLException | RuntimeException e) {
+            errors.computeIfAbsent(operation, k -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    private void loadUsers() throws SQLException {
+        citizenIds = users.findIdsByRole("Citizen").stream().mapToInt(Integer::intValue).toArray();
+        workerIds = users.findIdsByRole("Worker").stream().mapToInt(Integer::intValue).toArray();
+        if (citizenIds.length == 0 || workerIds.length == 0) {
+            throw new SQLException("Need at least one citizen and one worker; seed the database first (-Dsim.seedReports).");
+        }
+    }
+
+    private void runCitizen(int citizenId, Random random, long deadline) {
+        while (System.nanoTime() < deadline) {
+            if (random.nextDouble() < 0.2) {
+                timed("citizen.submitReport", () -> reports.insert(citizenId,
+                        DataSeeder.PROBLEMS[random.nextInt(DataSeeder.PROBLEMS.length)],
+                        DataSeeder.location(random.nextInt(1200))));
+            } else {
+                timed("citizen.loadReports", () -> reports.findByCitizen(citizenId));
+            }
+            think(random);
+        }
+    }
+
+    private void runWorker(int workerId, Random random, long deadline) {
+        while (System.nanoTime() < deadline) {
+            List<Task> mine = new ArrayList<>();
+            timed("worker.loadTasks", () -> mine.addAll(tasks.findByWorker(workerId)));
+            think(random);
+            for (Task task : mine) {
+                if ("Assigned".equals(task.status())) {
+                    timed("worker.completeTask", () -> tasks.complete(task.id(), task.reportId(), task.version()));
+                    think(random);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void runAdmin(Random random, long deadline) {
+        while (System.nanoTime() < deadline) {
+            timed("admin.loadReports", () -> {
+                reports.snapshot();
+                reports.findFirstPage(ReportTableModel.PAGE_SIZE);
+            });
+            timed("admin.loadWorkers", users::findWorkers);
+            think(random);
+            double r = random.nextDouble();
+            if (r < 0.6) {
+                int batch = 1 + random.nextInt(10);
+                timed("admin.assignTask", () -> {
+                    List<Integer> pending = reports.findPendingIds(batch);
+                    if (!pending.isEmpty()) {
+                        tasks.assignAll(pending, workerIds[random.nextInt(workerIds.length)]);
+                    }
+                });
+            } else if (r < 0.8) {
+                timed("admin.updateStatus", () -> {
+                    List<Integer> pending = reports.findPendingIds(1);
+                    if (!pending.isEmpty()) {
+                        reports.updateStatusAll(pending, "In Progress");
+                    }
+                });
+            }
+            think(random);
+        }
+    }
+
+    private void think(Random random) {
+        if (thinkMillis <= 0) {
+            return;
+        }
+        long pause = (long) (-Math.log(1 - random.nextDouble()) * thinkMillis);
+        try {
+            TimeUnit.MILLISECONDS.sleep(Math.min(pause, thinkMillis * 10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs the simulation and returns the elapsed time in nanoseconds.
+     */
+    long run(int simulatedUsers, long durationSeconds) throws Exception {
+        loadUsers();
+        ExecutorService executor = DataExecutor.newExecutor("sim-user", simulatedUsers);
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < simulatedUsers; i++) {
+            Random random = new Random(1000L + i);
+            double role = (double) i / simulatedUsers;
+            if (role < CITIZEN_SHARE) {
+                int citizenId = citizenIds[i % citizenIds.length];
+                futures.add(executor.submit(() -> runCitizen(citizenId, random, deadline)));
+            } else if (role < CITIZEN_SHARE + WORKER_SHARE) {
+                int workerId = workerIds[i % workerIds.length];
+                futures.add(executor.submit(() -> runWorker(workerId, random, deadline)));
+            } else {
+                futures.add(executor.submit(() -> runAdmin(random, deadline)));
+            }
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        executor.shutdown();
+        return System.nanoTime() - start;
+    }
+
+    void print(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%-22s %9s %10s %9s %9s %9s %9s %7s%n",
+                "operation", "count", "ops/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "errors");
+        for (Map.Entry<String, LatencyHistogram> e : new TreeMap<>(latencies).entrySet()) {
+            LatencyHistogram h = e.getValue();
+            System.out.printf("%-22s %9d %10.1f %9.2f %9.2f %9.2f %9.2f %7d%n", e.getKey(), h.getCount(),
+                    h.getCount() / seconds, h.percentile(0.5) / 1e6, h.percentile(0.99) / 1e6,
+                    h.percentile(0.999) / 1e6, h.getMax() / 1e6, errorCount(e.getKey()));
+        }
+        if (!Storage.isMemory()) {
+            System.out.println("Connection pool: " + DBConnection.getPoolStats());
+        }
+    }
+
+    private long errorCount(String operation) {
+        AtomicLong n = errors.get(operation);
+        return n == null ? 0 : n.get();
+    }
+
+    void export(String file, String label, int simulatedUsers, long elapsedNanos) throws IOException {
+        boolean header = !Files.exists(Paths.get(file));
+        double seconds = elapsedNanos / 1e9;
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(file),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            if (header) {
+                out.println("run,users,operation,count,ops_per_sec,p50_ms,p99_ms,p999_ms,max_ms,errors");
+            }
+            for (Map.Entry<String, LatencyHistogram> e : new TreeMap<>(latencies).entrySet()) {
+                LatencyHistogram h = e.getValue();
+                out.printf("%s,%d,%s,%d,%.2f,%.3f,%.3f,%.3f,%.3f,%d%n", label, simulatedUsers, e.getKey(),
+                        h.getCount(), h.getCount() / seconds, h.percentile(0.5) / 1e6, h.percentile(0.99) / 1e6,
+                        h.percentile(0.999) / 1e6, h.getMax() / 1e6, errorCount(e.getKey()));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int simulatedUsers = Integer.getInteger("sim.users", 500);
+        long durationSeconds = Long.getLong("sim.durationSeconds", 60L);
+        long thinkMillis = Long.getLong("sim.thinkMillis", 1000L);
+        long seedReports = Long.getLong("sim.seedReports", 0L);
+
+        if (Storage.isMemory()) {
+            Storage.open();
+        } else {
+            SchemaMigrations.migrate();
+        }
+        if (seedReports > 0) {
+            if (Storage.isMemory()) {
+                System.err.println("Seeding writes to MySQL directly; leave out -Dsim.seedReports on -Dstorage=memory");
+                System.exit(1);
+            }
+            System.out.println("Seeding " + seedReports + " reports...");
+            new DataSeeder((int) Math.max(100, seedReports / 20), (int) Math.max(10, seedReports / 2000), 42).seed(seedReports);
+        }
+
+        LoadSimulator simulator = new LoadSimulator(thinkMillis);
+        System.out.printf("Simulating %d users for %d s (mean think time %d ms)...%n", simulatedUsers, durationSeconds, thinkMillis);
+        long elapsed = simulator.run(simulatedUsers, durationSeconds);
+        simulator.print(elapsed);
+
+        String out = System.getProperty("sim.out");
+        if (out != null) {
+            simulator.export(out, System.getProperty("sim.label", "run-" + System.currentTimeMillis()), simulatedUsers, elapsed);
+            System.out.println("Results appended to " + out);
+        }
+    }
+}
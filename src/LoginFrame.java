@@ -3,10 +3,6 @@ package src;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 
 /**
  * The login window for the application.
@@ -16,6 +12,8 @@ public class LoginFrame extends JFrame {
 
     private JTextField usernameField;
     private JPasswordField passwordField;
+    private JButton loginButton;
+    private final UserStore userRepository = Storage.users();
 
     public LoginFrame() {
         setTitle("Smart Waste Management - Login");
@@ -37,7 +35,7 @@ public class LoginFrame extends JFrame {
         panel.add(passwordField);
 
         // Login button
-        JButton loginButton = new JButton("Login");
+        loginButton = new JButton("Login");
         loginButton.addActionListener(this::performLogin);
 
         // Add components to the frame
@@ -58,28 +56,25 @@ public class LoginFrame extends JFrame {
             return;
         }
 
-        try (Connection conn = DBConnection.getConnection()) {
-            String sql = "SELECT id, role FROM users WHERE username = ? AND password = ?";
-            PreparedStatement stmt = conn.prepareStatement(sql);
-            stmt.setString(1, username);
-            stmt.setString(2, password);
-
-            ResultSet rs = stmt.executeQuery();
-
-            if (rs.next()) {
-                int userId = rs.getInt("id");
-                String role = rs.getString("role");
-
+        // Check the credentials in the background so the window keeps painting
+        loginButton.setEnabled(false);
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        AsyncLoader.perform(() -> userRepository.authenticate(username, password), user -> {
+            loginButton.setEnabled(true);
+            setCursor(null);
+            if (user != null) {
                 // Open the appropriate dashboard based on the user's role
-                openDashboard(userId, role);
+                openDashboard(user.id(), user.role());
                 this.dispose(); // Close the login window
             } else {
                 JOptionPane.showMessageDialog(this, "Invalid username or password.", "Login Failed", JOptionPane.ERROR_MESSAGE);
             }
-        } catch (SQLException ex) {
-            ex.printStackTrace();
+        }, error -> {
+            loginButton.setEnabled(true);
+            setCursor(null);
+            error.printStackTrace();
             JOptionPane.showMessageDialog(this, "Database error during login.", "Error", JOptionPane.ERROR_MESSAGE);
-        }
+        });
     }
 
     /**
@@ -1,12 +1,37 @@
 package src;
 
+import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
+import java.io.IOException;
+import java.sql.SQLException;
 
 /**
  * Main class to start the Smart Waste Management System application.
  */
 public class Main {
     public static void main(String[] args) {
+        // Bring the schema up to date (indexes, constraints) before any dashboard queries it,
+        // or with -Dstorage=memory load the local data store instead
+        if (Storage.isMemory()) {
+            try {
+                Storage.open();
+            } catch (IOException e) {
+                e.printStackTrace();
+                JOptionPane.showMessageDialog(null, "Failed to open the local data store.", "Storage Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+        } else {
+            try {
+                SchemaMigrations.migrate();
+            } catch (SQLException e) {
+                e.printStackTrace();
+                JOptionPane.showMessageDialog(null, "Failed to update the database schema.", "Database Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+
+        // Record UI stalls from the first event on; see the admin Diagnostics tab or JMX
+        EdtWatchdog.getInstance().install();
+
         // Use SwingUtilities.invokeLater to ensure that the GUI is created and updated on the Event Dispatch Thread (EDT)
         SwingUtilities.invokeLater(() -> {
             // Create and show the login frame
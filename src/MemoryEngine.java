@@ -0,0 +1,1244 @@
+package src;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An in-process storage engine for reports, tasks and users, for depots without a database server and for
+ * tests and benchmarks that need a fast backend. {@link Storage} opens one per process with -Dstorage=memory;
+ * {@link #open} opens one anywhere else, e.g. on a scratch directory.
+ *
+ * Rows are immutable records in {@link IntMap}s keyed by their ID. Secondary indexes keep reports by citizen,
+ * by status and by submission date, linked reports by the report they repeat, tasks by worker and by report,
+ * and reports and tasks by change time for the change feed; all of them change in the same critical section
+ * as the rows. Reads share a read lock and run in parallel; a write holds the write lock from its first check
+ * to its last change, so every operation is atomic and isolated like the transactions of the MySQL repositories.
+ *
+ * Durability is a snapshot plus a journal in one directory. A write appends the new images of the rows it
+ * changes to journal.log and applies them under the write lock, then releases it and waits until the journal is
+ * forced to disk. Writers waiting at the same time share one fsync: whichever gets there first forces everything
+ * appended so far. An acknowledged write is therefore never lost, and one that fails to append changes nothing;
+ * readers may see a write a moment before it is durable. If a force fails the engine refuses further writes
+ * until it is opened again, which keeps exactly what reached the disk. On open the snapshot is loaded and the journal replayed up to the first
+ * torn or corrupt record; row images can be replayed any number of times, so a crash in the middle of a
+ * checkpoint is harmless. When the journal passes -Dstorage.journalMB (default 16), and at shutdown, all rows
+ * are written to a new snapshot and the journal starts over. Only one process may open a directory.
+ */
+public class MemoryEngine {
+
+    private static final int MAGIC = 0x574d454d; // "WMEM"
+    private static final int VERSION = 1;
+    private static final long JOURNAL_LIMIT = Long.getLong("storage.journalMB", 16L) * 1024 * 1024;
+    private static final int RECORD_HEADER_BYTES = 8; // length, crc
+
+    private static final byte REPORT = 1;
+    private static final byte TASK = 2;
+    private static final byte USER = 3;
+
+    /**
+     * A row of reports. duplicateOf is 0 for none, since IDs start at 1; coordinates are NaN if unknown.
+     */
+    private record ReportRow(int id, int citizenId, String description, String location, ReportStatus status,
+                             long submittedMillis, long updatedMillis, int version, int duplicateOf, String photo,
+                             double latitude, double longitude) {
+
+        ReportRow moved(ReportStatus next, long now) {
+            return new ReportRow(id, citizenId, description, location, next, submittedMillis, now, version + 1,
+                    duplicateOf, photo, latitude, longitude);
+        }
+
+        Report toReport() {
+            return new Report(id, citizenId, description, location, status.label(), new Timestamp(submittedMillis),
+                    new Timestamp(updatedMillis), version);
+        }
+
+        boolean isOpenOriginal() {
+            return duplicateOf == 0 && status != ReportStatus.COMPLETED;
+        }
+    }
+
+    /**
+     * A row of tasks.
+     */
+    private record TaskRow(int id, int reportId, int workerId, boolean completed, long assignedMillis,
+                           long updatedMillis, int version) {
+    }
+
+    /**
+     * A row of users; coordinates are NaN if the user has no base location.
+     */
+    private record UserRow(int id, String username, String password, String role, double latitude, double longitude) {
+    }
+
+    /**
+     * An append-only list of IDs, for the one-to-many indexes.
+     */
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    // Newest first, the order of the admin table
+    private static final Comparator<ReportRow> BY_SUBMITTED = Comparator.comparingLong(ReportRow::submittedMillis)
+            .thenComparingInt(ReportRow::id).reversed();
+    private static final Comparator<ReportRow> REPORTS_BY_CHANGE = Comparator.comparingLong(ReportRow::updatedMillis)
+            .thenComparingInt(ReportRow::id);
+    private static final Comparator<TaskRow> TASKS_BY_CHANGE = Comparator.comparingLong(TaskRow::updatedMillis)
+            .thenComparingInt(TaskRow::id);
+
+    // Guarded by lock
+    private final IntMap<ReportRow> reports = new IntMap<>();
+    private final IntMap<IntList> reportsByCitizen = new IntMap<>();
+    private final IntMap<IntList> linkedReports = new IntMap<>(); // Report ID -> reports linked to it as duplicates
+    private final NavigableSet<ReportRow> reportsBySubmitted = new TreeSet<>(BY_SUBMITTED);
+    private final Map<ReportStatus, NavigableSet<ReportRow>> reportsByStatus = new EnumMap<>(ReportStatus.class);
+    private final NavigableSet<ReportRow> reportsByChange = new TreeSet<>(REPORTS_BY_CHANGE);
+    private final IntMap<TaskRow> tasks = new IntMap<>();
+    private final IntMap<IntList> tasksByWorker = new IntMap<>();
+    private final IntMap<TaskRow> taskByReport = new IntMap<>();
+    private final IntMap<int[]> openTasksByWorker = new IntMap<>(); // Worker ID -> {Assigned task count}
+    private final NavigableSet<TaskRow> tasksByChange = new TreeSet<>(TASKS_BY_CHANGE);
+    private final IntMap<UserRow> users = new IntMap<>();
+    private final Map<String, UserRow> usersByName = new HashMap<>();
+    private int maxReportId;
+    private int maxTaskId;
+    private int maxUserId;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Path directory;
+    private final FileChannel journal; // Appended under the write lock, truncated by checkpoint under the read lock
+    private final Object syncMonitor = new Object();
+    private long appendedRecords; // Guarded by syncMonitor
+    private long syncedRecords; // Guarded by syncMonitor
+    private boolean syncing; // Guarded by syncMonitor; a writer is forcing the journal for everyone
+    private IOException syncFailure; // Guarded by syncMonitor
+    private final FileLock fileLock;
+
+    private final Reports reportStore = new Reports();
+    private final Tasks taskStore = new Tasks();
+    private final Users userStore = new Users();
+
+    private MemoryEngine(Path directory, FileChannel journal, FileLock fileLock) {
+        this.directory = directory;
+        this.journal = journal;
+        this.fileLock = fileLock;
+        for (ReportStatus status : ReportStatus.values()) {
+            reportsByStatus.put(status, new TreeSet<>(BY_SUBMITTED));
+        }
+    }
+
+    /**
+     * Opens the store in a directory, creating it with the default users and a sample report if it is empty.
+     * @throws IOException if the files cannot be read or another process has the directory open.
+     */
+    public static MemoryEngine open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        FileChannel journal = FileChannel.open(directory.resolve("journal.log"), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock fileLock = journal.tryLock();
+        if (fileLock == null) {
+            journal.close();
+            throw new IOException("Data store " + directory + " is in use by another process");
+        }
+        MemoryEngine engine = new MemoryEngine(directory, journal, fileLock);
+        try {
+            engine.loadSnapshot();
+            engine.replayJournal();
+            if (engine.users.size() == 0) {
+                engine.seed();
+            }
+        } catch (IOException | RuntimeException e) {
+            journal.close();
+            throw e;
+        } catch (SQLException e) {
+            journal.close();
+            throw new IOException("Cannot create data store " + directory, e);
+        }
+        return engine;
+    }
+
+    public ReportStore reports() {
+        return reportStore;
+    }
+
+    public TaskStore tasks() {
+        return taskStore;
+    }
+
+    public UserStore users() {
+        return userStore;
+    }
+
+    // ---- Writes ----
+
+    /**
+     * The rows one write changes, on top of the committed ones; nothing is visible to readers until it commits.
+     */
+    private final class Tx {
+        final Map<Integer, ReportRow> reportChanges = new LinkedHashMap<>();
+        final Map<Integer, TaskRow> taskChanges = new LinkedHashMap<>();
+        final List<UserRow> userChanges = new ArrayList<>();
+        final long now = System.currentTimeMillis();
+        int lastReportId = maxReportId;
+        int lastTaskId = maxTaskId;
+        int lastUserId = maxUserId;
+
+        ReportRow report(int id) {
+            ReportRow row = reportChanges.get(id);
+            return row != null ? row : reports.get(id);
+        }
+
+        TaskRow task(int id) {
+            TaskRow row = taskChanges.get(id);
+            return row != null ? row : tasks.get(id);
+        }
+
+        void put(ReportRow row) {
+            reportChanges.put(row.id(), row);
+        }
+
+        void put(TaskRow row) {
+            taskChanges.put(row.id(), row);
+        }
+
+        /**
+         * Moves a report, and the reports linked to it as duplicates, to the given status;
+         * those already there or past it stay as they are.
+         */
+        void moveWithLinked(ReportRow row, ReportStatus to) {
+            if (row.status().isBefore(to)) {
+                put(row.moved(to, now));
+            }
+            IntList linked = linkedReports.get(row.id());
+            for (int i = 0; linked != null && i < linked.size; i++) {
+                ReportRow follower = report(linked.values[i]);
+                if (follower.status().isBefore(to)) {
+                    put(follower.moved(to, now));
+                }
+            }
+        }
+
+        /**
+         * Creates a task and starts its report, and the reports linked to it.
+         */
+        void assign(ReportRow row, int workerId) throws SQLException {
+            if (users.get(workerId) == null) {
+                throw foreignKey("tasks", "worker_id", "users", workerId);
+            }
+            put(new TaskRow(++lastTaskId, row.id(), workerId, false, now, now, 0));
+            moveWithLinked(row, ReportStatus.IN_PROGRESS);
+        }
+
+        boolean isEmpty() {
+            return reportChanges.isEmpty() && taskChanges.isEmpty() && userChanges.isEmpty();
+        }
+    }
+
+    @FunctionalInterface
+    private interface TxWork<T> {
+        T run(Tx tx) throws SQLException;
+    }
+
+    /**
+     * Runs a write: the work decides on the changes under the write lock, then they are journaled and applied,
+     * and once the lock is released the write waits for the journal to reach the disk.
+     * If the work throws or the journal cannot be written, nothing changes.
+     */
+    private <T> T write(TxWork<T> work) throws SQLException {
+        T result;
+        long record = 0;
+        long journalBytes;
+        lock.writeLock().lock();
+        try {
+            synchronized (syncMonitor) {
+                if (syncFailure != null) {
+                    throw new SQLException("The storage journal could not be forced to disk; reopen the data store", syncFailure);
+                }
+            }
+            Tx tx = new Tx();
+            result = work.run(tx);
+            if (!tx.isEmpty()) {
+                record = append(tx);
+                tx.userChanges.forEach(this::apply);
+                tx.reportChanges.values().forEach(this::apply);
+                tx.taskChanges.values().forEach(this::apply);
+            }
+            journalBytes = journalSize();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (record != 0) {
+            awaitSynced(record);
+        }
+        if (journalBytes > JOURNAL_LIMIT) {
+            checkpoint();
+        }
+        return result;
+    }
+
+    private long journalSize() {
+        try {
+            return journal.size();
+        } catch (IOException e) {
+            return 0; // Only decides when to checkpoint
+        }
+    }
+
+    private void apply(ReportRow row) {
+        ReportRow old = reports.put(row.id(), row);
+        if (old != null) {
+            reportsBySubmitted.remove(old);
+            reportsByStatus.get(old.status()).remove(old);
+            reportsByChange.remove(old);
+        } else {
+            listFor(reportsByCitizen, row.citizenId()).add(row.id());
+            if (row.duplicateOf() != 0) {
+                listFor(linkedReports, row.duplicateOf()).add(row.id());
+            }
+            maxReportId = Math.max(maxReportId, row.id());
+        }
+        reportsBySubmitted.add(row);
+        reportsByStatus.get(row.status()).add(row);
+        reportsByChange.add(row);
+    }
+
+    private void apply(TaskRow row) {
+        TaskRow old = tasks.put(row.id(), row);
+        if (old != null) {
+            tasksByChange.remove(old);
+            if (!old.completed()) {
+                openTasksByWorker.get(old.workerId())[0]--;
+            }
+        } else {
+            listFor(tasksByWorker, row.workerId()).add(row.id());
+            maxTaskId = Math.max(maxTaskId, row.id());
+        }
+        if (!row.completed()) {
+            int[] count = openTasksByWorker.get(row.workerId());
+            if (count == null) {
+                openTasksByWorker.put(row.workerId(), new int[]{1});
+            } else {
+                count[0]++;
+            }
+        }
+        taskByReport.put(row.reportId(), row);
+        tasksByChange.add(row);
+    }
+
+    private void apply(UserRow row) {
+        UserRow old = users.put(row.id(), row);
+        if (old != null) {
+            usersByName.remove(old.username());
+        }
+        usersByName.put(row.username(), row);
+        maxUserId = Math.max(maxUserId, row.id());
+    }
+
+    private static IntList listFor(IntMap<IntList> index, int key) {
+        IntList list = index.get(key);
+        if (list == null) {
+            list = new IntList();
+            index.put(key, list);
+        }
+        return list;
+    }
+
+    /**
+     * The first start: the same users and sample report as db/database.sql.
+     */
+    private void seed() throws SQLException {
+        write(tx -> {
+            tx.userChanges.add(new UserRow(1, "admin", "admin123", "Admin", Double.NaN, Double.NaN));
+            tx.userChanges.add(new UserRow(2, "worker", "worker123", "Worker", 28.6150, 77.2100));
+            tx.userChanges.add(new UserRow(3, "citizen", "citizen123", "Citizen", Double.NaN, Double.NaN));
+            // Placed where the gazetteer puts it, as for any submitted report
+            String location = "City Park, Main Street";
+            double[] at = Gazetteer.getDefault().geocode(location);
+            tx.put(new ReportRow(1, 3, "Overflowing garbage bin near the park entrance.", location,
+                    ReportStatus.PENDING, tx.now, tx.now, 0, 0, null,
+                    at == null ? Double.NaN : at[0], at == null ? Double.NaN : at[1]));
+            return null;
+        });
+    }
+
+    // ---- Persistence ----
+
+    /**
+     * Writes a transaction's row images to the end of the journal, without forcing it. Called under the write lock.
+     * @return The record's sequence number, for {@link #awaitSynced}.
+     */
+    private long append(Tx tx) throws SQLException {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(tx.userChanges.size() + tx.reportChanges.size() + tx.taskChanges.size());
+            for (UserRow row : tx.userChanges) {
+                writeRow(out, row);
+            }
+            for (ReportRow row : tx.reportChanges.values()) {
+                writeRow(out, row);
+            }
+            for (TaskRow row : tx.taskChanges.values()) {
+                writeRow(out, row);
+            }
+            byte[] payload = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length);
+            record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+            long end = journal.size();
+            try {
+                while (record.hasRemaining()) {
+                    journal.write(record, end + record.position());
+                }
+            } catch (IOException e) {
+                journal.truncate(end); // A partial record would hide every later one from replay
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new SQLException("Failed to write the storage journal", e);
+        }
+        synchronized (syncMonitor) {
+            return ++appendedRecords;
+        }
+    }
+
+    /**
+     * Returns once the record is on disk. The first writer to arrive forces the journal, covering every record
+     * appended by then; writers arriving while it does wait for it and force again only if it did not cover them.
+     * @throws SQLException if the journal cannot be forced; the engine refuses writes from then on.
+     */
+    private void awaitSynced(long record) throws SQLException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                long target;
+                synchronized (syncMonitor) {
+                    while (syncing && syncedRecords < record && syncFailure == null) {
+                        try {
+                            syncMonitor.wait();
+                        } catch (InterruptedException e) {
+                            interrupted = true; // The write is applied; it must not be reported before it is durable
+                        }
+                    }
+                    if (syncFailure != null) {
+                        throw new SQLException("Failed to force the storage journal to disk", syncFailure);
+                    }
+                    if (syncedRecords >= record) {
+                        return;
+                    }
+                    syncing = true;
+                    target = appendedRecords;
+                }
+                IOException failure = null;
+                try {
+                    journal.force(false);
+                } catch (IOException e) {
+                    failure = e;
+                }
+                synchronized (syncMonitor) {
+                    syncing = false;
+                    if (failure != null) {
+                        syncFailure = failure;
+                    } else {
+                        syncedRecords = Math.max(syncedRecords, target);
+                    }
+                    syncMonitor.notifyAll();
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void replayJournal() throws IOException {
+        long size = journal.size();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        long position = 0;
+        while (position + RECORD_HEADER_BYTES <= size) {
+            header.clear();
+            readFully(header, position);
+            int length = header.getInt(0);
+            if (length <= 0 || position + RECORD_HEADER_BYTES + length > size) {
+                break; // Torn by a crash while it was appended
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, position + RECORD_HEADER_BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != header.getInt(4)) {
+                break;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array()));
+            for (int n = in.readInt(); n > 0; n--) {
+                readRow(in);
+            }
+            position += RECORD_HEADER_BYTES + length;
+        }
+        if (position < size) {
+            System.err.println("Data store journal: dropped " + (size - position) + " bytes of an unfinished write");
+            journal.truncate(position);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (journal.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of journal");
+            }
+        }
+    }
+
+    /**
+     * Writes every row to a new snapshot, replacing the old one atomically, and empties the journal.
+     * Reads go on meanwhile; writes wait. Failures are logged only; the journal keeps growing until one succeeds.
+     */
+    public synchronized void checkpoint() {
+        lock.readLock().lock();
+        try {
+            if (journal.size() == 0) {
+                return;
+            }
+            Path snapshot = directory.resolve("snapshot.bin");
+            Path temp = directory.resolve("snapshot.bin.tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(temp), 1 << 16)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(users.size() + reports.size() + tasks.size());
+                for (UserRow row : users.values()) {
+                    writeRow(out, row);
+                }
+                for (ReportRow row : reports.values()) {
+                    writeRow(out, row);
+                }
+                for (TaskRow row : tasks.values()) {
+                    writeRow(out, row);
+                }
+            }
+            try (FileChannel file = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                file.force(true);
+            }
+            Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            journal.truncate(0);
+            journal.force(true);
+            synchronized (syncMonitor) {
+                syncedRecords = appendedRecords; // Every appended record is applied, so it is in the snapshot
+                syncMonitor.notifyAll();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void loadSnapshot() throws IOException {
+        Path snapshot = directory.resolve("snapshot.bin");
+        if (!Files.exists(snapshot)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(snapshot), 1 << 16)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a data store snapshot of this version: " + snapshot);
+            }
+            for (int n = in.readInt(); n > 0; n--) {
+                readRow(in);
+            }
+        }
+    }
+
+    /**
+     * Writes the snapshot and closes the journal; the engine must not be used afterwards.
+     */
+    public void close() {
+        checkpoint();
+        lock.writeLock().lock();
+        try {
+            fileLock.release();
+            journal.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void readRow(DataInput in) throws IOException {
+        byte kind = in.readByte();
+        switch (kind) {
+            case REPORT -> apply(new ReportRow(in.readInt(), in.readInt(), readString(in), readString(in),
+                    ReportStatus.values()[in.readByte()], in.readLong(), in.readLong(), in.readInt(), in.readInt(),
+                    readString(in), in.readDouble(), in.readDouble()));
+            case TASK -> apply(new TaskRow(in.readInt(), in.readInt(), in.readInt(), in.readBoolean(), in.readLong(),
+                    in.readLong(), in.readInt()));
+            case USER -> apply(new UserRow(in.readInt(), readString(in), readString(in), readString(in),
+                    in.readDouble(), in.readDouble()));
+            default -> throw new IOException("Unknown row kind " + kind);
+        }
+    }
+
+    private static void writeRow(DataOutput out, Object row) throws IOException {
+        if (row instanceof ReportRow r) {
+            out.writeByte(REPORT);
+            out.writeInt(r.id());
+            out.writeInt(r.citizenId());
+            writeString(out, r.description());
+            writeString(out, r.location());
+            out.writeByte(r.status().ordinal());
+            out.writeLong(r.submittedMillis());
+            out.writeLong(r.updatedMillis());
+            out.writeInt(r.version());
+            out.writeInt(r.duplicateOf());
+            writeString(out, r.photo());
+            out.writeDouble(r.latitude());
+            out.writeDouble(r.longitude());
+        } else if (row instanceof TaskRow t) {
+            out.writeByte(TASK);
+            out.writeInt(t.id());
+            out.writeInt(t.reportId());
+            out.writeInt(t.workerId());
+            out.writeBoolean(t.completed());
+            out.writeLong(t.assignedMillis());
+            out.writeLong(t.updatedMillis());
+            out.writeInt(t.version());
+        } else {
+            UserRow u = (UserRow) row;
+            out.writeByte(USER);
+            out.writeInt(u.id());
+            writeString(out, u.username());
+            writeString(out, u.password());
+            writeString(out, u.role());
+            out.writeDouble(u.latitude());
+            out.writeDouble(u.longitude());
+        }
+    }
+
+    // Length-prefixed UTF-8, -1 for null; unlike writeUTF there is no 64 KB limit
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ---- Reads ----
+
+    private static ReportRow probe(long millis, int id) {
+        return new ReportRow(id, 0, null, null, ReportStatus.PENDING, millis, millis, 0, 0, null, Double.NaN, Double.NaN);
+    }
+
+    private static ReportPage page(Iterator<ReportRow> rows, int skip, int limit) {
+        ReportPage page = new ReportPage(limit);
+        for (int i = 0; i < skip && rows.hasNext(); i++) {
+            rows.next();
+        }
+        while (page.size < limit && rows.hasNext()) {
+            add(page, rows.next());
+        }
+        return page;
+    }
+
+    private static void add(ReportPage page, ReportRow row) {
+        page.add(row.id(), row.citizenId(), row.description(), row.location(), row.status().label(),
+                row.submittedMillis(), row.version(), row.photo());
+    }
+
+    private Task toTask(TaskRow task) {
+        ReportRow report = reports.get(task.reportId());
+        return new Task(task.id(), task.reportId(), task.workerId(), report.description(), report.location(),
+                task.completed() ? "Completed" : "Assigned", new Timestamp(task.assignedMillis()),
+                new Timestamp(task.updatedMillis()), report.latitude(), report.longitude(), task.version(), report.photo());
+    }
+
+    /**
+     * @return The error MySQL raises for the violation, worded alike so callers can tell which key failed.
+     */
+    private static SQLException foreignKey(String table, String column, String parent, int value) {
+        return new SQLException("Cannot add or update a child row: a foreign key constraint fails (`" + table +
+                "`, FOREIGN KEY (`" + column + "`) REFERENCES `" + parent + "` (`id`)): " + value, "23000");
+    }
+
+    /**
+     * The reports table.
+     */
+    private final class Reports implements ReportStore {
+
+        @Override
+        public ReportSnapshot snapshot() {
+            lock.readLock().lock();
+            try {
+                Timestamp lastModified = reportsByChange.isEmpty() ? null : new Timestamp(reportsByChange.last().updatedMillis());
+                return new ReportSnapshot(reports.size(), maxReportId, lastModified);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public List<Report> findChangedSince(Timestamp since) {
+            List<Report> changed = new ArrayList<>();
+            if (since == null) {
+                return changed;
+            }
+            lock.readLock().lock();
+            try {
+                for (ReportRow row : reportsByChange.tailSet(probe(since.getTime(), Integer.MIN_VALUE), true)) {
+                    changed.add(row.toReport());
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return changed;
+        }
+
+        @Override
+        public Timestamp changeHorizon() {
+            lock.readLock().lock(); // Writes stamp and apply their rows under the write lock
+            try {
+                return new Timestamp(System.currentTimeMillis());
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public ReportPage findFirstPage(int limit) {
+            lock.readLock().lock();
+            try {
+                return page(reportsBySubmitted.iterator(), 0, limit);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public ReportPage findPageAfter(long afterMillis, int afterId, int limit) {
+            lock.readLock().lock();
+            try {
+                return page(reportsBySubmitted.tailSet(probe(afterMillis, afterId), false).iterator(), 0, limit);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public ReportPage findPageAt(int offset, int limit) {
+            lock.readLock().lock();
+            try {
+                return page(reportsBySubmitted.iterator(), offset, limit);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public ReportPage findByIds(List<Integer> ids) {
+            ReportPage page = new ReportPage(ids.size());
+            lock.readLock().lock();
+            try {
+                for (int id : ids) {
+                    ReportRow row = reports.get(id);
+                    if (row != null) {
+                        add(page, row);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return page;
+        }
+
+        @Override
+        public List<Report> findByCitizen(int citizenId) {
+            List<Report> found = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                IntList ids = reportsByCitizen.get(citizenId);
+                for (int i = 0; ids != null && i < ids.size; i++) {
+                    found.add(reports.get(ids.values[i]).toReport());
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return found;
+        }
+
+        @Override
+        public List<Report> findIdRange(int afterId, int upToId) {
+            List<Report> found = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                for (int id = Math.max(afterId, 0) + 1; id <= Math.min(upToId, maxReportId); id++) {
+                    ReportRow row = reports.get(id);
+                    if (row != null) {
+                        found.add(row.toReport());
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return found;
+        }
+
+        @Override
+        public List<Report> findOpenOriginals() {
+            List<Report> found = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                for (ReportStatus status : List.of(ReportStatus.PENDING, ReportStatus.IN_PROGRESS)) {
+                    for (ReportRow row : reportsByStatus.get(status)) {
+                        if (row.isOpenOriginal()) {
+                            found.add(row.toReport());
+                        }
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return found;
+        }
+
+        @Override
+        public void loadOpenLocations(SpatialIndex index) {
+            lock.readLock().lock();
+            try {
+                for (ReportStatus status : List.of(ReportStatus.PENDING, ReportStatus.IN_PROGRESS)) {
+                    for (ReportRow row : reportsByStatus.get(status)) {
+                        if (row.isOpenOriginal() && !Double.isNaN(row.latitude())) {
+                            index.put(row.id(), row.latitude(), row.longitude());
+                        }
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public int countUnassigned() {
+            lock.readLock().lock();
+            try {
+                int count = 0;
+                for (ReportRow row : reportsByStatus.get(ReportStatus.PENDING)) {
+                    if (row.duplicateOf() == 0) {
+                        count++;
+                    }
+                }
+                return count;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public List<Integer> findPendingIds(int limit) {
+            List<Integer> ids = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                Iterator<ReportRow> oldestFirst = reportsByStatus.get(ReportStatus.PENDING).descendingIterator();
+                while (ids.size() < limit && oldestFirst.hasNext()) {
+                    ids.add(oldestFirst.next().id());
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return ids;
+        }
+
+        @Override
+        public int insert(int citizenId, String description, String location, Integer duplicateOf, String photo)
+                throws SQLException {
+            NewReport report = new NewReport(citizenId, description, location);
+            double[] coordinates = Gazetteer.getDefault().geocode(location);
+            int id = write(tx -> newReport(tx, report, duplicateOf, coordinates, photo));
+            ReportRepository.opened(id, report, duplicateOf, coordinates);
+            return id;
+        }
+
+        @Override
+        public int[] insertAll(List<NewReport> batch) throws SQLException {
+            Integer[] duplicateOf = new Integer[batch.size()];
+            double[][] coordinates = new double[batch.size()][];
+            for (int i = 0; i < batch.size(); i++) {
+                DuplicateDetector.Match match = DuplicateDetector.getInstance()
+                        .findDuplicate(batch.get(i).description(), batch.get(i).location());
+                duplicateOf[i] = match == null ? null : match.reportId();
+                coordinates[i] = Gazetteer.getDefault().geocode(batch.get(i).location());
+            }
+            int[] ids = write(tx -> {
+                int[] added = new int[batch.size()];
+                for (int i = 0; i < added.length; i++) {
+                    added[i] = newReport(tx, batch.get(i), duplicateOf[i], coordinates[i], null);
+                }
+                return added;
+            });
+            for (int i = 0; i < ids.length; i++) {
+                ReportRepository.opened(ids[i], batch.get(i), duplicateOf[i], coordinates[i]);
+            }
+            return ids;
+        }
+
+        private int newReport(Tx tx, NewReport report, Integer duplicateOf, double[] coordinates, String photo) throws SQLException {
+            if (users.get(report.citizenId()) == null) {
+                throw foreignKey("reports", "citizen_id", "users", report.citizenId());
+            }
+            if (duplicateOf != null && tx.report(duplicateOf) == null) {
+                throw foreignKey("reports", "duplicate_of", "reports", duplicateOf);
+            }
+            int id = ++tx.lastReportId;
+            tx.put(new ReportRow(id, report.citizenId(), report.description(), report.location(), ReportStatus.PENDING,
+                    tx.now, tx.now, 0, duplicateOf == null ? 0 : duplicateOf, photo,
+                    coordinates == null ? Double.NaN : coordinates[0], coordinates == null ? Double.NaN : coordinates[1]));
+            return id;
+        }
+
+        @Override
+        public BatchResult updateStatusAll(List<Integer> reportIds, List<Integer> expectedVersions, String status)
+                throws SQLException {
+            ReportStatus target = ReportStatus.of(status);
+            BatchResult result = new BatchResult();
+            List<Integer> moved = new ArrayList<>();
+            write(tx -> {
+                for (int i = 0; i < reportIds.size(); i++) {
+                    int reportId = reportIds.get(i);
+                    ReportRow row = tx.report(reportId);
+                    if (result.getOutcomes().containsKey(reportId)) {
+                        continue; // Listed twice
+                    } else if (row == null) {
+                        result.put(reportId, BatchResult.Outcome.NOT_FOUND);
+                    } else if (row.status() == target) {
+                        result.put(reportId, BatchResult.Outcome.UPDATED); // Already there, whoever moved it
+                    } else if (expectedVersions != null && row.version() != expectedVersions.get(i)) {
+                        result.put(reportId, BatchResult.Outcome.CONFLICT);
+                    } else if (!row.status().canMoveTo(target)) {
+                        result.put(reportId, BatchResult.Outcome.NOT_ALLOWED);
+                    } else {
+                        result.put(reportId, BatchResult.Outcome.UPDATED);
+                        moved.add(reportId);
+                        tx.moveWithLinked(row, target);
+                    }
+                }
+                return null;
+            });
+            if (!moved.isEmpty()) {
+                GeoDispatch.getInstance().statusChanged(moved, status);
+                DuplicateDetector.getInstance().statusChanged(moved, status);
+                ChangeFeed.getInstance().changed();
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The tasks table.
+     */
+    private final class Tasks implements TaskStore {
+
+        @Override
+        public List<Task> findByWorker(int workerId) {
+            List<Task> found = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                IntList ids = tasksByWorker.get(workerId);
+                for (int i = ids == null ? -1 : ids.size - 1; i >= 0; i--) { // Assigned in ID order, newest last
+                    found.add(toTask(tasks.get(ids.values[i])));
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return found;
+        }
+
+        @Override
+        public List<Task> findChangedSince(Timestamp since) {
+            List<Task> changed = new ArrayList<>();
+            if (since == null) {
+                return changed;
+            }
+            lock.readLock().lock();
+            try {
+                for (TaskRow row : tasksByChange.tailSet(new TaskRow(Integer.MIN_VALUE, 0, 0, false, 0, since.getTime(), 0), true)) {
+                    changed.add(toTask(row));
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            changed.sort(Comparator.comparing(Task::assignedDate).thenComparingInt(Task::id));
+            return changed;
+        }
+
+        @Override
+        public Timestamp changeHorizon() {
+            lock.readLock().lock(); // Writes stamp and apply their rows under the write lock
+            try {
+                return new Timestamp(System.currentTimeMillis());
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public Timestamp lastModified() {
+            lock.readLock().lock();
+            try {
+                return tasksByChange.isEmpty() ? null : new Timestamp(tasksByChange.last().updatedMillis());
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public BatchResult assignAll(List<Integer> reportIds, List<Integer> expectedVersions, int workerId)
+                throws SQLException {
+            BatchResult result = new BatchResult();
+            int assigned = write(tx -> {
+                int count = 0;
+                for (int i = 0; i < reportIds.size(); i++) {
+                    int reportId = reportIds.get(i);
+                    ReportRow row = tx.report(reportId);
+                    if (result.getOutcomes().containsKey(reportId)) {
+                        continue; // Listed twice
+                    } else if (row == null) {
+                        result.put(reportId, BatchResult.Outcome.NOT_FOUND);
+                    } else if (taskByReport.get(reportId) != null) {
+                        result.put(reportId, BatchResult.Outcome.ALREADY_ASSIGNED);
+                    } else if (row.duplicateOf() != 0) {
+                        result.put(reportId, BatchResult.Outcome.DUPLICATE);
+                    } else if (expectedVersions != null && row.version() != expectedVersions.get(i)) {
+                        result.put(reportId, BatchResult.Outcome.CONFLICT);
+                    } else if (row.status() != ReportStatus.PENDING) {
+                        result.put(reportId, BatchResult.Outcome.NOT_ALLOWED);
+                    } else {
+                        result.put(reportId, BatchResult.Outcome.UPDATED);
+                        tx.assign(row, workerId);
+                        count++;
+                    }
+                }
+                return count;
+            });
+            GeoDispatch.getInstance().tasksAssigned(workerId, assigned);
+            ChangeFeed.getInstance().changed();
+            return result;
+        }
+
+        @Override
+        public BatchResult.Outcome complete(int taskId, int reportId, Integer expectedVersion) throws SQLException {
+            int[] workerId = {-1};
+            BatchResult.Outcome outcome = write(tx -> {
+                TaskRow task = tx.task(taskId);
+                if (task == null) {
+                    return BatchResult.Outcome.NOT_FOUND;
+                }
+                workerId[0] = task.workerId();
+                if (task.completed() || (expectedVersion != null && task.version() != expectedVersion)) {
+                    return BatchResult.Outcome.CONFLICT;
+                }
+                tx.put(new TaskRow(task.id(), task.reportId(), task.workerId(), true, task.assignedMillis(), tx.now,
+                        task.version() + 1));
+                ReportRow report = tx.report(reportId);
+                if (report != null) {
+                    tx.moveWithLinked(report, ReportStatus.COMPLETED);
+                }
+                return BatchResult.Outcome.UPDATED;
+            });
+            if (outcome == BatchResult.Outcome.UPDATED) {
+                GeoDispatch.getInstance().taskCompleted(workerId[0], reportId);
+                DuplicateDetector.getInstance().reportClosed(reportId);
+                ChangeFeed.getInstance().changed();
+            }
+            return outcome;
+        }
+
+        @Override
+        public Map<Integer, Integer> dispatchPending(int window, AssignmentPlanner planner) throws SQLException {
+            Map<Integer, Integer> plan = write(tx -> {
+                List<PendingReport> claimed = new ArrayList<>();
+                Iterator<ReportRow> oldestFirst = reportsByStatus.get(ReportStatus.PENDING).descendingIterator();
+                while (claimed.size() < window && oldestFirst.hasNext()) {
+                    ReportRow row = oldestFirst.next();
+                    if (row.duplicateOf() == 0 && taskByReport.get(row.id()) == null) {
+                        claimed.add(new PendingReport(row.id(), row.description(), (tx.now - row.submittedMillis()) / 1000));
+                    }
+                }
+                Map<Integer, Integer> planned = claimed.isEmpty() ? Map.of() : planner.plan(claimed);
+                for (Map.Entry<Integer, Integer> assignment : planned.entrySet()) {
+                    ReportRow row = tx.report(assignment.getKey());
+                    if (row == null) {
+                        throw foreignKey("tasks", "report_id", "reports", assignment.getKey());
+                    }
+                    tx.assign(row, assignment.getValue());
+                }
+                return planned;
+            });
+            for (int workerId : plan.values()) {
+                GeoDispatch.getInstance().tasksAssigned(workerId, 1);
+            }
+            if (!plan.isEmpty()) {
+                ChangeFeed.getInstance().changed();
+            }
+            return plan;
+        }
+
+        @Override
+        public Map<Integer, Integer> countOpenTasksByWorker() {
+            Map<Integer, Integer> counts = new HashMap<>();
+            lock.readLock().lock();
+            try {
+                openTasksByWorker.forEach((workerId, count) -> {
+                    if (count[0] > 0) {
+                        counts.put(workerId, count[0]);
+                    }
+                });
+            } finally {
+                lock.readLock().unlock();
+            }
+            return counts;
+        }
+    }
+
+    /**
+     * The users table.
+     */
+    private final class Users implements UserStore {
+
+        @Override
+        public User authenticate(String username, String password) {
+            UserRow row;
+            lock.readLock().lock();
+            try {
+                row = usersByName.get(username);
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (row == null) {
+                return null;
+            }
+            // Constant-time comparison, as in UserRepository
+            boolean matches = MessageDigest.isEqual(row.password().getBytes(StandardCharsets.UTF_8),
+                    password.getBytes(StandardCharsets.UTF_8));
+            return matches ? new User(row.id(), row.username(), row.role()) : null;
+        }
+
+        @Override
+        public List<User> findWorkers() {
+            List<User> workers = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                for (UserRow row : users.values()) {
+                    if ("Worker".equals(row.role())) {
+                        workers.add(new User(row.id(), row.username(), row.role()));
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            workers.sort(Comparator.comparingInt(User::id));
+            return List.copyOf(workers);
+        }
+
+        @Override
+        public List<Integer> findIdsByRole(String role) {
+            List<Integer> ids = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                for (UserRow row : users.values()) {
+                    if (role.equals(row.role())) {
+                        ids.add(row.id());
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            ids.sort(null);
+            return ids;
+        }
+
+        @Override
+        public double[] findLocation(int userId) {
+            lock.readLock().lock();
+            try {
+                UserRow row = users.get(userId);
+                return row == null || Double.isNaN(row.latitude()) ? null : new double[]{row.latitude(), row.longitude()};
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void loadWorkerLocations(SpatialIndex index) {
+            lock.readLock().lock();
+            try {
+                for (UserRow row : users.values()) {
+                    if ("Worker".equals(row.role()) && !Double.isNaN(row.latitude())) {
+                        index.put(row.id(), row.latitude(), row.longitude());
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void invalidateCache() {
+            // Nothing is cached; every lookup reads the live maps
+        }
+    }
+}
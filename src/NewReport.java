@@ -0,0 +1,38 @@
+package src;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A report that has been accepted but not yet inserted into the reports table.
+ * @param citizenId The ID of the submitting citizen.
+ * @param description What the citizen reported.
+ * @param location Where the problem is.
+ */
+public record NewReport(int citizenId, String description, String location) {
+
+    static final int MAX_LOCATION_LENGTH = 255;
+    static final int MAX_DESCRIPTION_BYTES = 65_535; // TEXT column, which is limited in bytes rather than characters
+
+    /**
+     * Checks the report against the reports table's constraints.
+     * @return null if the report is valid, otherwise a message describing the problem.
+     */
+    public String validate() {
+        if (citizenId <= 0) {
+            return "citizenId must be a positive integer";
+        }
+        if (description == null || description.isBlank()) {
+            return "description is required";
+        }
+        if (location == null || location.isBlank()) {
+            return "location is required";
+        }
+        if (description.getBytes(StandardCharsets.UTF_8).length > MAX_DESCRIPTION_BYTES) {
+            return "description is longer than " + MAX_DESCRIPTION_BYTES + " bytes of UTF-8";
+        }
+        if (location.length() > MAX_LOCATION_LENGTH) {
+            return "location is longer than " + MAX_LOCATION_LENGTH + " characters";
+        }
+        return null;
+    }
+}
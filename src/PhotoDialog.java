@@ -0,0 +1,114 @@
+package src;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Shows a report photo from the {@link BlobStore}, scaled to fit the screen, and saves the original to a file.
+ */
+public class PhotoDialog extends JDialog {
+
+    private static final int MAX_SIDE = 900;
+
+    private final String hash;
+    private volatile String extension = ".jpg"; // Known once the photo is loaded
+
+    private PhotoDialog(Window owner, String hash) {
+        super(owner, "Report Photo", ModalityType.MODELESS);
+        this.hash = hash;
+        setLayout(new BorderLayout(10, 10));
+        JLabel imageLabel = new JLabel("Loading...", SwingConstants.CENTER);
+        imageLabel.setPreferredSize(new Dimension(400, 300));
+        add(imageLabel, BorderLayout.CENTER);
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        JButton saveButton = new JButton("Save As...");
+        saveButton.addActionListener(e -> save());
+        buttons.add(saveButton);
+        JButton closeButton = new JButton("Close");
+        closeButton.addActionListener(e -> dispose());
+        buttons.add(closeButton);
+        add(buttons, BorderLayout.SOUTH);
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+
+        // Decoded skipping pixels, so a large photo never needs its full size in memory
+        AsyncLoader.perform(() -> {
+            try {
+                String format = BlobStore.getInstance().format(hash);
+                extension = format == null || format.equals("jpeg") ? ".jpg" : "." + format;
+                return Thumbnails.scale(Thumbnails.read(BlobStore.getInstance().path(hash), MAX_SIDE), MAX_SIDE);
+            } catch (IOException e) {
+                throw new SQLException("Failed to read photo", e);
+            }
+        }, (BufferedImage image) -> {
+            imageLabel.setText(null);
+            imageLabel.setIcon(new ImageIcon(image));
+            imageLabel.setPreferredSize(null);
+            pack();
+            setLocationRelativeTo(getOwner());
+        }, error -> {
+            error.printStackTrace();
+            imageLabel.setText("The photo is not available on this computer.");
+        });
+        pack();
+        setLocationRelativeTo(owner);
+    }
+
+    /**
+     * Opens the photo in a new window.
+     */
+    public static void show(Component parent, String hash) {
+        new PhotoDialog(SwingUtilities.getWindowAncestor(parent), hash).setVisible(true);
+    }
+
+    /**
+     * Opens the photo when a cell of the given column is double-clicked.
+     * @param column The column of photo hashes, in model coordinates.
+     */
+    public static void openOnDoubleClick(JTable table, int column) {
+        table.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int row = table.rowAtPoint(e.getPoint());
+                int viewColumn = table.columnAtPoint(e.getPoint());
+                if (e.getClickCount() != 2 || row < 0 || viewColumn < 0 || table.convertColumnIndexToModel(viewColumn) != column) {
+                    return;
+                }
+                Object hash = table.getModel().getValueAt(table.convertRowIndexToModel(row), column);
+                if (hash != null) {
+                    show(table, (String) hash);
+                }
+            }
+        });
+    }
+
+    /**
+     * Copies the original photo to a file of the user's choice, without reading it into memory.
+     */
+    private void save() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File("report-photo-" + hash.substring(0, 12) + extension));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        AsyncLoader.perform(() -> {
+            try {
+                BlobStore.getInstance().copyTo(hash, file.toPath());
+                return file;
+            } catch (IOException e) {
+                throw new SQLException("Failed to save photo", e);
+            }
+        }, saved -> JOptionPane.showMessageDialog(this, "Photo saved to " + saved + ".", "Success", JOptionPane.INFORMATION_MESSAGE),
+                error -> {
+                    error.printStackTrace();
+                    JOptionPane.showMessageDialog(this, "Failed to save photo.", "Error", JOptionPane.ERROR_MESSAGE);
+                });
+    }
+}
@@ -0,0 +1,371 @@
+package src;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Per-statement timings of everything run through {@link DBConnection}.
+ * Connections are handed out wrapped in a thin proxy that times each execute call and, for queries, the time
+ * from the result set being returned until it is closed, which is where rows are fetched and mapped. Together
+ * with the time spent borrowing a connection this splits a slow screen into connect, query and row mapping.
+ * Statements are keyed by their SQL with IN lists collapsed, so chunked queries share one entry; each keeps
+ * lock-free histograms and row counts. Exposed over JMX as src:type=QueryMetrics and in the admin
+ * Diagnostics tab. -Ddb.metrics=false turns the proxy off.
+ */
+public class QueryMetrics {
+
+    private static final boolean ENABLED = !"false".equals(System.getProperty("db.metrics"));
+    private static final int MAX_STATEMENTS = 1000; // Beyond this, new SQL is counted under one catch-all entry
+    private static final Pattern IN_LIST = Pattern.compile("\\?(\\s*,\\s*\\?)+");
+    private static final String OTHER = "(other statements)";
+
+    private static final QueryMetrics INSTANCE = new QueryMetrics();
+
+    /**
+     * The JMX view. Times are in milliseconds.
+     */
+    public interface QueryMetricsMXBean {
+        long getExecutions();
+
+        long getErrors();
+
+        double getExecuteP99Millis();
+
+        double getBorrowP99Millis();
+
+        double getBorrowMaxMillis();
+
+        int getPoolActive();
+
+        int getPoolIdle();
+
+        /**
+         * @return One line per statement, most total time first.
+         */
+        String[] getStatements();
+
+        void reset();
+    }
+
+    /**
+     * A point-in-time view of one statement's counters. Times are in milliseconds.
+     * @param fetchP99Millis Time from a query returning until its result set was closed.
+     */
+    public record Summary(String sql, long executions, long rows, long errors, double totalMillis, double meanMillis,
+                          double p50Millis, double p99Millis, double maxMillis, double fetchP99Millis) {
+
+        @Override
+        public String toString() {
+            return String.format("n=%d rows=%d errors=%d total=%.1fms mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms fetchP99=%.3fms %s",
+                    executions, rows, errors, totalMillis, meanMillis, p50Millis, p99Millis, maxMillis, fetchP99Millis, sql);
+        }
+    }
+
+    private static final class StatementStats {
+        final String sql;
+        final LatencyHistogram execute = new LatencyHistogram();
+        final LatencyHistogram fetch = new LatencyHistogram();
+        final LongAdder rows = new LongAdder();
+        final LongAdder errors = new LongAdder();
+
+        StatementStats(String sql) {
+            this.sql = sql;
+        }
+
+        Summary summary() {
+            return new Summary(sql, execute.getCount(), rows.sum(), errors.sum(),
+                    execute.getMean() * execute.getCount() / 1e6, execute.getMean() / 1e6,
+                    execute.percentile(0.5) / 1e6, execute.percentile(0.99) / 1e6, execute.getMax() / 1e6,
+                    fetch.percentile(0.99) / 1e6);
+        }
+    }
+
+    private final Map<String, StatementStats> bySql = new ConcurrentHashMap<>();      // Raw SQL as prepared
+    private final Map<String, StatementStats> byPattern = new ConcurrentHashMap<>();  // SQL with IN lists collapsed
+    private final LatencyHistogram borrow = new LatencyHistogram();
+    private final LatencyHistogram allExecutes = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    private QueryMetrics() {
+        register("src:type=QueryMetrics", new QueryMetricsMXBean() {
+            @Override
+            public long getExecutions() {
+                return allExecutes.getCount();
+            }
+
+            @Override
+            public long getErrors() {
+                return errors.sum();
+            }
+
+            @Override
+            public double getExecuteP99Millis() {
+                return allExecutes.percentile(0.99) / 1e6;
+            }
+
+            @Override
+            public double getBorrowP99Millis() {
+                return borrow.percentile(0.99) / 1e6;
+            }
+
+            @Override
+            public double getBorrowMaxMillis() {
+                return borrow.getMax() / 1e6;
+            }
+
+            @Override
+            public int getPoolActive() {
+                return DBConnection.getPoolStats().active;
+            }
+
+            @Override
+            public int getPoolIdle() {
+                return DBConnection.getPoolStats().idle;
+            }
+
+            @Override
+            public String[] getStatements() {
+                return summaries().stream().map(Summary::toString).toArray(String[]::new);
+            }
+
+            @Override
+            public void reset() {
+                QueryMetrics.this.reset();
+            }
+        });
+    }
+
+    public static QueryMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers an MXBean with the platform MBean server, replacing an earlier registration under the same name.
+     */
+    static void register(String name, Object mxBean) {
+        try {
+            ObjectName objectName = new ObjectName(name);
+            if (ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            }
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mxBean, objectName);
+        } catch (JMException e) {
+            e.printStackTrace(); // Metrics still work in-process, just not over JMX
+        }
+    }
+
+    /**
+     * Records how long borrowing a connection took and wraps it so its statements are timed.
+     */
+    Connection wrap(Connection conn, long borrowNanos) {
+        borrow.record(borrowNanos);
+        if (!ENABLED) {
+            return conn;
+        }
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(conn));
+    }
+
+    /**
+     * @return Every statement's counters, most total time first.
+     */
+    public List<Summary> summaries() {
+        List<Summary> summaries = new ArrayList<>();
+        for (StatementStats stats : byPattern.values()) {
+            if (stats.execute.getCount() > 0 || stats.errors.sum() > 0) {
+                summaries.add(stats.summary());
+            }
+        }
+        summaries.sort(Comparator.comparingDouble(Summary::totalMillis).reversed());
+        return summaries;
+    }
+
+    public LatencyHistogram getBorrowHistogram() {
+        return borrow;
+    }
+
+    public LatencyHistogram getExecuteHistogram() {
+        return allExecutes;
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * Clears every counter. Not atomic with respect to statements running at the time.
+     */
+    public void reset() {
+        for (StatementStats stats : byPattern.values()) {
+            stats.execute.reset();
+            stats.fetch.reset();
+            stats.rows.reset();
+            stats.errors.reset();
+        }
+        borrow.reset();
+        allExecutes.reset();
+        errors.reset();
+    }
+
+    private StatementStats statsFor(String sql) {
+        StatementStats stats = bySql.get(sql);
+        if (stats != null) {
+            return stats;
+        }
+        String pattern = IN_LIST.matcher(sql).replaceAll("?, ...");
+        stats = byPattern.get(pattern);
+        if (stats == null) {
+            stats = byPattern.size() < MAX_STATEMENTS
+                    ? byPattern.computeIfAbsent(pattern, StatementStats::new)
+                    : byPattern.computeIfAbsent(OTHER, StatementStats::new);
+        }
+        if (bySql.size() < MAX_STATEMENTS * 4) {
+            bySql.put(sql, stats);
+        }
+        return stats;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Wraps the statements a connection creates.
+     */
+    private final class ConnectionHandler implements InvocationHandler {
+        private final Connection conn;
+
+        ConnectionHandler(Connection conn) {
+            this.conn = conn;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = QueryMetrics.invoke(conn, method, args);
+            switch (method.getName()) {
+                case "prepareStatement":
+                case "prepareCall":
+                    Class<?> type = result instanceof CallableStatement ? CallableStatement.class : PreparedStatement.class;
+                    return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                            new StatementHandler((Statement) result, statsFor((String) args[0])));
+                case "createStatement":
+                    return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{Statement.class},
+                            new StatementHandler((Statement) result, null));
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return result;
+            }
+        }
+    }
+
+    /**
+     * Times the execute calls of one statement.
+     */
+    private final class StatementHandler implements InvocationHandler {
+        private final Statement statement;
+        private final StatementStats prepared; // null for a plain Statement, whose SQL comes with each call
+
+        StatementHandler(Statement statement, StatementStats prepared) {
+            this.statement = statement;
+            this.prepared = prepared;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (!name.startsWith("execute")) {
+                return QueryMetrics.invoke(statement, method, args);
+            }
+            StatementStats stats = prepared != null ? prepared
+                    : args != null && args.length > 0 && args[0] instanceof String sql ? statsFor(sql) : null;
+            if (stats == null) {
+                return QueryMetrics.invoke(statement, method, args);
+            }
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = QueryMetrics.invoke(statement, method, args);
+            } catch (SQLException e) {
+                stats.errors.increment();
+                errors.increment();
+                throw e;
+            }
+            long end = System.nanoTime();
+            stats.execute.record(end - start);
+            allExecutes.record(end - start);
+            if (result instanceof ResultSet rs) {
+                return Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                        new ResultSetHandler(rs, stats, end));
+            } else if (result instanceof Integer count) {
+                stats.rows.add(Math.max(0, count));
+            } else if (result instanceof Long count) {
+                stats.rows.add(Math.max(0, count));
+            } else if (result instanceof int[] counts) {
+                for (int count : counts) {
+                    stats.rows.add(Math.max(0, count)); // SUCCESS_NO_INFO (-2) counts as unknown
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Counts the rows read from a result set and times it until it is closed.
+     */
+    private static final class ResultSetHandler implements InvocationHandler {
+        private final ResultSet rs;
+        private final StatementStats stats;
+        private final long opened;
+        private long rows;
+        private boolean recorded;
+
+        ResultSetHandler(ResultSet rs, StatementStats stats, long opened) {
+            this.rs = rs;
+            this.stats = stats;
+            this.opened = opened;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("next")) {
+                boolean more = rs.next();
+                if (more) {
+                    rows++;
+                }
+                return more;
+            }
+            if (name.equals("close") && !recorded) {
+                recorded = true;
+                stats.fetch.record(System.nanoTime() - opened);
+                stats.rows.add(rows);
+            }
+            return QueryMetrics.invoke(rs, method, args);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package src;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs EXPLAIN on every dashboard query and fails if one of them falls back to a full table scan or a filesort.
+ * The SQL is taken from the repositories' constants, so the check covers exactly what the dashboards run.
+ * On a nearly empty table MySQL may legitimately prefer a scan over an index it does have, so a scan or
+ * filesort only fails on tables larger than {@link #SMALL_TABLE_ROWS}, or when no usable index exists at all.
+ * Run it against a realistically sized database, for example one seeded by the benchmark tools.
+ *
+ * Usage: java -cp ".;lib\mysql-connector-j-9.4.0.jar" src.QueryPlanCheck
+ * Exits with status 1 if any plan regressed.
+ */
+public class QueryPlanCheck {
+
+    static final long SMALL_TABLE_ROWS = 1000;
+
+    /**
+     * A query to check with representative parameters.
+     */
+    static class CheckedQuery {
+        final String name;
+        final String sql;
+        final Object[] params;
+
+        CheckedQuery(String name, String sql, Object... params) {
+            this.name = name;
+            this.sql = sql;
+            this.params = params;
+        }
+    }
+
+    /**
+     * @return The plan problems found, one line each; empty if every plan is fine.
+     */
+    public static List<String> check() throws SQLException {
+        List<String> problems = new ArrayList<>();
+        try (Connection conn = DBConnection.getConnection()) {
+            int citizenId = anyId(conn, "SELECT MIN(citizen_id) FROM reports");
+            int workerId = anyId(conn, "SELECT MIN(id) FROM users WHERE role = 'Worker'");
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            Timestamp hourAgo = new Timestamp(now.getTime() - 3_600_000L);
+            String inList = "?, ?, ?";
+            Date today = new Date(now.getTime());
+
+            List<CheckedQuery> queries = List.of(
+                    new CheckedQuery("LoginFrame.performLogin", UserRepository.BY_USERNAME_SQL, "admin"),
+                    new CheckedQuery("AdminDashboard.loadWorkers", UserRepository.WORKERS_SQL),
+                    new CheckedQuery("AdminDashboard.loadReports (first page)", ReportRepository.FIRST_PAGE_SQL, ReportTableModel.PAGE_SIZE),
+                    new CheckedQuery("AdminDashboard.loadReports (next page)", ReportRepository.PAGE_AFTER_SQL, now, now, Integer.MAX_VALUE, ReportTableModel.PAGE_SIZE),
+                    new CheckedQuery("ChangeFeed (reports)", ReportRepository.CHANGED_SINCE_SQL, hourAgo),
+                    new CheckedQuery("AdminDashboard.assignTask (lock)", String.format(ReportRepository.LOCK_VERSIONS_SQL, inList), 1, 2, 3),
+                    new CheckedQuery("AdminDashboard.assignTask (duplicates)", String.format(TaskRepository.ASSIGNED_REPORTS_SQL, inList), 1, 2, 3),
+                    new CheckedQuery("Pending reports", ReportRepository.PENDING_IDS_SQL, 100),
+                    new CheckedQuery("AutoDispatcher claim", TaskRepository.CLAIM_PENDING_SQL, 100),
+                    new CheckedQuery("AutoDispatcher queue depth", ReportRepository.UNASSIGNED_COUNT_SQL),
+                    new CheckedQuery("CitizenDashboard.loadReports", ReportRepository.BY_CITIZEN_SQL, citizenId),
+                    new CheckedQuery("WorkerDashboard.loadTasks", TaskRepository.BY_WORKER_SQL, workerId),
+                    new CheckedQuery("ChangeFeed (tasks)", TaskRepository.CHANGED_SINCE_SQL, hourAgo),
+                    new CheckedQuery("ChangeFeed start (reports)", ReportRepository.SNAPSHOT_SQL),
+                    new CheckedQuery("ChangeFeed start (tasks)", TaskRepository.LAST_MODIFIED_SQL),
+                    new CheckedQuery("WorkerDashboard.completeTask", TaskRepository.TASK_COMPLETION_SQL, 1),
+                    new CheckedQuery("Statistics (lock reports)", String.format(StatisticsRepository.LINKED_STATES_SQL, inList), 1, 2, 3, 1, 2, 3),
+                    // area_rollups is scanned whole on purpose: it has one row per area and status
+                    new CheckedQuery("Statistics panel (daily)", StatisticsRepository.DAILY_SQL, today),
+                    new CheckedQuery("Statistics panel (workers)", StatisticsRepository.WORKERS_SQL, today),
+                    new CheckedQuery("ArchiveStore.archive (claim)", ArchiveRepository.CLAIM_SQL, hourAgo, hourAgo, 100),
+                    new CheckedQuery("ArchiveStore.archive (duplicates)", String.format(ArchiveRepository.LINKED_SQL, inList), 1, 2, 3),
+                    new CheckedQuery("ArchiveStore.archive (rows)", String.format(ArchiveRepository.ROWS_SQL, inList), 1, 2, 3),
+                    new CheckedQuery("SubmissionJournal replay", String.format(ReportRepository.EXISTING_TOKENS_SQL, inList), "a", "b", "c"),
+                    new CheckedQuery("TelemetryServer overflow (lock bin)", BinRepository.LOCK_BIN_SQL, 1)
+            );
+            for (CheckedQuery query : queries) {
+                problems.addAll(explain(conn, query));
+            }
+        }
+        return problems;
+    }
+
+    private static List<String> explain(Connection conn, CheckedQuery query) throws SQLException {
+        List<String> problems = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN " + query.sql)) {
+            for (int i = 0; i < query.params.length; i++) {
+                stmt.setObject(i + 1, query.params[i]);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String table = rs.getString("table");
+                    String type = rs.getString("type");
+                    String possibleKeys = rs.getString("possible_keys");
+                    String extra = rs.getString("Extra");
+                    long rows = rs.getLong("rows");
+                    boolean fullScan = "ALL".equals(type);
+                    boolean filesort = extra != null && extra.contains("Using filesort");
+                    if (!fullScan && !filesort) {
+                        continue;
+                    }
+                    if (possibleKeys == null || rows > SMALL_TABLE_ROWS) {
+                        problems.add(String.format("%s: %s on table %s (type=%s, key=%s, rows=%d, extra=%s)",
+                                query.name, fullScan ? "full table scan" : "filesort", table, type,
+                                rs.getString("key"), rows, extra));
+                    }
+                }
+            }
+        }
+        return problems;
+    }
+
+    private static int anyId(Connection conn, String sql) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 1;
+        }
+    }
+
+    public static void main(String[] args) throws SQLException {
+        SchemaMigrations.migrate();
+        List<String> problems = check();
+        if (problems.isEmpty()) {
+            System.out.println("All dashboard query plans use indexes.");
+            return;
+        }
+        problems.forEach(System.err::println);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,318 @@
+package src;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends read-only dashboard queries to replica databases and everything else to the primary.
+ * Used by {@link DBConnection} when -Ddb.replicas lists the replicas' JDBC URLs, separated by ';'.
+ *
+ * Reads are read-your-writes for the process, which for a dashboard client is one user's session: when a
+ * connection from the primary that ran a write is closed, the primary's executed GTID set is recorded as the
+ * session's last write, and a replica only serves reads again once it has applied that set. Servers without
+ * GTIDs fall back to time: the replica must be known to have caught up with the moment of the write.
+ *
+ * A background check every -Ddb.replicaCheckMillis (default 1000) reads each replica's lag from
+ * SHOW REPLICA STATUS. A replica more than -Ddb.replicaMaxLagSeconds (default 5) behind, with replication
+ * stopped, or unreachable takes no reads until a later check finds it healthy; reads then go to the other
+ * replicas, or to the primary when none is left. A server that is not replicating at all counts as current,
+ * so two standalone local databases can stand in for a primary and a replica. The replicas' user needs the
+ * REPLICATION CLIENT privilege for the check. Counters are exposed over JMX as src:type=ReadRouting.
+ */
+public class ReplicaRouter {
+
+    private static final String EXECUTED_SQL = "SELECT @@GLOBAL.gtid_executed";
+    private static final String APPLIED_SQL = "SELECT GTID_SUBSET(?, @@GLOBAL.gtid_executed)";
+    private static final String STATUS_SQL = "SHOW REPLICA STATUS";
+
+    /**
+     * The JMX view.
+     */
+    public interface ReadRoutingMXBean {
+        long getReplicaReads();
+
+        long getPrimaryReads();
+
+        long getWrites();
+
+        /**
+         * @return One line per replica: health, lag and reads served.
+         */
+        String[] getReplicas();
+    }
+
+    /**
+     * Where the primary was after a write of this session.
+     * @param nanos When the write was recorded, on the System.nanoTime() clock.
+     * @param gtids The primary's executed GTID set, or empty if the server does not use GTIDs.
+     */
+    private record Write(long nanos, String gtids) {
+    }
+
+    /**
+     * One replica and what the checks last found.
+     */
+    private static final class Replica {
+        final String url;
+        final ConnectionPool pool;
+        final LongAdder reads = new LongAdder();
+        volatile boolean healthy = true; // Until the first check says otherwise
+        volatile String problem = "not checked yet";
+        volatile double lagSeconds;
+        volatile long appliedNanos;      // Everything written on the primary before this has been applied
+        volatile Write caughtUp;         // The newest session write known to be applied here
+        volatile Write probed;           // The newest session write a read has already asked about
+
+        Replica(String url, ConnectionPool pool) {
+            this.url = url;
+            this.pool = pool;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s, lag %.0f s, %d reads", url, healthy ? "healthy" : problem, lagSeconds, reads.sum());
+        }
+    }
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private final double maxLagSeconds;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile Write lastWrite;
+
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+
+    /**
+     * @param urls The replicas' JDBC URLs, as shown in the counters.
+     * @param pools One pool per replica, in the same order.
+     * @param maxLagSeconds Replicas further behind than this take no reads.
+     * @param checkMillis How often replica lag is checked.
+     */
+    public ReplicaRouter(List<String> urls, List<ConnectionPool> pools, double maxLagSeconds, long checkMillis) {
+        for (int i = 0; i < urls.size(); i++) {
+            replicas.add(new Replica(urls.get(i), pools.get(i)));
+        }
+        this.maxLagSeconds = maxLagSeconds;
+
+        ScheduledExecutorService checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-replica-check");
+            t.setDaemon(true);
+            return t;
+        });
+        checker.scheduleWithFixedDelay(this::checkAll, 0, checkMillis, TimeUnit.MILLISECONDS);
+
+        QueryMetrics.register("src:type=ReadRouting", new ReadRoutingMXBean() {
+            @Override
+            public long getReplicaReads() {
+                return replicas.stream().mapToLong(replica -> replica.reads.sum()).sum();
+            }
+
+            @Override
+            public long getPrimaryReads() {
+                return primaryReads.sum();
+            }
+
+            @Override
+            public long getWrites() {
+                return writes.sum();
+            }
+
+            @Override
+            public String[] getReplicas() {
+                return replicas.stream().map(Replica::toString).toArray(String[]::new);
+            }
+        });
+    }
+
+    /**
+     * Borrows a connection from a replica that is healthy and has applied this session's last write,
+     * taking the replicas in turn.
+     * @return The connection, or null if the read should go to the primary.
+     */
+    Connection borrowForRead() {
+        Write write = lastWrite;
+        int start = next.getAndIncrement();
+        for (int n = 0; n < replicas.size(); n++) {
+            Replica replica = replicas.get(Math.floorMod(start + n, replicas.size()));
+            if (!replica.healthy) {
+                continue;
+            }
+            boolean mustAsk = write != null && replica.caughtUp != write;
+            if (mustAsk && (write.gtids().isEmpty() || replica.probed == write)) {
+                continue; // Without GTIDs, or once it said no, only the background check can clear it
+            }
+            Connection conn = null;
+            try {
+                conn = replica.pool.borrow();
+                if (mustAsk) {
+                    replica.probed = write;
+                    if (!hasApplied(conn, write)) {
+                        conn.close();
+                        continue;
+                    }
+                    replica.caughtUp = write;
+                }
+                replica.reads.increment();
+                return conn;
+            } catch (SQLException e) {
+                closeQuietly(conn);
+                replica.healthy = false; // Until the next check finds it reachable again
+                replica.problem = e.getMessage();
+            }
+        }
+        primaryReads.increment();
+        return null;
+    }
+
+    /**
+     * Wraps a primary connection so that closing it records this session's write, if it ran one.
+     * A statement counts as a write unless it is a SELECT, so a rolled-back write is recorded too;
+     * that only sends a few more reads to the primary.
+     */
+    Connection trackWrites(Connection conn) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new InvocationHandler() {
+                    private boolean wrote;
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        switch (method.getName()) {
+                            case "prepareStatement":
+                            case "prepareCall":
+                                wrote |= !isRead((String) args[0]);
+                                break;
+                            case "createStatement":
+                                wrote = true; // Its SQL is not known yet
+                                break;
+                            case "close":
+                                if (wrote && !conn.isClosed()) {
+                                    wrote = false;
+                                    recordWrite(conn);
+                                }
+                                break;
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            default:
+                                break;
+                        }
+                        try {
+                            return method.invoke(conn, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                });
+    }
+
+    private void recordWrite(Connection conn) {
+        long now = System.nanoTime();
+        String gtids = "";
+        try (PreparedStatement stmt = conn.prepareStatement(EXECUTED_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            if (rs.next() && rs.getString(1) != null) {
+                gtids = rs.getString(1).replace("\n", "");
+            }
+        } catch (SQLException e) {
+            e.printStackTrace(); // Falls back to waiting for the replicas' lag to pass the write time
+        }
+        writes.increment();
+        lastWrite = new Write(now, gtids);
+    }
+
+    private static boolean isRead(String sql) {
+        String start = sql.stripLeading();
+        return start.regionMatches(true, 0, "SELECT", 0, 6) && !start.toUpperCase(Locale.ROOT).contains("FOR UPDATE");
+    }
+
+    private static boolean hasApplied(Connection conn, Write write) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(APPLIED_SQL)) {
+            stmt.setString(1, write.gtids());
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private void checkAll() {
+        for (Replica replica : replicas) {
+            try {
+                check(replica);
+            } catch (RuntimeException e) {
+                e.printStackTrace(); // Must not end the scheduled checks
+            }
+        }
+    }
+
+    private void check(Replica replica) {
+        long started = System.nanoTime();
+        Write write = lastWrite;
+        try (Connection conn = replica.pool.borrow()) {
+            Double lag = 0.0; // Not replicating: a standalone database standing in for a replica
+            String problem = null;
+            try (PreparedStatement stmt = conn.prepareStatement(STATUS_SQL);
+                 ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    long behind = rs.getLong("Seconds_Behind_Source");
+                    lag = rs.wasNull() ? null : (double) behind;
+                    if (!"Yes".equals(rs.getString("Replica_IO_Running")) || !"Yes".equals(rs.getString("Replica_SQL_Running"))) {
+                        problem = "replication stopped";
+                    }
+                }
+            }
+            if (problem == null && lag == null) {
+                problem = "lag unknown";
+            } else if (problem == null && lag > maxLagSeconds) {
+                problem = String.format("%.0f s behind", lag);
+            }
+            if (lag != null) {
+                replica.lagSeconds = lag;
+                // Seconds_Behind_Source is truncated, so allow one more second
+                replica.appliedNanos = started - (long) ((lag + 1) * 1e9);
+            }
+            if (write != null && replica.caughtUp != write) {
+                boolean applied = write.gtids().isEmpty() ? replica.appliedNanos >= write.nanos() : hasApplied(conn, write);
+                if (applied) {
+                    replica.caughtUp = write;
+                }
+            }
+            replica.problem = problem;
+            replica.healthy = problem == null;
+        } catch (SQLException e) {
+            replica.healthy = false;
+            replica.problem = e.getMessage();
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException ignored) {
+                // Already broken; the pool discards it
+            }
+        }
+    }
+
+    /**
+     * Closes every replica's pool.
+     */
+    void shutdown() {
+        replicas.forEach(replica -> replica.pool.shutdown());
+    }
+}
@@ -0,0 +1,18 @@
+package src;
+
+import java.sql.Timestamp;
+
+/**
+ * A row of the reports table.
+ * @param id The report's ID.
+ * @param citizenId The ID of the citizen who submitted it.
+ * @param description What the citizen reported.
+ * @param location Where the problem is.
+ * @param status One of Pending, In Progress or Completed.
+ * @param submissionDate When the report was submitted.
+ * @param updatedAt When the row last changed.
+ * @param version Bumped by every status change; status updates are made against the version last seen.
+ */
+public record Report(int id, int citizenId, String description, String location, String status,
+                     Timestamp submissionDate, Timestamp updatedAt, int version) {
+}
@@ -0,0 +1,114 @@
+package src;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * A page of reports stored column by column.
+ * Ids and timestamps are kept as primitives and the status as a one-byte code,
+ * so a page costs a few arrays instead of one boxed row object per cell.
+ */
+public class ReportPage {
+
+    // Status codes index into this table; the strings are shared by every page
+    static final String[] STATUSES = {"Pending", "In Progress", "Completed"};
+
+    final int[] ids;
+    final int[] citizenIds;
+    final String[] descriptions;
+    final String[] locations;
+    final byte[] statusCodes;
+    final long[] submissionMillis;
+    final int[] versions;
+    final String[] photos; // Photo hash, or null
+    int size;
+
+    ReportPage(int capacity) {
+        ids = new int[capacity];
+        citizenIds = new int[capacity];
+        descriptions = new String[capacity];
+        locations = new String[capacity];
+        statusCodes = new byte[capacity];
+        submissionMillis = new long[capacity];
+        versions = new int[capacity];
+        photos = new String[capacity];
+    }
+
+    /**
+     * Reads up to the page's capacity of rows with the columns
+     * id, citizen_id, description, location, status, submission_date, version, photo.
+     */
+    static ReportPage read(ResultSet rs, int capacity) throws SQLException {
+        ReportPage page = new ReportPage(capacity);
+        while (page.size < capacity && rs.next()) {
+            page.add(rs.getInt("id"), rs.getInt("citizen_id"), rs.getString("description"), rs.getString("location"),
+                    rs.getString("status"), rs.getTimestamp("submission_date").getTime(), rs.getInt("version"),
+                    rs.getString("photo"));
+        }
+        return page;
+    }
+
+    /**
+     * Appends a row; the page must have room for it.
+     */
+    void add(int id, int citizenId, String description, String location, String status, long submittedMillis,
+             int version, String photo) {
+        int i = size++;
+        ids[i] = id;
+        citizenIds[i] = citizenId;
+        descriptions[i] = description;
+        locations[i] = location;
+        statusCodes[i] = statusCode(status);
+        submissionMillis[i] = submittedMillis;
+        versions[i] = version;
+        photos[i] = photo;
+    }
+
+    static byte statusCode(String status) {
+        for (byte i = 0; i < STATUSES.length; i++) {
+            if (STATUSES[i].equals(status)) {
+                return i;
+            }
+        }
+        return 0; // The column is an ENUM, so this only happens for NULL
+    }
+
+    /**
+     * @return The row index of the report in this page, or -1 if it is not here.
+     */
+    int indexOf(int id) {
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Appends row i of another page to this one.
+     */
+    void copyRow(ReportPage from, int i) {
+        int j = size++;
+        ids[j] = from.ids[i];
+        citizenIds[j] = from.citizenIds[i];
+        descriptions[j] = from.descriptions[i];
+        locations[j] = from.locations[i];
+        statusCodes[j] = from.statusCodes[i];
+        submissionMillis[j] = from.submissionMillis[i];
+        versions[j] = from.versions[i];
+        photos[j] = from.photos[i];
+    }
+
+    String status(int i) {
+        return STATUSES[statusCodes[i]];
+    }
+
+    int lastId() {
+        return ids[size - 1];
+    }
+
+    long lastSubmissionMillis() {
+        return submissionMillis[size - 1];
+    }
+}
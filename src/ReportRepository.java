@@ -0,0 +1,657 @@
+package src;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data access for the reports table; the MySQL {@link ReportStore}.
+ * Methods are blocking; the dashboards run them through {@link DataExecutor}.
+ */
+public class ReportRepository implements ReportStore {
+
+    // Dashboard queries, shared with QueryPlanCheck so the checked SQL is exactly what runs
+    static final String SNAPSHOT_SQL = "SELECT COUNT(*), MAX(id), MAX(updated_at) FROM reports";
+    static final String CHANGED_SINCE_SQL = "SELECT id, citizen_id, description, location, status, submission_date, updated_at, version FROM reports " +
+            "WHERE updated_at >= ?";
+    // Rows are stamped no earlier than their transaction started; reading innodb_trx needs the PROCESS privilege
+    static final String CHANGE_HORIZON_SQL = "SELECT NOW(3), MIN(trx_started) FROM information_schema.innodb_trx";
+    private static final int ER_SPECIFIC_ACCESS_DENIED = 1227;
+    // The columns ReportPage reads, with one of each report's photos
+    private static final String PAGE_COLUMNS = "id, citizen_id, description, location, status, submission_date, version, " +
+            AttachmentRepository.photoColumn("reports.id");
+    static final String FIRST_PAGE_SQL = "SELECT " + PAGE_COLUMNS + " FROM reports " +
+            "ORDER BY submission_date DESC, id DESC LIMIT ?";
+    static final String PAGE_AFTER_SQL = "SELECT " + PAGE_COLUMNS + " FROM reports " +
+            "WHERE submission_date < ? OR (submission_date = ? AND id < ?) " +
+            "ORDER BY submission_date DESC, id DESC LIMIT ?";
+    static final String PAGE_AT_SQL = "SELECT " + PAGE_COLUMNS + " FROM reports " +
+            "ORDER BY submission_date DESC, id DESC LIMIT ? OFFSET ?";
+    static final String UNASSIGNED_COUNT_SQL = "SELECT COUNT(*) FROM reports WHERE status = 'Pending' AND duplicate_of IS NULL";
+    static final String PENDING_IDS_SQL = "SELECT id FROM reports WHERE status = 'Pending' ORDER BY submission_date LIMIT ?";
+    static final String BY_CITIZEN_SQL = "SELECT id, citizen_id, description, location, status, submission_date, updated_at, version FROM reports WHERE citizen_id = ?";
+    static final String OPEN_ORIGINALS_SQL = "SELECT id, citizen_id, description, location, status, submission_date, updated_at, version FROM reports " +
+            "WHERE status IN ('Pending', 'In Progress') AND duplicate_of IS NULL";
+    static final String ID_RANGE_SQL = "SELECT id, citizen_id, description, location, status, submission_date, updated_at, version FROM reports " +
+            "WHERE id > ? AND id <= ?";
+    static final String BY_IDS_SQL = "SELECT " + PAGE_COLUMNS + " FROM reports WHERE id IN (%s)";
+    static final String OPEN_LOCATIONS_SQL = "SELECT id, latitude, longitude FROM reports " +
+            "WHERE status IN ('Pending', 'In Progress') AND duplicate_of IS NULL AND latitude IS NOT NULL";
+
+    static final String LOCK_VERSIONS_SQL = "SELECT id, status, version FROM reports WHERE id IN (%s) FOR UPDATE";
+    static final String EXISTING_TOKENS_SQL = "SELECT client_token, id FROM reports WHERE client_token IN (%s) FOR UPDATE";
+
+    private static final String INSERT_SQL = "INSERT INTO reports (citizen_id, description, location, latitude, longitude, duplicate_of, area, " +
+            "client_token, submission_date) VALUES (?, ?, ?, ?, ?, ?, ?, ?, COALESCE(?, CURRENT_TIMESTAMP))";
+    // The version condition always holds under the row lock; it keeps the statement itself from overwriting a newer row
+    private static final String UPDATE_STATUS_SQL = "UPDATE reports SET status = ?, version = version + 1 WHERE id = ? AND version = ?";
+    // Linked reports behind the new status catch up with it; nothing leaves Completed
+    private static final String FOLLOW_STATUS_SQL = "UPDATE reports SET status = ?, version = version + 1 " +
+            "WHERE duplicate_of = ? AND status <> ? AND status <> 'Completed'";
+
+    /**
+     * @return The report count, highest ID and newest change time, read in one query.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public ReportSnapshot snapshot() throws SQLException {
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SNAPSHOT_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return new ReportSnapshot(rs.getInt(1), rs.getInt(2), rs.getTimestamp(3));
+        }
+    }
+
+    /**
+     * @param since The watermark of the caller's last refresh.
+     * @return Every report changed at or after the watermark.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public List<Report> findChangedSince(Timestamp since) throws SQLException {
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(CHANGED_SINCE_SQL)) {
+
+            stmt.setTimestamp(1, since);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return mapReports(rs);
+            }
+        }
+    }
+
+    /**
+     * @return The start of the oldest open transaction, or the database's current time if none is open;
+     *         null if the database user may not see other transactions.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public Timestamp changeHorizon() throws SQLException {
+        try (Connection conn = DBConnection.getConnection()) {
+            return changeHorizon(conn);
+        }
+    }
+
+    static Timestamp changeHorizon(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(CHANGE_HORIZON_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            Timestamp now = rs.getTimestamp(1);
+            Timestamp oldest = rs.getTimestamp(2);
+            return oldest != null && oldest.before(now) ? oldest : now;
+        } catch (SQLException e) {
+            if (e.getErrorCode() == ER_SPECIFIC_ACCESS_DENIED) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Loads the first page of reports, newest first.
+     * @param limit The page size.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public ReportPage findFirstPage(int limit) throws SQLException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(FIRST_PAGE_SQL)) {
+
+            stmt.setInt(1, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return ReportPage.read(rs, limit);
+            }
+        }
+    }
+
+    /**
+     * Loads the page that follows the given row, by keyset on (submission_date, id).
+     * @param afterMillis The submission date of the last row of the previous page.
+     * @param afterId The ID of the last row of the previous page.
+     * @param limit The page size.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public ReportPage findPageAfter(long afterMillis, int afterId, int limit) throws SQLException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(PAGE_AFTER_SQL)) {
+
+            Timestamp after = new Timestamp(afterMillis);
+            stmt.setTimestamp(1, after);
+            stmt.setTimestamp(2, after);
+            stmt.setInt(3, afterId);
+            stmt.setInt(4, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return ReportPage.read(rs, limit);
+            }
+        }
+    }
+
+    /**
+     * Loads a page by offset. Only used when the user jumps to a page whose predecessor
+     * was never loaded, so no keyset is known for it.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public ReportPage findPageAt(int offset, int limit) throws SQLException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(PAGE_AT_SQL)) {
+
+            stmt.setInt(1, limit);
+            stmt.setInt(2, offset);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return ReportPage.read(rs, limit);
+            }
+        }
+    }
+
+    /**
+     * @param limit The maximum number of IDs to return.
+     * @return The IDs of the oldest Pending reports, oldest first.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public List<Integer> findPendingIds(int limit) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(PENDING_IDS_SQL)) {
+
+            stmt.setInt(1, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @return The number of Pending reports waiting for a task, i.e. the dispatch queue depth.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public int countUnassigned() throws SQLException {
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(UNASSIGNED_COUNT_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * @param citizenId The citizen whose reports to load.
+     * @return The reports submitted by the citizen.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public List<Report> findByCitizen(int citizenId) throws SQLException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(BY_CITIZEN_SQL)) {
+
+            stmt.setInt(1, citizenId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return mapReports(rs);
+            }
+        }
+    }
+
+    /**
+     * Loads the coordinates of every open report that could be geocoded.
+     * @param index The index to fill.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public void loadOpenLocations(SpatialIndex index) throws SQLException {
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(OPEN_LOCATIONS_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+
+            while (rs.next()) {
+                index.put(rs.getInt(1), rs.getDouble(2), rs.getDouble(3));
+            }
+        }
+    }
+
+    /**
+     * Loads the reports in an ID range, for rebuilding the search index.
+     * @param afterId Exclusive lower bound.
+     * @param upToId Inclusive upper bound.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public List<Report> findIdRange(int afterId, int upToId) throws SQLException {
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(ID_RANGE_SQL)) {
+
+            stmt.setInt(1, afterId);
+            stmt.setInt(2, upToId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return mapReports(rs);
+            }
+        }
+    }
+
+    /**
+     * Loads reports by ID, e.g. search results, keeping the order of the given IDs.
+     * @param ids At most {@link TaskRepository#MAX_IN_LIST} IDs.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public ReportPage findByIds(List<Integer> ids) throws SQLException {
+        ReportPage page = new ReportPage(ids.size());
+        if (ids.isEmpty()) {
+            return page;
+        }
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(String.format(BY_IDS_SQL, placeholders))) {
+
+            for (int i = 0; i < ids.size(); i++) {
+                stmt.setInt(i + 1, ids.get(i));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                ReportPage unordered = ReportPage.read(rs, ids.size());
+                for (int id : ids) {
+                    int i = unordered.indexOf(id);
+                    if (i >= 0) {
+                        page.copyRow(unordered, i);
+                    }
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Loads the open reports that are not linked to another report, for duplicate detection.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public List<Report> findOpenOriginals() throws SQLException {
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(OPEN_ORIGINALS_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            return mapReports(rs);
+        }
+    }
+
+    /**
+     * Inserts a new Pending report, geocoded against the local gazetteer.
+     * @param duplicateOf The open report this one repeats, or null. A linked report gets no task of its own
+     *                    and follows the status of the report it is linked to.
+     * @return The generated report ID.
+     * @throws SQLException if a database access error occurs.
+     */
+    public int insert(int citizenId, String description, String location, Integer duplicateOf) throws SQLException {
+        return insert(citizenId, description, location, duplicateOf, null);
+    }
+
+    /**
+     * Inserts a new Pending report with a photo, geocoded against the local gazetteer.
+     * @param duplicateOf The open report this one repeats, or null.
+     * @param photo The hash of the report's photo in the {@link BlobStore}, or null.
+     * @return The generated report ID.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public int insert(int citizenId, String description, String location, Integer duplicateOf, String photo) throws SQLException {
+        NewReport report = new NewReport(citizenId, description, location);
+        double[] coordinates = Gazetteer.getDefault().geocode(location);
+        int id;
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false); // The report, its photo and its statistics commit together
+            try {
+                id = insert(conn, report, duplicateOf, coordinates);
+                if (photo != null) {
+                    AttachmentRepository.attach(conn, new int[]{id}, new String[]{photo});
+                }
+                conn.commit();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        opened(id, report, duplicateOf, coordinates);
+        return id;
+    }
+
+    /**
+     * Inserts a new Pending report and counts it in the statistics, in the caller's transaction.
+     * Once that commits, the caller must pass the report to {@link #opened}.
+     * @param coordinates Where the report is, or null if unknown.
+     * @return The generated report ID.
+     */
+    int insert(Connection conn, NewReport report, Integer duplicateOf, double[] coordinates) throws SQLException {
+        int id;
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setInt(1, report.citizenId());
+            stmt.setString(2, report.description());
+            stmt.setString(3, report.location());
+            setCoordinates(stmt, 4, coordinates);
+            stmt.setObject(6, duplicateOf, Types.INTEGER);
+            stmt.setString(7, Gazetteer.getDefault().area(report.location()));
+            stmt.setNull(8, Types.CHAR);
+            stmt.setNull(9, Types.TIMESTAMP);
+            stmt.executeUpdate();
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                keys.next();
+                id = keys.getInt(1);
+            }
+        }
+        StatisticsRepository.Delta stats = new StatisticsRepository.Delta();
+        stats.reportsAdded(conn, List.of(id));
+        stats.apply(conn);
+        return id;
+    }
+
+    /**
+     * Tells the in-memory indexes and open dashboards about a committed new report.
+     */
+    static void opened(int id, NewReport report, Integer duplicateOf, double[] coordinates) {
+        if (duplicateOf == null) {
+            GeoDispatch.getInstance().reportOpened(id, coordinates); // Linked reports are not dispatched
+        }
+        DuplicateDetector.getInstance().reportOpened(id, report.description(), report.location(), duplicateOf);
+        SearchIndex.getInstance().index(id, report.citizenId(), report.description(), report.location());
+        ChangeFeed.getInstance().changed();
+    }
+
+    /**
+     * Inserts many Pending reports in one transaction, sent as one JDBC batch
+     * that the driver rewrites into multi-row INSERTs. These come from headless clients that cannot be asked,
+     * so a report that duplicates an open one is linked to it automatically.
+     * @param reports The reports to insert.
+     * @return The generated IDs, in the same order as the reports.
+     * @throws SQLException if a database access error occurs; nothing is committed in that case.
+     */
+    @Override
+    public int[] insertAll(List<NewReport> reports) throws SQLException {
+        Integer[] duplicateOf = new Integer[reports.size()];
+        for (int i = 0; i < reports.size(); i++) {
+            DuplicateDetector.Match match = DuplicateDetector.getInstance()
+                    .findDuplicate(reports.get(i).description(), reports.get(i).location());
+            duplicateOf[i] = match == null ? null : match.reportId();
+        }
+        return insertAll(reports, duplicateOf, null, null, null);
+    }
+
+    /**
+     * Inserts submissions replayed from the {@link SubmissionJournal} in one transaction, keeping their
+     * submission time and duplicate link. Submissions whose client token is already in the table were inserted
+     * by an earlier replay and are skipped, so replaying a batch again is harmless.
+     * @return The report IDs, in the same order as the entries, whether inserted now or before.
+     * @throws SQLException if a database access error occurs; nothing is committed in that case.
+     */
+    public int[] insertJournaled(List<SubmissionJournal.Entry> entries) throws SQLException {
+        List<NewReport> reports = new ArrayList<>(entries.size());
+        Integer[] duplicateOf = new Integer[entries.size()];
+        String[] tokens = new String[entries.size()];
+        Timestamp[] submitted = new Timestamp[entries.size()];
+        String[] photos = new String[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            SubmissionJournal.Entry entry = entries.get(i);
+            reports.add(new NewReport(entry.citizenId(), entry.description(), entry.location()));
+            duplicateOf[i] = entry.duplicateOf();
+            tokens[i] = entry.token();
+            submitted[i] = new Timestamp(entry.submittedMillis());
+            photos[i] = entry.photo();
+        }
+        return insertAll(reports, duplicateOf, tokens, submitted, photos);
+    }
+
+    /**
+     * @param tokens Client tokens, or null; reports whose token exists already are not inserted again.
+     * @param submitted Submission times, or null for now.
+     * @param photos Photo hashes, or null; reports inserted before keep the photos they were inserted with.
+     */
+    private int[] insertAll(List<NewReport> reports, Integer[] duplicateOf, String[] tokens, Timestamp[] submitted,
+                            String[] photos) throws SQLException {
+        int[] ids = new int[reports.size()];
+        double[][] coordinates = new double[reports.size()][];
+        List<Integer> inserted = new ArrayList<>(); // Positions of the reports this call inserts
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Map<String, Integer> existing = tokens == null ? Map.of() : lockTokens(conn, tokens);
+                for (int i = 0; i < reports.size(); i++) {
+                    Integer id = tokens == null ? null : existing.get(tokens[i]);
+                    if (id != null) {
+                        ids[i] = id;
+                    } else {
+                        inserted.add(i);
+                    }
+                }
+                if (!inserted.isEmpty()) {
+                    try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                        for (int i : inserted) {
+                            NewReport report = reports.get(i);
+                            coordinates[i] = Gazetteer.getDefault().geocode(report.location());
+                            stmt.setInt(1, report.citizenId());
+                            stmt.setString(2, report.description());
+                            stmt.setString(3, report.location());
+                            setCoordinates(stmt, 4, coordinates[i]);
+                            stmt.setObject(6, duplicateOf[i], Types.INTEGER);
+                            stmt.setString(7, Gazetteer.getDefault().area(report.location()));
+                            stmt.setString(8, tokens == null ? null : tokens[i]);
+                            stmt.setTimestamp(9, submitted == null ? null : submitted[i]);
+                            stmt.addBatch();
+                        }
+                        stmt.executeBatch();
+                        try (ResultSet keys = stmt.getGeneratedKeys()) {
+                            for (int i = 0; i < inserted.size() && keys.next(); i++) {
+                                ids[inserted.get(i)] = keys.getInt(1);
+                            }
+                        }
+                    }
+                    if (photos != null) {
+                        AttachmentRepository.attach(conn, inserted.stream().mapToInt(i -> ids[i]).toArray(),
+                                inserted.stream().map(i -> photos[i]).toArray(String[]::new));
+                    }
+                    StatisticsRepository.Delta stats = new StatisticsRepository.Delta();
+                    stats.reportsAdded(conn, inserted.stream().map(i -> ids[i]).toList());
+                    stats.apply(conn);
+                }
+                conn.commit();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        for (int i : inserted) {
+            if (duplicateOf[i] == null) {
+                GeoDispatch.getInstance().reportOpened(ids[i], coordinates[i]);
+            }
+            DuplicateDetector.getInstance().reportOpened(ids[i], reports.get(i).description(),
+                    reports.get(i).location(), duplicateOf[i]);
+            SearchIndex.getInstance().index(ids[i], reports.get(i).citizenId(), reports.get(i).description(),
+                    reports.get(i).location());
+        }
+        if (!inserted.isEmpty()) {
+            ChangeFeed.getInstance().changed();
+        }
+        return ids;
+    }
+
+    /**
+     * Locks the client tokens, so a concurrent replay of the same submissions waits for this one.
+     * @return The report ID of each token that is already in the table.
+     */
+    private static Map<String, Integer> lockTokens(Connection conn, String[] tokens) throws SQLException {
+        Map<String, Integer> existing = new HashMap<>();
+        for (int from = 0; from < tokens.length; from += TaskRepository.MAX_IN_LIST) {
+            int to = Math.min(tokens.length, from + TaskRepository.MAX_IN_LIST);
+            String placeholders = String.join(", ", Collections.nCopies(to - from, "?"));
+            try (PreparedStatement stmt = conn.prepareStatement(String.format(EXISTING_TOKENS_SQL, placeholders))) {
+                for (int i = from; i < to; i++) {
+                    stmt.setString(i - from + 1, tokens[i]);
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        existing.put(rs.getString(1), rs.getInt(2));
+                    }
+                }
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * A report's status and version as read under a row lock.
+     */
+    record Versioned(ReportStatus status, int version) {
+    }
+
+    /**
+     * Locks the reports for the rest of the transaction and reads their status and version.
+     * @return The state of each report that exists.
+     */
+    static Map<Integer, Versioned> lockVersions(Connection conn, List<Integer> ids) throws SQLException {
+        Map<Integer, Versioned> versions = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += TaskRepository.MAX_IN_LIST) {
+            List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + TaskRepository.MAX_IN_LIST));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            try (PreparedStatement stmt = conn.prepareStatement(String.format(LOCK_VERSIONS_SQL, placeholders))) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setInt(i + 1, chunk.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        versions.put(rs.getInt(1), new Versioned(ReportStatus.of(rs.getString(2)), rs.getInt(3)));
+                    }
+                }
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * Moves many reports to a new status in a single transaction, sent as one JDBC batch.
+     * A report moves only if the new status is the next one in its life cycle (see {@link ReportStatus}) and,
+     * when versions are given, nobody changed it since the caller read it; otherwise it is left as it is and
+     * reported as NOT_ALLOWED or CONFLICT. Nothing stays locked while the user looks at the table: the reports
+     * are locked only for this transaction, which compares and bumps their versions.
+     * Reports linked to a moved report as duplicates catch up with it.
+     * @param reportIds The reports to update.
+     * @param expectedVersions The version of each report as the caller last saw it, in the same order,
+     *                         or null to check the status only.
+     * @param status The new status.
+     * @return The outcome for each report.
+     * @throws SQLException if a database access error occurs; nothing is committed in that case.
+     */
+    @Override
+    public BatchResult updateStatusAll(List<Integer> reportIds, List<Integer> expectedVersions, String status) throws SQLException {
+        ReportStatus target = ReportStatus.of(status);
+        BatchResult result = new BatchResult();
+        List<Integer> moved = new ArrayList<>();
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement update = conn.prepareStatement(UPDATE_STATUS_SQL);
+                 PreparedStatement follow = conn.prepareStatement(FOLLOW_STATUS_SQL)) {
+                Map<Integer, Versioned> current = lockVersions(conn, reportIds);
+                for (int i = 0; i < reportIds.size(); i++) {
+                    int reportId = reportIds.get(i);
+                    Versioned row = current.get(reportId);
+                    if (result.getOutcomes().containsKey(reportId)) {
+                        continue; // Listed twice
+                    } else if (row == null) {
+                        result.put(reportId, BatchResult.Outcome.NOT_FOUND);
+                    } else if (row.status() == target) {
+                        result.put(reportId, BatchResult.Outcome.UPDATED); // Already there, whoever moved it
+                    } else if (expectedVersions != null && row.version() != expectedVersions.get(i)) {
+                        result.put(reportId, BatchResult.Outcome.CONFLICT);
+                    } else if (!row.status().canMoveTo(target)) {
+                        result.put(reportId, BatchResult.Outcome.NOT_ALLOWED);
+                    } else {
+                        result.put(reportId, BatchResult.Outcome.UPDATED);
+                        moved.add(reportId);
+                        update.setString(1, status);
+                        update.setInt(2, reportId);
+                        update.setInt(3, row.version());
+                        update.addBatch();
+                        follow.setString(1, status);
+                        follow.setInt(2, reportId);
+                        follow.setString(3, status);
+                        follow.addBatch();
+                    }
+                }
+                if (!moved.isEmpty()) {
+                    StatisticsRepository.Delta stats = new StatisticsRepository.Delta();
+                    stats.reportsMoved(conn, moved, status);
+                    update.executeBatch();
+                    follow.executeBatch();
+                    stats.apply(conn);
+                }
+                conn.commit();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        if (!moved.isEmpty()) {
+            GeoDispatch.getInstance().statusChanged(moved, status);
+            DuplicateDetector.getInstance().statusChanged(moved, status);
+            ChangeFeed.getInstance().changed();
+        }
+        return result;
+    }
+
+    /**
+     * Binds latitude and longitude to two consecutive parameters, or NULLs if the location was not geocoded.
+     */
+    private static void setCoordinates(PreparedStatement stmt, int index, double[] coordinates) throws SQLException {
+        if (coordinates == null) {
+            stmt.setNull(index, Types.DOUBLE);
+            stmt.setNull(index + 1, Types.DOUBLE);
+        } else {
+            stmt.setDouble(index, coordinates[0]);
+            stmt.setDouble(index + 1, coordinates[1]);
+        }
+    }
+
+    private List<Report> mapReports(ResultSet rs) throws SQLException {
+        List<Report> reports = new ArrayList<>();
+        while (rs.next()) {
+            reports.add(new Report(rs.getInt("id"), rs.getInt("citizen_id"), rs.getString("description"),
+                    rs.getString("location"), rs.getString("status"), rs.getTimestamp("submission_date"),
+                    rs.getTimestamp("updated_at"), rs.getInt("version")));
+        }
+        return reports;
+    }
+}
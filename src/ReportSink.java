@@ -0,0 +1,19 @@
+package src;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Somewhere accepted reports are committed to, in batches.
+ * {@link ReportRepository#insertAll} is the MySQL implementation.
+ */
+@FunctionalInterface
+public interface ReportSink {
+
+    /**
+     * Inserts the reports atomically.
+     * @return The generated IDs, in the same order as the reports.
+     * @throws SQLException if the batch could not be committed; none of it is stored in that case.
+     */
+    int[] insertAll(List<NewReport> reports) throws SQLException;
+}
@@ -0,0 +1,12 @@
+package src;
+
+import java.sql.Timestamp;
+
+/**
+ * Summary of the reports table taken when the admin table is (re)loaded.
+ * @param count The number of reports.
+ * @param maxId The highest report ID, used to tell new reports apart from changed ones.
+ * @param lastModified The newest updated_at, the starting watermark for delta refreshes.
+ */
+public record ReportSnapshot(int count, int maxId, Timestamp lastModified) {
+}
@@ -0,0 +1,53 @@
+package src;
+
+/**
+ * The life cycle of a report: Pending, then In Progress, then Completed.
+ * A status change moves a report one step forward and never back, so a stale screen cannot undo
+ * work that was done meanwhile. Reports linked as duplicates follow the report they repeat and
+ * may skip a step to catch up with it.
+ */
+public enum ReportStatus {
+    PENDING("Pending"),
+    IN_PROGRESS("In Progress"),
+    COMPLETED("Completed");
+
+    private final String label;
+
+    ReportStatus(String label) {
+        this.label = label;
+    }
+
+    /**
+     * @return The value stored in reports.status.
+     */
+    public String label() {
+        return label;
+    }
+
+    /**
+     * @param label A value of reports.status.
+     * @throws IllegalArgumentException if it is not one.
+     */
+    public static ReportStatus of(String label) {
+        for (ReportStatus status : values()) {
+            if (status.label.equals(label)) {
+                return status;
+            }
+        }
+        throw new IllegalArgumentException("Unknown report status: " + label);
+    }
+
+    /**
+     * @return Whether a report in this status may be moved to the given one.
+     */
+    public boolean canMoveTo(ReportStatus next) {
+        return next.ordinal() == ordinal() + 1;
+    }
+
+    /**
+     * @return Whether this status comes earlier in the life cycle than the given one.
+     */
+    public boolean isBefore(ReportStatus other) {
+        return ordinal() < other.ordinal();
+    }
+}
@@ -0,0 +1,111 @@
+package src;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Where reports are kept, as the dashboards and the in-memory indexes see it.
+ * {@link ReportRepository} is the MySQL implementation and {@link MemoryEngine} the in-process one;
+ * {@link Storage} picks one for the process. Methods are blocking and throw SQLException for every
+ * storage failure, whatever the engine.
+ */
+public interface ReportStore extends ReportSink {
+
+    /**
+     * @return The report count, highest ID and newest change time.
+     */
+    ReportSnapshot snapshot() throws SQLException;
+
+    /**
+     * @return Every report changed at or after the watermark.
+     */
+    List<Report> findChangedSince(Timestamp since) throws SQLException;
+
+    /**
+     * @return A time no later than the updated_at of any report change that is not visible yet,
+     *         or null if the store cannot tell.
+     */
+    Timestamp changeHorizon() throws SQLException;
+
+    /**
+     * @return The first page of reports, newest first.
+     */
+    ReportPage findFirstPage(int limit) throws SQLException;
+
+    /**
+     * @return The page that follows the row with the given submission date and ID, newest first.
+     */
+    ReportPage findPageAfter(long afterMillis, int afterId, int limit) throws SQLException;
+
+    /**
+     * @return The page at the given offset, newest first.
+     */
+    ReportPage findPageAt(int offset, int limit) throws SQLException;
+
+    /**
+     * @param ids At most {@link TaskRepository#MAX_IN_LIST} IDs.
+     * @return The reports that exist, in the order of the given IDs.
+     */
+    ReportPage findByIds(List<Integer> ids) throws SQLException;
+
+    /**
+     * @return The reports submitted by the citizen.
+     */
+    List<Report> findByCitizen(int citizenId) throws SQLException;
+
+    /**
+     * @return The reports with afterId < id <= upToId.
+     */
+    List<Report> findIdRange(int afterId, int upToId) throws SQLException;
+
+    /**
+     * @return The open reports that are not linked to another report.
+     */
+    List<Report> findOpenOriginals() throws SQLException;
+
+    /**
+     * Puts the coordinates of every open, geocoded report that is not linked to another report into the index.
+     */
+    void loadOpenLocations(SpatialIndex index) throws SQLException;
+
+    /**
+     * @return The number of Pending reports waiting for a task.
+     */
+    int countUnassigned() throws SQLException;
+
+    /**
+     * @return The IDs of the oldest Pending reports, oldest first.
+     */
+    List<Integer> findPendingIds(int limit) throws SQLException;
+
+    /**
+     * Inserts a new Pending report without a photo or duplicate link.
+     * @return The generated report ID.
+     */
+    default int insert(int citizenId, String description, String location) throws SQLException {
+        return insert(citizenId, description, location, null, null);
+    }
+
+    /**
+     * Inserts a new Pending report.
+     * @param duplicateOf The open report this one repeats, or null.
+     * @param photo The hash of the report's photo in the {@link BlobStore}, or null.
+     * @return The generated report ID.
+     */
+    int insert(int citizenId, String description, String location, Integer duplicateOf, String photo) throws SQLException;
+
+    /**
+     * Moves reports one step forward in their life cycle, atomically.
+     * @param expectedVersions The version of each report as the caller last saw it, or null to check the status only.
+     * @see ReportRepository#updateStatusAll(List, List, String)
+     */
+    BatchResult updateStatusAll(List<Integer> reportIds, List<Integer> expectedVersions, String status) throws SQLException;
+
+    /**
+     * Moves many reports to a new status, checking only that the move is allowed.
+     */
+    default BatchResult updateStatusAll(List<Integer> reportIds, String status) throws SQLException {
+        return updateStatusAll(reportIds, null, status);
+    }
+}
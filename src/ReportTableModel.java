@@ -0,0 +1,216 @@
+package src;
+
+import javax.swing.table.AbstractTableModel;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A virtualized table model over the reports table, newest first.
+ * Only the row count is known up front; pages of rows are fetched in the background the first
+ * time the table asks for one of their cells, and only a bounded number of pages is kept in memory.
+ * Pages are fetched by keyset on (submission_date, id) whenever the previous page's last row is known,
+ * which keeps scrolling cost independent of how deep into the history the user is.
+ * The model can also show a fixed list of reports, such as search results, until the next reset.
+ */
+public class ReportTableModel extends AbstractTableModel {
+
+    static final int PAGE_SIZE = 200;
+    static final int MAX_PAGES = 10;
+
+    static final int PHOTO_COLUMN = 6; // The photo's hash, shown by Thumbnails.Renderer
+
+    private static final String[] COLUMNS = {"Report ID", "Citizen ID", "Description", "Location", "Status", "Date", "Photo"};
+
+    private final ReportStore reportRepository;
+    private int rowCount;
+    private int maxId; // Reports with a higher ID are new since the last reset
+    private int generation; // Bumped on reset so late pages from an older load are dropped
+    private boolean fixed; // Showing a fixed result list instead of the paged table
+
+    // Loaded pages in access order; the least recently painted page is evicted first
+    private final LinkedHashMap<Integer, ReportPage> pages = new LinkedHashMap<Integer, ReportPage>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, ReportPage> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    // Keyset of the last row of each page seen so far: page index -> {submission millis, id}
+    private final Map<Integer, long[]> pageEnds = new HashMap<>();
+    private final Set<Integer> pending = new HashSet<>();
+    private final Set<Integer> failed = new HashSet<>();
+
+    public ReportTableModel(ReportStore reportRepository) {
+        this.reportRepository = reportRepository;
+    }
+
+    /**
+     * Drops every cached page and starts over from a fresh snapshot. Must be called on the EDT.
+     * @param snapshot The current report count and highest ID.
+     */
+    public void reset(ReportSnapshot snapshot) {
+        rowCount = snapshot.count();
+        maxId = snapshot.maxId();
+        fixed = false;
+        clearPages();
+        fireTableDataChanged();
+    }
+
+    /**
+     * Shows exactly the given reports, in order, instead of the paged table, until the next reset.
+     * Must be called on the EDT.
+     * @param results At most {@link #PAGE_SIZE} reports.
+     */
+    public void showResults(ReportPage results) {
+        clearPages();
+        fixed = true;
+        rowCount = results.size;
+        pages.put(0, results);
+        fireTableDataChanged();
+    }
+
+    /**
+     * Patches changed reports into the rows currently held in memory. Must be called on the EDT.
+     * Changed reports outside the window need no work: they are read fresh when scrolled into view.
+     * New reports sort to the top and shift every row down, so they grow the row count and drop
+     * the window instead; only the visible pages are fetched again.
+     * @param changed Reports changed since the last refresh.
+     */
+    public void applyChanges(List<Report> changed) {
+        int inserted = 0;
+        for (Report report : changed) {
+            if (report.id() > maxId) {
+                if (fixed) {
+                    continue; // Not part of the results; they stay as they were
+                }
+                inserted++;
+                maxId = report.id();
+                continue;
+            }
+            for (Map.Entry<Integer, ReportPage> entry : pages.entrySet()) {
+                ReportPage page = entry.getValue();
+                int i = page.indexOf(report.id());
+                if (i >= 0) {
+                    page.statusCodes[i] = ReportPage.statusCode(report.status());
+                    page.versions[i] = report.version();
+                    page.descriptions[i] = report.description();
+                    page.locations[i] = report.location();
+                    int row = entry.getKey() * PAGE_SIZE + i;
+                    fireTableRowsUpdated(row, row);
+                    break;
+                }
+            }
+        }
+        if (inserted > 0) {
+            rowCount += inserted;
+            clearPages();
+            fireTableDataChanged();
+        }
+    }
+
+    private void clearPages() {
+        generation++;
+        pages.clear();
+        pageEnds.clear();
+        pending.clear();
+        failed.clear();
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        int pageIndex = rowIndex / PAGE_SIZE;
+        ReportPage page = pages.get(pageIndex);
+        if (page == null) {
+            requestPage(pageIndex);
+            return null; // Painted blank until the page arrives
+        }
+        int i = rowIndex % PAGE_SIZE;
+        if (i >= page.size) {
+            return null; // Rows were deleted since the count was taken
+        }
+        switch (columnIndex) {
+            case 0: return page.ids[i];
+            case 1: return page.citizenIds[i];
+            case 2: return page.descriptions[i];
+            case 3: return page.locations[i];
+            case 4: return page.status(i);
+            case 5: return new Timestamp(page.submissionMillis[i]).toString();
+            default: return page.photos[i];
+        }
+    }
+
+    /**
+     * @return The report ID shown in the given row, or -1 if that row is not loaded.
+     */
+    public int getReportId(int rowIndex) {
+        ReportPage page = pages.get(rowIndex / PAGE_SIZE);
+        int i = rowIndex % PAGE_SIZE;
+        return page == null || i >= page.size ? -1 : page.ids[i];
+    }
+
+    /**
+     * @return The version of the report in the given row as this model last saw it. The row must be loaded.
+     */
+    public int getReportVersion(int rowIndex) {
+        return pages.get(rowIndex / PAGE_SIZE).versions[rowIndex % PAGE_SIZE];
+    }
+
+    private void requestPage(int pageIndex) {
+        if (fixed || pending.contains(pageIndex) || failed.contains(pageIndex)) {
+            return;
+        }
+        pending.add(pageIndex);
+        int myGeneration = generation;
+        long[] previousEnd = pageEnds.get(pageIndex - 1);
+
+        DataExecutor.SqlWork<ReportPage> work;
+        if (pageIndex == 0) {
+            work = () -> reportRepository.findFirstPage(PAGE_SIZE);
+        } else if (previousEnd != null) {
+            work = () -> reportRepository.findPageAfter(previousEnd[0], (int) previousEnd[1], PAGE_SIZE);
+        } else {
+            // The user jumped past pages that were never loaded, so fall back to an offset
+            work = () -> reportRepository.findPageAt(pageIndex * PAGE_SIZE, PAGE_SIZE);
+        }
+
+        AsyncLoader.perform(work, page -> {
+            if (myGeneration != generation) {
+                return;
+            }
+            pending.remove(pageIndex);
+            pages.put(pageIndex, page);
+            if (page.size > 0) {
+                pageEnds.put(pageIndex, new long[]{page.lastSubmissionMillis(), page.lastId()});
+            }
+            int first = pageIndex * PAGE_SIZE;
+            fireTableRowsUpdated(first, Math.min(rowCount, first + PAGE_SIZE) - 1);
+        }, error -> {
+            if (myGeneration != generation) {
+                return;
+            }
+            // Not retried until the next reset, otherwise every repaint would hit the database again
+            pending.remove(pageIndex);
+            failed.add(pageIndex);
+            error.printStackTrace();
+        });
+    }
+}
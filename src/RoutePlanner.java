@@ -0,0 +1,525 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
+
+/**
+ * Orders a worker's open tasks into a short driving route.
+ * A full plan starts from a nearest-neighbour tour and improves it with 2-opt (reverse a stretch of the route)
+ * and Or-opt (move a run of one to three stops elsewhere, possibly reversed) until no move shortens the route
+ * or the time budget (-Droute.budgetMillis, default 100) runs out. Moves are only tried towards each stop's
+ * nearest neighbours, and each pass searches the route in parallel on the common fork-join pool.
+ *
+ * Adding or completing a task does not start over: the new stop goes to its cheapest insertion point, or the
+ * completed one is cut out, and the improvement search continues from the current route, which is already
+ * nearly optimal. The route starts at the worker's base when it is known and is open at the end.
+ * Stops whose location could not be geocoded are visited last, in the order they were added.
+ */
+public class RoutePlanner {
+
+    private static final long BUDGET_NANOS = Long.getLong("route.budgetMillis", 100L) * 1_000_000L;
+    private static final int NEIGHBOURS = 10;
+    private static final int MAX_SEGMENT = 3;
+    private static final int LEAF_POSITIONS = 64; // Route positions searched per fork-join leaf
+    private static final double EPSILON = 1e-6;   // Meters; smaller gains are rounding noise
+
+    /**
+     * A place to visit.
+     * @param latitude NaN if unknown.
+     * @param longitude NaN if unknown.
+     */
+    public record Stop(int id, double latitude, double longitude) {
+        boolean located() {
+            return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+        }
+    }
+
+    private final double[] base; // {latitude, longitude} or null
+    private final Map<Integer, Stop> stops = new LinkedHashMap<>();
+    private final List<Integer> order = new ArrayList<>();     // Located stops, in visiting order
+    private final List<Integer> unlocated = new ArrayList<>();
+
+    /**
+     * @param base The worker's base {latitude, longitude}, or null if unknown.
+     */
+    public RoutePlanner(double[] base) {
+        this.base = base;
+    }
+
+    /**
+     * Plans a route over the given stops from scratch.
+     * @return Stop IDs in visiting order.
+     */
+    public synchronized List<Integer> plan(List<Stop> all) {
+        stops.clear();
+        order.clear();
+        unlocated.clear();
+        for (Stop stop : all) {
+            if (stop.located()) {
+                stops.put(stop.id(), stop);
+                order.add(stop.id());
+            } else {
+                unlocated.add(stop.id());
+            }
+        }
+        long deadline = System.nanoTime() + BUDGET_NANOS;
+        Solver solver = new Solver();
+        solver.nearestNeighbour();
+        solver.improve(deadline);
+        solver.writeBack();
+        return getOrder();
+    }
+
+    /**
+     * Adds a stop at its cheapest insertion point and improves the route from there.
+     * @return Stop IDs in visiting order.
+     */
+    public synchronized List<Integer> add(Stop stop) {
+        if (stops.containsKey(stop.id()) || unlocated.contains(stop.id())) {
+            return getOrder();
+        }
+        if (!stop.located()) {
+            unlocated.add(stop.id());
+            return getOrder();
+        }
+        stops.put(stop.id(), stop);
+        order.add(stop.id()); // Placed by the solver below
+        long deadline = System.nanoTime() + BUDGET_NANOS;
+        Solver solver = new Solver();
+        solver.reinsertLast();
+        solver.improve(deadline);
+        solver.writeBack();
+        return getOrder();
+    }
+
+    /**
+     * Removes a stop, joining its neighbours on the route, and improves the route from there.
+     * @return Stop IDs in visiting order.
+     */
+    public synchronized List<Integer> remove(int stopId) {
+        if (stops.remove(stopId) != null) {
+            order.remove(Integer.valueOf(stopId));
+            long deadline = System.nanoTime() + BUDGET_NANOS;
+            Solver solver = new Solver();
+            solver.improve(deadline);
+            solver.writeBack();
+        } else {
+            unlocated.remove(Integer.valueOf(stopId));
+        }
+        return getOrder();
+    }
+
+    /**
+     * @return Stop IDs in visiting order; unlocated stops come last.
+     */
+    public synchronized List<Integer> getOrder() {
+        List<Integer> all = new ArrayList<>(order);
+        all.addAll(unlocated);
+        return all;
+    }
+
+    /**
+     * @return The length of the route over the located stops, in meters.
+     */
+    public synchronized double length() {
+        return new Solver().length();
+    }
+
+    /**
+     * The current route as arrays, for one round of optimization.
+     * Node 0 is the start: the worker's base, or a virtual start at zero distance from every stop when the
+     * base is unknown, which leaves both ends of the route free. Nodes 1..n are the stops in current route
+     * order, projected onto a flat plane in meters, which is accurate enough at city scale.
+     */
+    private final class Solver {
+        final int n;
+        final boolean hasBase;
+        final int[] ids;
+        final double[] x;
+        final double[] y;
+        int[] route; // Position -> node; route[0] is always node 0
+        int[] pos;   // Node -> position
+        int[][] neighbours;
+
+        Solver() {
+            n = order.size();
+            hasBase = base != null;
+            ids = new int[n + 1];
+            x = new double[n + 1];
+            y = new double[n + 1];
+            double refLatitude = hasBase ? base[0] : n == 0 ? 0 : stops.get(order.get(0)).latitude();
+            double metersPerDegree = 111_320.0;
+            double lonScale = metersPerDegree * Math.cos(Math.toRadians(refLatitude));
+            if (hasBase) {
+                x[0] = base[1] * lonScale;
+                y[0] = base[0] * metersPerDegree;
+            }
+            for (int i = 1; i <= n; i++) {
+                Stop stop = stops.get(order.get(i - 1));
+                ids[i] = stop.id();
+                x[i] = stop.longitude() * lonScale;
+                y[i] = stop.latitude() * metersPerDegree;
+            }
+            route = new int[n + 1];
+            pos = new int[n + 1];
+            for (int i = 0; i <= n; i++) {
+                route[i] = i;
+                pos[i] = i;
+            }
+        }
+
+        double dist(int a, int b) {
+            if (!hasBase && (a == 0 || b == 0)) {
+                return 0;
+            }
+            double dx = x[a] - x[b];
+            double dy = y[a] - y[b];
+            return Math.sqrt(dx * dx + dy * dy);
+        }
+
+        double length() {
+            double total = 0;
+            for (int p = 0; p < n; p++) {
+                total += dist(route[p], route[p + 1]);
+            }
+            return total;
+        }
+
+        void writeBack() {
+            order.clear();
+            for (int p = 1; p <= n; p++) {
+                order.add(ids[route[p]]);
+            }
+        }
+
+        /**
+         * Builds the route greedily: always drive to the closest unvisited stop.
+         * Without a base, it starts from the stop farthest from the centre, so the route sweeps across the area.
+         */
+        void nearestNeighbour() {
+            if (n == 0) {
+                return;
+            }
+            boolean[] visited = new boolean[n + 1];
+            int current = 0;
+            int p = 1;
+            if (!hasBase) {
+                double cx = 0, cy = 0;
+                for (int i = 1; i <= n; i++) {
+                    cx += x[i];
+                    cy += y[i];
+                }
+                cx /= n;
+                cy /= n;
+                double farthest = -1;
+                for (int i = 1; i <= n; i++) {
+                    double d = (x[i] - cx) * (x[i] - cx) + (y[i] - cy) * (y[i] - cy);
+                    if (d > farthest) {
+                        farthest = d;
+                        current = i;
+                    }
+                }
+                visited[current] = true;
+                route[p++] = current;
+            }
+            for (; p <= n; p++) {
+                int next = -1;
+                double best = Double.MAX_VALUE;
+                for (int i = 1; i <= n; i++) {
+                    if (!visited[i]) {
+                        double d = dist(current, i);
+                        if (d < best) {
+                            best = d;
+                            next = i;
+                        }
+                    }
+                }
+                visited[next] = true;
+                route[p] = next;
+                current = next;
+            }
+            for (int i = 0; i <= n; i++) {
+                pos[route[i]] = i;
+            }
+        }
+
+        /**
+         * Moves the last node, a newly added stop, to the position where it lengthens the route least.
+         */
+        void reinsertLast() {
+            int node = n;
+            int bestAfter = n - 1;
+            double bestCost = dist(route[n - 1], node);
+            for (int p = 0; p < n - 1; p++) {
+                double cost = dist(route[p], node) + dist(node, route[p + 1]) - dist(route[p], route[p + 1]);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestAfter = p;
+                }
+            }
+            System.arraycopy(route, bestAfter + 1, route, bestAfter + 2, n - 1 - bestAfter);
+            route[bestAfter + 1] = node;
+            for (int i = 0; i <= n; i++) {
+                pos[route[i]] = i;
+            }
+        }
+
+        void improve(long deadline) {
+            if (n < 3) {
+                if (n == 2 && dist(route[0], route[2]) + dist(route[2], route[1]) < dist(route[0], route[1]) + dist(route[1], route[2])) {
+                    route[1] = 2;
+                    route[2] = 1;
+                }
+                return;
+            }
+            neighbours = new int[n + 1][];
+            IntStream.rangeClosed(0, n).parallel().forEach(this::findNeighbours);
+            boolean[] touched = new boolean[n + 1];
+            while (System.nanoTime() < deadline) {
+                List<Move> moves = new MoveSearch(0, n + 1).invoke();
+                if (moves.isEmpty()) {
+                    break;
+                }
+                // Moves over disjoint stretches of the route do not affect each other, so apply all of them, best first
+                moves.sort((a, b) -> Double.compare(a.delta, b.delta));
+                Arrays.fill(touched, false);
+                for (Move move : moves) {
+                    if (isFree(touched, move.from(), move.to(n))) {
+                        Arrays.fill(touched, move.from(), move.to(n) + 1, true);
+                        apply(move);
+                    }
+                }
+            }
+        }
+
+        private boolean isFree(boolean[] touched, int from, int to) {
+            for (int p = from; p <= to; p++) {
+                if (touched[p]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void findNeighbours(int node) {
+            if (node == 0 && !hasBase) {
+                neighbours[0] = new int[0]; // Everything is at distance zero from a virtual start
+                return;
+            }
+            int k = Math.min(NEIGHBOURS, n - (node == 0 ? 0 : 1));
+            int[] nearest = new int[k];
+            double[] nearestDist = new double[k];
+            int found = 0;
+            for (int i = 1; i <= n; i++) {
+                if (i == node) {
+                    continue;
+                }
+                double d = dist(node, i);
+                if (found < k || d < nearestDist[found - 1]) {
+                    int j = found < k ? found++ : k - 1;
+                    while (j > 0 && nearestDist[j - 1] > d) {
+                        nearest[j] = nearest[j - 1];
+                        nearestDist[j] = nearestDist[j - 1];
+                        j--;
+                    }
+                    nearest[j] = i;
+                    nearestDist[j] = d;
+                }
+            }
+            neighbours[node] = nearest;
+        }
+
+        /**
+         * Finds the best improving move starting at each route position in [from, to), splitting the range in parallel.
+         */
+        private final class MoveSearch extends RecursiveTask<List<Move>> {
+            final int from;
+            final int to;
+
+            MoveSearch(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected List<Move> compute() {
+                if (to - from > LEAF_POSITIONS) {
+                    int mid = (from + to) >>> 1;
+                    MoveSearch left = new MoveSearch(from, mid);
+                    left.fork();
+                    List<Move> moves = new MoveSearch(mid, to).compute();
+                    moves.addAll(left.join());
+                    return moves;
+                }
+                List<Move> moves = new ArrayList<>();
+                for (int p = from; p < to; p++) {
+                    Move best = better(bestTwoOpt(p), bestOrOpt(p));
+                    if (best != null && best.delta < -EPSILON) {
+                        moves.add(best);
+                    }
+                }
+                return moves;
+            }
+        }
+
+        private Move better(Move a, Move b) {
+            if (a == null) {
+                return b;
+            }
+            return b != null && b.delta < a.delta ? b : a;
+        }
+
+        /**
+         * 2-opt moves that connect the node at position p to one of its neighbours.
+         */
+        private Move bestTwoOpt(int p) {
+            Move best = null;
+            for (int c : neighbours[route[p]]) {
+                int q = pos[c];
+                int i = Math.min(p, q);
+                int j = Math.max(p, q);
+                if (j < i + 2) {
+                    continue;
+                }
+                // Reversing positions i+1..j replaces edges (i, i+1) and (j, j+1) with (i, j) and (i+1, j+1)
+                int a = route[i], b = route[i + 1], cc = route[j];
+                double delta = dist(a, cc) - dist(a, b);
+                if (j < n) {
+                    int d = route[j + 1];
+                    delta += dist(b, d) - dist(cc, d);
+                }
+                if (best == null || delta < best.delta) {
+                    best = Move.twoOpt(delta, i, j);
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Or-opt moves of the runs starting at position p, re-inserted next to a neighbour of their first or last stop.
+         */
+        private Move bestOrOpt(int s) {
+            if (s == 0) {
+                return null; // The start never moves
+            }
+            Move best = null;
+            for (int len = 1; len <= MAX_SEGMENT && s + len - 1 <= n; len++) {
+                int prev = route[s - 1];
+                int first = route[s];
+                int last = route[s + len - 1];
+                int next = s + len <= n ? route[s + len] : -1;
+                double removeGain = dist(prev, first);
+                if (next >= 0) {
+                    removeGain += dist(last, next) - dist(prev, next);
+                }
+                for (int end = 0; end < 2; end++) {
+                    for (int c : neighbours[end == 0 ? first : last]) {
+                        int t = pos[c];
+                        for (int after = t - 1; after <= t; after++) {
+                            if (after < 0 || (after >= s - 1 && after <= s + len - 1)) {
+                                continue; // Unchanged route, or inside the run itself
+                            }
+                            int u = route[after];
+                            int w = after < n ? route[after + 1] : -1;
+                            double cut = w >= 0 ? -dist(u, w) : 0;
+                            double forward = cut + dist(u, first) + (w >= 0 ? dist(last, w) : 0);
+                            double reversed = cut + dist(u, last) + (w >= 0 ? dist(first, w) : 0);
+                            boolean reverse = reversed < forward;
+                            double delta = (reverse ? reversed : forward) - removeGain;
+                            if (best == null || delta < best.delta) {
+                                best = Move.orOpt(delta, s, len, after, reverse);
+                            }
+                        }
+                    }
+                }
+            }
+            return best;
+        }
+
+        private void apply(Move move) {
+            if (move.orOpt) {
+                int[] run = new int[move.length];
+                for (int k = 0; k < move.length; k++) {
+                    run[k] = route[move.reverse ? move.i + move.length - 1 - k : move.i + k];
+                }
+                int[] rest = new int[n + 1 - move.length];
+                int r = 0;
+                int insertAt = -1;
+                for (int p = 0; p <= n; p++) {
+                    if (p >= move.i && p < move.i + move.length) {
+                        continue;
+                    }
+                    rest[r++] = route[p];
+                    if (p == move.j) {
+                        insertAt = r; // The run goes right after this node
+                    }
+                }
+                System.arraycopy(rest, 0, route, 0, insertAt);
+                System.arraycopy(run, 0, route, insertAt, move.length);
+                System.arraycopy(rest, insertAt, route, insertAt + move.length, rest.length - insertAt);
+                for (int p = 0; p <= n; p++) {
+                    pos[route[p]] = p;
+                }
+            } else {
+                for (int lo = move.i + 1, hi = move.j; lo < hi; lo++, hi--) {
+                    int tmp = route[lo];
+                    route[lo] = route[hi];
+                    route[hi] = tmp;
+                    pos[route[lo]] = lo;
+                    pos[route[hi]] = hi;
+                }
+            }
+        }
+    }
+
+    /**
+     * A candidate change to the route and how much it would change the length.
+     * For 2-opt, positions i+1..j are reversed. For Or-opt, the run of the given length at position i
+     * is moved after the node now at position j.
+     */
+    private static final class Move {
+        final double delta;
+        final boolean orOpt;
+        final int i;
+        final int j;
+        final int length;
+        final boolean reverse;
+
+        private Move(double delta, boolean orOpt, int i, int j, int length, boolean reverse) {
+            this.delta = delta;
+            this.orOpt = orOpt;
+            this.i = i;
+            this.j = j;
+            this.length = length;
+            this.reverse = reverse;
+        }
+
+        /**
+         * @return The first route position whose edges the move changes.
+         */
+        int from() {
+            return orOpt ? Math.min(i - 1, j) : i;
+        }
+
+        /**
+         * @return The last route position whose edges the move changes.
+         */
+        int to(int n) {
+            int last = orOpt ? Math.max(i + length, j + 1) : j + 1;
+            return Math.min(last, n);
+        }
+
+        static Move twoOpt(double delta, int i, int j) {
+            return new Move(delta, false, i, j, 0, false);
+        }
+
+        static Move orOpt(double delta, int start, int length, int after, boolean reverse) {
+            return new Move(delta, true, start, after, length, reverse);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package src;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Brings the database schema up to date at startup.
+ * Each migration has a version number and runs once; applied versions are recorded in schema_migrations.
+ * MySQL commits DDL implicitly, so every step checks information_schema first and can be re-run safely
+ * if a previous attempt died halfway. A named lock keeps two starting clients from migrating at once.
+ */
+public class SchemaMigrations {
+
+    private static final String LOCK_NAME = "waste_management.schema_migrations";
+    private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+    /**
+     * One step of a migration.
+     */
+    @FunctionalInterface
+    interface Step {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    /**
+     * A numbered schema change.
+     */
+    static class Migration {
+        final int version;
+        final String description;
+        final Step[] steps;
+
+        Migration(int version, String description, Step... steps) {
+            this.version = version;
+            this.description = description;
+            this.steps = steps;
+        }
+    }
+
+    // Append new migrations at the end; never change or renumber one that has shipped
+    static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Change tracking columns for delta refresh",
+                    addColumn("reports", "updated_at",
+                            "TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3)"),
+                    addIndex("reports", "idx_reports_updated_at", "(updated_at)"),
+                    addColumn("tasks", "updated_at",
+                            "TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3)"),
+                    addIndex("tasks", "idx_tasks_worker_updated_at", "(worker_id, updated_at)")),
+            new Migration(2, "Indexes for the dashboard queries",
+                    addIndex("reports", "idx_reports_citizen_submitted", "(citizen_id, submission_date)"),
+                    addIndex("reports", "idx_reports_submitted", "(submission_date, id)"),
+                    addIndex("tasks", "idx_tasks_worker_assigned", "(worker_id, assigned_date)"),
+                    addIndex("users", "idx_users_role", "(role)")),
+            new Migration(3, "At most one task per report",
+                    // Duplicates slipped in before the constraint existed; the earliest task for a report is kept
+                    // and the others are moved to tasks_duplicates_backup, to be reviewed by hand
+                    execute("CREATE TABLE IF NOT EXISTS tasks_duplicates_backup LIKE tasks"),
+                    execute("INSERT IGNORE INTO tasks_duplicates_backup " +
+                            "SELECT t.* FROM tasks t JOIN tasks earlier ON earlier.report_id = t.report_id AND earlier.id < t.id"),
+                    execute("DELETE t FROM tasks t JOIN tasks earlier ON earlier.report_id = t.report_id AND earlier.id < t.id"),
+                    addIndex("tasks", "uq_tasks_report", "(report_id)", true)),
+            new Migration(4, "Index for picking the oldest pending reports",
+                    addIndex("reports", "idx_reports_status_submitted", "(status, submission_date)")),
+            new Migration(5, "Coordinates for nearest-worker suggestions",
+                    // NULL where the free-text location could not be geocoded
+                    addColumn("reports", "latitude", "DOUBLE NULL"),
+                    addColumn("reports", "longitude", "DOUBLE NULL"),
+                    // A worker's base location, e.g. their depot
+                    addColumn("users", "latitude", "DOUBLE NULL"),
+                    addColumn("users", "longitude", "DOUBLE NULL"),
+                    addIndex("tasks", "idx_tasks_status_worker", "(status, worker_id)")),
+            new Migration(6, "Link duplicate reports to the report they repeat",
+                    addColumn("reports", "duplicate_of", "INT NULL"),
+                    addIndex("reports", "idx_reports_duplicate_of", "(duplicate_of)"),
+                    addForeignKey("reports", "fk_reports_duplicate_of", "(duplicate_of) REFERENCES reports(id)")),
+            new Migration(7, "Pre-aggregated statistics",
+                    // The gazetteer place a report's location matched; NULL reports are counted under "Other"
+                    addColumn("reports", "area", "VARCHAR(64) NULL"),
+                    backfillAreas(),
+                    execute("CREATE TABLE IF NOT EXISTS report_rollups (" +
+                            "day DATE NOT NULL, area VARCHAR(64) NOT NULL, status VARCHAR(20) NOT NULL, " +
+                            "report_count INT NOT NULL DEFAULT 0, PRIMARY KEY (day, area, status))"),
+                    execute("CREATE TABLE IF NOT EXISTS area_rollups (" +
+                            "area VARCHAR(64) NOT NULL, status VARCHAR(20) NOT NULL, " +
+                            "report_count INT NOT NULL DEFAULT 0, PRIMARY KEY (area, status))"),
+                    execute("CREATE TABLE IF NOT EXISTS worker_rollups (" +
+                            "day DATE NOT NULL, worker_id INT NOT NULL, assigned_count INT NOT NULL DEFAULT 0, " +
+                            "completed_count INT NOT NULL DEFAULT 0, completion_seconds BIGINT NOT NULL DEFAULT 0, " +
+                            "PRIMARY KEY (day, worker_id))"),
+                    // Starts from empty tables, so it is safe to re-run
+                    StatisticsRepository::rebuild),
+            new Migration(8, "Index for the shared change feed",
+                    addIndex("tasks", "idx_tasks_updated_at", "(updated_at)")),
+            new Migration(9, "Registry of archive segments",
+                    // One row per segment file under archive.dir, added in the transaction that deletes its rows
+                    execute("CREATE TABLE IF NOT EXISTS archive_segments (" +
+                            "id INT AUTO_INCREMENT PRIMARY KEY, file_name VARCHAR(255) NOT NULL UNIQUE, " +
+                            "row_count INT NOT NULL, min_report_id INT NOT NULL, max_report_id INT NOT NULL, " +
+                            "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)")),
+            new Migration(10, "Client tokens for replaying journaled submissions",
+                    // NULL for reports that did not come through the journal; UNIQUE allows any number of those
+                    addColumn("reports", "client_token", "CHAR(36) NULL"),
+                    addIndex("reports", "uq_reports_client_token", "(client_token)", true)),
+            new Migration(11, "Row versions for optimistic status changes",
+                    // Bumped by every status change, so a client can tell whether a row changed since it read it
+                    addColumn("reports", "version", "INT NOT NULL DEFAULT 0"),
+                    addColumn("tasks", "version", "INT NOT NULL DEFAULT 0")),
+            new Migration(12, "Sensor bins and the user their reports are filed as",
+                    // open_report_id is no foreign key: the report may be archived once Completed
+                    execute("CREATE TABLE IF NOT EXISTS bins (" +
+                            "id INT AUTO_INCREMENT PRIMARY KEY, location VARCHAR(255) NOT NULL, " +
+                            "latitude DOUBLE NULL, longitude DOUBLE NULL, open_report_id INT NULL)"),
+                    // Nobody knows the password, so nobody can log in as the sensors
+                    execute("INSERT IGNORE INTO users (username, password, role) VALUES ('sensors', UUID(), 'Citizen')")),
+            new Migration(13, "Photos attached to reports",
+                    // The photos themselves are files in the BlobStore, named by the SHA-256 of their bytes
+                    execute("CREATE TABLE IF NOT EXISTS report_attachments (" +
+                            "report_id INT NOT NULL, sha256 CHAR(64) NOT NULL, PRIMARY KEY (report_id, sha256), " +
+                            "CONSTRAINT fk_attachments_report FOREIGN KEY (report_id) REFERENCES reports(id))"))
+    );
+
+    // Private constructor to prevent instantiation
+    private SchemaMigrations() {}
+
+    /**
+     * Applies every migration that has not been applied yet.
+     * @return The number of migrations applied.
+     * @throws SQLException if a migration fails; later migrations are not attempted.
+     */
+    public static int migrate() throws SQLException {
+        int applied = 0;
+        try (Connection conn = DBConnection.getConnection()) {
+            acquireLock(conn);
+            try {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("CREATE TABLE IF NOT EXISTS schema_migrations (" +
+                            "version INT PRIMARY KEY, " +
+                            "description VARCHAR(255) NOT NULL, " +
+                            "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+                }
+                List<Integer> done = appliedVersions(conn);
+                for (Migration migration : MIGRATIONS) {
+                    if (done.contains(migration.version)) {
+                        continue;
+                    }
+                    for (Step step : migration.steps) {
+                        step.apply(conn);
+                    }
+                    try (PreparedStatement stmt = conn.prepareStatement(
+                            "INSERT INTO schema_migrations (version, description) VALUES (?, ?)")) {
+                        stmt.setInt(1, migration.version);
+                        stmt.setString(2, migration.description);
+                        stmt.executeUpdate();
+                    }
+                    applied++;
+                }
+            } finally {
+                releaseLock(conn);
+            }
+        }
+        return applied;
+    }
+
+    private static List<Integer> appliedVersions(Connection conn) throws SQLException {
+        List<Integer> versions = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT version FROM schema_migrations");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                versions.add(rs.getInt(1));
+            }
+        }
+        return versions;
+    }
+
+    private static void acquireLock(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            stmt.setString(1, LOCK_NAME);
+            stmt.setInt(2, LOCK_TIMEOUT_SECONDS);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    throw new SQLException("Timed out waiting for another client to finish migrating the schema.");
+                }
+            }
+        }
+    }
+
+    private static void releaseLock(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            stmt.setString(1, LOCK_NAME);
+            stmt.executeQuery().close();
+        }
+    }
+
+    static Step execute(String sql) {
+        return conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(sql);
+            }
+        };
+    }
+
+    /**
+     * Fills in reports.area from the gazetteer for reports that predate the column.
+     */
+    static Step backfillAreas() {
+        return conn -> {
+            Map<Integer, String> areas = new HashMap<>();
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT id, location FROM reports WHERE area IS NULL");
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String area = Gazetteer.getDefault().area(rs.getString(2));
+                    if (area != null) {
+                        areas.put(rs.getInt(1), area);
+                    }
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("UPDATE reports SET area = ? WHERE id = ?")) {
+                int batched = 0;
+                for (Map.Entry<Integer, String> entry : areas.entrySet()) {
+                    stmt.setString(1, entry.getValue());
+                    stmt.setInt(2, entry.getKey());
+                    stmt.addBatch();
+                    if (++batched % 1000 == 0) {
+                        stmt.executeBatch();
+                    }
+                }
+                stmt.executeBatch();
+            }
+        };
+    }
+
+    static Step addColumn(String table, String column, String definition) {
+        return conn -> {
+            if (!exists(conn, "SELECT 1 FROM information_schema.columns " +
+                    "WHERE table_schema = DATABASE() AND table_name = ? AND column_name = ?", table, column)) {
+                execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition).apply(conn);
+            }
+        };
+    }
+
+    static Step addIndex(String table, String index, String columns) {
+        return addIndex(table, index, columns, false);
+    }
+
+    static Step addIndex(String table, String index, String columns, boolean unique) {
+        return conn -> {
+            if (!exists(conn, "SELECT 1 FROM information_schema.statistics " +
+                    "WHERE table_schema = DATABASE() AND table_name = ? AND index_name = ?", table, index)) {
+                execute("ALTER TABLE " + table + " ADD " + (unique ? "UNIQUE " : "") + "INDEX " + index + " " + columns).apply(conn);
+            }
+        };
+    }
+
+    static Step addForeignKey(String table, String constraint, String definition) {
+        return conn -> {
+            if (!exists(conn, "SELECT 1 FROM information_schema.table_constraints " +
+                    "WHERE table_schema = DATABASE() AND table_name = ? AND constraint_name = ?", table, constraint)) {
+                execute("ALTER TABLE " + table + " ADD CONSTRAINT " + constraint + " FOREIGN KEY " + definition).apply(conn);
+            }
+        };
+    }
+
+    static boolean exists(Connection conn, String sql, String... params) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                stmt.setString(i + 1, params[i]);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+}
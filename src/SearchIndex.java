@@ -0,0 +1,510 @@
+package src;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-process full-text search over report descriptions and locations.
+ * Text is lower-cased and split into alphanumeric tokens; each term maps to a postings list of report IDs
+ * with term frequencies, kept sorted by ID. The terms themselves are kept sorted, so a prefix query is a
+ * range of the dictionary. Every query term must match (the last one, or any ending in '*', as a prefix)
+ * and results are ranked by BM25, with location terms counting double.
+ *
+ * The index is process-wide. On first use it loads the snapshot file (-Dsearch.snapshot, default
+ * data/search-index.bin, or next to the {@link MemoryEngine}'s files) if there is one, or else rebuilds from the reports table in parallel id ranges.
+ * Before each query it catches up on reports changed since its updated_at watermark, so inserts and edits
+ * from every client show up without a rebuild. The snapshot is rewritten after a rebuild and at shutdown.
+ */
+public class SearchIndex {
+
+    // Kept with the memory engine's data when it is used, so an index of one engine is never loaded for the other
+    private static final SearchIndex INSTANCE = new SearchIndex(Paths.get(System.getProperty("search.snapshot",
+            Storage.isMemory() ? Storage.directory().resolve("search-index.bin").toString() : "data/search-index.bin")));
+
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int MIN_PREFIX = 2;           // Shorter prefixes would expand to most of the dictionary
+    private static final int LOCATION_WEIGHT = 2;
+    private static final int REBUILD_RANGES = 8;
+    private static final long CATCH_UP_MILLIS = 1000;  // Queries within this long of the last catch-up skip it
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final Set<String> STOP_WORDS = Set.of("a", "an", "the", "of", "and", "or", "at", "in", "on",
+            "to", "is", "near", "by", "for", "with");
+
+    /**
+     * A matching report and its relevance.
+     */
+    public record Hit(int reportId, double score) {
+    }
+
+    /**
+     * Report IDs containing one term, ascending, with how often the term occurs in each.
+     */
+    private static final class Postings {
+        int[] ids = new int[2];
+        int[] frequencies = new int[2];
+        int size;
+
+        void put(int id, int frequency) {
+            int i = size > 0 && ids[size - 1] < id ? -size - 1 : Arrays.binarySearch(ids, 0, size, id);
+            if (i >= 0) {
+                frequencies[i] = frequency;
+                return;
+            }
+            i = -i - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            System.arraycopy(ids, i, ids, i + 1, size - i);
+            System.arraycopy(frequencies, i, frequencies, i + 1, size - i);
+            ids[i] = id;
+            frequencies[i] = frequency;
+            size++;
+        }
+
+        void remove(int id) {
+            int i = Arrays.binarySearch(ids, 0, size, id);
+            if (i >= 0) {
+                System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+                System.arraycopy(frequencies, i + 1, frequencies, i, size - i - 1);
+                size--;
+            }
+        }
+    }
+
+    /**
+     * What the index remembers about one report.
+     * @param terms The distinct terms, to remove the report from their postings when its text changes.
+     */
+    private record Document(int citizenId, int length, int textHash, String[] terms) {
+    }
+
+    /**
+     * The terms and documents of an index. A rebuild fills one per ID range and appends them in order.
+     */
+    private static final class Contents {
+        final NavigableMap<String, Postings> terms = new TreeMap<>();
+        final Map<Integer, Document> documents = new HashMap<>();
+        long totalLength;
+
+        void put(int reportId, int citizenId, String description, String location) {
+            int textHash = (description + '\u0000' + location).hashCode();
+            Document old = documents.get(reportId);
+            if (old != null && old.textHash() == textHash) {
+                return; // Only the status changed
+            }
+            if (old != null) {
+                remove(reportId, old);
+            }
+            Map<String, Integer> frequencies = new HashMap<>();
+            int length = 0;
+            for (String term : tokenize(description, false)) {
+                frequencies.merge(term, 1, Integer::sum);
+                length++;
+            }
+            for (String term : tokenize(location, false)) {
+                frequencies.merge(term, LOCATION_WEIGHT, Integer::sum);
+                length += LOCATION_WEIGHT;
+            }
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                terms.computeIfAbsent(entry.getKey(), t -> new Postings()).put(reportId, entry.getValue());
+            }
+            documents.put(reportId, new Document(citizenId, length, textHash, frequencies.keySet().toArray(new String[0])));
+            totalLength += length;
+        }
+
+        private void remove(int reportId, Document doc) {
+            for (String term : doc.terms()) {
+                Postings postings = terms.get(term);
+                if (postings != null) {
+                    postings.remove(reportId);
+                    if (postings.size == 0) {
+                        terms.remove(term);
+                    }
+                }
+            }
+            documents.remove(reportId);
+            totalLength -= doc.length();
+        }
+
+        /**
+         * Appends another index whose report IDs are all higher than this one's.
+         */
+        void append(Contents part) {
+            for (Map.Entry<String, Postings> entry : part.terms.entrySet()) {
+                Postings into = terms.computeIfAbsent(entry.getKey(), t -> new Postings());
+                Postings from = entry.getValue();
+                int size = into.size + from.size;
+                if (size > into.ids.length) {
+                    into.ids = Arrays.copyOf(into.ids, size);
+                    into.frequencies = Arrays.copyOf(into.frequencies, size);
+                }
+                System.arraycopy(from.ids, 0, into.ids, into.size, from.size);
+                System.arraycopy(from.frequencies, 0, into.frequencies, into.size, from.size);
+                into.size = size;
+            }
+            documents.putAll(part.documents);
+            totalLength += part.totalLength;
+        }
+    }
+
+    private final Path snapshotFile;
+    private Contents contents = new Contents(); // Replaced under the write lock by a rebuild or snapshot load
+    private Timestamp watermark; // Changes at or after this time are not indexed yet; null until loaded
+    private long caughtUpAt;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReportStore reportRepository = Storage.reports();
+
+    private SearchIndex(Path snapshotFile) {
+        this.snapshotFile = snapshotFile;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (watermark != null) {
+                saveSnapshot();
+            }
+        }, "search-index-snapshot"));
+    }
+
+    public static SearchIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Runs a query.
+     * @param query Words to look for, e.g. "broken bin city pa".
+     * @param citizenId Only return this citizen's reports, or -1 for everyone's.
+     * @param limit The maximum number of hits.
+     * @return Hits, best first; ties go to the newer report.
+     * @throws SQLException if the index had to be loaded or caught up and that failed.
+     */
+    public List<Hit> search(String query, int citizenId, int limit) throws SQLException {
+        catchUp();
+        List<String> words = tokenize(query, true);
+        boolean lastIsPrefix = !query.endsWith(" ");
+        lock.readLock().lock();
+        try {
+            Map<Integer, Double> scores = null;
+            for (int w = 0; w < words.size(); w++) {
+                String word = words.get(w);
+                boolean prefix = word.endsWith("*") || (lastIsPrefix && w == words.size() - 1);
+                word = word.replace("*", "");
+                if (word.isEmpty() || (STOP_WORDS.contains(word) && !prefix)) {
+                    continue; // Stop words are not indexed
+                }
+                scores = score(word, prefix && word.length() >= MIN_PREFIX, citizenId, scores);
+                if (scores.isEmpty()) {
+                    break; // Every word must match, so nothing can
+                }
+            }
+            List<Hit> hits = new ArrayList<>();
+            if (scores != null) {
+                scores.forEach((id, score) -> hits.add(new Hit(id, score)));
+            }
+            hits.sort((a, b) -> a.score() != b.score() ? Double.compare(b.score(), a.score()) : Integer.compare(b.reportId(), a.reportId()));
+            return hits.size() > limit ? new ArrayList<>(hits.subList(0, limit)) : hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Scores the reports matching one query word, keeping only those that matched every earlier word.
+     * @param previous Scores so far, or null for the first word.
+     */
+    private Map<Integer, Double> score(String word, boolean prefix, int citizenId, Map<Integer, Double> previous) {
+        Map<Integer, Double> scores = new HashMap<>();
+        NavigableMap<String, Postings> terms = contents.terms;
+        Map<String, Postings> matching = prefix ? terms.subMap(word, true, word + Character.MAX_VALUE, false)
+                : terms.containsKey(word) ? Map.of(word, terms.get(word)) : Map.of();
+        double n = contents.documents.size();
+        double averageLength = n == 0 ? 1 : (double) contents.totalLength / n;
+        for (Postings postings : matching.values()) {
+            double idf = Math.log(1 + (n - postings.size + 0.5) / (postings.size + 0.5));
+            for (int i = 0; i < postings.size; i++) {
+                int id = postings.ids[i];
+                if (previous != null && !previous.containsKey(id)) {
+                    continue;
+                }
+                Document doc = contents.documents.get(id);
+                if (citizenId >= 0 && doc.citizenId() != citizenId) {
+                    continue;
+                }
+                double tf = postings.frequencies[i];
+                double termScore = idf * tf * (K1 + 1) / (tf + K1 * (1 - B + B * doc.length() / averageLength));
+                // A prefix matching several terms of one report counts the best of them
+                scores.merge(id, termScore, Math::max);
+            }
+        }
+        if (previous != null) {
+            scores.replaceAll((id, score) -> score + previous.get(id));
+        }
+        return scores;
+    }
+
+    /**
+     * Adds or re-indexes a report. Called by the repository after an insert; edits made elsewhere are
+     * picked up by the catch-up before the next query.
+     */
+    void index(int reportId, int citizenId, String description, String location) {
+        lock.writeLock().lock();
+        try {
+            if (watermark != null) { // Not loaded yet: the load will include this report
+                contents.put(reportId, citizenId, description, location);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops reports that left the reports table, e.g. because they were archived.
+     */
+    void removed(List<Integer> reportIds) {
+        lock.writeLock().lock();
+        try {
+            for (int reportId : reportIds) {
+                Document doc = contents.documents.get(reportId);
+                if (doc != null) {
+                    contents.remove(reportId, doc);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Loads the index on first use and indexes every report changed since the watermark.
+     */
+    private synchronized void catchUp() throws SQLException {
+        if (watermark == null && !loadSnapshot()) {
+            rebuild();
+            return;
+        }
+        if (System.currentTimeMillis() - caughtUpAt < CATCH_UP_MILLIS) {
+            return;
+        }
+        List<Report> changed = reportRepository.findChangedSince(watermark);
+        lock.writeLock().lock();
+        try {
+            for (Report report : changed) {
+                contents.put(report.id(), report.citizenId(), report.description(), report.location());
+                watermark = later(watermark, report.updatedAt());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        caughtUpAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Rebuilds the index from the reports table. The ID space is split into ranges that are read and tokenized
+     * in parallel, each into its own partial index; the partial postings are then appended in range order,
+     * which keeps every postings list sorted without any merging.
+     * @throws SQLException if reading a range fails; the current index is kept in that case.
+     */
+    public synchronized void rebuild() throws SQLException {
+        ReportSnapshot snapshot = reportRepository.snapshot();
+        Contents rebuilt = new Contents();
+        int maxId = snapshot.maxId();
+        int step = Math.max(1, maxId / REBUILD_RANGES + 1);
+        ExecutorService executor = DataExecutor.newExecutor("search-rebuild", REBUILD_RANGES);
+        try {
+            List<CompletableFuture<Contents>> parts = new ArrayList<>();
+            for (int from = 0; from < maxId; from += step) {
+                int lo = from;
+                int hi = Math.min(maxId, from + step);
+                parts.add(CompletableFuture.supplyAsync(() -> {
+                    Contents part = new Contents();
+                    try {
+                        for (Report report : reportRepository.findIdRange(lo, hi)) {
+                            part.put(report.id(), report.citizenId(), report.description(), report.location());
+                        }
+                    } catch (SQLException e) {
+                        throw new CompletionException(e);
+                    }
+                    return part;
+                }, executor));
+            }
+            for (CompletableFuture<Contents> part : parts) {
+                try {
+                    rebuilt.append(part.join());
+                } catch (CompletionException e) {
+                    Throwable cause = DataExecutor.unwrap(e);
+                    throw cause instanceof SQLException ? (SQLException) cause : new SQLException(cause);
+                }
+            }
+            lock.writeLock().lock();
+            try {
+                contents = rebuilt;
+                // Rows changed while the ranges were read are re-read by the next catch-up
+                watermark = snapshot.lastModified() == null ? new Timestamp(0) : snapshot.lastModified();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        caughtUpAt = 0;
+        saveSnapshot();
+    }
+
+    /**
+     * Writes the index to the snapshot file, replacing the old one atomically.
+     * Failures are logged only; the index can always be rebuilt from the database.
+     */
+    public void saveSnapshot() {
+        if (snapshotFile == null) {
+            return;
+        }
+        lock.readLock().lock();
+        try {
+            if (snapshotFile.getParent() != null) {
+                Files.createDirectories(snapshotFile.getParent());
+            }
+            Path temp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(temp), 1 << 16)))) {
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeLong(watermark.getTime());
+                out.writeInt(watermark.getNanos());
+                out.writeInt(contents.documents.size());
+                for (Map.Entry<Integer, Document> entry : contents.documents.entrySet()) {
+                    out.writeInt(entry.getKey());
+                    out.writeInt(entry.getValue().citizenId());
+                    out.writeInt(entry.getValue().length());
+                    out.writeInt(entry.getValue().textHash());
+                }
+                out.writeInt(contents.terms.size());
+                for (Map.Entry<String, Postings> entry : contents.terms.entrySet()) {
+                    Postings postings = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(postings.size);
+                    int previous = 0;
+                    for (int i = 0; i < postings.size; i++) {
+                        out.writeInt(postings.ids[i] - previous); // Gaps are small and compress well
+                        out.writeShort(Math.min(postings.frequencies[i], Short.MAX_VALUE));
+                        previous = postings.ids[i];
+                    }
+                }
+            }
+            Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return true if a usable snapshot was loaded.
+     */
+    private boolean loadSnapshot() {
+        if (snapshotFile == null || !Files.exists(snapshotFile)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(snapshotFile), 1 << 16)))) {
+            if (in.readInt() != SNAPSHOT_VERSION) {
+                return false;
+            }
+            Timestamp loadedWatermark = new Timestamp(in.readLong());
+            loadedWatermark.setNanos(in.readInt());
+            int documentCount = in.readInt();
+            int[][] meta = new int[documentCount][];
+            Map<Integer, List<String>> termsByDoc = new HashMap<>();
+            for (int i = 0; i < documentCount; i++) {
+                meta[i] = new int[]{in.readInt(), in.readInt(), in.readInt(), in.readInt()};
+                termsByDoc.put(meta[i][0], new ArrayList<>());
+            }
+            Contents loaded = new Contents();
+            int termCount = in.readInt();
+            for (int t = 0; t < termCount; t++) {
+                String term = in.readUTF();
+                Postings postings = new Postings();
+                postings.size = in.readInt();
+                postings.ids = new int[Math.max(2, postings.size)];
+                postings.frequencies = new int[postings.ids.length];
+                int previous = 0;
+                for (int i = 0; i < postings.size; i++) {
+                    previous += in.readInt();
+                    postings.ids[i] = previous;
+                    postings.frequencies[i] = in.readShort();
+                    termsByDoc.get(previous).add(term);
+                }
+                loaded.terms.put(term, postings);
+            }
+            for (int[] m : meta) {
+                loaded.documents.put(m[0], new Document(m[1], m[2], m[3], termsByDoc.get(m[0]).toArray(new String[0])));
+                loaded.totalLength += m[2];
+            }
+            lock.writeLock().lock();
+            try {
+                contents = loaded;
+                watermark = loadedWatermark;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            // A truncated or corrupt snapshot is not fatal: fall back to a rebuild
+            System.err.println("Ignoring unreadable search snapshot " + snapshotFile + ": " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Splits text into lower-case alphanumeric tokens.
+     * @param query true to keep '*' prefix markers; false to drop stop words, which are not indexed.
+     */
+    static List<String> tokenize(String text, boolean query) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            boolean wordChar = Character.isLetterOrDigit(c) || (query && c == '*');
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String token = text.substring(start, i).toLowerCase(Locale.ROOT);
+                if (query || !STOP_WORDS.contains(token)) {
+                    tokens.add(token);
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static Timestamp later(Timestamp a, Timestamp b) {
+        return b != null && b.after(a) ? b : a;
+    }
+}
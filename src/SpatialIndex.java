@@ -0,0 +1,267 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * In-memory grid index over points identified by an int ID.
+ * Latitude and longitude are quantized into square cells of a fixed size in degrees, like a geohash prefix,
+ * and each cell holds the IDs of the points inside it. Nearest-neighbour queries walk outwards ring by ring
+ * and stop once no unvisited cell can hold anything closer; radius queries only visit the cells overlapping
+ * the circle's bounding box. Thread-safe: queries share a read lock, updates take the write lock.
+ */
+public class SpatialIndex {
+
+    private static final double METERS_PER_DEGREE = 111_320.0;
+    private static final double EARTH_RADIUS_METERS = 6_371_000.0;
+
+    /**
+     * A point found by a query, with its distance from the query location.
+     */
+    public record Hit(int id, double meters) {
+    }
+
+    /**
+     * The IDs in one cell, kept in a growable int array.
+     */
+    private static final class Cell {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        void remove(int id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    ids[i] = ids[--size]; // Order within a cell does not matter
+                    return;
+                }
+            }
+        }
+    }
+
+    private final double cellDegrees;
+    private final Map<Long, Cell> cells = new HashMap<>();
+    private final Map<Integer, double[]> positions = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @param cellDegrees The cell size; 0.01 degrees is about 1.1 km, which suits a city.
+     */
+    public SpatialIndex(double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+    }
+
+    /**
+     * Adds a point, or moves it if the ID is already indexed.
+     */
+    public void put(int id, double latitude, double longitude) {
+        lock.writeLock().lock();
+        try {
+            double[] old = positions.put(id, new double[]{latitude, longitude});
+            if (old != null) {
+                removeFromCell(id, old);
+            }
+            cells.computeIfAbsent(cellKey(cellOf(latitude), cellOf(longitude)), k -> new Cell()).add(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a point; does nothing if the ID is not indexed.
+     */
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            double[] old = positions.remove(id);
+            if (old != null) {
+                removeFromCell(id, old);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes every point.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            cells.clear();
+            positions.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return {latitude, longitude} of the point, or null if the ID is not indexed.
+     */
+    public double[] position(int id) {
+        lock.readLock().lock();
+        try {
+            double[] p = positions.get(id);
+            return p == null ? null : p.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return positions.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the points closest to a location.
+     * @param k The maximum number of points to return.
+     * @param accept Filter applied to candidate IDs, e.g. to skip busy workers.
+     * @return Up to k accepted points, closest first.
+     */
+    public List<Hit> nearest(double latitude, double longitude, int k, IntPredicate accept) {
+        lock.readLock().lock();
+        try {
+            List<Hit> best = new ArrayList<>(k + 1); // Sorted by distance, at most k entries
+            if (k <= 0 || cells.isEmpty()) {
+                return best;
+            }
+            long cy = cellOf(latitude);
+            long cx = cellOf(longitude);
+            // A cell r rings away is at least (r - 1) cell widths from the query point
+            double ringMeters = cellDegrees * METERS_PER_DEGREE * Math.max(0.01, Math.cos(Math.toRadians(latitude)));
+            int cellsSeen = 0;
+            for (int r = 0; cellsSeen < cells.size(); r++) {
+                if (best.size() == k && (r - 1) * ringMeters > best.get(k - 1).meters()) {
+                    break;
+                }
+                for (long y = cy - r; y <= cy + r; y++) {
+                    boolean edgeRow = y == cy - r || y == cy + r;
+                    long step = edgeRow ? 1 : 2L * r; // Inner rows only contribute their two ends
+                    for (long x = cx - r; x <= cx + r; x += Math.max(1, step)) {
+                        Cell cell = cells.get(cellKey(y, x));
+                        if (cell == null) {
+                            continue;
+                        }
+                        cellsSeen++;
+                        for (int i = 0; i < cell.size; i++) {
+                            int id = cell.ids[i];
+                            if (!accept.test(id)) {
+                                continue;
+                            }
+                            double[] p = positions.get(id);
+                            double meters = distanceMeters(latitude, longitude, p[0], p[1]);
+                            if (best.size() < k || meters < best.get(best.size() - 1).meters()) {
+                                insertSorted(best, new Hit(id, meters), k);
+                            }
+                        }
+                    }
+                }
+            }
+            return best;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds every point within a distance of a location.
+     * @return The points, closest first.
+     */
+    public List<Hit> withinRadius(double latitude, double longitude, double meters) {
+        lock.readLock().lock();
+        try {
+            List<Hit> hits = new ArrayList<>();
+            double dLat = meters / METERS_PER_DEGREE;
+            double dLon = meters / (METERS_PER_DEGREE * Math.max(0.01, Math.cos(Math.toRadians(latitude))));
+            long minY = cellOf(latitude - dLat), maxY = cellOf(latitude + dLat);
+            long minX = cellOf(longitude - dLon), maxX = cellOf(longitude + dLon);
+            if ((maxY - minY + 1) * (maxX - minX + 1) > cells.size()) {
+                // The box covers more cells than exist, so scanning the occupied ones is cheaper
+                for (Cell cell : cells.values()) {
+                    collect(cell, latitude, longitude, meters, hits);
+                }
+            } else {
+                for (long y = minY; y <= maxY; y++) {
+                    for (long x = minX; x <= maxX; x++) {
+                        Cell cell = cells.get(cellKey(y, x));
+                        if (cell != null) {
+                            collect(cell, latitude, longitude, meters, hits);
+                        }
+                    }
+                }
+            }
+            hits.sort((a, b) -> Double.compare(a.meters(), b.meters()));
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void collect(Cell cell, double latitude, double longitude, double meters, List<Hit> hits) {
+        for (int i = 0; i < cell.size; i++) {
+            double[] p = positions.get(cell.ids[i]);
+            double d = distanceMeters(latitude, longitude, p[0], p[1]);
+            if (d <= meters) {
+                hits.add(new Hit(cell.ids[i], d));
+            }
+        }
+    }
+
+    private static void insertSorted(List<Hit> best, Hit hit, int k) {
+        int i = best.size();
+        while (i > 0 && best.get(i - 1).meters() > hit.meters()) {
+            i--;
+        }
+        best.add(i, hit);
+        if (best.size() > k) {
+            best.remove(k);
+        }
+    }
+
+    private void removeFromCell(int id, double[] position) {
+        long key = cellKey(cellOf(position[0]), cellOf(position[1]));
+        Cell cell = cells.get(key);
+        if (cell != null) {
+            cell.remove(id);
+            if (cell.size == 0) {
+                cells.remove(key);
+            }
+        }
+    }
+
+    private long cellOf(double degrees) {
+        return (long) Math.floor(degrees / cellDegrees);
+    }
+
+    private static long cellKey(long y, long x) {
+        return (y << 32) ^ (x & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return The great-circle distance between two points, in meters.
+     */
+    public static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.sqrt(a));
+    }
+}
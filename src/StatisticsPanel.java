@@ -0,0 +1,102 @@
+package src;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+
+/**
+ * Admin panel showing open and completed reports per area and per day, and task throughput per worker.
+ * Everything is read from the rollup tables kept by {@link StatisticsRepository}, so a refresh costs the same
+ * however many reports and tasks the database holds.
+ */
+public class StatisticsPanel extends JPanel {
+
+    private static final int WINDOW_DAYS = Integer.getInteger("stats.windowDays", 30);
+
+    private final StatisticsRepository statisticsRepository = new StatisticsRepository();
+    private final DefaultTableModel areaModel = readOnlyModel("Area", "Pending", "In Progress", "Completed", "Open");
+    private final DefaultTableModel dayModel = readOnlyModel("Submitted", "Pending", "In Progress", "Completed", "Open");
+    private final DefaultTableModel workerModel = readOnlyModel("Worker", "Assigned", "Completed", "Mean Hours to Complete");
+    private final JLabel totalsLabel = new JLabel(" ");
+    private final AsyncLoader loader;
+
+    public StatisticsPanel() {
+        super(new BorderLayout(10, 10));
+
+        JPanel tables = new JPanel(new GridLayout(1, 3, 10, 10));
+        tables.add(titled("Reports by Area (all time)", new JTable(areaModel)));
+        tables.add(titled("Reports by Day (last " + WINDOW_DAYS + " days)", new JTable(dayModel)));
+        tables.add(titled("Tasks by Worker (last " + WINDOW_DAYS + " days)", new JTable(workerModel)));
+        add(tables, BorderLayout.CENTER);
+
+        JPanel footer = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JButton refreshButton = new JButton("Refresh");
+        refreshButton.addActionListener(e -> refresh());
+        footer.add(refreshButton);
+        footer.add(totalsLabel);
+        JLabel loadingLabel = new JLabel(" ");
+        footer.add(loadingLabel);
+        add(footer, BorderLayout.SOUTH);
+
+        loader = new AsyncLoader(this, loadingLabel);
+    }
+
+    /**
+     * Reloads the statistics in the background.
+     */
+    public void refresh() {
+        loader.load(() -> statisticsRepository.load(WINDOW_DAYS), this::show, "Failed to load statistics.");
+    }
+
+    private void show(StatisticsRepository.Summary summary) {
+        int open = 0;
+        int completed = 0;
+        areaModel.setRowCount(0);
+        for (StatisticsRepository.StatusCounts area : summary.areas()) {
+            areaModel.addRow(row(area));
+            open += area.open();
+            completed += area.completed();
+        }
+        dayModel.setRowCount(0);
+        for (StatisticsRepository.StatusCounts day : summary.days()) {
+            dayModel.addRow(row(day));
+        }
+
+        int tasksCompleted = 0;
+        long completionSeconds = 0;
+        workerModel.setRowCount(0);
+        for (StatisticsRepository.WorkerCounts worker : summary.workers()) {
+            workerModel.addRow(new Object[]{worker.username(), worker.assigned(), worker.completed(),
+                    hours(worker.meanCompletionHours())});
+            tasksCompleted += worker.completed();
+            completionSeconds += worker.completionSeconds();
+        }
+        double meanHours = tasksCompleted == 0 ? Double.NaN : completionSeconds / 3600.0 / tasksCompleted;
+        totalsLabel.setText(String.format("Open: %d   Completed: %d   Mean time to complete (last %d days): %s h",
+                open, completed, summary.windowDays(), hours(meanHours)));
+    }
+
+    private static Object[] row(StatisticsRepository.StatusCounts counts) {
+        return new Object[]{counts.label(), counts.pending(), counts.inProgress(), counts.completed(), counts.open()};
+    }
+
+    private static String hours(double hours) {
+        return Double.isNaN(hours) ? "-" : String.format("%.1f", hours);
+    }
+
+    private static JPanel titled(String title, JTable table) {
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.setBorder(BorderFactory.createTitledBorder(title));
+        panel.add(new JScrollPane(table), BorderLayout.CENTER);
+        return panel;
+    }
+
+    private static DefaultTableModel readOnlyModel(String... columns) {
+        return new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+    }
+}
@@ -0,0 +1,337 @@
+package src;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pre-aggregated operational statistics.
+ * Three rollup tables are kept current by the repositories, in the same transaction as each change they count:
+ * report_rollups (reports per submission day, area and current status), area_rollups (the same per area, all time)
+ * and worker_rollups (tasks assigned and completed per day and worker, with the total assigned-to-completed time).
+ * Reading statistics touches only these tables, over a fixed window of days, so it costs the same however long
+ * the history is. {@link #rebuild} recomputes them from the reports and tasks tables and the archive.
+ */
+public class StatisticsRepository {
+
+    static final String OTHER_AREA = "Other"; // Reports whose location matched no gazetteer place
+
+    // Statistics panel queries, shared with QueryPlanCheck
+    static final String AREA_TOTALS_SQL = "SELECT area, status, report_count FROM area_rollups";
+    static final String DAILY_SQL = "SELECT day, status, report_count FROM report_rollups WHERE day >= ?";
+    static final String WORKERS_SQL = "SELECT w.worker_id, u.username, w.assigned_count, w.completed_count, w.completion_seconds " +
+            "FROM worker_rollups w JOIN users u ON u.id = w.worker_id WHERE w.day >= ?";
+
+    static final String REPORT_STATES_SQL = "SELECT DATE(submission_date), area, status FROM reports WHERE id IN (%s) FOR UPDATE";
+    static final String LINKED_STATES_SQL = "SELECT DATE(submission_date), area, status FROM reports " +
+            "WHERE id IN (%1$s) OR duplicate_of IN (%1$s) FOR UPDATE";
+
+    private static final String ADD_REPORTS_SQL = "INSERT INTO report_rollups (day, area, status, report_count) VALUES (?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE report_count = report_count + VALUES(report_count)";
+    private static final String ADD_AREA_SQL = "INSERT INTO area_rollups (area, status, report_count) VALUES (?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE report_count = report_count + VALUES(report_count)";
+    // New assignments are dated by the database clock at commit, which is when assigned_date was set
+    private static final String ADD_ASSIGNED_SQL = "INSERT INTO worker_rollups (day, worker_id, assigned_count) " +
+            "VALUES (COALESCE(?, CURRENT_DATE), ?, ?) " +
+            "ON DUPLICATE KEY UPDATE assigned_count = assigned_count + VALUES(assigned_count)";
+    private static final String ADD_COMPLETED_SQL = "INSERT INTO worker_rollups (day, worker_id, completed_count, completion_seconds) " +
+            "VALUES (?, ?, ?, ?) ON DUPLICATE KEY UPDATE completed_count = completed_count + VALUES(completed_count), " +
+            "completion_seconds = completion_seconds + VALUES(completion_seconds)";
+
+    /**
+     * Report counts by current status.
+     * @param label An area name or a day.
+     */
+    public record StatusCounts(String label, int pending, int inProgress, int completed) {
+        public int open() {
+            return pending + inProgress;
+        }
+    }
+
+    /**
+     * One worker's tasks over the statistics window.
+     */
+    public record WorkerCounts(int workerId, String username, int assigned, int completed, long completionSeconds) {
+        /**
+         * @return Mean time from assignment to completion, or NaN if nothing was completed.
+         */
+        public double meanCompletionHours() {
+            return completed == 0 ? Double.NaN : completionSeconds / 3600.0 / completed;
+        }
+    }
+
+    /**
+     * Everything the statistics panel shows.
+     * @param areas Reports per area, all time, busiest first.
+     * @param days Reports per submission day within the window, newest first.
+     * @param workers Tasks per worker within the window, by username.
+     */
+    public record Summary(int windowDays, List<StatusCounts> areas, List<StatusCounts> days, List<WorkerCounts> workers) {
+    }
+
+    /**
+     * Reads the rollups.
+     * @param windowDays How many days, including today, the daily and per-worker figures cover.
+     * @throws SQLException if a database access error occurs.
+     */
+    public Summary load(int windowDays) throws SQLException {
+        Map<String, int[]> areas = new HashMap<>();
+        Map<LocalDate, int[]> days = new TreeMap<>(Collections.reverseOrder());
+        Map<Integer, WorkerCounts> workers = new HashMap<>();
+        Date since = Date.valueOf(LocalDate.now().minusDays(windowDays - 1));
+        try (Connection conn = DBConnection.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(AREA_TOTALS_SQL);
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    areas.computeIfAbsent(rs.getString(1), a -> new int[ReportPage.STATUSES.length])
+                            [ReportPage.statusCode(rs.getString(2))] += rs.getInt(3);
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(DAILY_SQL)) {
+                stmt.setDate(1, since);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        days.computeIfAbsent(rs.getDate(1).toLocalDate(), d -> new int[ReportPage.STATUSES.length])
+                                [ReportPage.statusCode(rs.getString(2))] += rs.getInt(3);
+                    }
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(WORKERS_SQL)) {
+                stmt.setDate(1, since);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        WorkerCounts day = new WorkerCounts(rs.getInt(1), rs.getString(2), rs.getInt(3), rs.getInt(4), rs.getLong(5));
+                        workers.merge(day.workerId(), day, (a, b) -> new WorkerCounts(a.workerId(), a.username(),
+                                a.assigned() + b.assigned(), a.completed() + b.completed(),
+                                a.completionSeconds() + b.completionSeconds()));
+                    }
+                }
+            }
+        }
+
+        List<StatusCounts> areaRows = new ArrayList<>();
+        areas.forEach((area, counts) -> areaRows.add(counts(area, counts)));
+        areaRows.sort((a, b) -> Integer.compare(b.open(), a.open()));
+        List<StatusCounts> dayRows = new ArrayList<>();
+        days.forEach((day, counts) -> dayRows.add(counts(day.toString(), counts)));
+        List<WorkerCounts> workerRows = new ArrayList<>(workers.values());
+        workerRows.sort((a, b) -> a.username().compareTo(b.username()));
+        return new Summary(windowDays, areaRows, dayRows, workerRows);
+    }
+
+    private static StatusCounts counts(String label, int[] byStatus) {
+        return new StatusCounts(label, byStatus[0], byStatus[1], byStatus[2]);
+    }
+
+    /**
+     * Recomputes every rollup from the reports and tasks tables, in one transaction.
+     * Needed once when the rollups are introduced, and after bulk loads that bypass the repositories.
+     * @throws SQLException if a database access error occurs; the old rollups are kept in that case.
+     */
+    public void rebuild() throws SQLException {
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                rebuild(conn);
+                conn.commit();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    static void rebuild(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM report_rollups");
+            stmt.executeUpdate("DELETE FROM area_rollups");
+            stmt.executeUpdate("DELETE FROM worker_rollups");
+            stmt.executeUpdate("INSERT INTO report_rollups (day, area, status, report_count) " +
+                    "SELECT DATE(submission_date), COALESCE(area, '" + OTHER_AREA + "'), status, COUNT(*) FROM reports " +
+                    "GROUP BY DATE(submission_date), COALESCE(area, '" + OTHER_AREA + "'), status");
+            stmt.executeUpdate("INSERT INTO area_rollups (area, status, report_count) " +
+                    "SELECT area, status, SUM(report_count) FROM report_rollups GROUP BY area, status");
+            stmt.executeUpdate("INSERT INTO worker_rollups (day, worker_id, assigned_count) " +
+                    "SELECT DATE(assigned_date), worker_id, COUNT(*) FROM tasks GROUP BY DATE(assigned_date), worker_id");
+            stmt.executeUpdate("INSERT INTO worker_rollups (day, worker_id, completed_count, completion_seconds) " +
+                    "SELECT d.day, d.worker_id, d.completed, d.seconds FROM (" +
+                    "SELECT DATE(completed_date) AS day, worker_id, COUNT(*) AS completed, " +
+                    "SUM(TIMESTAMPDIFF(SECOND, assigned_date, completed_date)) AS seconds " +
+                    "FROM tasks WHERE status = 'Completed' AND completed_date IS NOT NULL " +
+                    "GROUP BY DATE(completed_date), worker_id) d " +
+                    "ON DUPLICATE KEY UPDATE completed_count = d.completed, completion_seconds = d.seconds");
+        }
+        // Archived reports still count; their rows now live in segment files
+        ArchiveStore.getInstance().addToRollups(conn);
+    }
+
+    /**
+     * The rollup changes made by one transaction. Repositories record what they change while the transaction runs
+     * and {@link #apply} the result just before committing, so the rollups commit or roll back with the change.
+     */
+    static final class Delta {
+
+        private record ReportKey(Date day, String area, String status) {
+        }
+
+        private record WorkerDay(Date day, int workerId) { // A null day means today, by the database clock
+        }
+
+        private final Map<ReportKey, Integer> reports = new HashMap<>();
+        private final Map<WorkerDay, Integer> assigned = new HashMap<>();
+        private final Map<WorkerDay, long[]> completed = new HashMap<>(); // {count, seconds}
+
+        /**
+         * Counts newly inserted reports.
+         * @param conn The inserting transaction.
+         * @param ids The inserted report IDs.
+         */
+        void reportsAdded(Connection conn, List<Integer> ids) throws SQLException {
+            for (ReportKey key : lockStates(conn, REPORT_STATES_SQL, 1, ids)) {
+                reports.merge(key, 1, Integer::sum);
+            }
+        }
+
+        /**
+         * Moves reports, and the reports linked to them as duplicates, to a new status.
+         * Only rows whose status comes before the new one move, matching the status updates, which never move a report back.
+         * Must be called before the status update, which the row locks taken here then wait for no one else to make.
+         * @param conn The updating transaction.
+         * @param ids The reports whose status is about to change.
+         */
+        void reportsMoved(Connection conn, List<Integer> ids, String status) throws SQLException {
+            ReportStatus target = ReportStatus.of(status);
+            for (ReportKey key : lockStates(conn, LINKED_STATES_SQL, 2, ids)) {
+                if (ReportStatus.of(key.status()).isBefore(target)) {
+                    reports.merge(key, -1, Integer::sum);
+                    reports.merge(new ReportKey(key.day(), key.area(), status), 1, Integer::sum);
+                }
+            }
+        }
+
+        void tasksAssigned(int workerId, int count) {
+            tasksAssigned(workerId, null, count);
+        }
+
+        /**
+         * @param day The assignment date, or null for today.
+         */
+        void tasksAssigned(int workerId, Date day, int count) {
+            assigned.merge(new WorkerDay(day, workerId), count, Integer::sum);
+        }
+
+        /**
+         * Counts a Completed report that is no longer in the reports table.
+         * @param day The submission date.
+         * @param area The report's area, or null for {@link #OTHER_AREA}.
+         */
+        void reportArchived(Date day, String area) {
+            reports.merge(new ReportKey(day, area == null ? OTHER_AREA : area, "Completed"), 1, Integer::sum);
+        }
+
+        /**
+         * @param day The completion date, by the database clock.
+         * @param seconds Time from assignment to completion.
+         */
+        void taskCompleted(int workerId, Date day, long seconds) {
+            long[] totals = completed.computeIfAbsent(new WorkerDay(day, workerId), k -> new long[2]);
+            totals[0]++;
+            totals[1] += seconds;
+        }
+
+        /**
+         * Writes the recorded changes as batched upserts in the caller's transaction.
+         */
+        void apply(Connection conn) throws SQLException {
+            if (!reports.isEmpty()) {
+                Map<List<String>, Integer> areas = new HashMap<>();
+                try (PreparedStatement stmt = conn.prepareStatement(ADD_REPORTS_SQL)) {
+                    for (Map.Entry<ReportKey, Integer> entry : reports.entrySet()) {
+                        if (entry.getValue() == 0) {
+                            continue;
+                        }
+                        ReportKey key = entry.getKey();
+                        stmt.setDate(1, key.day());
+                        stmt.setString(2, key.area());
+                        stmt.setString(3, key.status());
+                        stmt.setInt(4, entry.getValue());
+                        stmt.addBatch();
+                        areas.merge(List.of(key.area(), key.status()), entry.getValue(), Integer::sum);
+                    }
+                    stmt.executeBatch();
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(ADD_AREA_SQL)) {
+                    for (Map.Entry<List<String>, Integer> entry : areas.entrySet()) {
+                        stmt.setString(1, entry.getKey().get(0));
+                        stmt.setString(2, entry.getKey().get(1));
+                        stmt.setInt(3, entry.getValue());
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+            }
+            if (!assigned.isEmpty()) {
+                try (PreparedStatement stmt = conn.prepareStatement(ADD_ASSIGNED_SQL)) {
+                    for (Map.Entry<WorkerDay, Integer> entry : assigned.entrySet()) {
+                        stmt.setDate(1, entry.getKey().day());
+                        stmt.setInt(2, entry.getKey().workerId());
+                        stmt.setInt(3, entry.getValue());
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+            }
+            if (!completed.isEmpty()) {
+                try (PreparedStatement stmt = conn.prepareStatement(ADD_COMPLETED_SQL)) {
+                    for (Map.Entry<WorkerDay, long[]> entry : completed.entrySet()) {
+                        stmt.setDate(1, entry.getKey().day());
+                        stmt.setInt(2, entry.getKey().workerId());
+                        stmt.setInt(3, (int) entry.getValue()[0]);
+                        stmt.setLong(4, entry.getValue()[1]);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+            }
+        }
+
+        /**
+         * Locks reports and reads the rollup key each one is currently counted under, in chunks.
+         * @param lists How many times the SQL repeats the ID list.
+         */
+        private static List<ReportKey> lockStates(Connection conn, String sqlTemplate, int lists, List<Integer> ids) throws SQLException {
+            List<ReportKey> keys = new ArrayList<>();
+            for (int from = 0; from < ids.size(); from += TaskRepository.MAX_IN_LIST) {
+                List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + TaskRepository.MAX_IN_LIST));
+                String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+                String sql = String.format(sqlTemplate, placeholders);
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    for (int list = 0; list < lists; list++) {
+                        for (int i = 0; i < chunk.size(); i++) {
+                            stmt.setInt(list * chunk.size() + i + 1, chunk.get(i));
+                        }
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            String area = rs.getString(2);
+                            keys.add(new ReportKey(rs.getDate(1), area == null ? OTHER_AREA : area, rs.getString(3)));
+                        }
+                    }
+                }
+            }
+            return keys;
+        }
+    }
+}
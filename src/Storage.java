@@ -0,0 +1,73 @@
+package src;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Picks the storage engine for the process: -Dstorage=mysql (the default) keeps reports, tasks and users in
+ * the MySQL database of {@link DBConnection}; -Dstorage=memory keeps them in a {@link MemoryEngine} persisted
+ * under -Dstorage.dir (default data/store), so a depot without a database server can run the dashboards.
+ * Statistics, the archive, the submission journal and smart bins need MySQL and are off with the memory engine.
+ */
+public final class Storage {
+
+    private static final boolean MEMORY = "memory".equals(System.getProperty("storage", "mysql"));
+    private static final Path DIR = Paths.get(System.getProperty("storage.dir", "data/store"));
+
+    private static final ReportRepository REPORTS = new ReportRepository();
+    private static final TaskRepository TASKS = new TaskRepository();
+    private static final UserRepository USERS = new UserRepository();
+
+    private static MemoryEngine engine; // Guarded by Storage.class; opened on first use
+
+    private Storage() {}
+
+    /**
+     * @return Whether this process runs on the memory engine rather than MySQL.
+     */
+    public static boolean isMemory() {
+        return MEMORY;
+    }
+
+    /**
+     * @return The directory the memory engine keeps its files in.
+     */
+    static Path directory() {
+        return DIR;
+    }
+
+    /**
+     * Opens the memory engine now, so a damaged store is reported at startup rather than by the first query.
+     * Does nothing on MySQL.
+     * @throws IOException if the snapshot or journal cannot be read.
+     */
+    public static synchronized void open() throws IOException {
+        if (MEMORY && engine == null) {
+            engine = MemoryEngine.open(DIR);
+            Runtime.getRuntime().addShutdownHook(new Thread(engine::close, "storage-shutdown"));
+        }
+    }
+
+    private static synchronized MemoryEngine engine() {
+        try {
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open the data store in " + DIR, e);
+        }
+        return engine;
+    }
+
+    public static ReportStore reports() {
+        return MEMORY ? engine().reports() : REPORTS;
+    }
+
+    public static TaskStore tasks() {
+        return MEMORY ? engine().tasks() : TASKS;
+    }
+
+    public static UserStore users() {
+        return MEMORY ? engine().users() : USERS;
+    }
+}
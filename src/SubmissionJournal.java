@@ -0,0 +1,361 @@
+package src;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Local write-ahead journal for citizen submissions, so a report is accepted as soon as it is on local disk
+ * and survives the database being slow or down.
+ *
+ * The journal is a memory-mapped file (-Djournal.file, default data/submissions.journal, -Djournal.sizeMB
+ * capacity, default 64). Each record carries its length, a CRC32 and the journal generation; on open the file
+ * is scanned from the replay checkpoint and stops at the first record that is torn, corrupt or left over from
+ * an earlier generation. Appenders wait until their record is forced to disk by a single sync thread, which
+ * forces everything appended while the previous sync ran in one go, so concurrent submissions share fsyncs.
+ *
+ * A replayer drains durable records into the reports table in batches every -Djournal.replayMillis (default 1 s)
+ * and right after each append. Every record has a client token stored in reports.client_token, so a batch
+ * that is replayed twice, e.g. after a crash between the commit and the checkpoint, inserts nothing twice.
+ * Once everything is replayed the journal starts over at the front under a new generation.
+ * Only one process may use a journal file; a second client on the same machine writes straight to the database.
+ */
+public class SubmissionJournal {
+
+    private static final int MAGIC = 0x574a4e4c; // "WJNL"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;  // magic, version, generation, checkpoint
+    private static final int RECORD_HEADER_BYTES = 16; // length, crc, generation
+    private static final long REPLAY_MILLIS = Long.getLong("journal.replayMillis", 1000L); // Read by the constructor
+    private static final int REPLAY_BATCH = 500;
+
+    private static final SubmissionJournal INSTANCE = new SubmissionJournal(
+            Paths.get(System.getProperty("journal.file", "data/submissions.journal")),
+            Integer.getInteger("journal.sizeMB", 64) * 1024L * 1024L);
+
+    /**
+     * A submission as journaled.
+     * @param token Identifies the submission in reports.client_token.
+     * @param duplicateOf The report the citizen chose to link to, or null.
+     * @param photo The hash of the photo stored for it in the {@link BlobStore}, or null.
+     */
+    public record Entry(String token, int citizenId, String description, String location, Integer duplicateOf,
+                        long submittedMillis, String photo) {
+    }
+
+    private final Path file;
+    private final ReportRepository reportRepository = new ReportRepository();
+    private MappedByteBuffer mapped; // null if the journal could not be opened
+    private FileChannel channel;
+    private FileLock fileLock;
+
+    // Guarded by this
+    private long generation;
+    private int checkpoint;        // Records before this are in the database
+    private int written;           // End of the last appended record
+    private int synced;            // End of the last record forced to disk
+    private long appendedRecords;  // Monotonic, unlike the positions, which go back to the front on reset
+    private long syncedRecords;
+
+    private volatile boolean databaseReachable = true;
+    private ScheduledExecutorService replayer;
+
+    private SubmissionJournal(Path file, long capacity) {
+        this.file = file;
+        try {
+            open(capacity);
+            Thread syncer = new Thread(this::syncLoop, "journal-sync");
+            syncer.setDaemon(true);
+            syncer.start();
+            replayer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "journal-replay");
+                t.setDaemon(true);
+                return t;
+            });
+            replayer.scheduleWithFixedDelay(this::replay, 0, REPLAY_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+            e.printStackTrace(); // Submissions go straight to the database
+            mapped = null;
+        }
+    }
+
+    public static SubmissionJournal getInstance() {
+        return INSTANCE;
+    }
+
+    private void open(long capacity) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        fileLock = channel.tryLock();
+        if (fileLock == null) {
+            channel.close();
+            throw new IOException("Submission journal " + file + " is in use by another client");
+        }
+        long size = Math.max(channel.size(), Math.min(capacity, Integer.MAX_VALUE));
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (mapped.getInt(0) != MAGIC) {
+            generation = 1;
+            checkpoint = HEADER_BYTES;
+            mapped.putInt(0, MAGIC).putInt(4, VERSION);
+            writeHeader();
+        } else if (mapped.getInt(4) != VERSION) {
+            throw new IOException("Unsupported submission journal version in " + file);
+        } else {
+            generation = mapped.getLong(8);
+            checkpoint = (int) mapped.getLong(16);
+        }
+        // Whatever follows the checkpoint was forced before it was acknowledged, up to the first bad record
+        int position = checkpoint;
+        while (readRecord(position) != null) {
+            position = nextRecord(position);
+        }
+        written = position;
+        synced = position;
+    }
+
+    /**
+     * Journals a submission and returns once it is on disk.
+     * @param photo The hash of the submission's photo, already in the {@link BlobStore}, or null.
+     * @return The submission's client token.
+     * @throws IOException if the journal is unavailable or full; the caller should write to the database directly.
+     */
+    public String append(int citizenId, String description, String location, Integer duplicateOf, String photo)
+            throws IOException {
+        if (mapped == null) {
+            throw new IOException("Submission journal is unavailable");
+        }
+        String token = UUID.randomUUID().toString();
+        byte[] payload = encode(new Entry(token, citizenId, description, location, duplicateOf,
+                System.currentTimeMillis(), photo));
+        long sequence;
+        synchronized (this) {
+            if (written + RECORD_HEADER_BYTES + payload.length > mapped.capacity()) {
+                throw new IOException("Submission journal is full");
+            }
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            mapped.putInt(written, payload.length)
+                    .putInt(written + 4, (int) crc.getValue())
+                    .putLong(written + 8, generation)
+                    .put(written + RECORD_HEADER_BYTES, payload);
+            written += RECORD_HEADER_BYTES + payload.length;
+            sequence = ++appendedRecords;
+            notifyAll(); // Wakes the sync thread
+            // Not interruptible: the record is journaled now, so the caller must not fall back to the database
+            boolean interrupted = false;
+            while (syncedRecords < sequence) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        replayer.execute(this::replay); // Usually in the database a moment later
+        return token;
+    }
+
+    /**
+     * @return false while the replayer cannot reach the database, i.e. journaled submissions are waiting.
+     */
+    public boolean isDatabaseReachable() {
+        return databaseReachable;
+    }
+
+    /**
+     * @return The number of journaled submissions not yet in the database.
+     */
+    public synchronized int pending() {
+        int count = 0;
+        for (int position = checkpoint; position < synced; position = nextRecord(position)) {
+            count++;
+        }
+        return count;
+    }
+
+    private void syncLoop() {
+        while (true) {
+            int from;
+            int to;
+            long records;
+            synchronized (this) {
+                try {
+                    while (syncedRecords == appendedRecords) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                from = synced;
+                to = written;
+                records = appendedRecords;
+            }
+            mapped.force(from, to - from); // Everything appended while the previous force ran, in one fsync
+            synchronized (this) {
+                synced = to;
+                syncedRecords = records;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Inserts durable records into the database until the journal is empty or the database fails.
+     */
+    private void replay() {
+        try {
+            while (true) {
+                List<Entry> batch = new ArrayList<>();
+                int end;
+                synchronized (this) {
+                    end = checkpoint;
+                    while (end < synced && batch.size() < REPLAY_BATCH) {
+                        batch.add(readRecord(end));
+                        end = nextRecord(end);
+                    }
+                    if (batch.isEmpty()) {
+                        if (checkpoint > HEADER_BYTES && written == checkpoint) {
+                            reset();
+                        }
+                        return;
+                    }
+                }
+                insert(batch);
+                synchronized (this) {
+                    checkpoint = end;
+                    writeHeader();
+                }
+                databaseReachable = true;
+            }
+        } catch (SQLException e) {
+            if (databaseReachable) {
+                e.printStackTrace();
+            }
+            databaseReachable = false; // Retried on the next tick
+        } catch (RuntimeException e) {
+            e.printStackTrace(); // Never let one bad batch stop the replayer
+        }
+    }
+
+    /**
+     * Inserts a batch; if that fails on a constraint, inserts the entries one by one so one bad entry
+     * cannot hold back the rest. Other failures are left for the next attempt.
+     */
+    private void insert(List<Entry> batch) throws SQLException {
+        try {
+            reportRepository.insertJournaled(batch);
+        } catch (SQLIntegrityConstraintViolationException e) {
+            for (Entry entry : batch) {
+                try {
+                    reportRepository.insertJournaled(List.of(entry));
+                } catch (SQLIntegrityConstraintViolationException single) {
+                    if (entry.duplicateOf() == null) {
+                        single.printStackTrace(); // E.g. the citizen no longer exists; it can never be inserted
+                        continue;
+                    }
+                    // The linked report is gone (archived); submit it as a report of its own
+                    reportRepository.insertJournaled(List.of(new Entry(entry.token(), entry.citizenId(),
+                            entry.description(), entry.location(), null, entry.submittedMillis(), entry.photo())));
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts over at the front. A new generation makes the old records unreadable without erasing them.
+     */
+    private void reset() {
+        generation++;
+        checkpoint = HEADER_BYTES;
+        written = HEADER_BYTES;
+        synced = HEADER_BYTES;
+        writeHeader();
+    }
+
+    private void writeHeader() {
+        mapped.putLong(8, generation).putLong(16, checkpoint);
+        mapped.force(0, HEADER_BYTES);
+    }
+
+    /**
+     * @return The record at the position, or null if there is no valid record of the current generation there.
+     */
+    private Entry readRecord(int position) {
+        if (position + RECORD_HEADER_BYTES > mapped.capacity()) {
+            return null;
+        }
+        int length = mapped.getInt(position);
+        if (length <= 0 || length > mapped.capacity() - position - RECORD_HEADER_BYTES
+                || mapped.getLong(position + 8) != generation) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        mapped.get(position + RECORD_HEADER_BYTES, payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != mapped.getInt(position + 4)) {
+            return null;
+        }
+        return decode(payload);
+    }
+
+    private int nextRecord(int position) {
+        return position + RECORD_HEADER_BYTES + mapped.getInt(position);
+    }
+
+    private static byte[] encode(Entry entry) {
+        byte[] token = entry.token().getBytes(StandardCharsets.US_ASCII);
+        byte[] description = entry.description().getBytes(StandardCharsets.UTF_8);
+        byte[] location = entry.location().getBytes(StandardCharsets.UTF_8);
+        byte[] photo = entry.photo() == null ? new byte[0] : entry.photo().getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + token.length + 4 + 4 + 8 + 4 + description.length + 4 + location.length
+                + 4 + photo.length);
+        buffer.putInt(token.length).put(token)
+                .putInt(entry.citizenId())
+                .putInt(entry.duplicateOf() == null ? 0 : entry.duplicateOf())
+                .putLong(entry.submittedMillis())
+                .putInt(description.length).put(description)
+                .putInt(location.length).put(location)
+                .putInt(photo.length).put(photo); // Last, so records journaled before photos existed still decode
+        return buffer.array();
+    }
+
+    private static Entry decode(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        String token = string(buffer, StandardCharsets.US_ASCII);
+        int citizenId = buffer.getInt();
+        int duplicateOf = buffer.getInt();
+        long submittedMillis = buffer.getLong();
+        String description = string(buffer, StandardCharsets.UTF_8);
+        String location = string(buffer, StandardCharsets.UTF_8);
+        String photo = buffer.hasRemaining() ? string(buffer, StandardCharsets.US_ASCII) : "";
+        return new Entry(token, citizenId, description, location, duplicateOf == 0 ? null : duplicateOf, submittedMillis,
+                photo.isEmpty() ? null : photo);
+    }
+
+    private static String string(ByteBuffer buffer, Charset charset) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, charset);
+    }
+}
@@ -0,0 +1,23 @@
+package src;
+
+import java.sql.Timestamp;
+
+/**
+ * A task as shown to a worker: a row of the tasks table joined with its report.
+ * @param id The task's ID.
+ * @param reportId The ID of the report the task was created for.
+ * @param workerId The worker the task is assigned to.
+ * @param description The report's description.
+ * @param location The report's location.
+ * @param status One of Assigned or Completed.
+ * @param assignedDate When the task was assigned.
+ * @param updatedAt When the task row last changed.
+ * @param latitude The report's geocoded latitude, or NaN if unknown.
+ * @param longitude The report's geocoded longitude, or NaN if unknown.
+ * @param version The task row's version, bumped when it is completed.
+ * @param photo The hash of a photo of the report in the {@link BlobStore}, or null if it has none.
+ */
+public record Task(int id, int reportId, int workerId, String description, String location, String status,
+                   Timestamp assignedDate, Timestamp updatedAt, double latitude, double longitude, int version,
+                   String photo) {
+}
@@ -0,0 +1,380 @@
+package src;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Data access for the tasks table; the MySQL {@link TaskStore}.
+ * Methods are blocking; the dashboards run them through {@link DataExecutor}.
+ */
+public class TaskRepository implements TaskStore {
+
+    // Dashboard queries, shared with QueryPlanCheck so the checked SQL is exactly what runs
+    static final String BY_WORKER_SQL = "SELECT t.id, t.report_id, t.worker_id, r.description, r.location, t.status, t.assigned_date, t.updated_at, " +
+            "t.version, r.latitude, r.longitude, " + AttachmentRepository.photoColumn("r.id") + " " +
+            "FROM tasks t JOIN reports r ON t.report_id = r.id " +
+            "WHERE t.worker_id = ? ORDER BY t.assigned_date DESC";
+    static final String CHANGED_SINCE_SQL = "SELECT t.id, t.report_id, t.worker_id, r.description, r.location, t.status, t.assigned_date, t.updated_at, " +
+            "t.version, r.latitude, r.longitude, " + AttachmentRepository.photoColumn("r.id") + " " +
+            "FROM tasks t JOIN reports r ON t.report_id = r.id " +
+            "WHERE t.updated_at >= ? ORDER BY t.assigned_date";
+    static final String LAST_MODIFIED_SQL = "SELECT MAX(updated_at) FROM tasks";
+    static final String ASSIGNED_REPORTS_SQL = "SELECT report_id FROM tasks WHERE report_id IN (%s)";
+    static final String LINKED_REPORTS_SQL = "SELECT id FROM reports WHERE id IN (%s) AND duplicate_of IS NOT NULL";
+    static final String CLAIM_PENDING_SQL = "SELECT r.id, r.description, TIMESTAMPDIFF(SECOND, r.submission_date, CURRENT_TIMESTAMP) " +
+            "FROM reports r WHERE r.status = 'Pending' AND r.duplicate_of IS NULL " +
+            "AND NOT EXISTS (SELECT 1 FROM tasks t WHERE t.report_id = r.id) " +
+            "ORDER BY r.submission_date LIMIT ? FOR UPDATE SKIP LOCKED";
+    static final String TASK_COMPLETION_SQL = "SELECT worker_id, DATE(completed_date), " +
+            "TIMESTAMPDIFF(SECOND, assigned_date, completed_date) FROM tasks WHERE id = ?";
+    static final String OPEN_TASK_COUNTS_SQL = "SELECT worker_id, COUNT(*) FROM tasks WHERE status = 'Assigned' GROUP BY worker_id";
+
+    private static final String INSERT_SQL = "INSERT INTO tasks (report_id, worker_id, status) VALUES (?, ?, 'Assigned')";
+    // Reports linked to the assigned one follow its status
+    private static final String START_REPORT_SQL = "UPDATE reports SET status = 'In Progress', version = version + 1 " +
+            "WHERE (id = ? OR duplicate_of = ?) AND status = 'Pending'";
+    private static final String COMPLETE_TASK_SQL = "UPDATE tasks SET status = 'Completed', completed_date = CURRENT_TIMESTAMP, " +
+            "version = version + 1 WHERE id = ? AND status = 'Assigned' AND version = COALESCE(?, version)";
+    private static final String COMPLETE_REPORT_SQL = "UPDATE reports SET status = 'Completed', version = version + 1 " +
+            "WHERE (id = ? OR duplicate_of = ?) AND status <> 'Completed'";
+
+    // Keeps IN lists, and the statements cached for them, to a bounded set of sizes
+    static final int MAX_IN_LIST = 500;
+
+    /**
+     * @param workerId The worker whose tasks to load.
+     * @return The worker's tasks joined with their reports, most recently assigned first.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public List<Task> findByWorker(int workerId) throws SQLException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(BY_WORKER_SQL)) {
+
+            stmt.setInt(1, workerId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return mapTasks(rs);
+            }
+        }
+    }
+
+    /**
+     * @param since The watermark of the caller's last refresh.
+     * @return Every worker's tasks changed at or after the watermark, oldest assignment first.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public List<Task> findChangedSince(Timestamp since) throws SQLException {
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(CHANGED_SINCE_SQL)) {
+
+            stmt.setTimestamp(1, since);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return mapTasks(rs);
+            }
+        }
+    }
+
+    /**
+     * @return The start of the oldest open transaction, or the database's current time if none is open;
+     *         null if the database user may not see other transactions.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public Timestamp changeHorizon() throws SQLException {
+        try (Connection conn = DBConnection.getConnection()) {
+            return ReportRepository.changeHorizon(conn);
+        }
+    }
+
+    /**
+     * @return The newest change time of any task, or null if there are none.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public Timestamp lastModified() throws SQLException {
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(LAST_MODIFIED_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getTimestamp(1);
+        }
+    }
+
+    private List<Task> mapTasks(ResultSet rs) throws SQLException {
+        List<Task> tasks = new ArrayList<>();
+        while (rs.next()) {
+            tasks.add(new Task(rs.getInt("id"), rs.getInt("report_id"), rs.getInt("worker_id"), rs.getString("description"),
+                    rs.getString("location"), rs.getString("status"), rs.getTimestamp("assigned_date"),
+                    rs.getTimestamp("updated_at"), coordinate(rs, "latitude"), coordinate(rs, "longitude"),
+                    rs.getInt("version"), rs.getString("photo")));
+        }
+        return tasks;
+    }
+
+    private static double coordinate(ResultSet rs, String column) throws SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? Double.NaN : value;
+    }
+
+    /**
+     * Claims the oldest unassigned Pending reports and assigns them as planned, in one transaction.
+     * The claim locks rows with FOR UPDATE SKIP LOCKED, so concurrent dispatchers take disjoint sets of reports
+     * instead of waiting on each other, and manual assignment of a claimed report waits until this commits
+     * and then finds it assigned. The unique index on tasks.report_id backs this up.
+     * @param window How many of the oldest reports to claim for the planner to choose from.
+     * @param planner Chooses a worker per report; called with the rows locked.
+     * @return The assignments that were committed, report ID to worker ID.
+     * @throws SQLException if a database access error occurs; nothing is committed in that case.
+     */
+    @Override
+    public Map<Integer, Integer> dispatchPending(int window, AssignmentPlanner planner) throws SQLException {
+        Map<Integer, Integer> plan;
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                List<PendingReport> claimed = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(CLAIM_PENDING_SQL)) {
+                    stmt.setInt(1, window);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            claimed.add(new PendingReport(rs.getInt(1), rs.getString(2), rs.getLong(3)));
+                        }
+                    }
+                }
+                plan = claimed.isEmpty() ? Map.of() : planner.plan(claimed);
+
+                try (PreparedStatement insert = conn.prepareStatement(INSERT_SQL);
+                     PreparedStatement update = conn.prepareStatement(START_REPORT_SQL)) {
+                    for (Map.Entry<Integer, Integer> assignment : plan.entrySet()) {
+                        insert.setInt(1, assignment.getKey());
+                        insert.setInt(2, assignment.getValue());
+                        insert.addBatch();
+                        update.setInt(1, assignment.getKey());
+                        update.setInt(2, assignment.getKey());
+                        update.addBatch();
+                    }
+                    if (!plan.isEmpty()) {
+                        StatisticsRepository.Delta stats = new StatisticsRepository.Delta();
+                        stats.reportsMoved(conn, new ArrayList<>(plan.keySet()), "In Progress");
+                        for (int workerId : plan.values()) {
+                            stats.tasksAssigned(workerId, 1);
+                        }
+                        insert.executeBatch();
+                        update.executeBatch();
+                        stats.apply(conn);
+                    }
+                }
+                conn.commit();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        for (int workerId : plan.values()) {
+            GeoDispatch.getInstance().tasksAssigned(workerId, 1);
+        }
+        if (!plan.isEmpty()) {
+            ChangeFeed.getInstance().changed();
+        }
+        return plan;
+    }
+
+    /**
+     * @return The number of Assigned tasks per worker; workers without open tasks are absent.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public Map<Integer, Integer> countOpenTasksByWorker() throws SQLException {
+        Map<Integer, Integer> counts = new HashMap<>();
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(OPEN_TASK_COUNTS_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+
+            while (rs.next()) {
+                counts.put(rs.getInt(1), rs.getInt(2));
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Assigns many reports to one worker in a single transaction.
+     * The reports are locked first so concurrent assigners cannot create a second task for the same report;
+     * reports that are missing, already have a task, are linked duplicates of another report, are no longer
+     * Pending, or changed since the caller read them are reported and skipped. Task inserts and report
+     * updates are sent as JDBC batches, which the driver rewrites into multi-row statements.
+     * @param reportIds The reports to assign.
+     * @param expectedVersions The version of each report as the caller last saw it, in the same order,
+     *                         or null to check the status only.
+     * @param workerId The worker to assign them to.
+     * @return The outcome for each report.
+     * @throws SQLException if a database access error occurs; nothing is committed in that case.
+     */
+    @Override
+    public BatchResult assignAll(List<Integer> reportIds, List<Integer> expectedVersions, int workerId) throws SQLException {
+        BatchResult result = new BatchResult();
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Map<Integer, ReportRepository.Versioned> existing = ReportRepository.lockVersions(conn, reportIds);
+                Set<Integer> assigned = selectIds(conn, ASSIGNED_REPORTS_SQL, reportIds);
+                Set<Integer> linked = selectIds(conn, LINKED_REPORTS_SQL, reportIds);
+
+                List<Integer> toAssign = new ArrayList<>();
+                for (int i = 0; i < reportIds.size(); i++) {
+                    int reportId = reportIds.get(i);
+                    ReportRepository.Versioned row = existing.get(reportId);
+                    if (result.getOutcomes().containsKey(reportId)) {
+                        continue; // Listed twice
+                    } else if (row == null) {
+                        result.put(reportId, BatchResult.Outcome.NOT_FOUND);
+                    } else if (assigned.contains(reportId)) {
+                        result.put(reportId, BatchResult.Outcome.ALREADY_ASSIGNED);
+                    } else if (linked.contains(reportId)) {
+                        result.put(reportId, BatchResult.Outcome.DUPLICATE);
+                    } else if (expectedVersions != null && row.version() != expectedVersions.get(i)) {
+                        result.put(reportId, BatchResult.Outcome.CONFLICT);
+                    } else if (row.status() != ReportStatus.PENDING) {
+                        result.put(reportId, BatchResult.Outcome.NOT_ALLOWED);
+                    } else {
+                        result.put(reportId, BatchResult.Outcome.UPDATED);
+                        toAssign.add(reportId);
+                    }
+                }
+
+                try (PreparedStatement insert = conn.prepareStatement(INSERT_SQL);
+                     PreparedStatement update = conn.prepareStatement(START_REPORT_SQL)) {
+                    for (int reportId : toAssign) {
+                        insert.setInt(1, reportId);
+                        insert.setInt(2, workerId);
+                        insert.addBatch();
+                        update.setInt(1, reportId);
+                        update.setInt(2, reportId);
+                        update.addBatch();
+                    }
+                    if (!toAssign.isEmpty()) {
+                        StatisticsRepository.Delta stats = new StatisticsRepository.Delta();
+                        stats.reportsMoved(conn, toAssign, "In Progress");
+                        stats.tasksAssigned(workerId, toAssign.size());
+                        insert.executeBatch();
+                        update.executeBatch();
+                        stats.apply(conn);
+                    }
+                }
+                conn.commit();
+                GeoDispatch.getInstance().tasksAssigned(workerId, toAssign.size());
+                ChangeFeed.getInstance().changed();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs a query with an IN list over the given IDs, in chunks, and collects the first column.
+     * @param sqlTemplate SQL with a single %s where the placeholders go.
+     */
+    static Set<Integer> selectIds(Connection conn, String sqlTemplate, List<Integer> ids) throws SQLException {
+        Set<Integer> found = new HashSet<>();
+        for (int from = 0; from < ids.size(); from += MAX_IN_LIST) {
+            List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_IN_LIST));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            try (PreparedStatement stmt = conn.prepareStatement(String.format(sqlTemplate, placeholders))) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    stmt.setInt(i + 1, chunk.get(i));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        found.add(rs.getInt(1));
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Marks a task and its report as Completed, in one transaction, and counts the completion in the statistics.
+     * The task is completed by a single conditional update that only matches while it is still Assigned and,
+     * when a version is given, unchanged since the caller read it, so nothing needs to be locked beforehand.
+     * Reports linked to the task's report as duplicates are completed with it.
+     * @param expectedVersion The task's version as the caller last saw it, or null to check the status only.
+     * @return UPDATED, CONFLICT if the task was completed or changed meanwhile, or NOT_FOUND if it no longer exists;
+     *         nothing is changed unless it is UPDATED.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public BatchResult.Outcome complete(int taskId, int reportId, Integer expectedVersion) throws SQLException {
+        BatchResult.Outcome outcome = BatchResult.Outcome.NOT_FOUND;
+        int workerId = -1;
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false); // Start transaction
+            try {
+                // 1. Update the task status to 'Completed', if nobody did so first
+                StatisticsRepository.Delta stats = new StatisticsRepository.Delta();
+                int completed;
+                try (PreparedStatement stmt = conn.prepareStatement(COMPLETE_TASK_SQL)) {
+                    stmt.setInt(1, taskId);
+                    stmt.setObject(2, expectedVersion, Types.INTEGER);
+                    completed = stmt.executeUpdate();
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(TASK_COMPLETION_SQL)) {
+                    stmt.setInt(1, taskId);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (rs.next()) {
+                            workerId = rs.getInt(1);
+                            if (completed > 0) { // Completing a task twice must not count it twice
+                                stats.taskCompleted(workerId, rs.getDate(2), rs.getLong(3));
+                                outcome = BatchResult.Outcome.UPDATED;
+                            } else {
+                                outcome = BatchResult.Outcome.CONFLICT;
+                            }
+                        }
+                    }
+                }
+
+                // 2. Update the corresponding report, and any reports linked to it as duplicates, to 'Completed'
+                if (outcome == BatchResult.Outcome.UPDATED) {
+                    stats.reportsMoved(conn, List.of(reportId), "Completed");
+                    try (PreparedStatement stmt = conn.prepareStatement(COMPLETE_REPORT_SQL)) {
+                        stmt.setInt(1, reportId);
+                        stmt.setInt(2, reportId);
+                        stmt.executeUpdate();
+                    }
+                    stats.apply(conn);
+                }
+
+                conn.commit(); // Commit the transaction
+            } catch (SQLException ex) {
+                conn.rollback(); // Rollback on error
+                throw ex;
+            } finally {
+                conn.setAutoCommit(true); // Restore default behavior
+            }
+        }
+        if (outcome == BatchResult.Outcome.UPDATED) {
+            GeoDispatch.getInstance().taskCompleted(workerId, reportId);
+            DuplicateDetector.getInstance().reportClosed(reportId);
+            ChangeFeed.getInstance().changed();
+        }
+        return outcome;
+    }
+}
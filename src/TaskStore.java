@@ -0,0 +1,92 @@
+package src;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where tasks are kept, as the dashboards and the dispatchers see it.
+ * {@link TaskRepository} is the MySQL implementation and {@link MemoryEngine} the in-process one.
+ */
+public interface TaskStore {
+
+    /**
+     * A Pending report claimed for automatic dispatch.
+     * @param ageSeconds Time since submission, measured by the store's clock.
+     */
+    record PendingReport(int id, String description, long ageSeconds) {
+    }
+
+    /**
+     * Decides which claimed reports go to which worker.
+     */
+    @FunctionalInterface
+    interface AssignmentPlanner {
+        /**
+         * @return Report ID to worker ID; reports left out stay Pending.
+         */
+        Map<Integer, Integer> plan(List<PendingReport> claimed) throws SQLException;
+    }
+
+    /**
+     * @return The worker's tasks joined with their reports, most recently assigned first.
+     */
+    List<Task> findByWorker(int workerId) throws SQLException;
+
+    /**
+     * @return Every worker's tasks changed at or after the watermark, oldest assignment first.
+     */
+    List<Task> findChangedSince(Timestamp since) throws SQLException;
+
+    /**
+     * @return A time no later than the updated_at of any task change that is not visible yet,
+     *         or null if the store cannot tell.
+     */
+    Timestamp changeHorizon() throws SQLException;
+
+    /**
+     * @return The newest change time of any task, or null if there are none.
+     */
+    Timestamp lastModified() throws SQLException;
+
+    /**
+     * Assigns reports to one worker, atomically.
+     * @param expectedVersions The version of each report as the caller last saw it, or null to check the status only.
+     * @see TaskRepository#assignAll(List, List, int)
+     */
+    BatchResult assignAll(List<Integer> reportIds, List<Integer> expectedVersions, int workerId) throws SQLException;
+
+    /**
+     * Assigns many reports to one worker, checking only that each report is still Pending.
+     */
+    default BatchResult assignAll(List<Integer> reportIds, int workerId) throws SQLException {
+        return assignAll(reportIds, null, workerId);
+    }
+
+    /**
+     * Marks a task and its report as Completed.
+     * @param expectedVersion The task's version as the caller last saw it, or null to check the status only.
+     * @return UPDATED, CONFLICT if the task was completed or changed meanwhile, or NOT_FOUND.
+     */
+    BatchResult.Outcome complete(int taskId, int reportId, Integer expectedVersion) throws SQLException;
+
+    /**
+     * Marks a task and its report as Completed, checking only that the task is still Assigned.
+     */
+    default BatchResult.Outcome complete(int taskId, int reportId) throws SQLException {
+        return complete(taskId, reportId, null);
+    }
+
+    /**
+     * Claims the oldest unassigned Pending reports and assigns them as planned, atomically;
+     * concurrent dispatchers never claim the same report.
+     * @return The assignments that were made, report ID to worker ID.
+     */
+    Map<Integer, Integer> dispatchPending(int window, AssignmentPlanner planner) throws SQLException;
+
+    /**
+     * @return The number of Assigned tasks per worker; workers without open tasks are absent.
+     */
+    Map<Integer, Integer> countOpenTasksByWorker() throws SQLException;
+}
@@ -0,0 +1,321 @@
+package src;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A headless service that ingests smart-bin fill readings and files a report when a bin is about to overflow.
+ * <pre>
+ * binId,epochSeconds,fillPercent      e.g. 1042,1767225600,87.5
+ * </pre>
+ * Readings arrive as text lines over TCP from the sensor gateways (any number of connections, each sending
+ * any number of lines) or are tailed from a file a gateway appends to. The socket has no authentication and
+ * readings file reports, so it only accepts connections from this machine; remote gateways forward to it.
+ * Lines are parsed straight from the read buffer without creating strings, and malformed ones are counted
+ * and skipped.
+ *
+ * Readings go into {@link BinTelemetry}. Its alerts are filed by one background thread through
+ * {@link BinRepository} as the -Dtelemetry.user user (default "sensors"), at most one open report per bin;
+ * an alert that cannot be filed is retried with the bin's next reading. Counters are exposed over JMX as
+ * src:type=BinTelemetry.
+ *
+ * Run with: java -cp ".;lib\mysql-connector-j-9.4.0.jar" src.TelemetryServer [port] [--file readings.csv]
+ * Size it with -Dtelemetry.maxBins (default 100000) and -Dtelemetry.window readings per bin (default 30).
+ */
+public class TelemetryServer {
+
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    private static final long TAIL_POLL_MILLIS = 500;
+
+    /**
+     * The JMX view.
+     */
+    public interface BinTelemetryMXBean {
+        int getBins();
+
+        long getReadings();
+
+        long getMalformedLines();
+
+        long getAlerts();
+
+        long getReportsFiled();
+
+        long getAlertsDeduplicated();
+
+        long getFilingFailures();
+
+        String getSummary();
+
+        /**
+         * @return The bin's recent readings and rule state.
+         */
+        String history(int binId);
+    }
+
+    private final BinTelemetry telemetry;
+    private final BinRepository binRepository = new BinRepository();
+    private final int sensorUserId;
+    private final ExecutorService feeds = DataExecutor.newExecutor("telemetry-feed", 16);
+    private final ExecutorService filer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "telemetry-reports");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final LongAdder malformed = new LongAdder();
+    private final LongAdder filed = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * @param sensorUserId The user reports are filed as.
+     */
+    public TelemetryServer(BinTelemetry telemetry, int sensorUserId) {
+        this.telemetry = telemetry;
+        this.sensorUserId = sensorUserId;
+        QueryMetrics.register("src:type=BinTelemetry", new BinTelemetryMXBean() {
+            @Override
+            public int getBins() {
+                return telemetry.bins();
+            }
+
+            @Override
+            public long getReadings() {
+                return telemetry.getReadings();
+            }
+
+            @Override
+            public long getMalformedLines() {
+                return malformed.sum();
+            }
+
+            @Override
+            public long getAlerts() {
+                return telemetry.getAlerts();
+            }
+
+            @Override
+            public long getReportsFiled() {
+                return filed.sum();
+            }
+
+            @Override
+            public long getAlertsDeduplicated() {
+                return deduplicated.sum();
+            }
+
+            @Override
+            public long getFilingFailures() {
+                return failures.sum();
+            }
+
+            @Override
+            public String getSummary() {
+                return summary();
+            }
+
+            @Override
+            public String history(int binId) {
+                return telemetry.history(binId);
+            }
+        });
+    }
+
+    /**
+     * Accepts gateway connections on the loopback port until the process exits.
+     */
+    public void listen(int port) throws IOException {
+        ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> {
+            while (true) {
+                try {
+                    Socket socket = server.accept();
+                    feeds.execute(() -> {
+                        try (socket; InputStream in = socket.getInputStream()) {
+                            feed(in, false);
+                        } catch (IOException e) {
+                            e.printStackTrace(); // One gateway dropping must not stop the others
+                        }
+                    });
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return;
+                }
+            }
+        }, "telemetry-accept");
+        acceptor.start();
+        System.out.println("Bin telemetry listening on port " + server.getLocalPort());
+    }
+
+    /**
+     * Follows a file like tail -f, from its start, until the process exits.
+     */
+    public void tail(String file) {
+        feeds.execute(() -> {
+            try (InputStream in = new FileInputStream(file)) {
+                feed(in, true);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        System.out.println("Bin telemetry following " + file);
+    }
+
+    /**
+     * Reads readings until the stream ends.
+     * @param follow Wait for more data at the end of the stream instead of returning, for a growing file.
+     */
+    void feed(InputStream in, boolean follow) throws IOException {
+        byte[] buffer = new byte[READ_BUFFER_BYTES];
+        int filled = 0;
+        while (true) {
+            int n = in.read(buffer, filled, buffer.length - filled);
+            if (n < 0) {
+                if (!follow) {
+                    if (filled > 0) {
+                        line(buffer, 0, filled); // The last line needs no newline
+                    }
+                    return;
+                }
+                try {
+                    Thread.sleep(TAIL_POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+            filled += n;
+            int start = 0;
+            for (int i = 0; i < filled; i++) {
+                if (buffer[i] == '\n') {
+                    line(buffer, start, i);
+                    start = i + 1;
+                }
+            }
+            // Keep the partial line for the next read
+            System.arraycopy(buffer, start, buffer, 0, filled - start);
+            filled -= start;
+            if (filled == buffer.length) {
+                malformed.increment(); // A "line" longer than the buffer; drop it
+                filled = 0;
+            }
+        }
+    }
+
+    /**
+     * Parses "binId,epochSeconds,fillPercent" from buffer[from, to) and records it.
+     */
+    private void line(byte[] buffer, int from, int to) {
+        if (to > from && buffer[to - 1] == '\r') {
+            to--;
+        }
+        if (to == from) {
+            return; // Blank lines are allowed, e.g. as keep-alives
+        }
+        long binId = 0;
+        long seconds = 0;
+        long fillUnits = 0; // The fill with its decimal point removed
+        long fillScale = 1;
+        int field = 0;
+        int digits = 0;
+        boolean fraction = false;
+        for (int i = from; i < to; i++) {
+            byte b = buffer[i];
+            if (b == ',') {
+                if (digits == 0 || ++field > 2) {
+                    malformed.increment();
+                    return;
+                }
+                digits = 0;
+            } else if (b >= '0' && b <= '9' && digits < 18) {
+                digits++;
+                if (field == 0) {
+                    binId = binId * 10 + (b - '0');
+                } else if (field == 1) {
+                    seconds = seconds * 10 + (b - '0');
+                } else {
+                    fillUnits = fillUnits * 10 + (b - '0');
+                    if (fraction) {
+                        fillScale *= 10;
+                    }
+                }
+            } else if (b == '.' && field == 2 && !fraction) {
+                fraction = true;
+            } else {
+                malformed.increment();
+                return;
+            }
+        }
+        if (field != 2 || digits == 0 || binId > Integer.MAX_VALUE) {
+            malformed.increment();
+            return;
+        }
+        BinTelemetry.Alert alert = telemetry.record((int) binId, seconds, (double) fillUnits / fillScale);
+        if (alert != null) {
+            filer.execute(() -> file(alert));
+        }
+    }
+
+    private void file(BinTelemetry.Alert alert) {
+        try {
+            BinRepository.Overflow overflow = binRepository.reportOverflow(alert.binId(), sensorUserId, alert.describe());
+            if (overflow == null) {
+                // Stays alerted, so the unknown bin is not looked up again until it is emptied
+                System.err.println("Telemetry for unknown bin " + alert.binId() + "; add it to the bins table");
+                failures.increment();
+            } else if (overflow.created()) {
+                filed.increment();
+            } else {
+                deduplicated.increment();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            failures.increment();
+            telemetry.retryAlert(alert.binId());
+        }
+    }
+
+    /**
+     * @return A one-line summary of the counters.
+     */
+    public String summary() {
+        return String.format("%s; %d malformed lines, %d reports filed, %d alerts for bins with an open report, %d failed",
+                telemetry.summary(), malformed.sum(), filed.sum(), deduplicated.sum(), failures.sum());
+    }
+
+    public static void main(String[] args) throws IOException, SQLException {
+        SchemaMigrations.migrate();
+        String username = System.getProperty("telemetry.user", "sensors");
+        Integer sensorUserId = new UserRepository().findId(username);
+        if (sensorUserId == null) {
+            System.err.println("No user named " + username + " to file bin reports as.");
+            System.exit(1);
+        }
+        BinTelemetry telemetry = new BinTelemetry(Integer.getInteger("telemetry.maxBins", 100_000),
+                Integer.getInteger("telemetry.window", 30));
+        TelemetryServer server = new TelemetryServer(telemetry, sensorUserId);
+
+        int port = 7070;
+        String file = null;
+        for (int i = 0; i < args.length; i++) {
+            if ("--file".equals(args[i]) && i + 1 < args.length) {
+                file = args[++i];
+            } else {
+                port = Integer.parseInt(args[i]);
+            }
+        }
+        server.listen(port);
+        if (file != null) {
+            server.tail(file);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package src;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.*;
+import javax.swing.table.DefaultTableCellRenderer;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small previews of report photos for the admin and worker tables.
+ * Previews are made on a background pool with one thread per core, decoding only every nth pixel of a large
+ * photo, and saved under thumbs/ in the {@link BlobStore} so each photo is decoded once for every client sharing
+ * the store. The most recently shown -Dthumbnails.cacheSize previews (default 500) stay in memory, shared by
+ * every table in the process. Everything except the pool's work runs on the EDT.
+ */
+public class Thumbnails {
+
+    static final int SIZE = 32; // Pixels on the longer side; tables showing previews need rows this high plus a little
+    private static final int CACHE_SIZE = Integer.getInteger("thumbnails.cacheSize", 500);
+
+    private static final Thumbnails INSTANCE = new Thumbnails();
+
+    private final Map<String, Icon> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Icon> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private final Map<String, List<Runnable>> pending = new HashMap<>(); // Hash -> callbacks waiting for it
+    private final Set<String> failed = new HashSet<>(); // Not retried, otherwise every repaint would try again
+    private final ExecutorService pool;
+
+    private Thumbnails() {
+        AtomicInteger counter = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+            Thread t = new Thread(r, "thumbnails-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY); // Previews must not slow down the dashboards
+            return t;
+        });
+    }
+
+    public static Thumbnails getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Renders a column of photo hashes as previews; a double click on such a cell can open {@link PhotoDialog}.
+     */
+    public static class Renderer extends DefaultTableCellRenderer {
+        @Override
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus,
+                                                       int row, int column) {
+            super.getTableCellRendererComponent(table, null, isSelected, hasFocus, row, column);
+            setHorizontalAlignment(CENTER);
+            String hash = (String) value;
+            setIcon(hash == null ? null : INSTANCE.get(hash, table::repaint));
+            setText(hash != null && getIcon() == null && INSTANCE.failed.contains(hash) ? "?" : null);
+            return this;
+        }
+    }
+
+    /**
+     * @param onReady Run on the EDT once the preview is ready, if it is not ready yet.
+     * @return The preview, or null while it is being made or if the photo cannot be shown.
+     */
+    public Icon get(String hash, Runnable onReady) {
+        Icon icon = cache.get(hash);
+        if (icon != null || failed.contains(hash)) {
+            return icon;
+        }
+        List<Runnable> waiting = pending.get(hash);
+        if (waiting == null) {
+            waiting = new ArrayList<>();
+            pending.put(hash, waiting);
+            pool.execute(() -> make(hash));
+        }
+        waiting.add(onReady);
+        return null;
+    }
+
+    private void make(String hash) {
+        BufferedImage image = null;
+        try {
+            image = load(hash);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+        BufferedImage made = image;
+        SwingUtilities.invokeLater(() -> {
+            if (made == null) {
+                failed.add(hash);
+            } else {
+                cache.put(hash, new ImageIcon(made));
+            }
+            pending.remove(hash).forEach(Runnable::run);
+        });
+    }
+
+    /**
+     * Reads the saved preview, making and saving it first if there is none.
+     */
+    private BufferedImage load(String hash) throws IOException {
+        BlobStore store = BlobStore.getInstance();
+        Path saved = store.derivedPath("thumbs", hash, ".png");
+        if (Files.exists(saved)) {
+            BufferedImage image = ImageIO.read(saved.toFile());
+            if (image != null) {
+                return image;
+            }
+        }
+        BufferedImage image = scale(read(store.path(hash), SIZE * 2), SIZE);
+        Files.createDirectories(saved.getParent());
+        Path temp = Files.createTempFile(saved.getParent(), hash, ".tmp");
+        try {
+            ImageIO.write(image, "png", temp.toFile());
+            Files.move(temp, saved, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return image;
+    }
+
+    /**
+     * Decodes an image, skipping pixels so the shorter side comes out no smaller than about minSide.
+     * A 12 megapixel photo then costs a fraction of its full size in memory and decoding time.
+     */
+    static BufferedImage read(Path file, int minSide) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            if (in == null) {
+                throw new IOException("Cannot read " + file);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("Not an image: " + file);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int step = Math.max(1, Math.min(reader.getWidth(0), reader.getHeight(0)) / minSide);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * @return The image scaled down to fit a square of the given side, or the image itself if it fits already.
+     */
+    static BufferedImage scale(BufferedImage image, int side) {
+        double factor = Math.min(1.0, (double) side / Math.max(image.getWidth(), image.getHeight()));
+        if (factor == 1.0 && image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            return image;
+        }
+        int width = Math.max(1, (int) Math.round(image.getWidth() * factor));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * factor));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+}
@@ -0,0 +1,214 @@
+package src;
+
+import javax.management.ObjectName;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size-bounded, time-limited cache in front of a database lookup.
+ * Entries expire a fixed time after being loaded and the least recently used entry is evicted when the
+ * cache is full. Concurrent misses on the same key share one database load, so a burst of identical
+ * requests (an admin team opening dashboards at shift change) costs one query. A load that was running when
+ * an entry was invalidated is not cached, and later lookups do not wait for it, so an invalidated value is
+ * never served again. Each cache's counters are published over JMX as src:type=Cache,name=&lt;name&gt;.
+ * @param <K> The key type.
+ * @param <V> The value type; null values are not cached.
+ */
+public class TtlCache<K, V> {
+
+    /**
+     * Loads the value for a key from the database.
+     */
+    @FunctionalInterface
+    public interface Loader<K, V> {
+        V load(K key) throws SQLException;
+    }
+
+    /**
+     * The JMX view.
+     */
+    public interface CacheMXBean {
+        int getSize();
+
+        long getHits();
+
+        long getMisses();
+
+        double getHitRatePercent();
+
+        long getEvictions();
+
+        long getInvalidations();
+
+        void invalidateAll();
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final String name;
+    private final long ttlMillis;
+    private final int maxSize;
+    private final LinkedHashMap<K, Entry<V>> entries; // guarded by this
+    // The load in progress per key; invalidation removes it, which tells the load not to cache its value
+    private final Map<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public TtlCache(String name, long ttlMillis, int maxSize) {
+        this.name = name;
+        this.ttlMillis = ttlMillis;
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > TtlCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        QueryMetrics.register("src:type=Cache,name=" + ObjectName.quote(name), new CacheMXBean() {
+            @Override
+            public int getSize() {
+                return size();
+            }
+
+            @Override
+            public long getHits() {
+                return hits.get();
+            }
+
+            @Override
+            public long getMisses() {
+                return misses.get();
+            }
+
+            @Override
+            public double getHitRatePercent() {
+                return hitRatePercent();
+            }
+
+            @Override
+            public long getEvictions() {
+                return evictions.get();
+            }
+
+            @Override
+            public long getInvalidations() {
+                return invalidations.get();
+            }
+
+            @Override
+            public void invalidateAll() {
+                TtlCache.this.invalidateAll();
+            }
+        });
+    }
+
+    /**
+     * Returns the cached value, loading it on a miss or after it expired.
+     * @throws SQLException if the load fails; failures are not cached.
+     */
+    public V get(K key, Loader<K, V> loader) throws SQLException {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && entry.expiresAt > now) {
+                hits.incrementAndGet();
+                return entry.value;
+            }
+            if (entry != null) {
+                entries.remove(key);
+                evictions.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = loading.putIfAbsent(key, mine);
+        if (inFlight != null) {
+            try {
+                return inFlight.join(); // Someone else is already loading this key
+            } catch (RuntimeException e) {
+                Throwable cause = DataExecutor.unwrap(e);
+                throw cause instanceof SQLException ? (SQLException) cause : new SQLException(cause);
+            }
+        }
+        try {
+            V value = loader.load(key);
+            if (value != null) {
+                synchronized (this) {
+                    if (loading.get(key) == mine) { // Otherwise the key was invalidated and the value may predate it
+                        entries.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMillis));
+                    }
+                }
+            }
+            mine.complete(value);
+            return value;
+        } catch (SQLException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, mine);
+        }
+    }
+
+    /**
+     * Drops one entry so the next lookup reads the database.
+     */
+    public synchronized void invalidate(K key) {
+        loading.remove(key);
+        if (entries.remove(key) != null) {
+            invalidations.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drops every entry.
+     */
+    public synchronized void invalidateAll() {
+        loading.clear();
+        invalidations.addAndGet(entries.size());
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private double hitRatePercent() {
+        long h = hits.get();
+        long m = misses.get();
+        return h + m == 0 ? 0.0 : 100.0 * h / (h + m);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: size=%d hits=%d misses=%d hitRate=%.1f%% evictions=%d invalidations=%d",
+                name, size(), hits.get(), misses.get(), hitRatePercent(), evictions.get(), invalidations.get());
+    }
+}
@@ -0,0 +1,10 @@
+package src;
+
+/**
+ * A row of the users table, without the password.
+ * @param id The user's ID.
+ * @param username The login name.
+ * @param role One of Citizen, Admin or Worker.
+ */
+public record User(int id, String username, String role) {
+}
@@ -0,0 +1,210 @@
+package src;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data access for the users table; the MySQL {@link UserStore}.
+ * Methods are blocking; the dashboards run them through {@link DataExecutor}.
+ * Users and the worker roster change rarely, so they are served from process-wide caches;
+ * whoever changes the users table must call {@link #invalidateUser} or {@link #invalidateAll}.
+ */
+public class UserRepository implements UserStore {
+
+    // Dashboard queries, shared with QueryPlanCheck so the checked SQL is exactly what runs
+    static final String WORKERS_SQL = "SELECT id, username FROM users WHERE role = 'Worker'";
+    static final String IDS_BY_ROLE_SQL = "SELECT id FROM users WHERE role = ? ORDER BY id";
+    static final String BY_USERNAME_SQL = "SELECT id, username, password, role FROM users WHERE username = ?";
+    static final String LOCATION_SQL = "SELECT latitude, longitude FROM users WHERE id = ? AND latitude IS NOT NULL";
+    static final String WORKER_LOCATIONS_SQL = "SELECT id, latitude, longitude FROM users " +
+            "WHERE role = 'Worker' AND latitude IS NOT NULL";
+
+    private static final String WORKERS_KEY = "Worker";
+
+    /**
+     * A user together with a keyed digest of the stored password, as cached for login checks.
+     * The cache never holds the password itself.
+     */
+    private record StoredUser(User user, byte[] passwordDigest) {
+    }
+
+    // Random per process, so a cached digest is no use outside it and cannot be looked up in a precomputed table
+    private static final byte[] DIGEST_KEY = new byte[32];
+
+    static {
+        new SecureRandom().nextBytes(DIGEST_KEY);
+    }
+
+    private static final TtlCache<String, StoredUser> USERS = new TtlCache<>("users",
+            Long.getLong("cache.users.ttlMillis", 5 * 60_000L), Integer.getInteger("cache.users.maxSize", 10_000));
+    private static final TtlCache<String, List<User>> ROSTERS = new TtlCache<>("worker rosters",
+            Long.getLong("cache.rosters.ttlMillis", 60_000L), 16);
+
+    /**
+     * Looks up a user by credentials.
+     * @param username The login name.
+     * @param password The password as typed.
+     * @return The matching user, or null if the credentials are wrong.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public User authenticate(String username, String password) throws SQLException {
+        StoredUser stored = USERS.get(username, this::loadUser);
+        if (stored == null) {
+            return null;
+        }
+        // Constant-time comparison so response time does not leak how much of the digest matched
+        return MessageDigest.isEqual(stored.passwordDigest(), digest(password)) ? stored.user() : null;
+    }
+
+    /**
+     * @return The ID of the user with the given login name, or null if there is none.
+     * @throws SQLException if a database access error occurs.
+     */
+    public Integer findId(String username) throws SQLException {
+        StoredUser stored = USERS.get(username, this::loadUser);
+        return stored == null ? null : stored.user().id();
+    }
+
+    /**
+     * @return All users with the Worker role.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public List<User> findWorkers() throws SQLException {
+        return ROSTERS.get(WORKERS_KEY, key -> loadWorkers());
+    }
+
+    /**
+     * Not cached; used by the benchmarks to pick users to act as.
+     * @return The IDs of all users with the role, in ascending order.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public List<Integer> findIdsByRole(String role) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(IDS_BY_ROLE_SQL)) {
+
+            stmt.setString(1, role);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private StoredUser loadUser(String username) throws SQLException {
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(BY_USERNAME_SQL)) {
+
+            stmt.setString(1, username);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                User user = new User(rs.getInt("id"), rs.getString("username"), rs.getString("role"));
+                return new StoredUser(user, digest(rs.getString("password")));
+            }
+        }
+    }
+
+    private static byte[] digest(String password) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(DIGEST_KEY, "HmacSHA256"));
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e); // Every JDK has it
+        }
+    }
+
+    private List<User> loadWorkers() throws SQLException {
+        List<User> workers = new ArrayList<>();
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(WORKERS_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+
+            while (rs.next()) {
+                workers.add(new User(rs.getInt("id"), rs.getString("username"), "Worker"));
+            }
+        }
+        return List.copyOf(workers);
+    }
+
+    /**
+     * @param userId The user to look up.
+     * @return The user's base {latitude, longitude}, or null if none is set.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public double[] findLocation(int userId) throws SQLException {
+        try (Connection conn = DBConnection.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(LOCATION_SQL)) {
+
+            stmt.setInt(1, userId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? new double[]{rs.getDouble(1), rs.getDouble(2)} : null;
+            }
+        }
+    }
+
+    /**
+     * Loads the base location of every worker that has one.
+     * Not cached here; {@link GeoDispatch} keeps its own index and reloads it periodically.
+     * @param index The index to fill.
+     * @throws SQLException if a database access error occurs.
+     */
+    @Override
+    public void loadWorkerLocations(SpatialIndex index) throws SQLException {
+        try (Connection conn = DBConnection.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(WORKER_LOCATIONS_SQL);
+             ResultSet rs = stmt.executeQuery()) {
+
+            while (rs.next()) {
+                index.put(rs.getInt(1), rs.getDouble(2), rs.getDouble(3));
+            }
+        }
+    }
+
+    /**
+     * Forgets a cached user, and the worker roster in case the user's role changed.
+     * @param username The user that was added, changed or removed.
+     */
+    public static void invalidateUser(String username) {
+        USERS.invalidate(username);
+        ROSTERS.invalidateAll();
+    }
+
+    /**
+     * Forgets every cached user and roster.
+     */
+    public static void invalidateAll() {
+        USERS.invalidateAll();
+        ROSTERS.invalidateAll();
+    }
+
+    @Override
+    public void invalidateCache() {
+        invalidateAll();
+    }
+
+    /**
+     * @return Hit/miss counters for the user and roster caches, on one line.
+     */
+    public static String cacheStats() {
+        return USERS + "   " + ROSTERS;
+    }
+}
@@ -0,0 +1,41 @@
+package src;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Where users are kept, as the login window and the dashboards see it.
+ * {@link UserRepository} is the MySQL implementation and {@link MemoryEngine} the in-process one.
+ */
+public interface UserStore {
+
+    /**
+     * @return The matching user, or null if the credentials are wrong.
+     */
+    User authenticate(String username, String password) throws SQLException;
+
+    /**
+     * @return All users with the Worker role.
+     */
+    List<User> findWorkers() throws SQLException;
+
+    /**
+     * @return The IDs of all users with the role, in ascending order.
+     */
+    List<Integer> findIdsByRole(String role) throws SQLException;
+
+    /**
+     * @return The user's base {latitude, longitude}, or null if none is set.
+     */
+    double[] findLocation(int userId) throws SQLException;
+
+    /**
+     * Puts the base location of every worker that has one into the index.
+     */
+    void loadWorkerLocations(SpatialIndex index) throws SQLException;
+
+    /**
+     * Forgets any cached users and worker rosters, so the next lookups see changes made elsewhere.
+     */
+    void invalidateCache();
+}
@@ -4,21 +4,38 @@ import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
 /**
  * The dashboard for Worker users.
- * Allows workers to view their assigned tasks and mark them as completed.
+ * Allows workers to view their assigned tasks in an optimized visiting order and mark them as completed.
  */
 public class WorkerDashboard extends JFrame {
 
     private final int workerId;
     private JTable taskTable;
     private DefaultTableModel tableModel;
+    private final TaskStore taskRepository = Storage.tasks();
+    private final UserStore userRepository = Storage.users();
+    private final AsyncLoader taskLoader;
+    private final ChangeFeed.Subscription<Task> taskChanges;
+    private final JCheckBox routeOrderBox;
+    private volatile RoutePlanner planner; // Replaced on every full load; guarded by its own lock
+    private final Map<Integer, Integer> taskVersions = new HashMap<>(); // Task ID -> version as last loaded
+
+    private static final int STOP_COLUMN = 6;
+    private static final int PHOTO_COLUMN = 7;
+
+    /**
+     * The worker's tasks together with the planned visiting order of the open ones.
+     */
+    private record Loaded(List<Task> tasks, List<Integer> route) {
+    }
 
     public WorkerDashboard(int workerId) {
         this.workerId = workerId;
@@ -32,19 +49,37 @@ public class WorkerDashboard extends JFrame {
         // Panel for displaying assigned tasks
         JPanel tablePanel = new JPanel(new BorderLayout());
         tablePanel.setBorder(BorderFactory.createTitledBorder("Your Assigned Tasks"));
-        tableModel = new DefaultTableModel(new String[]{"Task ID", "Report ID", "Description", "Location", "Status", "Assigned Date"}, 0);
+        tableModel = new DefaultTableModel(new String[]{"Task ID", "Report ID", "Description", "Location", "Status", "Assigned Date", "Stop", "Photo"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return column != PHOTO_COLUMN && super.isCellEditable(row, column); // A double click opens the photo instead
+            }
+        };
         taskTable = new JTable(tableModel);
+        taskTable.setRowHeight(Thumbnails.SIZE + 4);
+        taskTable.getColumnModel().getColumn(PHOTO_COLUMN).setCellRenderer(new Thumbnails.Renderer());
+        PhotoDialog.openOnDoubleClick(taskTable, PHOTO_COLUMN);
         tablePanel.add(new JScrollPane(taskTable), BorderLayout.CENTER);
+        JLabel loadingLabel = new JLabel(" ");
+        tablePanel.add(loadingLabel, BorderLayout.SOUTH);
 
         // Panel for the action button
         JPanel actionPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
         JButton completeButton = new JButton("Mark Task as Completed");
         completeButton.addActionListener(this::completeTask);
         actionPanel.add(completeButton);
+        routeOrderBox = new JCheckBox("Order by Route", true);
+        routeOrderBox.setToolTipText("List open tasks in the planned visiting order instead of by assignment date");
+        routeOrderBox.addActionListener(e -> sortRows());
+        actionPanel.add(routeOrderBox);
 
         add(tablePanel, BorderLayout.CENTER);
         add(actionPanel, BorderLayout.SOUTH);
 
+        taskLoader = new AsyncLoader(taskTable, loadingLabel);
+        // New assignments are pushed in by the shared feed
+        taskChanges = ChangeFeed.getInstance().subscribeTasks(task -> task.workerId() == workerId, this::applyChanges);
+
         // Load initial data
         loadTasks();
     }
@@ -53,30 +88,124 @@ public class WorkerDashboard extends JFrame {
      * Loads the tasks assigned to the current worker from the database.
      */
     private void loadTasks() {
+        taskLoader.load(() -> {
+            List<Task> tasks = taskRepository.findByWorker(workerId);
+            RoutePlanner fresh = new RoutePlanner(userRepository.findLocation(workerId));
+            List<RoutePlanner.Stop> stops = new ArrayList<>();
+            for (Task task : tasks) {
+                if (!"Completed".equalsIgnoreCase(task.status())) {
+                    stops.add(toStop(task));
+                }
+            }
+            List<Integer> route = fresh.plan(stops);
+            planner = fresh;
+            return new Loaded(tasks, route);
+        }, this::showTasks, "Failed to load tasks.");
+    }
+
+    private void showTasks(Loaded loaded) {
         tableModel.setRowCount(0); // Clear existing data
-        String sql = "SELECT t.id, t.report_id, r.description, r.location, t.status, t.assigned_date " +
-                     "FROM tasks t JOIN reports r ON t.report_id = r.id " +
-                     "WHERE t.worker_id = ? ORDER BY t.assigned_date DESC";
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setInt(1, workerId);
-            ResultSet rs = stmt.executeQuery();
-
-            while (rs.next()) {
-                Vector<Object> row = new Vector<>();
-                row.add(rs.getInt("id"));
-                row.add(rs.getInt("report_id"));
-                row.add(rs.getString("description"));
-                row.add(rs.getString("location"));
-                row.add(rs.getString("status"));
-                row.add(rs.getTimestamp("assigned_date").toString());
-                tableModel.addRow(row);
+        taskVersions.clear();
+        for (Task task : loaded.tasks()) {
+            tableModel.addRow(toRow(task));
+            taskVersions.put(task.id(), task.version());
+        }
+        taskChanges.loaded(loaded.tasks());
+        showRoute(loaded.route());
+    }
+
+    private static RoutePlanner.Stop toStop(Task task) {
+        return new RoutePlanner.Stop(task.id(), task.latitude(), task.longitude());
+    }
+
+    /**
+     * Numbers the open tasks in visiting order and re-sorts the table if route order is selected.
+     * @param route Task IDs in visiting order.
+     */
+    private void showRoute(List<Integer> route) {
+        Map<Integer, Integer> stopById = new HashMap<>();
+        for (int i = 0; i < route.size(); i++) {
+            stopById.put(route.get(i), i + 1);
+        }
+        for (int row = 0; row < tableModel.getRowCount(); row++) {
+            tableModel.setValueAt(stopById.get((Integer) tableModel.getValueAt(row, 0)), row, STOP_COLUMN);
+        }
+        sortRows();
+    }
+
+    /**
+     * Sorts the rows by stop number, completed tasks last, or newest assignment first.
+     */
+    @SuppressWarnings("unchecked")
+    private void sortRows() {
+        Comparator<Vector<Object>> newestFirst = Comparator.comparing(row -> (String) row.get(5), Comparator.reverseOrder());
+        Comparator<Vector<Object>> order = routeOrderBox.isSelected()
+                ? Comparator.<Vector<Object>, Integer>comparing(row -> (Integer) row.get(STOP_COLUMN),
+                        Comparator.nullsLast(Comparator.naturalOrder())).thenComparing(newestFirst)
+                : newestFirst;
+        Vector<Vector<Object>> rows = (Vector<Vector<Object>>) (Vector<?>) tableModel.getDataVector();
+        rows.sort(order);
+        tableModel.fireTableDataChanged();
+    }
+
+    /**
+     * Patches tasks changed since the last refresh into the table.
+     * New tasks arrive oldest first, so inserting each at the top keeps the newest-first order.
+     */
+    private void applyChanges(List<Task> changed) {
+        List<Task> added = new ArrayList<>();
+        List<Integer> completed = new ArrayList<>();
+        Map<Integer, Integer> rowById = new HashMap<>();
+        for (int i = 0; i < tableModel.getRowCount(); i++) {
+            rowById.put((Integer) tableModel.getValueAt(i, 0), i);
+        }
+        for (Task task : changed) {
+            taskVersions.put(task.id(), task.version());
+            Integer row = rowById.get(task.id());
+            if (row == null) {
+                tableModel.insertRow(0, toRow(task));
+                rowById.replaceAll((id, index) -> index + 1);
+                rowById.put(task.id(), 0);
+            } else {
+                tableModel.setValueAt(task.status(), row, 4);
+            }
+            if ("Completed".equalsIgnoreCase(task.status())) {
+                completed.add(task.id());
+            } else {
+                added.add(task); // Adding a stop that is already planned does nothing
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Failed to load tasks.", "Database Error", JOptionPane.ERROR_MESSAGE);
         }
+
+        // Patch the route instead of planning it again from scratch
+        RoutePlanner current = planner;
+        if (current != null) {
+            AsyncLoader.perform(() -> {
+                for (int taskId : completed) {
+                    current.remove(taskId);
+                }
+                for (Task task : added) {
+                    current.add(toStop(task));
+                }
+                return current.getOrder();
+            }, route -> {
+                if (current == planner) { // Ignore if a full reload replaced the planner meanwhile
+                    showRoute(route);
+                }
+            }, Throwable::printStackTrace);
+        }
+    }
+
+    private Vector<Object> toRow(Task task) {
+        Vector<Object> row = new Vector<>();
+        row.add(task.id());
+        row.add(task.reportId());
+        row.add(task.description());
+        row.add(task.location());
+        row.add(task.status());
+        row.add(task.assignedDate().toString());
+        row.add(null); // Stop number, filled in once the route is planned
+        row.add(task.photo());
+        return row;
     }
 
     /**
@@ -99,49 +228,33 @@ public class WorkerDashboard extends JFrame {
 
         int taskId = (int) tableModel.getValueAt(selectedRow, 0);
         int reportId = (int) tableModel.getValueAt(selectedRow, 1);
+        int version = taskVersions.get(taskId);
 
-        // Use a transaction to ensure both updates succeed or fail together
-        Connection conn = null;
-        try {
-            conn = DBConnection.getConnection();
-            conn.setAutoCommit(false); // Start transaction
-
-            // 1. Update the task status to 'Completed'
-            String updateTaskSql = "UPDATE tasks SET status = 'Completed', completed_date = CURRENT_TIMESTAMP WHERE id = ?";
-            try (PreparedStatement stmt = conn.prepareStatement(updateTaskSql)) {
-                stmt.setInt(1, taskId);
-                stmt.executeUpdate();
-            }
-
-            // 2. Update the corresponding report status to 'Completed'
-            String updateReportSql = "UPDATE reports SET status = 'Completed' WHERE id = ?";
-            try (PreparedStatement stmt = conn.prepareStatement(updateReportSql)) {
-                stmt.setInt(1, reportId);
-                stmt.executeUpdate();
-            }
-
-            conn.commit(); // Commit the transaction
-            JOptionPane.showMessageDialog(this, "Task marked as completed successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
-            loadTasks(); // Refresh the table
-
-        } catch (SQLException ex) {
-            if (conn != null) {
-                try {
-                    conn.rollback(); // Rollback on error
-                } catch (SQLException rollbackEx) {
-                    rollbackEx.printStackTrace();
-                }
+        JButton source = (JButton) e.getSource();
+        source.setEnabled(false);
+        // The repository runs both updates in one transaction so they succeed or fail together,
+        // and only if the task is still as this table shows it
+        AsyncLoader.perform(() -> taskRepository.complete(taskId, reportId, version), outcome -> {
+            source.setEnabled(true);
+            if (outcome == BatchResult.Outcome.UPDATED) {
+                JOptionPane.showMessageDialog(this, "Task marked as completed successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                ChangeFeed.getInstance().changed(); // Show the task as it is now
+                JOptionPane.showMessageDialog(this, outcome == BatchResult.Outcome.NOT_FOUND
+                                ? "This task no longer exists."
+                                : "This task was completed or changed elsewhere since your list was loaded. The list now shows its current state.",
+                        "Task Changed", JOptionPane.WARNING_MESSAGE);
             }
-            ex.printStackTrace();
+        }, error -> {
+            source.setEnabled(true);
+            error.printStackTrace();
             JOptionPane.showMessageDialog(this, "Failed to update task status.", "Database Error", JOptionPane.ERROR_MESSAGE);
-        } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true); // Restore default behavior
-                } catch (SQLException finalEx) {
-                    finalEx.printStackTrace();
-                }
-            }
-        }
+        });
+    }
+
+    @Override
+    public void dispose() {
+        taskChanges.close(); // Stop receiving changes for a closed window
+        super.dispose();
     }
 }